@@ -30,11 +30,14 @@
       <page menu="webapps">
          <title>Reload</title>
          <xsl:choose>
+            <xsl:when test="$method eq 'get'">
+               <xsl:apply-templates select="web:reload-status($repo)"/>
+            </xsl:when>
             <xsl:when test="not($method eq 'post')">
                <xsl:sequence select="
                    error(
                      xs:QName('app:method-not-allowed'),
-                     concat('Method not allowed, need POST, got ', $method))"/>
+                     concat('Method not allowed, need GET or POST, got ', $method))"/>
             </xsl:when>
             <xsl:otherwise>
                <xsl:apply-templates select="." mode="reload">
@@ -47,8 +50,18 @@
 
    <xsl:template match="web:request" mode="reload">
       <xsl:param name="repo" required="yes"/>
-      <xsl:variable name="apps" select="web:reload-webapps($repo)"/>
+      <xsl:variable name="mode"       as="xs:string?" select="web:param[@name eq 'mode']/@value/string(.)[.]"/>
+      <xsl:variable name="background" as="xs:boolean" select="$mode eq 'background'"/>
+      <xsl:variable name="apps" select="web:reload-webapps($repo, $background)"/>
       <xsl:choose>
+         <xsl:when test="$background">
+            <para>
+               <xsl:text>Reload started in the background.  The current apps keep </xsl:text>
+               <xsl:text>serving requests until the new ones are compiled.  See the </xsl:text>
+               <link href="do-reload">status</link>
+               <xsl:text> to follow it.</xsl:text>
+            </para>
+         </xsl:when>
          <xsl:when test="exists($apps)">
             <para>
                <xsl:text>Cache properly reloaded, with the following apps: </xsl:text>
@@ -63,6 +76,7 @@
                </xsl:for-each>
                <xsl:text>.</xsl:text>
             </para>
+            <xsl:apply-templates select="web:reload-status($repo)"/>
          </xsl:when>
          <xsl:otherwise>
             <para>
@@ -72,4 +86,50 @@
       </xsl:choose>
    </xsl:template>
 
+   <xsl:template match="web:reload">
+      <subtitle>Last reload</subtitle>
+      <para>
+         <xsl:text>State: </xsl:text>
+         <bold>
+            <xsl:value-of select="@state"/>
+         </bold>
+         <xsl:text> (</xsl:text>
+         <xsl:value-of select="if ( xs:boolean(@background) ) then 'background' else 'synchronous'"/>
+         <xsl:text>), in </xsl:text>
+         <xsl:value-of select="@duration"/>
+         <xsl:text> ms.</xsl:text>
+         <xsl:if test="exists(@error)">
+            <br/>
+            <xsl:text>Error: </xsl:text>
+            <code>
+               <xsl:value-of select="@error"/>
+            </code>
+         </xsl:if>
+      </para>
+      <list>
+         <xsl:apply-templates select="web:webapp"/>
+      </list>
+   </xsl:template>
+
+   <xsl:template match="web:webapp">
+      <item>
+         <xsl:value-of select="(@root, @name)[1]"/>
+         <xsl:choose>
+            <xsl:when test="@unchanged/xs:boolean(.)">
+               <xsl:text>: unchanged, kept as is</xsl:text>
+            </xsl:when>
+            <xsl:otherwise>
+               <xsl:text>: loaded in </xsl:text>
+               <xsl:value-of select="@load"/>
+               <xsl:text> ms</xsl:text>
+            </xsl:otherwise>
+         </xsl:choose>
+         <xsl:if test="exists(@compile)">
+            <xsl:text>, compiled in </xsl:text>
+            <xsl:value-of select="@compile"/>
+            <xsl:text> ms</xsl:text>
+         </xsl:if>
+      </item>
+   </xsl:template>
+
 </xsl:stylesheet>
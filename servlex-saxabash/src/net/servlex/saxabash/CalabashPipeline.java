@@ -9,27 +9,13 @@
 
 package net.servlex.saxabash;
 
-import com.xmlcalabash.core.XMLCalabash;
-import com.xmlcalabash.core.XProcConfiguration;
-import com.xmlcalabash.core.XProcRuntime;
 import com.xmlcalabash.io.ReadablePipe;
 import com.xmlcalabash.model.RuntimeValue;
 import com.xmlcalabash.runtime.XPipeline;
-import com.xmlcalabash.util.Input;
-import com.xmlcalabash.util.Output;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import net.servlex.saxon.SaxonHelper;
 import net.sf.saxon.s9api.Axis;
-import net.sf.saxon.s9api.Processor;
 import net.sf.saxon.s9api.QName;
 import net.sf.saxon.s9api.SaxonApiException;
 import net.sf.saxon.s9api.XdmEmptySequence;
@@ -38,10 +24,6 @@ import net.sf.saxon.s9api.XdmNode;
 import net.sf.saxon.s9api.XdmNodeKind;
 import net.sf.saxon.s9api.XdmSequenceIterator;
 import net.sf.saxon.s9api.XdmValue;
-import org.expath.pkg.calabash.PkgConfigurer;
-import org.expath.pkg.repo.PackageException;
-import org.expath.pkg.saxon.ConfigHelper;
-import org.expath.pkg.saxon.SaxonRepository;
 import org.expath.servlex.ServerConfig;
 import org.expath.servlex.ServlexConstants;
 import org.expath.servlex.ServlexException;
@@ -54,12 +36,14 @@ import org.expath.servlex.processors.Processors;
 import org.expath.servlex.processors.Sequence;
 import net.servlex.saxon.model.SaxonSequence;
 import org.expath.servlex.runtime.ComponentError;
+import org.expath.servlex.runtime.RequestContext;
 import org.expath.servlex.tools.Auditor;
 
 import static org.expath.servlex.processors.XProcProcessor.OUTPUT_PORT_NAME;
 import net.servlex.saxon.model.SaxonDocument;
 import org.expath.servlex.tools.Cleanable;
 import org.expath.servlex.tools.Log;
+import org.expath.servlex.tools.StreamedBody;
 
 /**
  * Abstract an XProc pipeline.
@@ -69,190 +53,58 @@ import org.expath.servlex.tools.Log;
 public class CalabashPipeline
         implements Cleanable
 {
-    public CalabashPipeline(CalabashXProc calabash, ServerConfig config, Auditor auditor, Processors procs)
+    public CalabashPipeline(PipelinePool pool, ServerConfig config, Auditor auditor, Processors procs, RequestContext request)
     {
-        myCalabash = calabash;
+        myPool = pool;
         myConfig = config;
         myAuditor = auditor;
         myProcs = procs;
-    }
-
-    @Override
-    public void cleanup(Auditor auditor)
-            throws ServlexException
-    {
-        auditor.cleanup("calabash pipleline, close the runtime object");
-        if ( myRuntime != null ) {
-            myRuntime.close();
-            myRuntime = null;
-        }
+        myRequest = request;
     }
 
     /**
-     * Prepare the compiled pipeline for evaluation.
+     * Give the compiled pipeline back to the pool.
      * 
-     * TODO: After discussions with Norm, it seems this is the only correct
-     * way to go currently.  XProcRuntime is NOT the Calabash equivalent of
-     * Saxon's Processor.  It is, well, the runtime for one pipeline.  So
-     * nothing is cacheable with Calabash, because there is no processor,
-     * and compiled pipelines cannot be evaluated in a concurrent way (they
-     * can be reused in a sequence way, by resetting the pipeline, but not
-     * at the same time so not in a web server).  I still hope to have a
-     * better design in a later version of Calabash.
+     * It is reused by a later evaluation only if this one succeeded.
      */
-    public void compile(String pipe)
-            throws ComponentError
-                 , ServlexException
-    {
-        compile(pipe, null);
-    }
-
-    public void compile(XdmNode pipe)
-            throws ComponentError
-                 , ServlexException
-    {
-        compile(null, pipe);
-    }
-
-    private void compile(String href, XdmNode node)
-            throws ComponentError
-                 , ServlexException
+    @Override
+    public void cleanup(Auditor auditor)
+            throws ServlexException
     {
-        myAuditor.compilationStarts("xproc");
-        try {
-            // instantiate the runtime
-            myRuntime = getRuntime();
-            // compile the pipeline
-            if ( node == null ) {
-                LOG.debug("About to href the pipeline: " + href);
-                Input in = new Input(href);
-                myCompiled = myRuntime.load(in);
+        auditor.cleanup("calabash pipleline, release the compiled pipeline");
+        if ( myPooled != null ) {
+            if ( myEvaluated ) {
+                myPool.release(myPooled);
             }
             else {
-                LOG.debug("About to compile the pipeline document: " + node.getBaseURI());
-                myCompiled = myRuntime.use(node);
+                myPool.discard(myPooled);
             }
+            myPooled = null;
+            myCompiled = null;
         }
-        catch ( SaxonApiException ex ) {
-            LOG.error("Error compiling pipeline", ex);
-            throw SaxonHelper.makeError(ex);
-        }
-        catch ( PackageException ex ) {
-            LOG.error("Error compiling pipeline", ex);
-            throw new ServlexException(500, "Error compiling pipeline", ex);
-        }
-        catch ( TechnicalException ex ) {
-            LOG.error("Error compiling pipeline", ex);
-            throw new ServlexException(500, "Error compiling pipeline", ex);
-        }
-        myAuditor.compilationStops();
     }
 
     /**
-     * Prepare a new runtime, not compiling any pipeline, not handling errors.
+     * Prepare the compiled pipeline for evaluation.
+     * 
+     * XProcRuntime is NOT the Calabash equivalent of Saxon's Processor.  It
+     * is, well, the runtime for one pipeline.  And compiled pipelines cannot
+     * be evaluated in a concurrent way (they can be reused in a sequence way,
+     * by resetting the pipeline, but not at the same time so not in a web
+     * server).  So the compiled pipeline is taken from the pool of the
+     * component, and compiled only if the pool has no idle one.
      */
-    private XProcRuntime getRuntime()
-            throws PackageException
+    public void compile()
+            throws ComponentError
                  , ServlexException
-                 , TechnicalException
     {
-        Processor saxon = myCalabash.getSaxon();
-        XProcConfiguration xconf = new XProcConfiguration(saxon);
-        // < temporary >
-        temporary_FIX_BECAUSE_OF_CALABASH(xconf);
-        XProcRuntime runtime = new SafeCloseXProcRuntime(xconf);
-        // </ temporary >
-        SaxonRepository repo = myCalabash.getRepository();
-        PkgConfigurer configurer = new PkgConfigurer(runtime, repo.getUnderlyingRepo());
-        runtime.setConfigurer(configurer);
-        File profiling = myConfig.getProfileFile("xproc-profile");
-        if ( profiling != null ) {
-            try {
-                OutputStream stream = new FileOutputStream(profiling);
-                Output out = new Output(stream);
-                runtime.setProfile(out);
-            }
-            catch ( FileNotFoundException ex ) {
-                // there is no point in stopping processing if the profile
-                // file is not writable
-                LOG.error("Error opening the profile file for Calabash: " + profiling);
-            }
-        }
-        // FIXME: Have to reconfigure the Saxon processor, because Calabash
-        // install its own resolvers.  Should be ok though, but double-check!
-        ConfigHelper helper = new ConfigHelper(repo);
-        helper.config(saxon.getUnderlyingConfiguration());
-        return runtime;
-    }
-
-    /**
-     * Make sure that `super.close()` is never called twice (because it does not
-     * prevent using `for (... : exFuncs) ...` when `exFuncs` is `null`.  Should
-     * be fixed in Calabash itself.
-     */
-    private static class SafeCloseXProcRuntime
-            extends XProcRuntime
-    {
-        public SafeCloseXProcRuntime(XProcConfiguration conf)
-        {
-            super(conf);
-        }
-
-        @Override
-        public synchronized void close()
-        {
-            if ( ! myClosed ) {
-                super.close();
-                myClosed = true;
-            }
-        }
-
-        private boolean myClosed = false;
-    }
-
-    // When instantiated with an existing Saxon processor, an XProcConfiguration
-    // object is not loaded with the step implementations! (in Calabash 1.1.1,
-    // using the new annotation-based system)  This function does exactly that,
-    // based on the similar code in Calabash, and in the library it uses for
-    // manipulating annotations.
-    private void temporary_FIX_BECAUSE_OF_CALABASH(XProcConfiguration conf)
-            throws TechnicalException
-    {
-        ClassLoader cl = Thread.currentThread().getContextClassLoader();
-        Class annot = XMLCalabash.class;
-        String idx = "META-INF/annotations/" + annot.getCanonicalName();
-        InputStream in = cl.getResourceAsStream(idx);
-        BufferedReader r = new BufferedReader(new InputStreamReader(in));
-        try {
-            String line = r.readLine();
-            while ( line != null ) {
-                Class<?> klass;
-                try {
-                    klass = cl.loadClass(line);
-                }
-                catch ( ClassNotFoundException ex ) {
-                    throw new TechnicalException("Error loading the step class: " + line, ex);
-                }
-                XMLCalabash annotation = klass.getAnnotation(XMLCalabash.class);
-                for ( String clarkName: annotation.type().split("\\s+") ) {
-                    try {
-                        QName name = QName.fromClarkName(clarkName);
-                        LOG.debug("Found step type annotation: " + clarkName);
-                        if ( conf.implementations.containsKey(name) ) {
-                            LOG.debug("Ignoring step type annotation for configured step: " + clarkName);
-                        }
-                        conf.implementations.put(name, klass);
-                    }
-                    catch ( IllegalArgumentException ex ) {
-                        throw new TechnicalException("Failed to parse step annotation type: " + clarkName, ex);
-                    }
-                }
-                line = r.readLine();
-            }
-        }
-        catch ( IOException ex ) {
-            throw new TechnicalException("Error reading the annotation index file", ex);
+        myPooled = myPool.poll();
+        if ( myPooled == null ) {
+            myAuditor.compilationStarts("xproc");
+            myPooled = myPool.compile(myRequest);
+            myAuditor.compilationStops();
         }
+        myCompiled = myPooled.getPipeline();
     }
 
     /**
@@ -285,6 +137,8 @@ public class CalabashPipeline
         if ( ! myCompiled.getOutputs().contains(OUTPUT_PORT_NAME) ) {
             throw new ServlexException(501, "The output port '" + OUTPUT_PORT_NAME + "' is mandatory on an XProc pipeline.");
         }
+        // the runtime carries the request context during the evaluation only
+        myPooled.bind(myRequest);
         try {
             myCompiled.run();
         }
@@ -292,11 +146,15 @@ public class CalabashPipeline
             LOG.error("Error evaluating pipeline", ex);
             throw SaxonHelper.makeError(ex);
         }
+        finally {
+            myPooled.unbind();
+        }
         ReadablePipe response_port = myCompiled.readFrom(OUTPUT_PORT_NAME);
         try {
             XdmValue result  = decodeResponse(response_port);
             Sequence seq     = new SaxonSequence(result);
             Auditor  auditor = connector.getAuditor();
+            myEvaluated = true;
             return new XdmConnector(seq, auditor);
         }
         catch ( SaxonApiException ex ) {
@@ -447,18 +305,22 @@ public class CalabashPipeline
     private static final QName WRAPPER_NAME
             = new QName(ServlexConstants.WEBAPP_PREFIX, ServlexConstants.WEBAPP_NS, "wrapper");
 
-    /** The Calabash processor. */
-    private final CalabashXProc myCalabash;
+    /** The pool of compiled pipelines of the component. */
+    private final PipelinePool myPool;
     /** The configuration object. */
     private final ServerConfig myConfig;
     /** The audit trail object. */
     private final Auditor myAuditor;
     /** The processors object. */
     private final Processors myProcs;
-    /** The compiled pipeline, to be used only once. */
+    /** The context of the request being served. */
+    private final RequestContext myRequest;
+    /** The compiled pipeline, taken from the pool. */
+    private PipelinePool.Compiled myPooled;
+    /** The compiled pipeline itself, to be used only once before reset. */
     private XPipeline myCompiled;
-    /** The Calabash runtime object. */
-    private XProcRuntime myRuntime;
+    /** Whether the pipeline has been evaluated successfully. */
+    private boolean myEvaluated = false;
     /**
      * An instance of an XProc component.
      */
@@ -482,6 +344,21 @@ public class CalabashPipeline
             CalabashHelper.writeTo(myPipe, NAME, seq.makeSaxonValue(), myProcs);
         }
 
+        @Override
+        public boolean needsBodies()
+        {
+            return true;
+        }
+
+        /**
+         * The pipeline documents are not resolved through a URI resolver we can hook into.
+         */
+        @Override
+        public boolean connectBody(StreamedBody body)
+        {
+            return false;
+        }
+
         // TODO: error(), setErrorOptions(), writeErrorRequest(), writeErrorData()
         // and the several constants are mostly duplicated in SaxonXSLTTransform...
         @Override
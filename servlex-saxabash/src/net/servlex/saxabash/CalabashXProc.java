@@ -11,15 +11,22 @@ package net.servlex.saxabash;
 
 import net.servlex.saxabash.components.CalabashXProcStep;
 import net.servlex.saxabash.components.CalabashXProcPipeline;
+import net.servlex.saxon.SaxonHelper;
 import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.XdmNode;
 import org.expath.pkg.repo.PackageException;
 import org.expath.pkg.saxon.SaxonRepository;
 import org.expath.servlex.ServerConfig;
 import org.expath.servlex.components.Component;
 import org.expath.servlex.processors.Processors;
 import org.expath.servlex.processors.XProcProcessor;
+import org.expath.servlex.runtime.RequestContext;
 import org.expath.servlex.tools.Auditor;
 
+import static org.expath.servlex.ServlexConstants.SAXON_CONFIG_FILE_PROPERTY;
+import static org.expath.servlex.ServlexConstants.XPROC_POOL_DEFAULT;
+import static org.expath.servlex.ServlexConstants.XPROC_POOL_PROPERTY;
+
 /**
  * Abstract an XProc processor.
  *
@@ -37,6 +44,10 @@ public class CalabashXProc
      * the directory does not exist, profiling is disabled and a message is logged
      * (but this is not an error).  If the property does not exist, profiling is
      * not enabled.
+     * 
+     * The value of the property {@code ServlexConstants.XPROC_POOL_PROPERTY},
+     * if it exists, is the max number of idle compiled pipelines kept for each
+     * XProc component (see {@link PipelinePool}).
      */
     public CalabashXProc(Processor saxon, SaxonRepository repo, ServerConfig config, Processors procs)
             throws PackageException
@@ -45,6 +56,7 @@ public class CalabashXProc
         myRepo = repo;
         myConfig = config;
         myProcs = procs;
+        myPoolSize = Integer.getInteger(XPROC_POOL_PROPERTY, XPROC_POOL_DEFAULT);
     }
 
     public Component makePipeline(String uri)
@@ -58,11 +70,29 @@ public class CalabashXProc
     }
 
     /**
-     * Prepare a new {@link CalabashPipeline} object, to compile and evaluate a pipeline.
+     * Prepare a new {@link CalabashPipeline} object, to evaluate a pipeline from {@code pool}.
+     * 
+     * @param ctxt The context of the request the pipeline is evaluated for (can be null).
+     */
+    public CalabashPipeline prepare(PipelinePool pool, Auditor auditor, RequestContext ctxt)
+    {
+        return new CalabashPipeline(pool, myConfig, auditor, myProcs, ctxt);
+    }
+
+    /**
+     * Make a new pool of compiled pipelines, for the pipeline at {@code href}.
+     */
+    public PipelinePool makePool(String href)
+    {
+        return new PipelinePool(this, myConfig, myPoolSize, href, null);
+    }
+
+    /**
+     * Make a new pool of compiled pipelines, for the pipeline document {@code pipe}.
      */
-    public CalabashPipeline prepare(Auditor auditor)
+    public PipelinePool makePool(XdmNode pipe)
     {
-        return new CalabashPipeline(this, myConfig, auditor, myProcs);
+        return new PipelinePool(this, myConfig, myPoolSize, null, pipe);
     }
 
     public Processor getSaxon()
@@ -70,6 +100,22 @@ public class CalabashXProc
         return mySaxon;
     }
 
+    /**
+     * Make a new Saxon processor, for one Calabash runtime.
+     * 
+     * Calabash registers its own extension functions and URI resolver on the
+     * processor of each runtime, and the request context is bound to the
+     * configuration of the runtime (see {@link PipelinePool}), so runtimes
+     * cannot share a processor.  The new processor is compatible with the
+     * main one, so the nodes can be passed from one to the other.
+     */
+    public Processor makeSaxon()
+            throws PackageException
+    {
+        String file = System.getProperty(SAXON_CONFIG_FILE_PROPERTY);
+        return SaxonHelper.makeSaxon(myRepo, myProcs, myConfig, file, mySaxon);
+    }
+
     public SaxonRepository getRepository()
     {
         return myRepo;
@@ -83,6 +129,8 @@ public class CalabashXProc
     private Processor mySaxon;
     /** The processors object. */
     private Processors myProcs;
+    /** The max number of idle pipelines pooled per component. */
+    private int myPoolSize;
 }
 
 
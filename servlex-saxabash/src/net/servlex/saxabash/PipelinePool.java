@@ -0,0 +1,449 @@
+/****************************************************************************/
+/*  File:       PipelinePool.java                                           */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package net.servlex.saxabash;
+
+import com.xmlcalabash.core.XMLCalabash;
+import com.xmlcalabash.core.XProcConfiguration;
+import com.xmlcalabash.core.XProcRuntime;
+import com.xmlcalabash.runtime.XPipeline;
+import com.xmlcalabash.util.Input;
+import com.xmlcalabash.util.Output;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import net.servlex.saxon.SaxonHelper;
+import net.sf.saxon.Configuration;
+import net.sf.saxon.expr.XPathContext;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmNode;
+import org.expath.pkg.calabash.PkgConfigurer;
+import org.expath.pkg.repo.PackageException;
+import org.expath.pkg.saxon.ConfigHelper;
+import org.expath.pkg.saxon.SaxonRepository;
+import org.expath.servlex.ServerConfig;
+import org.expath.servlex.ServlexException;
+import org.expath.servlex.TechnicalException;
+import org.expath.servlex.runtime.ComponentError;
+import org.expath.servlex.runtime.RequestContext;
+import org.expath.servlex.tools.Log;
+
+/**
+ * A pool of compiled pipelines, for one XProc component.
+ *
+ * In Calabash, the compiled pipeline is also the runtime object, bound to its
+ * own {@link XProcRuntime}.  It cannot be used concurrently, but it can be
+ * reset and reused sequentially.  So instead of compiling the pipeline for
+ * each request, we keep a few of them, idle, and give them to requests one at
+ * a time.  A pipeline is compiled only when no idle one is available.
+ *
+ * Each runtime has its own Saxon processor (see {@link
+ * CalabashXProc#makeSaxon()}), to which the context of the request being
+ * served is bound during the evaluation.  The extension functions find it
+ * there, from any step or XPath expression of the pipeline.
+ *
+ * The max number of idle pipelines kept in the pool is set by the system
+ * property {@code org.expath.servlex.xproc.pool.size}.  When profiling is
+ * enabled, nothing is pooled, as each evaluation must write its own profile
+ * file.
+ *
+ * @author Florent Georges
+ */
+public class PipelinePool
+{
+    /**
+     * The pipeline to compile is either {@code href}, or {@code node}.
+     */
+    PipelinePool(CalabashXProc calabash, ServerConfig config, int size, String href, XdmNode node)
+    {
+        myCalabash = calabash;
+        myConfig = config;
+        mySize = config.getProfileDir() == null ? size : 0;
+        myHref = href;
+        myNode = node;
+    }
+
+    /**
+     * Return an idle compiled pipeline, or null if there is none.
+     */
+    public synchronized Compiled poll()
+    {
+        return myIdle.pollFirst();
+    }
+
+    /**
+     * Compile a new pipeline, ready to be evaluated.
+     * 
+     * @param ctxt The context of the request the pipeline is compiled for
+     * (for the profile file, can be null if profiling is disabled).
+     */
+    public Compiled compile(RequestContext ctxt)
+            throws ComponentError
+                 , ServlexException
+    {
+        try {
+            XProcRuntime runtime = makeRuntime(ctxt);
+            XPipeline pipe;
+            if ( myNode == null ) {
+                LOG.debug("About to href the pipeline: " + myHref);
+                Input in = new Input(myHref);
+                pipe = runtime.load(in);
+            }
+            else {
+                LOG.debug("About to compile the pipeline document: " + myNode.getBaseURI());
+                pipe = runtime.use(myNode);
+            }
+            return new Compiled(runtime, pipe);
+        }
+        catch ( SaxonApiException ex ) {
+            LOG.error("Error compiling pipeline", ex);
+            throw SaxonHelper.makeError(ex);
+        }
+        catch ( PackageException ex ) {
+            LOG.error("Error compiling pipeline", ex);
+            throw new ServlexException(500, "Error compiling pipeline", ex);
+        }
+        catch ( TechnicalException ex ) {
+            LOG.error("Error compiling pipeline", ex);
+            throw new ServlexException(500, "Error compiling pipeline", ex);
+        }
+    }
+
+    /**
+     * Compile a pipeline ahead of time, and put it in the pool.
+     *
+     * Nothing is compiled if the pool already has an idle pipeline, or if it
+     * does not keep any (e.g. because profiling is enabled).
+     */
+    public void warmup()
+            throws ComponentError
+                 , ServlexException
+    {
+        if ( mySize > 0 && isEmpty() ) {
+            // profiling is disabled when pooling, so no need for a request
+            release(compile(null));
+        }
+    }
+
+    /**
+     * Give back a pipeline after use.
+     *
+     * The pipeline is reset and put back in the pool, unless the pool is full
+     * or the pipeline cannot be reset, in which case its runtime is closed.
+     */
+    public void release(Compiled compiled)
+    {
+        if ( mySize > 0 && compiled.reset() ) {
+            synchronized ( this ) {
+                if ( myIdle.size() < mySize ) {
+                    myIdle.addFirst(compiled);
+                    return;
+                }
+            }
+        }
+        compiled.close();
+    }
+
+    /**
+     * Throw a pipeline away, e.g. because its evaluation failed.
+     */
+    public void discard(Compiled compiled)
+    {
+        compiled.close();
+    }
+
+    private synchronized boolean isEmpty()
+    {
+        return myIdle.isEmpty();
+    }
+
+    /**
+     * Prepare a new runtime, not compiling any pipeline, not handling errors.
+     */
+    private XProcRuntime makeRuntime(RequestContext ctxt)
+            throws PackageException
+                 , ServlexException
+                 , TechnicalException
+    {
+        // its own processor, for the request context to be bound to the runtime
+        Processor saxon = myCalabash.makeSaxon();
+        XProcConfiguration xconf = new XProcConfiguration(saxon);
+        // < temporary >
+        temporary_FIX_BECAUSE_OF_CALABASH(xconf);
+        XProcRuntime runtime = new SafeCloseXProcRuntime(xconf);
+        // </ temporary >
+        SaxonRepository repo = myCalabash.getRepository();
+        PkgConfigurer configurer = new PkgConfigurer(runtime, repo.getUnderlyingRepo());
+        runtime.setConfigurer(configurer);
+        File profiling = myConfig.getProfileFile("xproc-profile", ctxt);
+        if ( profiling != null ) {
+            try {
+                OutputStream stream = new FileOutputStream(profiling);
+                Output out = new Output(stream);
+                runtime.setProfile(out);
+            }
+            catch ( FileNotFoundException ex ) {
+                // there is no point in stopping processing if the profile
+                // file is not writable
+                LOG.error("Error opening the profile file for Calabash: " + profiling);
+            }
+        }
+        // FIXME: Have to reconfigure the Saxon processor, because Calabash
+        // install its own resolvers.  Should be ok though, but double-check!
+        ConfigHelper helper = new ConfigHelper(repo);
+        helper.config(saxon.getUnderlyingConfiguration());
+        return runtime;
+    }
+
+    /**
+     * A compiled pipeline, with its runtime.
+     */
+    public static class Compiled
+    {
+        private Compiled(XProcRuntime runtime, XPipeline pipe)
+        {
+            myRuntime = runtime;
+            myPipe = pipe;
+        }
+
+        public XPipeline getPipeline()
+        {
+            return myPipe;
+        }
+
+        /**
+         * Bind {@code ctxt} to the runtime, until {@link #unbind()}.
+         * 
+         * The context is bound to the Saxon configuration of the runtime, which
+         * is used by all its evaluations (XPath expressions, p:xslt, p:xquery,
+         * etc.), for the extension functions to find it (see {@link
+         * RuntimeLocator}).
+         */
+        public void bind(RequestContext ctxt)
+        {
+            if ( ctxt != null ) {
+                BOUND.put(getConfiguration(), ctxt);
+            }
+        }
+
+        /**
+         * Unbind the context bound by {@link #bind(RequestContext)}, if any.
+         */
+        public void unbind()
+        {
+            BOUND.remove(getConfiguration());
+        }
+
+        private Configuration getConfiguration()
+        {
+            return myRuntime.getProcessor().getUnderlyingConfiguration();
+        }
+
+        /**
+         * Reset the pipeline for its next evaluation, return false if it failed.
+         */
+        private boolean reset()
+        {
+            try {
+                myPipe.reset();
+                for ( String port : myPipe.getInputs() ) {
+                    myPipe.clearInputs(port);
+                }
+                myPipe.clearOptions();
+                myPipe.clearParameters();
+                return true;
+            }
+            catch ( RuntimeException ex ) {
+                LOG.error("Error resetting the pipeline, it will not be reused", ex);
+                return false;
+            }
+        }
+
+        private void close()
+        {
+            myRuntime.close();
+        }
+
+        private final XProcRuntime myRuntime;
+        private final XPipeline myPipe;
+    }
+
+    /**
+     * Find the request context bound to the runtime an evaluation belongs to.
+     * 
+     * Each runtime has its own Saxon configuration, shared by all the
+     * evaluations of its steps, whatever the step.
+     */
+    private static class RuntimeLocator
+            implements SaxonHelper.ContextLocator
+    {
+        @Override
+        public RequestContext locate(XPathContext ctxt)
+        {
+            return BOUND.get(ctxt.getConfiguration());
+        }
+    }
+
+    /**
+     * Make sure that `super.close()` is never called twice (because it does not
+     * prevent using `for (... : exFuncs) ...` when `exFuncs` is `null`.  Should
+     * be fixed in Calabash itself.
+     */
+    private static class SafeCloseXProcRuntime
+            extends XProcRuntime
+    {
+        public SafeCloseXProcRuntime(XProcConfiguration conf)
+        {
+            super(conf);
+        }
+
+        @Override
+        public synchronized void close()
+        {
+            if ( ! myClosed ) {
+                super.close();
+                myClosed = true;
+            }
+        }
+
+        private boolean myClosed = false;
+    }
+
+    // When instantiated with an existing Saxon processor, an XProcConfiguration
+    // object is not loaded with the step implementations! (in Calabash 1.1.1,
+    // using the new annotation-based system)  This function does exactly that,
+    // based on the similar code in Calabash, and in the library it uses for
+    // manipulating annotations.  The annotation index is read only once.
+    private static void temporary_FIX_BECAUSE_OF_CALABASH(XProcConfiguration conf)
+            throws TechnicalException
+    {
+        for ( Map.Entry<QName, Class<?>> step : getSteps().entrySet() ) {
+            if ( conf.implementations.containsKey(step.getKey()) ) {
+                LOG.debug("Ignoring step type annotation for configured step: " + step.getKey());
+            }
+            conf.implementations.put(step.getKey(), step.getValue());
+        }
+    }
+
+    /**
+     * Return the step implementations, read from the annotation index the first time.
+     */
+    private static synchronized Map<QName, Class<?>> getSteps()
+            throws TechnicalException
+    {
+        if ( STEPS == null ) {
+            STEPS = loadSteps();
+        }
+        return STEPS;
+    }
+
+    private static Map<QName, Class<?>> loadSteps()
+            throws TechnicalException
+    {
+        Map<QName, Class<?>> steps = new HashMap<>();
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        Class annot = XMLCalabash.class;
+        String idx = "META-INF/annotations/" + annot.getCanonicalName();
+        InputStream in = cl.getResourceAsStream(idx);
+        BufferedReader r = new BufferedReader(new InputStreamReader(in));
+        try {
+            String line = r.readLine();
+            while ( line != null ) {
+                Class<?> klass;
+                try {
+                    klass = cl.loadClass(line);
+                }
+                catch ( ClassNotFoundException ex ) {
+                    throw new TechnicalException("Error loading the step class: " + line, ex);
+                }
+                XMLCalabash annotation = klass.getAnnotation(XMLCalabash.class);
+                for ( String clarkName: annotation.type().split("\\s+") ) {
+                    try {
+                        QName name = QName.fromClarkName(clarkName);
+                        LOG.debug("Found step type annotation: " + clarkName);
+                        steps.put(name, klass);
+                    }
+                    catch ( IllegalArgumentException ex ) {
+                        throw new TechnicalException("Failed to parse step annotation type: " + clarkName, ex);
+                    }
+                }
+                line = r.readLine();
+            }
+        }
+        catch ( IOException ex ) {
+            throw new TechnicalException("Error reading the annotation index file", ex);
+        }
+        finally {
+            try {
+                r.close();
+            }
+            catch ( IOException ex ) {
+                LOG.error("Error closing the annotation index file", ex);
+            }
+        }
+        return steps;
+    }
+
+    /** The specific logger. */
+    private static final Log LOG = new Log(PipelinePool.class);
+    /** The step implementations, from the annotation index. */
+    private static Map<QName, Class<?>> STEPS = null;
+    /** The request contexts bound to the runtimes being evaluated, by Saxon configuration. */
+    private static final Map<Configuration, RequestContext> BOUND = new ConcurrentHashMap<>();
+
+    static {
+        SaxonHelper.addContextLocator(new RuntimeLocator());
+    }
+
+    /** The Calabash processor. */
+    private final CalabashXProc myCalabash;
+    /** The configuration object. */
+    private final ServerConfig myConfig;
+    /** The max number of idle pipelines (0 to pool nothing). */
+    private final int mySize;
+    /** The href of the pipeline to compile, if {@code myNode} is null. */
+    private final String myHref;
+    /** The pipeline document to compile, if any. */
+    private final XdmNode myNode;
+    /** The idle pipelines, the most recently used first. */
+    private final Deque<Compiled> myIdle = new ArrayDeque<>();
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -18,7 +18,9 @@ import org.expath.servlex.components.Component;
 import org.expath.servlex.connectors.Connector;
 import net.servlex.saxabash.CalabashPipeline;
 import net.servlex.saxabash.CalabashXProc;
+import net.servlex.saxabash.PipelinePool;
 import org.expath.servlex.runtime.ComponentError;
+import org.expath.servlex.runtime.ExecutionContext;
 import org.expath.servlex.tools.Auditor;
 import net.servlex.saxabash.CalabashHelper;
 import org.expath.servlex.tools.Log;
@@ -55,51 +57,54 @@ public class CalabashXProcPipeline
     {
         myCalabash = calabash;
         myPipe = pipe;
+        myPool = calabash.makePool(pipe);
     }
 
     @Override
-    public void cleanup(Auditor auditor)
-            throws ServlexException
+    public void logApplication(Log log)
     {
-        auditor.cleanup("calabash xproc pipeline");
-        if ( myPipeline != null ) {
-            myPipeline.cleanup(auditor);
-        }
+        log.debug("      XProc Pipeline:");
+        log.debug("         pipe: " + myPipe);
     }
 
     @Override
-    public void logApplication(Log log)
+    public String toString()
     {
-        log.debug("      XProc Pipeline:");
-        log.debug("         pipe: " + myPipe);
+        return "XProc pipeline " + myPipe;
     }
 
     /**
-     * ...
+     * Compile the pipeline ahead of time, into the pool of compiled pipelines.
      * 
-     * TODO: XPipeline is not cacheable (this is the runtime object).  It is
-     * not clear to me what I can use to cache the compiled version (nor whether
-     * it is possible at all).  See the email I've sent to XProc-Dev at
-     * http://xproc.markmail.org/thread/dhftopkqt6peofcm.
-     *
-     * The answer is that XPipeline is both the compiled form and the dynamic
-     * evaluation representation.  It can be reset thought, but not used
-     * concurrently.  So either we compile it every time, or we create some
-     * pools of pipeline.  Honestly, I don't think it is worth spending resource
-     * on that now.  Most likely the next version of Calabash (well, the v2)
-     * will have a much cleaner distinction between compile- and evaluation-time
-     * objects (see the above-mentioned thread on XProc-Dev).
+     * XPipeline is both the compiled form and the dynamic evaluation
+     * representation.  It can be reset though, but not used concurrently.  So
+     * compiled pipelines are pooled, and this puts a first one in the pool.
      */
     @Override
-    public Connector run(Connector connector, ServerConfig config, Auditor auditor)
+    public void compile()
+            throws ServlexException
+    {
+        try {
+            myPool.warmup();
+        }
+        catch ( ComponentError | XProcException ex ) {
+            String msg = "Error compiling the pipeline: " + myPipe;
+            LOG.error(msg, ex);
+            throw new ServlexException(500, msg, ex);
+        }
+    }
+
+    @Override
+    public Connector run(Connector connector, ServerConfig config, Auditor auditor, ExecutionContext ctxt)
             throws ServlexException
                  , ComponentError
     {
         auditor.run("pipeline");
         try {
-            myPipeline = myCalabash.prepare(auditor);
-            myPipeline.compile(myPipe);
-            return myPipeline.evaluate(connector);
+            CalabashPipeline pipeline = myCalabash.prepare(myPool, auditor, ctxt.getRequestContext());
+            ctxt.register(pipeline);
+            pipeline.compile();
+            return pipeline.evaluate(connector);
         }
         catch ( XProcException ex ) {
             SourceLocator loc = ex.getLocator();
@@ -118,7 +123,7 @@ public class CalabashXProcPipeline
 
     private final CalabashXProc myCalabash;
     private final String myPipe;
-    private CalabashPipeline myPipeline;
+    private final PipelinePool myPool;
 }
 
 
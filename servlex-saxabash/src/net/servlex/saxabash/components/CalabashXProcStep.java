@@ -9,6 +9,7 @@
 
 package net.servlex.saxabash.components;
 
+import com.xmlcalabash.core.XProcException;
 import java.io.StringReader;
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
@@ -23,7 +24,9 @@ import org.expath.servlex.connectors.Connector;
 import org.expath.servlex.processors.XProcProcessor;
 import net.servlex.saxabash.CalabashPipeline;
 import net.servlex.saxabash.CalabashXProc;
+import net.servlex.saxabash.PipelinePool;
 import org.expath.servlex.runtime.ComponentError;
+import org.expath.servlex.runtime.ExecutionContext;
 import org.expath.servlex.tools.Auditor;
 import net.servlex.saxon.SaxonHelper;
 import org.expath.servlex.tools.Log;
@@ -44,16 +47,6 @@ public class CalabashXProcStep
         myLocal = localname;
     }
 
-    @Override
-    public void cleanup(Auditor auditor)
-            throws ServlexException
-    {
-        auditor.cleanup("calabash xproc step");
-        if ( myPipeline != null ) {
-            myPipeline.cleanup(auditor);
-        }
-    }
-
     @Override
     public void logApplication(Log log)
     {
@@ -64,16 +57,39 @@ public class CalabashXProcStep
     }
 
     @Override
-    public Connector run(Connector connector, ServerConfig config, Auditor auditor)
+    public String toString()
+    {
+        return "XProc step {" + myNS + "}" + myLocal + " in " + myImportUri;
+    }
+
+    /**
+     * Compile the generated pipeline ahead of time, into the pool.
+     */
+    @Override
+    public void compile()
+            throws ServlexException
+    {
+        try {
+            getPool().warmup();
+        }
+        catch ( SaxonApiException | ComponentError | XProcException ex ) {
+            String msg = "Error compiling the step: " + this;
+            LOG.error(msg, ex);
+            throw new ServlexException(500, msg, ex);
+        }
+    }
+
+    @Override
+    public Connector run(Connector connector, ServerConfig config, Auditor auditor, ExecutionContext ctxt)
         throws ServlexException
              , ComponentError
     {
         auditor.run("step");
         try {
-            myPipeline = myCalabash.prepare(auditor);
-            XdmNode pipe = makeCallPipe();
-            myPipeline.compile(pipe);
-            return myPipeline.evaluate(connector);
+            CalabashPipeline pipeline = myCalabash.prepare(getPool(), auditor, ctxt.getRequestContext());
+            ctxt.register(pipeline);
+            pipeline.compile();
+            return pipeline.evaluate(connector);
         }
         catch ( SaxonApiException ex ) {
             LOG.error("User error in pipeline", ex);
@@ -81,6 +97,18 @@ public class CalabashXProcStep
         }
     }
 
+    /**
+     * Return the pool of compiled pipelines, generating the call pipe the first time.
+     */
+    private synchronized PipelinePool getPool()
+            throws SaxonApiException
+    {
+        if ( myPool == null ) {
+            myPool = myCalabash.makePool(makeCallPipe());
+        }
+        return myPool;
+    }
+
     /**
      * TODO: Use a tree builder instead of string concatenation!
      */
@@ -119,7 +147,8 @@ public class CalabashXProcStep
     private String myImportUri;
     private String myNS;
     private String myLocal;
-    private CalabashPipeline myPipeline;
+    /** The pool of compiled pipelines, for the generated call pipe. */
+    private PipelinePool myPool;
 }
 
 
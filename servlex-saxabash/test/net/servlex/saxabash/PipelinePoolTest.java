@@ -0,0 +1,185 @@
+/****************************************************************************/
+/*  File:       PipelinePoolTest.java                                       */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package net.servlex.saxabash;
+
+import com.xmlcalabash.io.ReadablePipe;
+import java.io.File;
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import javax.servlet.http.HttpServletRequest;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.s9api.XdmNode;
+import org.expath.pkg.repo.Repository;
+import org.expath.servlex.ServerConfig;
+import org.expath.servlex.TechnicalException;
+import org.expath.servlex.processors.Item;
+import org.expath.servlex.runtime.RequestContext;
+import org.expath.servlex.tools.SequenceProperties;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.expath.servlex.ServlexConstants.PRIVATE_PROPS_PREFIX;
+
+/**
+ * Test the class {@link PipelinePool}.
+ *
+ * @author Florent Georges
+ */
+public class PipelinePoolTest
+{
+    @Test
+    public void requestFunctions()
+            throws Exception
+    {
+        // the request functions, from an XPath expression and from p:xquery
+        Repository repo = makeRepo();
+        Saxabash procs = new Saxabash(repo, null);
+        TestConfig config = new TestConfig(repo, procs);
+        CalabashXProc xproc = new CalabashXProc(procs.getSaxon(), procs.getRepository(), config, procs);
+        StreamSource src = new StreamSource(new StringReader(PIPELINE));
+        PipelinePool pool = xproc.makePool(procs.getSaxon().newDocumentBuilder().build(src));
+        SequenceProperties props = new SequenceProperties(PRIVATE_PROPS_PREFIX, procs);
+        Item answer = procs.buildString("42");
+        props.set("answer", Collections.singletonList(answer));
+        RequestContext ctxt = new RequestContext(request(props));
+        PipelinePool.Compiled compiled = pool.compile(ctxt);
+        compiled.bind(ctxt);
+        try {
+            compiled.getPipeline().run();
+        }
+        finally {
+            compiled.unbind();
+        }
+        ReadablePipe result = compiled.getPipeline().readFrom("result");
+        XdmNode doc = result.read();
+        Assert.assertEquals("42", doc.getStringValue());
+    }
+
+    /**
+     * An empty repository, in a temporary directory.
+     */
+    private static Repository makeRepo()
+            throws Exception
+    {
+        File dir = Files.createTempDirectory("servlex-test-repo").toFile();
+        File web = new File(dir, ".expath-web");
+        Assert.assertTrue(web.mkdir());
+        String webapps = "<webapps xmlns='http://expath.org/ns/webapp'/>";
+        Files.write(new File(web, "webapps.xml").toPath(), webapps.getBytes(StandardCharsets.UTF_8));
+        return Repository.makeDefaultRepo(dir.getPath());
+    }
+
+    /**
+     * A fake HTTP request, with {@code props} as its request map.
+     */
+    private static HttpServletRequest request(SequenceProperties props)
+    {
+        ClassLoader loader = HttpServletRequest.class.getClassLoader();
+        Class<?>[] types = { HttpServletRequest.class };
+        return (HttpServletRequest) Proxy.newProxyInstance(loader, types, new Request(props));
+    }
+
+    private static final String PIPELINE
+            = "<p:declare-step xmlns:p='http://www.w3.org/ns/xproc'\n"
+            + "                xmlns:c='http://www.w3.org/ns/xproc-step'\n"
+            + "                xmlns:web='http://expath.org/ns/webapp'\n"
+            + "                version='1.0'>\n"
+            + "   <p:output port='result'/>\n"
+            + "   <p:choose>\n"
+            + "      <p:xpath-context>\n"
+            + "         <p:inline><doc/></p:inline>\n"
+            + "      </p:xpath-context>\n"
+            + "      <p:when test=\"web:get-request-field('answer') eq '42'\">\n"
+            + "         <p:xquery>\n"
+            + "            <p:input port='source'>\n"
+            + "               <p:inline><doc/></p:inline>\n"
+            + "            </p:input>\n"
+            + "            <p:input port='query'>\n"
+            + "               <p:inline>\n"
+            + "                  <c:query>\n"
+            + "                     declare namespace web = 'http://expath.org/ns/webapp';\n"
+            + "                     &lt;answer>{ web:get-request-field('answer') }&lt;/answer>\n"
+            + "                  </c:query>\n"
+            + "               </p:inline>\n"
+            + "            </p:input>\n"
+            + "            <p:input port='parameters'>\n"
+            + "               <p:empty/>\n"
+            + "            </p:input>\n"
+            + "         </p:xquery>\n"
+            + "      </p:when>\n"
+            + "      <p:otherwise>\n"
+            + "         <p:identity>\n"
+            + "            <p:input port='source'>\n"
+            + "               <p:inline><not-found/></p:inline>\n"
+            + "            </p:input>\n"
+            + "         </p:identity>\n"
+            + "      </p:otherwise>\n"
+            + "   </p:choose>\n"
+            + "</p:declare-step>\n";
+
+    /**
+     * A fake HTTP request, returning the request map for any attribute.
+     */
+    private static class Request
+            implements InvocationHandler
+    {
+        public Request(SequenceProperties props)
+        {
+            myProps = props;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            if ( "getAttribute".equals(method.getName()) ) {
+                return myProps;
+            }
+            return null;
+        }
+
+        private final SequenceProperties myProps;
+    }
+
+    private static class TestConfig
+            extends ServerConfig
+    {
+        public TestConfig(Repository repo, Saxabash procs)
+                throws TechnicalException
+        {
+            super(repo, procs);
+        }
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -63,6 +63,7 @@ public class Saxon
             mySaxon = SaxonHelper.makeSaxon(myRepo, this, config, file);
             myXslt = new SaxonXSLT(this);
             myXQuery = new SaxonXQuery(mySaxon, repo);
+            myBuilders = new SaxonTreeBuilder.Pool(mySaxon);
         }
         catch ( PackageException ex ) {
             throw new TechnicalException("Error initializing the saxon processors", ex);
@@ -118,7 +119,7 @@ public class Saxon
     public TreeBuilder makeTreeBuilder(String uri, String prefix)
             throws TechnicalException
     {
-        return new SaxonTreeBuilder(mySaxon, uri, prefix);
+        return myBuilders.acquire(uri, prefix);
     }
 
     @Override
@@ -149,6 +150,20 @@ public class Saxon
         }
     }
 
+    @Override
+    public Document wrapDocument(org.w3c.dom.Document dom)
+            throws TechnicalException
+    {
+        try {
+            DocumentBuilder builder = mySaxon.newDocumentBuilder();
+            XdmNode doc = builder.wrap(dom);
+            return new SaxonDocument(doc);
+        }
+        catch ( IllegalArgumentException ex ) {
+            throw new TechnicalException("Error wrapping a DOM document", ex);
+        }
+    }
+
     @Override
     public Item buildString(String value)
             throws TechnicalException
@@ -188,6 +203,7 @@ public class Saxon
     private final SaxonRepository myRepo;
     private final SaxonXSLT myXslt;
     private final SaxonXQuery myXQuery;
+    private final SaxonTreeBuilder.Pool myBuilders;
     private final String myXsltVersion;
     private final Pattern XSLT_VERSION_RE = Pattern.compile("^[0-9]\\.[0-9]$");
 }
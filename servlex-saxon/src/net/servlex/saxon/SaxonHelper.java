@@ -12,10 +12,16 @@ package net.servlex.saxon;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.regex.Pattern;
 import javax.xml.namespace.QName;
 import javax.xml.transform.Source;
+import javax.xml.transform.URIResolver;
 import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.Configuration;
+import net.sf.saxon.Controller;
+import net.sf.saxon.expr.XPathContext;
 import net.sf.saxon.om.NodeInfo;
 import net.sf.saxon.om.SequenceIterator;
 import net.sf.saxon.s9api.Axis;
@@ -49,6 +55,8 @@ import net.servlex.saxon.model.SaxonEmptySequence;
 import net.servlex.saxon.model.SaxonItem;
 import net.servlex.saxon.model.SaxonSequence;
 import org.expath.servlex.runtime.ComponentError;
+import org.expath.servlex.runtime.ExecutionContext;
+import org.expath.servlex.runtime.RequestContext;
 
 /**
  * Helper methods for Saxon.
@@ -64,6 +72,19 @@ public class SaxonHelper
 
     public static Processor makeSaxon(SaxonRepository repo, Processors procs, ServerConfig config, String config_file)
             throws PackageException
+    {
+        return makeSaxon(repo, procs, config, config_file, null);
+    }
+
+    /**
+     * Make a new Saxon processor, whose nodes can be mixed with those of {@code compatible}.
+     * 
+     * The new processor shares the name pool and the document number
+     * allocator of {@code compatible} (if not null), so the nodes built by
+     * either one can be used by the other.
+     */
+    public static Processor makeSaxon(SaxonRepository repo, Processors procs, ServerConfig config, String config_file, Processor compatible)
+            throws PackageException
     {
         Processor saxon;
         if ( config_file == null ) {
@@ -79,6 +100,12 @@ public class SaxonHelper
                 throw new PackageException("Error instantiating Saxon with config file: " + config_file, ex);
             }
         }
+        if ( compatible != null ) {
+            Configuration from = compatible.getUnderlyingConfiguration();
+            Configuration to   = saxon.getUnderlyingConfiguration();
+            to.setNamePool(from.getNamePool());
+            to.setDocumentNumberAllocator(from.getDocumentNumberAllocator());
+        }
         ConfigHelper helper = new ConfigHelper(repo);
         helper.config(saxon.getUnderlyingConfiguration());
         WebappFunctions.setup(procs, saxon, config);
@@ -286,6 +313,69 @@ public class SaxonHelper
         return new ComponentError(cause, name, msg, sequence);
     }
 
+    /**
+     * Return the resolver to install on the dynamic context of an evaluation for {@code ctxt}.
+     * 
+     * The returned resolver carries the context of the request served by
+     * {@code ctxt} (see {@link #getRequestContext(XPathContext)}), and
+     * delegates to {@code resolver}.  Return {@code resolver} itself if
+     * {@code ctxt} does not serve any request.
+     */
+    public static URIResolver bindRequest(ExecutionContext ctxt, URIResolver resolver)
+    {
+        RequestContext request = ctxt.getRequestContext();
+        return request == null ? resolver : request.makeResolver(resolver);
+    }
+
+    /**
+     * Return the context of the request an extension function is evaluated for.
+     * 
+     * The context is carried by the URI resolver of the controller, as
+     * installed by the components (see {@link #bindRequest(ExecutionContext,
+     * URIResolver)}).  If it is not, the registered locators are asked in turn
+     * (for the evaluations not created by a component, e.g. by XProc steps).
+     */
+    public static RequestContext getRequestContext(XPathContext ctxt)
+            throws XPathException
+    {
+        Controller controller = ctxt.getController();
+        if ( controller != null ) {
+            RequestContext request = RequestContext.fromResolver(controller.getURIResolver());
+            if ( request != null ) {
+                return request;
+            }
+        }
+        for ( ContextLocator locator : LOCATORS ) {
+            RequestContext request = locator.locate(ctxt);
+            if ( request != null ) {
+                return request;
+            }
+        }
+        throw new XPathException("No request is being served by the current evaluation");
+    }
+
+    /**
+     * Register a locator, for {@link #getRequestContext(XPathContext)}.
+     */
+    public static void addContextLocator(ContextLocator locator)
+    {
+        LOCATORS.add(locator);
+    }
+
+    /**
+     * Find the context of the request served by an evaluation, not created by a component.
+     */
+    public static interface ContextLocator
+    {
+        /**
+         * Return the context of the request {@code ctxt} is evaluated for, or null if not known.
+         */
+        public RequestContext locate(XPathContext ctxt);
+    }
+
+    /** The registered context locators. */
+    private static final Set<ContextLocator> LOCATORS = new CopyOnWriteArraySet<>();
+
     /**
      * This class is a trick to make the protected wrap() available.
      */
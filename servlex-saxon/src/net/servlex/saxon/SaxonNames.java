@@ -0,0 +1,121 @@
+/****************************************************************************/
+/*  File:       SaxonNames.java                                             */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package net.servlex.saxon;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.sf.saxon.om.FingerprintedQName;
+import net.sf.saxon.om.NamePool;
+import net.sf.saxon.om.NodeName;
+import net.sf.saxon.om.NoNamespaceName;
+import net.sf.saxon.s9api.Processor;
+
+/**
+ * The node names used by {@link SaxonTreeBuilder}, registered once in the name pool.
+ *
+ * A new name object has to look up its name code in the name pool, which
+ * is shared by all the threads, each time it is used to build a node.  The
+ * names are rather created once per processor, with their name code, and
+ * reused.  Each name is registered on first use.
+ *
+ * @author Florent Georges
+ */
+class SaxonNames
+{
+    public SaxonNames(Processor proc)
+    {
+        myPool = proc.getUnderlyingConfiguration().getNamePool();
+    }
+
+    /**
+     * Return the element names in the namespace {@code uri}, bound to {@code prefix}.
+     */
+    public Namespace namespace(String uri, String prefix)
+    {
+        String key = prefix + ":" + uri;
+        Namespace ns = myNamespaces.get(key);
+        if ( ns == null ) {
+            ns = new Namespace(uri, prefix);
+            Namespace prev = myNamespaces.putIfAbsent(key, ns);
+            if ( prev != null ) {
+                ns = prev;
+            }
+        }
+        return ns;
+    }
+
+    /**
+     * Return the name of the attribute {@code local}, in no namespace.
+     */
+    public NodeName attribute(String local)
+    {
+        NodeName name = myAttributes.get(local);
+        if ( name == null ) {
+            int code = myPool.allocate("", "", local);
+            name = new NoNamespaceName(local, code);
+            myAttributes.putIfAbsent(local, name);
+        }
+        return name;
+    }
+
+    /**
+     * The element names in one namespace, with one prefix.
+     */
+    public class Namespace
+    {
+        private Namespace(String uri, String prefix)
+        {
+            myUri = uri;
+            myPrefix = prefix;
+        }
+
+        public NodeName element(String local)
+        {
+            NodeName name = myElements.get(local);
+            if ( name == null ) {
+                name = new FingerprintedQName(myPrefix, myUri, local, myPool);
+                myElements.putIfAbsent(local, name);
+            }
+            return name;
+        }
+
+        private final String myUri;
+        private final String myPrefix;
+        private final ConcurrentMap<String, NodeName> myElements = new ConcurrentHashMap<>();
+    }
+
+    /** The Saxon name pool. */
+    private final NamePool myPool;
+    /** The namespaces, by prefix and URI. */
+    private final ConcurrentMap<String, Namespace> myNamespaces = new ConcurrentHashMap<>();
+    /** The attribute names, all in no namespace. */
+    private final ConcurrentMap<String, NodeName> myAttributes = new ConcurrentHashMap<>();
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
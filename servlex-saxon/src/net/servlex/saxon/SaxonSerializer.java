@@ -13,6 +13,9 @@ import java.io.OutputStream;
 import java.util.HashSet;
 import java.util.Set;
 import javax.xml.namespace.QName;
+import net.sf.saxon.event.Receiver;
+import net.sf.saxon.event.ReceivingContentHandler;
+import net.sf.saxon.om.FunctionItem;
 import net.sf.saxon.s9api.Processor;
 import net.sf.saxon.s9api.SaxonApiException;
 import net.sf.saxon.s9api.Serializer.Property;
@@ -23,6 +26,7 @@ import org.expath.servlex.processors.Document;
 import org.expath.servlex.processors.Sequence;
 import org.expath.servlex.processors.Serializer;
 import org.expath.servlex.tools.Log;
+import org.xml.sax.ContentHandler;
 
 /**
  * Implementation of serializer for Saxon.
@@ -184,7 +188,41 @@ class SaxonSerializer
     private void serialize(XdmValue sequence, OutputStream out)
             throws TechnicalException
     {
-        String method = methodFromMime(myMediaType);
+        net.sf.saxon.s9api.Serializer serial = makeSaxonSerializer(out, sequence);
+        try {
+            mySaxon.writeXdmValue(sequence, serial);
+        }
+        catch ( SaxonApiException ex ) {
+            throw new TechnicalException("Error serializing sequence to the output stream", ex);
+        }
+    }
+
+    @Override
+    public ContentHandler makeContentHandler(OutputStream out)
+            throws TechnicalException
+    {
+        net.sf.saxon.s9api.Serializer serial = makeSaxonSerializer(out, null);
+        try {
+            Receiver receiver = serial.getReceiver(mySaxon.getUnderlyingConfiguration());
+            ReceivingContentHandler handler = new ReceivingContentHandler();
+            handler.setPipelineConfiguration(receiver.getPipelineConfiguration());
+            handler.setReceiver(receiver);
+            return handler;
+        }
+        catch ( SaxonApiException ex ) {
+            throw new TechnicalException("Error creating a serializer on the output stream", ex);
+        }
+    }
+
+    /**
+     * Create a Saxon serializer on {@code out}, configured with the output properties.
+     * 
+     * The {@code value} to serialize is null if not known in advance (when
+     * serializing SAX events).
+     */
+    private net.sf.saxon.s9api.Serializer makeSaxonSerializer(OutputStream out, XdmValue value)
+    {
+        String method = methodFromMime(myMediaType, value);
         // TODO: @method could also contain "base64" or "hex".  Take it into account!
         // TODO: Can I use Saxon extension methods here?  Like "saxon:base64Binary"
         // or "saxon:hexBinary"...
@@ -226,13 +264,7 @@ class SaxonSerializer
         setOutputProperty(serial, Property.SAXON_STYLESHEET_VERSION,       mySaxonStylesheetVersion);
         setOutputProperty(serial, Property.SAXON_SUPPRESS_INDENTATION,     mySaxonSuppressIndentation);
         setOutputProperty(serial, Property.SAXON_WRAP,                     mySaxonWrap);
-
-        try {
-            mySaxon.writeXdmValue(sequence, serial);
-        }
-        catch ( SaxonApiException ex ) {
-            throw new TechnicalException("Error serializing sequence to the output stream", ex);
-        }
+        return serial;
     }
 
     /**
@@ -251,9 +283,13 @@ class SaxonSerializer
     /**
      * Decode the content type from a MIME type string (only single parts).
      *
+     * A JSON media type selects the method "json" only if the value is a map
+     * or an array.  Any other value keeps the method it always had ("binary"
+     * for application/json, so a base64 item is decoded, "text" for text/json).
+     *
      * TODO: Handle XHTML (and new binary methods?)...
      */
-    private String methodFromMime(String mime)
+    private String methodFromMime(String mime, XdmValue value)
     {
         if ( myMethod != null ) {
             // if an explicit method, return it
@@ -271,6 +307,10 @@ class SaxonSerializer
         else if ( mime.endsWith("+xml") || XML_TYPES.contains(mime) ) {
             return "xml";
         }
+        else if ( (mime.endsWith("+json") || JSON_TYPES.contains(mime)) && isMapOrArray(value) ) {
+            // maps and arrays are serialized as is, no base64 round-trip
+            return "json";
+        }
         else if ( mime.startsWith("text/") || TEXT_TYPES.contains(mime) ) {
             return "text";
         }
@@ -279,6 +319,19 @@ class SaxonSerializer
         }
     }
 
+    /**
+     * Return true if {@code value} is exactly one map or one array.
+     * 
+     * Maps and arrays are the only function items that can be serialized.
+     */
+    private static boolean isMapOrArray(XdmValue value)
+    {
+        if ( value == null || value.size() != 1 ) {
+            return false;
+        }
+        return value.itemAt(0).getUnderlyingValue() instanceof FunctionItem;
+    }
+
     /** The logger. */
     private static final Log LOG = new Log(SaxonSerializer.class);
 
@@ -355,6 +408,15 @@ class SaxonSerializer
         types.add("application/xml-external-parsed-entity");
         XML_TYPES = types;
     }
+
+    /** Media types that must be treated as JSON types (in addition to *+json). */
+    private static Set<String> JSON_TYPES;
+    static {
+        Set<String> types = new HashSet<String>();
+        types.add("application/json");
+        types.add("text/json");
+        JSON_TYPES = types;
+    }
 }
 
 
@@ -9,6 +9,10 @@
 
 package net.servlex.saxon;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import net.servlex.saxon.model.SaxonDocument;
 import net.sf.saxon.Configuration;
 import net.sf.saxon.event.Builder;
@@ -32,14 +36,25 @@ import org.expath.servlex.processors.TreeBuilder;
 class SaxonTreeBuilder
         implements TreeBuilder
 {
-    public SaxonTreeBuilder(Processor proc, String ns_uri, String ns_prefix)
-            throws TechnicalException
+    /**
+     * Create a builder, use {@link Pool#acquire(String, String)} instead.
+     */
+    private SaxonTreeBuilder(Processor proc, SaxonNames names, SaxonNames.Namespace ns, BlockingQueue<SaxonTreeBuilder> idle)
     {
         Configuration conf = proc.getUnderlyingConfiguration();
-        myNsUri = ns_uri;
-        myNsPrefix = ns_prefix;
+        myNames = names;
+        myNs = ns;
+        myIdle = idle;
         myDocBuilder = proc.newDocumentBuilder();
         myBuilder = myDocBuilder.getTreeModel().makeBuilder(conf.makePipelineConfiguration());
+    }
+
+    /**
+     * Start a new document, on a new or a reset builder.
+     */
+    private void start()
+            throws TechnicalException
+    {
         myBuilder.open();
         try {
             myBuilder.startDocument(0);
@@ -53,7 +68,7 @@ class SaxonTreeBuilder
     public void startElem(String local)
             throws TechnicalException
     {
-        NodeName name = new FingerprintedQName(myNsPrefix, myNsUri, local);
+        NodeName name = myNs.element(local);
         try {
             myBuilder.startElement(name, Untyped.getInstance(), 0, 0);
 //            myBuilder.startElement(name, Untyped.getInstance(), ourLocation, 0);
@@ -68,7 +83,7 @@ class SaxonTreeBuilder
             throws TechnicalException
     {
         if ( value != null ) {
-            NodeName name = new NoNamespaceName(local);
+            NodeName name = myNames.attribute(local);
             try {
                 myBuilder.attribute(name, BuiltInAtomicType.UNTYPED_ATOMIC, value, 0, 0);
 //                myBuilder.attribute(name, BuiltInAtomicType.UNTYPED_ATOMIC, value, ourLocation, 0);
@@ -139,13 +154,70 @@ class SaxonTreeBuilder
         }
         NodeInfo node = myBuilder.getCurrentRoot();
         XdmNode doc = myDocBuilder.wrap(node);
+        // the document is done, release it and make the builder reusable
+        myBuilder.reset();
+        myIdle.offer(this);
         return new SaxonDocument(doc);
     }
 
-    private String myNsUri;
-    private String myNsPrefix;
-    private DocumentBuilder myDocBuilder;
-    private Builder myBuilder;
+    /**
+     * The builders of one processor, reused once their document has been built.
+     *
+     * The builders are pooled per namespace, as they use the names of that
+     * namespace (see {@link SaxonNames}).  Building a document ends with
+     * {@link SaxonTreeBuilder#getRoot()}, which gives the builder back to
+     * the pool.  A builder not used up to the end is simply not reused.
+     */
+    static class Pool
+    {
+        public Pool(Processor proc)
+        {
+            mySaxon = proc;
+            myNames = new SaxonNames(proc);
+        }
+
+        /**
+         * Return a builder ready to build a new document, with elements in {@code uri}.
+         */
+        public SaxonTreeBuilder acquire(String uri, String prefix)
+                throws TechnicalException
+        {
+            SaxonNames.Namespace ns = myNames.namespace(uri, prefix);
+            BlockingQueue<SaxonTreeBuilder> idle = myIdle.get(ns);
+            if ( idle == null ) {
+                idle = new ArrayBlockingQueue<>(POOL_SIZE);
+                BlockingQueue<SaxonTreeBuilder> prev = myIdle.putIfAbsent(ns, idle);
+                if ( prev != null ) {
+                    idle = prev;
+                }
+            }
+            SaxonTreeBuilder builder = idle.poll();
+            if ( builder == null ) {
+                builder = new SaxonTreeBuilder(mySaxon, myNames, ns, idle);
+            }
+            builder.start();
+            return builder;
+        }
+
+        /** The max number of idle builders kept, per namespace. */
+        private static final int POOL_SIZE = 32;
+
+        /** The Saxon processor. */
+        private final Processor mySaxon;
+        /** The names, shared by all the builders. */
+        private final SaxonNames myNames;
+        /** The idle builders, per namespace. */
+        private final ConcurrentMap<SaxonNames.Namespace, BlockingQueue<SaxonTreeBuilder>> myIdle = new ConcurrentHashMap<>();
+    }
+
+    /** The names, registered once per processor. */
+    private final SaxonNames myNames;
+    /** The namespace of the elements. */
+    private final SaxonNames.Namespace myNs;
+    /** The pool to give the builder back to, once its document is built. */
+    private final BlockingQueue<SaxonTreeBuilder> myIdle;
+    private final DocumentBuilder myDocBuilder;
+    private final Builder myBuilder;
 //    private static Location ourLocation = new MyLocation();
 
 // TODO: To use with Saxon 9.7, once Calabash has been adapted...
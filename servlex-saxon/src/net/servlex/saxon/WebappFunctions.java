@@ -32,6 +32,7 @@ import net.servlex.saxon.functions.InstallEnabledFunction;
 import net.servlex.saxon.functions.InstallFromCxanFunction;
 import net.servlex.saxon.functions.InstallWebappFunction;
 import net.servlex.saxon.functions.InstalledWebappsFunction;
+import net.servlex.saxon.functions.ReloadStatusFunction;
 import net.servlex.saxon.functions.ReloadWebappsFunction;
 import net.servlex.saxon.functions.RemoveWebappFunction;
 import net.servlex.saxon.functions.RepositoryFunction;
@@ -94,6 +95,7 @@ public class WebappFunctions
         saxon.registerExtensionFunction(new InstalledWebappsFunction());
         saxon.registerExtensionFunction(new RemoveWebappFunction());
         saxon.registerExtensionFunction(new ReloadWebappsFunction());
+        saxon.registerExtensionFunction(new ReloadStatusFunction(procs, saxon));
         saxon.registerExtensionFunction(new RepositoryFunction(config));
         // the config access and management functions
         saxon.registerExtensionFunction(new ConfigParamFunction());
@@ -26,9 +26,11 @@ import org.expath.servlex.processors.Document;
 import org.expath.servlex.processors.Sequence;
 import net.servlex.saxon.model.SaxonSequence;
 import org.expath.servlex.runtime.ComponentError;
+import org.expath.servlex.runtime.ExecutionContext;
 import org.expath.servlex.tools.Auditor;
 import net.servlex.saxon.SaxonHelper;
 import org.expath.servlex.tools.Log;
+import org.expath.servlex.tools.StreamedBody;
 
 /**
  * A component that is an XQuery function.
@@ -45,13 +47,6 @@ public class SaxonXQueryFunction
         myLocal = localname;
     }
 
-    @Override
-    public void cleanup(Auditor auditor)
-            throws ServlexException
-    {
-        auditor.cleanup("saxon xquery function");
-    }
-
     @Override
     public void logApplication(Log log)
     {
@@ -61,7 +56,20 @@ public class SaxonXQueryFunction
     }
 
     @Override
-    public Connector run(Connector connector, ServerConfig config, Auditor auditor)
+    public String toString()
+    {
+        return "XQuery function {" + myNS + "}" + myLocal;
+    }
+
+    @Override
+    public void compile()
+            throws ServlexException
+    {
+        getCompiled();
+    }
+
+    @Override
+    public Connector run(Connector connector, ServerConfig config, Auditor auditor, ExecutionContext ctxt)
         throws ServlexException
              , ComponentError
     {
@@ -70,6 +78,8 @@ public class SaxonXQueryFunction
         XQueryEvaluator eval = exec.load();
         ComponentInstance instance = new MyInstance(eval);
         connector.connectToXQueryFunction(instance, config);
+        // after connecting the body, for the request context to be carried outermost
+        eval.setURIResolver(SaxonHelper.bindRequest(ctxt, eval.getURIResolver()));
         XdmValue result;
         try {
             result = eval.evaluate();
@@ -149,6 +159,17 @@ public class SaxonXQueryFunction
             myEval.setExternalVariable(NAME, seq.makeSaxonValue());
         }
 
+        public boolean needsBodies()
+        {
+            return true;
+        }
+
+        public boolean connectBody(StreamedBody body)
+        {
+            myEval.setURIResolver(body.makeResolver(myEval.getURIResolver()));
+            return true;
+        }
+
         public void error(ComponentError error, Document request)
         {
             throw new UnsupportedOperationException("Not supported yet.");
@@ -33,9 +33,11 @@ import org.expath.servlex.processors.Document;
 import org.expath.servlex.processors.Sequence;
 import net.servlex.saxon.model.SaxonSequence;
 import org.expath.servlex.runtime.ComponentError;
+import org.expath.servlex.runtime.ExecutionContext;
 import org.expath.servlex.tools.Auditor;
 import net.servlex.saxon.SaxonHelper;
 import org.expath.servlex.tools.Log;
+import org.expath.servlex.tools.StreamedBody;
 
 /**
  * A component that is an XQuery Main Module, AKA "a query".
@@ -55,29 +57,37 @@ public class SaxonXQueryModule
     }
 
     @Override
-    public void cleanup(Auditor auditor)
-            throws ServlexException
+    public void logApplication(Log log)
     {
-        auditor.cleanup("saxon xquery module");
+        log.debug("      XQuery Module");
+        log.debug("         uri: " + myUri);
     }
 
     @Override
-    public void logApplication(Log log)
+    public String toString()
     {
-        log.debug("      XQuery Module");
-        log.debug("         uri: " + myUri);
+        return "XQuery module " + myUri;
+    }
+
+    @Override
+    public void compile()
+            throws ServlexException
+    {
+        getCompiled();
     }
 
     @Override
-    public Connector run(Connector connector, ServerConfig config, Auditor auditor)
+    public Connector run(Connector connector, ServerConfig config, Auditor auditor, ExecutionContext ctxt)
             throws ServlexException
                  , ComponentError
     {
         auditor.run("query");
-        XQueryExecutable exec = getCompiled(config);
+        XQueryExecutable exec = getCompiled();
         XQueryEvaluator eval = exec.load();
         ComponentInstance instance = new MyInstance(eval);
         connector.connectToQuery(instance, config);
+        // after connecting the body, for the request context to be carried outermost
+        eval.setURIResolver(SaxonHelper.bindRequest(ctxt, eval.getURIResolver()));
         XdmValue result;
         try {
             result = eval.evaluate();
@@ -95,7 +105,7 @@ public class SaxonXQueryModule
      * 
      * The compiled object is cached (it is compiled only once).
      */
-    private synchronized XQueryExecutable getCompiled(ServerConfig config)
+    private synchronized XQueryExecutable getCompiled()
             throws ServlexException
     {
         if ( myCompiled == null ) {
@@ -200,6 +210,17 @@ public class SaxonXQueryModule
             myEval.setExternalVariable(NAME, seq.makeSaxonValue());
         }
 
+        public boolean needsBodies()
+        {
+            return true;
+        }
+
+        public boolean connectBody(StreamedBody body)
+        {
+            myEval.setURIResolver(body.makeResolver(myEval.getURIResolver()));
+            return true;
+        }
+
         public void error(ComponentError error, Document request)
         {
             throw new UnsupportedOperationException("Not supported yet.");
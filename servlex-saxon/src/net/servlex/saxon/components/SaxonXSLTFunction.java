@@ -36,9 +36,11 @@ import org.expath.servlex.processors.Sequence;
 import net.servlex.saxon.Saxon;
 import net.servlex.saxon.model.SaxonSequence;
 import org.expath.servlex.runtime.ComponentError;
+import org.expath.servlex.runtime.ExecutionContext;
 import org.expath.servlex.tools.Auditor;
 import net.servlex.saxon.SaxonHelper;
 import org.expath.servlex.tools.Log;
+import org.expath.servlex.tools.StreamedBody;
 
 /**
  * An XSLT function component implemented for Saxon.
@@ -56,13 +58,6 @@ public class SaxonXSLTFunction
         myLocal = localname;
     }
 
-    @Override
-    public void cleanup(Auditor auditor)
-            throws ServlexException
-    {
-        auditor.cleanup("saxon xslt function");
-    }
-
     @Override
     public void logApplication(Log log)
     {
@@ -73,7 +68,27 @@ public class SaxonXSLTFunction
     }
 
     @Override
-    public Connector run(Connector connector, ServerConfig config, Auditor auditor)
+    public String toString()
+    {
+        return "XSLT function {" + myNS + "}" + myLocal + " in " + myImportUri;
+    }
+
+    @Override
+    public void compile()
+            throws ServlexException
+    {
+        try {
+            getCompiled();
+        }
+        catch ( PackageException | SaxonApiException | TransformerException ex ) {
+            String msg = "Error compiling the stylesheet: " + myImportUri;
+            LOG.error(msg, ex);
+            throw new ServlexException(500, msg, ex);
+        }
+    }
+
+    @Override
+    public Connector run(Connector connector, ServerConfig config, Auditor auditor, ExecutionContext ctxt)
         throws ServlexException
              , ComponentError
     {
@@ -81,8 +96,10 @@ public class SaxonXSLTFunction
         try {
             XsltExecutable exec = getCompiled();
             Xslt30Transformer trans = exec.load30();
-            MyInstance instance = new MyInstance();
+            MyInstance instance = new MyInstance(trans);
             connector.connectToXSLTComponent(instance, config);
+            // after connecting the body, for the request context to be carried outermost
+            trans.setURIResolver(SaxonHelper.bindRequest(ctxt, trans.getURIResolver()));
             XdmDestination dest = new XdmDestination();
             QName name = new QName(myNS, myLocal);
             XdmValue[] args = { instance.getValue() };
@@ -151,6 +168,11 @@ public class SaxonXSLTFunction
     private static class MyInstance
             implements ComponentInstance
     {
+        public MyInstance(Xslt30Transformer trans)
+        {
+            myTrans = trans;
+        }
+
         @Override
         public void connect(Sequence input)
         {
@@ -161,6 +183,19 @@ public class SaxonXSLTFunction
             myValue = seq.makeSaxonValue();
         }
 
+        @Override
+        public boolean needsBodies()
+        {
+            return true;
+        }
+
+        @Override
+        public boolean connectBody(StreamedBody body)
+        {
+            myTrans.setURIResolver(body.makeResolver(myTrans.getURIResolver()));
+            return true;
+        }
+
         @Override
         public void error(ComponentError error, Document request)
         {
@@ -172,6 +207,7 @@ public class SaxonXSLTFunction
             return myValue;
         }
 
+        private final Xslt30Transformer myTrans;
         private XdmValue myValue;
     }
 }
@@ -35,9 +35,11 @@ import org.expath.servlex.processors.Sequence;
 import net.servlex.saxon.Saxon;
 import net.servlex.saxon.model.SaxonSequence;
 import org.expath.servlex.runtime.ComponentError;
+import org.expath.servlex.runtime.ExecutionContext;
 import org.expath.servlex.tools.Auditor;
 import net.servlex.saxon.SaxonHelper;
 import org.expath.servlex.tools.Log;
+import org.expath.servlex.tools.StreamedBody;
 
 /**
  * An XSLT named template component implemented for Saxon.
@@ -55,13 +57,6 @@ public class SaxonXSLTTemplate
         myLocal = localname;
     }
 
-    @Override
-    public void cleanup(Auditor auditor)
-            throws ServlexException
-    {
-        auditor.cleanup("saxon xslt template");
-    }
-
     @Override
     public void logApplication(Log log)
     {
@@ -72,7 +67,27 @@ public class SaxonXSLTTemplate
     }
 
     @Override
-    public Connector run(Connector connector, ServerConfig config, Auditor auditor)
+    public String toString()
+    {
+        return "XSLT template {" + myNS + "}" + myLocal + " in " + myImportUri;
+    }
+
+    @Override
+    public void compile()
+            throws ServlexException
+    {
+        try {
+            getCompiled();
+        }
+        catch ( PackageException | SaxonApiException | TransformerException ex ) {
+            String msg = "Error compiling the stylesheet: " + myImportUri;
+            LOG.error(msg, ex);
+            throw new ServlexException(500, msg, ex);
+        }
+    }
+
+    @Override
+    public Connector run(Connector connector, ServerConfig config, Auditor auditor, ExecutionContext ctxt)
         throws ServlexException
              , ComponentError
     {
@@ -80,8 +95,10 @@ public class SaxonXSLTTemplate
         try {
             XsltExecutable exec = getCompiled();
             Xslt30Transformer trans = exec.load30();
-            MyInstance instance = new MyInstance();
+            MyInstance instance = new MyInstance(trans);
             connector.connectToXSLTComponent(instance, config);
+            // after connecting the body, for the request context to be carried outermost
+            trans.setURIResolver(SaxonHelper.bindRequest(ctxt, trans.getURIResolver()));
             XdmDestination dest = new XdmDestination();
             XdmValue value = instance.getValue();
             Map<QName, XdmValue> params = new HashMap<>();
@@ -137,6 +154,11 @@ public class SaxonXSLTTemplate
     private static class MyInstance
             implements ComponentInstance
     {
+        public MyInstance(Xslt30Transformer trans)
+        {
+            myTrans = trans;
+        }
+
         @Override
         public void connect(Sequence input)
         {
@@ -147,6 +169,19 @@ public class SaxonXSLTTemplate
             myValue = seq.makeSaxonValue();
         }
 
+        @Override
+        public boolean needsBodies()
+        {
+            return true;
+        }
+
+        @Override
+        public boolean connectBody(StreamedBody body)
+        {
+            myTrans.setURIResolver(body.makeResolver(myTrans.getURIResolver()));
+            return true;
+        }
+
         @Override
         public void error(ComponentError error, Document request)
         {
@@ -158,6 +193,7 @@ public class SaxonXSLTTemplate
             return myValue;
         }
 
+        private final Xslt30Transformer myTrans;
         private XdmValue myValue;
     }
 }
@@ -9,12 +9,17 @@
 
 package net.servlex.saxon.components;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.xml.transform.TransformerException;
 import net.sf.saxon.s9api.Axis;
+import net.sf.saxon.s9api.BuildingContentHandler;
 import net.sf.saxon.s9api.Processor;
 import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SAXDestination;
 import net.sf.saxon.s9api.SaxonApiException;
 import net.sf.saxon.s9api.XdmAtomicValue;
 import net.sf.saxon.s9api.XdmDestination;
@@ -26,23 +31,29 @@ import net.sf.saxon.s9api.XdmValue;
 import net.sf.saxon.s9api.Xslt30Transformer;
 import net.sf.saxon.s9api.XsltExecutable;
 import org.expath.pkg.repo.PackageException;
+import org.expath.servlex.Result;
 import org.expath.servlex.ServerConfig;
 import org.expath.servlex.ServlexConstants;
 import org.expath.servlex.ServlexException;
+import org.expath.servlex.StreamingResult;
 import org.expath.servlex.TechnicalException;
 import org.expath.servlex.components.Component;
 import org.expath.servlex.components.ComponentInstance;
 import org.expath.servlex.connectors.Connector;
+import org.expath.servlex.connectors.DeferredConnector;
 import org.expath.servlex.connectors.XdmConnector;
 import org.expath.servlex.processors.Document;
+import org.expath.servlex.processors.Processors;
 import org.expath.servlex.processors.Sequence;
 import net.servlex.saxon.Saxon;
 import net.servlex.saxon.model.SaxonSequence;
 import org.expath.servlex.runtime.ComponentError;
+import org.expath.servlex.runtime.ExecutionContext;
 import org.expath.servlex.tools.Auditor;
 import net.servlex.saxon.SaxonHelper;
 import net.servlex.saxon.model.SaxonDocument;
 import org.expath.servlex.tools.Log;
+import org.expath.servlex.tools.StreamedBody;
 
 /**
  * An XSLT stylesheet component implemented for Saxon.
@@ -59,21 +70,34 @@ public class SaxonXSLTTransform
     }
 
     @Override
-    public void cleanup(Auditor auditor)
-            throws ServlexException
+    public void logApplication(Log log)
     {
-        auditor.cleanup("saxon xslt transform");
+        log.debug("      XSLT Transform");
+        log.debug("         style: " + myStyle);
     }
 
     @Override
-    public void logApplication(Log log)
+    public String toString()
     {
-        log.debug("      XSLT Transform");
-        log.debug("         style: " + myStyle);
+        return "XSLT transform " + myStyle;
+    }
+
+    @Override
+    public void compile()
+            throws ServlexException
+    {
+        try {
+            getCompiled();
+        }
+        catch ( PackageException | SaxonApiException | TransformerException ex ) {
+            String msg = "Error compiling the stylesheet: " + myStyle;
+            LOG.error(msg, ex);
+            throw new ServlexException(500, msg, ex);
+        }
     }
 
     @Override
-    public Connector run(Connector connector, ServerConfig config, Auditor auditor)
+    public Connector run(Connector connector, ServerConfig config, Auditor auditor, ExecutionContext ctxt)
         throws ServlexException
              , ComponentError
     {
@@ -81,10 +105,37 @@ public class SaxonXSLTTransform
         try {
             XsltExecutable exec = getCompiled();
             Xslt30Transformer trans = exec.load30();
-            MyInstance instance = new MyInstance(trans);
+            MyInstance instance = new MyInstance(trans, myInputDeclared);
             connector.connectToStylesheet(instance, config);
+            // after connecting the body, for the request context to be carried outermost
+            trans.setURIResolver(SaxonHelper.bindRequest(ctxt, trans.getURIResolver()));
+            XdmNode node = instance.getContextNode();
+            if ( config.isStreamingEnabled() ) {
+                // evaluated only when connected, straight to the response if possible
+                return new MyConnector(mySaxon, trans, node, auditor);
+            }
+            return evaluate(trans, node, auditor);
+        }
+        catch ( PackageException | TransformerException ex ) {
+            LOG.error("Internal error", ex);
+            throw new ServlexException(500, "Internal error", ex);
+        }
+        catch ( SaxonApiException ex ) {
+            LOG.error("User error in pipeline", ex);
+            throw SaxonHelper.makeError(ex);
+        }
+    }
+
+    /**
+     * Apply the stylesheet to a tree, and return a connector to the result.
+     */
+    private static Connector evaluate(Xslt30Transformer trans, XdmNode node, Auditor auditor)
+            throws ServlexException
+                 , ComponentError
+    {
+        try {
             XdmDestination dest = new XdmDestination();
-            trans.applyTemplates(instance.getContextNode(), dest);
+            trans.applyTemplates(node, dest);
             // TODO: As per XSLT, this is always a doc node.  Check that.  But for
             // now, I take the doc's children as the result sequence...
             // TODO: BTW, check this is a document node...
@@ -93,10 +144,6 @@ public class SaxonXSLTTransform
             Sequence seq = new SaxonSequence(it);
             return new XdmConnector(seq, auditor);
         }
-        catch ( PackageException | TransformerException ex ) {
-            LOG.error("Internal error", ex);
-            throw new ServlexException(500, "Internal error", ex);
-        }
         catch ( SaxonApiException ex ) {
             LOG.error("User error in pipeline", ex);
             throw SaxonHelper.makeError(ex);
@@ -110,6 +157,7 @@ public class SaxonXSLTTransform
     {
         if ( myCompiled == null ) {
             myCompiled = SaxonXSLTFunction.compile(mySaxon, myStyle);
+            myInputDeclared = myCompiled.getGlobalParameters().containsKey(NAME);
         }
         return myCompiled;
     }
@@ -124,6 +172,74 @@ public class SaxonXSLTTransform
     private final Processor mySaxon;
     private final String myStyle;
     private XsltExecutable myCompiled = null;
+    /** Does the stylesheet declare the parameter $web:input? */
+    private boolean myInputDeclared = true;
+
+    /**
+     * The result of this component, evaluated only when connected.
+     * 
+     * When connected to the response, the transform is applied to a SAX
+     * destination, which streams the result straight to the response.  If
+     * the result cannot be streamed, it is decoded by {@link Result} from the
+     * tree built meanwhile, as when the result is materialized.
+     */
+    private static class MyConnector
+            extends DeferredConnector
+    {
+        public MyConnector(Processor saxon, Xslt30Transformer trans, XdmNode node, Auditor auditor)
+        {
+            super(auditor);
+            mySaxon = saxon;
+            myTrans = trans;
+            myNode = node;
+        }
+
+        @Override
+        protected Connector evaluate()
+                throws ServlexException
+                     , ComponentError
+        {
+            return SaxonXSLTTransform.evaluate(myTrans, myNode, getAuditor());
+        }
+
+        @Override
+        protected void stream(HttpServletRequest req, HttpServletResponse resp, ServerConfig config, Processors procs)
+                throws ServlexException
+                     , ComponentError
+                     , IOException
+        {
+            StreamingResult result = null;
+            try {
+                BuildingContentHandler buffer = mySaxon.newDocumentBuilder().newBuildingContentHandler();
+                result = new StreamingResult(req, resp, procs, buffer, config.getCompressor());
+                myTrans.applyTemplates(myNode, new SAXDestination(result));
+                if ( result.isBuffered() ) {
+                    XdmNode doc = buffer.getDocumentNode();
+                    Sequence seq = new SaxonSequence(doc.axisIterator(Axis.CHILD));
+                    new Result(seq, procs).respond(req, resp, config.getCompressor());
+                }
+            }
+            catch ( SaxonApiException ex ) {
+                LOG.error("User error in pipeline", ex);
+                abort(result);
+                throw SaxonHelper.makeError(ex);
+            }
+        }
+
+        /**
+         * Do not finish a body truncated by an error.
+         */
+        private void abort(StreamingResult result)
+        {
+            if ( result != null ) {
+                result.abort();
+            }
+        }
+
+        private final Processor mySaxon;
+        private final Xslt30Transformer myTrans;
+        private final XdmNode myNode;
+    }
 
     /**
      * An instance of this component.
@@ -131,9 +247,10 @@ public class SaxonXSLTTransform
     private static class MyInstance
             implements ComponentInstance
     {
-        public MyInstance(Xslt30Transformer trans)
+        public MyInstance(Xslt30Transformer trans, boolean input)
         {
             myTrans = trans;
+            myInput = input;
         }
 
         /**
@@ -175,6 +292,25 @@ public class SaxonXSLTTransform
             myCtxtNode = node;
         }
 
+        /**
+         * The bodies are reachable only through $web:input, not from the context node.
+         */
+        @Override
+        public boolean needsBodies()
+        {
+            return myInput;
+        }
+
+        /**
+         * The body is reachable from the context node as well, with {@code doc(web:body/@href)}.
+         */
+        @Override
+        public boolean connectBody(StreamedBody body)
+        {
+            myTrans.setURIResolver(body.makeResolver(myTrans.getURIResolver()));
+            return true;
+        }
+
         // TODO: error(), setErrorOptions(), writeErrorRequest(), writeErrorData()
         // and the several constants are mostly duplicated from CalabashPipeline...
         @Override
@@ -331,6 +467,7 @@ public class SaxonXSLTTransform
         private static final QName  MESSAGE   = new QName(PREFIX, NS, "error-message");
 
         private final Xslt30Transformer myTrans;
+        private final boolean myInput;
         private XdmNode myCtxtNode;
     }
 }
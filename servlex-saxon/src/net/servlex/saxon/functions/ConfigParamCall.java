@@ -9,6 +9,7 @@
 
 package net.servlex.saxon.functions;
 
+import net.servlex.saxon.SaxonHelper;
 import net.sf.saxon.expr.XPathContext;
 import net.sf.saxon.lib.ExtensionFunctionCall;
 import net.sf.saxon.om.Sequence;
@@ -50,7 +51,7 @@ public class ConfigParamCall
         LOG.debug(params.format(ConfigParamFunction.LOCAL_NAME).param(name).param(dflt).value());
         // do it
         try {
-            Application app    = Servlex.getCurrentWebapp();
+            Application app    = Servlex.getCurrentWebapp(SaxonHelper.getRequestContext(ctxt));
             ConfigParam config = app.getConfigParam(name);
             String      value  = config == null ? null : config.getValue();
             if ( value == null ) {
@@ -18,6 +18,7 @@ import net.sf.saxon.om.SequenceIterator;
 import net.sf.saxon.trans.XPathException;
 import net.sf.saxon.type.Type;
 import net.sf.saxon.value.Base64BinaryValue;
+import net.sf.saxon.value.BooleanValue;
 import net.sf.saxon.value.ObjectValue;
 import net.sf.saxon.value.StringValue;
 import org.expath.servlex.ServlexConstants;
@@ -95,6 +96,29 @@ class FunParams
         return item.getStringValue();
     }
 
+    /**
+     * Return the pos-th parameter, checking it is a boolean.
+     * 
+     * If optional is false and the parameter is the empty sequence, an
+     * {@code XPathException} is thrown.  As well as if there is more than
+     * one item.
+     * 
+     * @param pos The position of the parameter to analyze, 0-based.
+     * @param optional Can the parameter be the empty sequence?
+     */
+    public Boolean asBoolean(int pos, boolean optional)
+            throws XPathException
+    {
+        Item item = asItem(pos, optional);
+        if ( item == null ) {
+            return null;
+        }
+        if ( ! ( item instanceof BooleanValue ) ) {
+            throw new XPathException("The " + ordinal(pos) + " param is not a boolean");
+        }
+        return ((BooleanValue) item).getBooleanValue();
+    }
+
     /**
      * Return the pos-th parameter, checking it is a list of strings.
      * 
@@ -327,6 +351,20 @@ class FunParams
             return this;
         }
 
+        public Formatter param(Boolean value)
+            throws XPathException
+        {
+            if ( checkPos() ) {
+                if ( value == null ) {
+                    myBuf.append("()");
+                }
+                else {
+                    myBuf.append(value ? "true()" : "false()");
+                }
+            }
+            return this;
+        }
+
         // TODO: Adapt specifically for element nodes?
         public Formatter param(Item item)
             throws XPathException
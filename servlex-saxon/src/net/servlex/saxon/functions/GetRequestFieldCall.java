@@ -9,6 +9,7 @@
 
 package net.servlex.saxon.functions;
 
+import net.servlex.saxon.SaxonHelper;
 import net.sf.saxon.expr.XPathContext;
 import net.sf.saxon.lib.ExtensionFunctionCall;
 import net.sf.saxon.om.Sequence;
@@ -37,7 +38,7 @@ public class GetRequestFieldCall
         LOG.debug(params.format(GetRequestFieldFunction.LOCAL_NAME).param(name).value());
         // getting the sequence in the request properties
         try {
-            SequenceProperties props = Servlex.getRequestMap();
+            SequenceProperties props = Servlex.getRequestMap(SaxonHelper.getRequestContext(ctxt));
             return FunReturn.value(props.get(name));
         }
         catch ( TechnicalException ex ) {
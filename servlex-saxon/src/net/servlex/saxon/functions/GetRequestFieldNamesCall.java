@@ -9,6 +9,7 @@
 
 package net.servlex.saxon.functions;
 
+import net.servlex.saxon.SaxonHelper;
 import net.sf.saxon.expr.XPathContext;
 import net.sf.saxon.lib.ExtensionFunctionCall;
 import net.sf.saxon.om.Sequence;
@@ -36,7 +37,7 @@ public class GetRequestFieldNamesCall
         LOG.debug(params.format(GetRequestFieldNamesFunction.LOCAL_NAME).value());
         // returning the name of every fields in the request properties
         try {
-            SequenceProperties props = Servlex.getRequestMap();
+            SequenceProperties props = Servlex.getRequestMap(SaxonHelper.getRequestContext(ctxt));
             Iterable<String> keys = props.keys();
             return FunReturn.value(keys);
         }
@@ -9,6 +9,7 @@
 
 package net.servlex.saxon.functions;
 
+import net.servlex.saxon.SaxonHelper;
 import net.sf.saxon.expr.XPathContext;
 import net.sf.saxon.lib.ExtensionFunctionCall;
 import net.sf.saxon.om.Sequence;
@@ -37,7 +38,7 @@ public class GetSessionFieldCall
         LOG.debug(params.format(GetSessionFieldFunction.LOCAL_NAME).param(name).value());
         // getting the sequence in the session
         try {
-            SequenceProperties props = Servlex.getSessionMap();
+            SequenceProperties props = Servlex.getSessionMap(SaxonHelper.getRequestContext(ctxt));
             org.expath.servlex.processors.Sequence seq = props.get(name);
             if ( LOG.trace() ) {
                 LOG.trace("Use session map: " + props);
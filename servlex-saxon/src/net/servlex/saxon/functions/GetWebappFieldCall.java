@@ -9,6 +9,7 @@
 
 package net.servlex.saxon.functions;
 
+import net.servlex.saxon.SaxonHelper;
 import net.sf.saxon.expr.XPathContext;
 import net.sf.saxon.lib.ExtensionFunctionCall;
 import net.sf.saxon.om.Sequence;
@@ -37,7 +38,7 @@ public class GetWebappFieldCall
         LOG.debug(params.format(GetWebappFieldFunction.LOCAL_NAME).param(name).value());
         // getting the sequence in the webapp
         try {
-            SequenceProperties props = Servlex.getWebappMap();
+            SequenceProperties props = Servlex.getWebappMap(SaxonHelper.getRequestContext(ctxt));
             org.expath.servlex.processors.Sequence seq = props.get(name);
             return FunReturn.value(seq);
         }
@@ -9,6 +9,7 @@
 
 package net.servlex.saxon.functions;
 
+import net.servlex.saxon.SaxonHelper;
 import net.sf.saxon.expr.XPathContext;
 import net.sf.saxon.lib.ExtensionFunctionCall;
 import net.sf.saxon.om.Sequence;
@@ -36,7 +37,7 @@ public class GetWebappFieldNamesCall
         LOG.debug(params.format(GetWebappFieldNamesFunction.LOCAL_NAME).value());
         // returning the name of every fields in the webapp
         try {
-            SequenceProperties props = Servlex.getWebappMap();
+            SequenceProperties props = Servlex.getWebappMap(SaxonHelper.getRequestContext(ctxt));
             Iterable<String> keys = props.keys();
             return FunReturn.value(keys);
         }
@@ -17,6 +17,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import net.servlex.saxon.SaxonHelper;
 import net.sf.saxon.expr.XPathContext;
 import net.sf.saxon.lib.ExtensionFunctionCall;
 import net.sf.saxon.om.Sequence;
@@ -24,9 +25,9 @@ import net.sf.saxon.trans.XPathException;
 import org.apache.commons.io.IOUtils;
 import org.expath.pkg.repo.PackageException;
 import org.expath.pkg.repo.Repository;
-import org.expath.servlex.Servlex;
 import org.expath.servlex.TechnicalException;
 import org.expath.servlex.WebRepository;
+import org.expath.servlex.runtime.RequestContext;
 import org.expath.servlex.tools.Log;
 
 /**
@@ -95,7 +96,8 @@ public class InstallWebappCall
         LOG.debug(params.format(InstallWebappFunction.LOCAL_NAME)
                 .param(repo).param(pkg).param(root).param(config).value());
         // do it
-        String value = doit(repo, pkg, root, config);
+        RequestContext request = SaxonHelper.getRequestContext(ctxt);
+        String value = doit(request, repo, pkg, root, config);
         return FunReturn.value(value);
     }
 
@@ -119,11 +121,11 @@ public class InstallWebappCall
         return map;
     }
 
-    private String doit(WebRepository repo, byte[] pkg, String root, List<String> config)
+    private String doit(RequestContext request, WebRepository repo, byte[] pkg, String root, List<String> config)
             throws XPathException
     {
         Map<String, String> params = configParams(config);
-        File file = save(pkg);
+        File file = save(request, pkg);
         try {
             // TODO: Set whether to override an existing package (instead of false),
             // from an extra param...?
@@ -143,16 +145,10 @@ public class InstallWebappCall
         }
     }
 
-    private File save(byte[] pkg)
+    private File save(RequestContext request, byte[] pkg)
             throws XPathException
     {
-        String id;
-        try {
-            id = Servlex.getRequestMap().getPrivate("web:request-id");
-        }
-        catch ( TechnicalException ex ) {
-            throw FunErrors.unexpected("Error accessing the request ID", ex);
-        }
+        String id = request.getRequestId();
         File dir = null;
         try {
             dir = File.createTempFile("servlex-", id);
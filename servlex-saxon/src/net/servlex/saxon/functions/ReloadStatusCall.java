@@ -0,0 +1,140 @@
+/****************************************************************************/
+/*  File:       ReloadStatusCall.java                                       */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package net.servlex.saxon.functions;
+
+import net.sf.saxon.expr.XPathContext;
+import net.sf.saxon.lib.ExtensionFunctionCall;
+import net.sf.saxon.om.Sequence;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.trans.XPathException;
+import org.expath.servlex.ReloadReport;
+import org.expath.servlex.ServlexConstants;
+import org.expath.servlex.TechnicalException;
+import org.expath.servlex.WebRepository;
+import org.expath.servlex.model.Application;
+import org.expath.servlex.model.Bulkhead;
+import org.expath.servlex.processors.Document;
+import org.expath.servlex.processors.Processors;
+import org.expath.servlex.processors.TreeBuilder;
+import net.servlex.saxon.SaxonHelper;
+import org.expath.servlex.tools.Log;
+import org.expath.servlex.tools.LruCache;
+
+/**
+ * See {@link ReloadStatusFunction}.
+ *
+ * @author Florent Georges
+ */
+public class ReloadStatusCall
+        extends ExtensionFunctionCall
+{
+    public ReloadStatusCall(Processors procs)
+    {
+        myProcs = procs;
+    }
+
+    @Override
+    public Sequence call(XPathContext ctxt, Sequence[] orig_params)
+            throws XPathException
+    {
+        // the params
+        FunParams params = new FunParams(orig_params, 1, 1);
+        WebRepository repo = params.asRepository(0, false);
+        // log it
+        LOG.debug(params.format(ReloadStatusFunction.LOCAL_NAME).param(repo).value());
+        // do it
+        ReloadReport report = repo.getLastReload();
+        try {
+            Document doc = buildResult(report, repo);
+            // return the element, inside the document node
+            XdmNode elem = SaxonHelper.getDocumentRootElement(doc);
+            return FunReturn.value(elem);
+        }
+        catch ( TechnicalException ex ) {
+            throw FunErrors.unexpected("Error building the reload status", ex);
+        }
+    }
+
+    private Document buildResult(ReloadReport report, WebRepository repo)
+            throws TechnicalException
+    {
+        TreeBuilder b = myProcs.makeTreeBuilder(NS, PREFIX);
+        b.startElem("reload");
+        b.attribute("state", report.getState().name().toLowerCase());
+        b.attribute("background", Boolean.toString(report.isBackground()));
+        b.attribute("duration", Long.toString(report.getDuration()));
+        String error = report.getError();
+        if ( error != null ) {
+            b.attribute("error", error);
+        }
+        b.startContent();
+        for ( ReloadReport.Webapp w : report.getWebapps() ) {
+            b.startElem("webapp");
+            if ( w.getRoot() != null ) {
+                b.attribute("root", w.getRoot());
+            }
+            b.attribute("name", w.getName());
+            if ( w.isReused() ) {
+                b.attribute("unchanged", "true");
+            }
+            else {
+                b.attribute("load", Long.toString(w.getLoadTime()));
+            }
+            if ( w.getCompileTime() >= 0 ) {
+                b.attribute("compile", Long.toString(w.getCompileTime()));
+            }
+            // the live counters, if the webapp is still served
+            Application app = repo.getApplication(w.getRoot());
+            if ( app != null ) {
+                Bulkhead bulkhead = app.getBulkhead();
+                b.attribute("in-flight", Integer.toString(app.getInFlight()));
+                b.attribute("queued", Integer.toString(bulkhead.getQueued()));
+                b.attribute("rejected", Long.toString(bulkhead.getRejected()));
+                LruCache<String, Application.Resolution> resolutions = app.getResolutions();
+                b.attribute("resolutions", Integer.toString(resolutions.size()));
+                b.attribute("resolution-hits", Long.toString(resolutions.getHits()));
+                b.attribute("resolution-misses", Long.toString(resolutions.getMisses()));
+            }
+            b.startContent();
+            b.endElem();
+        }
+        b.endElem();
+        return b.getRoot();
+    }
+
+    /** The logger. */
+    private static final Log LOG = new Log(ReloadStatusCall.class);
+    /** Shortcuts. */
+    private static final String NS     = ServlexConstants.WEBAPP_NS;
+    private static final String PREFIX = ServlexConstants.WEBAPP_PREFIX;
+    /** The processors. */
+    private final Processors myProcs;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,110 @@
+/****************************************************************************/
+/*  File:       ReloadStatusFunction.java                                   */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package net.servlex.saxon.functions;
+
+import net.sf.saxon.lib.ExtensionFunctionCall;
+import net.sf.saxon.lib.ExtensionFunctionDefinition;
+import net.sf.saxon.om.StructuredQName;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.value.SequenceType;
+import org.expath.servlex.processors.Processors;
+
+/**
+ * Implements web:reload-status().
+ * 
+ * The XPath signature:
+ *
+ *     web:reload-status($repo as item()) as element(web:reload)
+ * 
+ * The parameter $repo must be a {@link RepositoryItem}.  The return value
+ * describes the last reload of the webapps (or their initial load if they have
+ * not been reloaded yet), with the time it took to load, and to compile if
+ * they were warmed up, each webapp:
+ * 
+ *     &lt;web:reload state="running|done|failed" background="true" duration="1234" error="..."&gt;
+ *        &lt;web:webapp root="..." name="..." load="56" compile="789" in-flight="3" queued="0" rejected="12"
+ *                    resolutions="40" resolution-hits="1200" resolution-misses="45"/&gt;
+ *        &lt;web:webapp root="..." name="..." unchanged="true"/&gt;
+ *        ...
+ *     &lt;/web:reload&gt;
+ * 
+ * All times are in milliseconds.  The attribute error is set only when the
+ * reload failed, and the attribute compile only when the webapp was compiled
+ * ahead of time.  A webapp which did not change since it was loaded is kept as
+ * is, and is flagged with the attribute unchanged instead of load.
+ * 
+ * The webapps still served have live counters as well: the requests being
+ * served (in-flight), waiting in their bulkhead queue (queued), and rejected
+ * by their bulkhead so far (rejected, see servlex.xml).  The size of their
+ * path resolution cache is given as well, with its number of hits and misses,
+ * to help sizing it (see org.expath.servlex.resolve.cache.size).
+ *
+ * @author Florent Georges
+ */
+public class ReloadStatusFunction
+        extends ExtensionFunctionDefinition
+{
+    public ReloadStatusFunction(Processors procs, Processor saxon)
+    {
+        myProcs = procs;
+        mySaxon = saxon;
+    }
+
+    @Override
+    public StructuredQName getFunctionQName()
+    {
+        return FunTypes.qname(LOCAL_NAME);
+    }
+
+    @Override
+    public SequenceType[] getArgumentTypes()
+    {
+        return FunTypes.types(FunTypes.SINGLE_ITEM);
+    }
+
+    @Override
+    public SequenceType getResultType(SequenceType[] params)
+    {
+        return FunTypes.single_element(ELEMENT_NAME, mySaxon);
+    }
+
+    @Override
+    public ExtensionFunctionCall makeCallExpression()
+    {
+        return new ReloadStatusCall(myProcs);
+    }
+
+    static final String LOCAL_NAME = "reload-status";
+
+    private static final String ELEMENT_NAME = "reload";
+    private Processors myProcs;
+    private Processor mySaxon;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
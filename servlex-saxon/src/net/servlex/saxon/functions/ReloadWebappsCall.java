@@ -21,12 +21,16 @@ import org.expath.servlex.tools.Log;
 /**
  * Implements web:reload-webapps().
  * 
- * The XPath signature:
+ * The XPath signatures:
  *
  *     web:reload-webapps($repo as item()) as xs:string*
+ *
+ *     web:reload-webapps($repo       as item(),
+ *                        $background as xs:boolean) as xs:string*
  * 
  * The parameter $repo must be a {@link RepositoryItem}.  The return value is
- * the list of the context roots of all webapps.
+ * the list of the context roots of all webapps (when reloading in the
+ * background, the webapps currently in place).
  * 
  * @author Florent Georges
  */
@@ -38,16 +42,26 @@ public class ReloadWebappsCall
             throws XPathException
     {
         // the params
-        FunParams params = new FunParams(orig_params, 1, 1);
+        FunParams params = new FunParams(orig_params, 1, 2);
         WebRepository repo = params.asRepository(0, false);
+        boolean background = false;
+        if ( params.number() == 2 ) {
+            background = params.asBoolean(1, false);
+        }
         // log it
-        LOG.debug(params.format(ReloadWebappsFunction.LOCAL_NAME).param(repo).value());
+        LOG.debug(params.format(ReloadWebappsFunction.LOCAL_NAME)
+                .param(repo).param(background).value());
         // do it
-        try {
-            repo.reload();
+        if ( background ) {
+            repo.reloadInBackground();
         }
-        catch ( TechnicalException ex ) {
-            throw FunErrors.unexpected("Unexpected error reloading the web repository.", ex);
+        else {
+            try {
+                repo.reload();
+            }
+            catch ( TechnicalException ex ) {
+                throw FunErrors.unexpected("Unexpected error reloading the web repository.", ex);
+            }
         }
         Set<String> value = repo.getContextRoots();
         return FunReturn.value(value);
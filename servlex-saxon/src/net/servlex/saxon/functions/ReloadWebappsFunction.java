@@ -17,12 +17,18 @@ import net.sf.saxon.value.SequenceType;
 /**
  * Implements web:reload-webapps().
  * 
- * The XPath signature:
+ * The XPath signatures:
  *
  *     web:reload-webapps($repo as item()) as xs:string*
+ *
+ *     web:reload-webapps($repo       as item(),
+ *                        $background as xs:boolean) as xs:string*
  * 
  * The parameter $repo must be a {@link RepositoryItem}.  The return value is
- * the list of the context roots of all webapps.
+ * the list of the context roots of all webapps.  If $background is true, the
+ * webapps are reloaded and compiled in the background, and the function
+ * returns immediately (with the context roots of the webapps currently in
+ * place).  See web:reload-status() to follow the progress.
  *
  * @author Florent Georges
  */
@@ -35,10 +41,24 @@ public class ReloadWebappsFunction
         return FunTypes.qname(LOCAL_NAME);
     }
 
+    @Override
+    public int getMinimumNumberOfArguments()
+    {
+        return 1;
+    }
+
+    @Override
+    public int getMaximumNumberOfArguments()
+    {
+        return 2;
+    }
+
     @Override
     public SequenceType[] getArgumentTypes()
     {
-        return FunTypes.types(FunTypes.SINGLE_ITEM);
+        return FunTypes.types(
+                FunTypes.SINGLE_ITEM,
+                FunTypes.SINGLE_BOOLEAN);
     }
 
     @Override
@@ -50,7 +70,7 @@ public class ReloadWebappsFunction
     @Override
     public ExtensionFunctionCall makeCallExpression()
     {
-        return new InstalledWebappsCall();
+        return new ReloadWebappsCall();
     }
 
     static final String LOCAL_NAME = "reload-webapps";
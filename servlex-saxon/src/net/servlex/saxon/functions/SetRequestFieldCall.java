@@ -9,6 +9,7 @@
 
 package net.servlex.saxon.functions;
 
+import net.servlex.saxon.SaxonHelper;
 import net.sf.saxon.expr.XPathContext;
 import net.sf.saxon.lib.ExtensionFunctionCall;
 import net.sf.saxon.om.Sequence;
@@ -39,7 +40,7 @@ public class SetRequestFieldCall
         LOG.debug(params.format(SetRequestFieldFunction.LOCAL_NAME).param(name).param(value).value());
         // setting the sequence in the request
         try {
-            Properties props = Servlex.getRequestMap();
+            Properties props = Servlex.getRequestMap(SaxonHelper.getRequestContext(ctxt));
             org.expath.servlex.processors.Sequence seq = new SaxonSequence(value);
             props.set(name, seq);
             return FunReturn.empty();
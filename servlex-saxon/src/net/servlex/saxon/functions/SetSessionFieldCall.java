@@ -9,6 +9,7 @@
 
 package net.servlex.saxon.functions;
 
+import net.servlex.saxon.SaxonHelper;
 import net.sf.saxon.expr.XPathContext;
 import net.sf.saxon.lib.ExtensionFunctionCall;
 import net.sf.saxon.om.Sequence;
@@ -39,7 +40,7 @@ public class SetSessionFieldCall
         LOG.debug(params.format(SetSessionFieldFunction.LOCAL_NAME).param(name).param(value).value());
         // setting the sequence in the session
         try {
-            Properties props = Servlex.getSessionMap();
+            Properties props = Servlex.getSessionMap(SaxonHelper.getRequestContext(ctxt));
             org.expath.servlex.processors.Sequence seq = new SaxonSequence(value);
             props.set(name, seq);
             if ( LOG.trace()) {
@@ -9,6 +9,7 @@
 
 package net.servlex.saxon.functions;
 
+import net.servlex.saxon.SaxonHelper;
 import net.sf.saxon.expr.XPathContext;
 import net.sf.saxon.lib.ExtensionFunctionCall;
 import net.sf.saxon.om.Sequence;
@@ -39,7 +40,7 @@ public class SetWebappFieldCall
         LOG.debug(params.format(SetWebappFieldFunction.LOCAL_NAME).param(name).param(value).value());
         // setting the sequence in the webapp
         try {
-            Properties props = Servlex.getWebappMap();
+            Properties props = Servlex.getWebappMap(SaxonHelper.getRequestContext(ctxt));
             org.expath.servlex.processors.Sequence seq = new SaxonSequence(value);
             props.set(name, seq);
             return FunReturn.empty();
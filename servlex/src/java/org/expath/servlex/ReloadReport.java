@@ -0,0 +1,248 @@
+/****************************************************************************/
+/*  File:       ReloadReport.java                                           */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The report of a reload of the web repository.
+ *
+ * A report is created when a reload starts.  It records, for each application,
+ * the time it took to load it (to parse its descriptor and build the model),
+ * and the time it took to compile its components if it was warmed up.  Or
+ * that it did not change, and was kept as is.  When
+ * the reload is done, it records whether it succeeded or failed.
+ *
+ * A background reload updates the report while other threads can read it, so
+ * all accesses are synchronized.
+ *
+ * @author Florent Georges
+ */
+public class ReloadReport
+{
+    /**
+     * The state of a reload.
+     */
+    public enum State
+    {
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    /**
+     * Create a new report, for a reload starting now.
+     */
+    public ReloadReport(boolean background)
+    {
+        myBackground = background;
+        myStart = System.currentTimeMillis();
+    }
+
+    /**
+     * Record the time it took to load an application.
+     */
+    public synchronized void loaded(String root, String name, long time)
+    {
+        myWebapps.add(new Webapp(root, name, time));
+    }
+
+    /**
+     * Record an application which did not change, and has been kept as is.
+     */
+    public synchronized void reused(String root, String name)
+    {
+        Webapp w = new Webapp(root, name, 0);
+        w.myReused = true;
+        myWebapps.add(w);
+    }
+
+    /**
+     * Record the time it took to compile an application.
+     */
+    public synchronized void compiled(String root, long time)
+    {
+        for ( Webapp w : myWebapps ) {
+            if ( root == null ? w.myRoot == null : root.equals(w.myRoot) ) {
+                w.myCompileTime = time;
+            }
+        }
+    }
+
+    /**
+     * Record the reload as successfully finished.
+     */
+    public synchronized void done()
+    {
+        myEnd = System.currentTimeMillis();
+        myState = State.DONE;
+    }
+
+    /**
+     * Record the reload as failed.
+     */
+    public synchronized void failed(String msg)
+    {
+        myEnd = System.currentTimeMillis();
+        myState = State.FAILED;
+        myError = msg;
+    }
+
+    public boolean isBackground()
+    {
+        return myBackground;
+    }
+
+    public synchronized State getState()
+    {
+        return myState;
+    }
+
+    public synchronized boolean isRunning()
+    {
+        return myState == State.RUNNING;
+    }
+
+    /**
+     * Return the time the reload started, in milliseconds since the epoch.
+     */
+    public long getStart()
+    {
+        return myStart;
+    }
+
+    /**
+     * Return the time the reload took, in milliseconds (so far if running).
+     */
+    public synchronized long getDuration()
+    {
+        long end = myState == State.RUNNING ? System.currentTimeMillis() : myEnd;
+        return end - myStart;
+    }
+
+    /**
+     * Return the error message if the reload failed, null if not.
+     */
+    public synchronized String getError()
+    {
+        return myError;
+    }
+
+    /**
+     * Return a copy of the list of the applications loaded so far.
+     */
+    public synchronized List<Webapp> getWebapps()
+    {
+        List<Webapp> list = new ArrayList<>();
+        for ( Webapp w : myWebapps ) {
+            list.add(new Webapp(w));
+        }
+        return list;
+    }
+
+    private final boolean myBackground;
+    private final long myStart;
+    private long myEnd = -1;
+    private State myState = State.RUNNING;
+    private String myError = null;
+    private final List<Webapp> myWebapps = new ArrayList<>();
+
+    /**
+     * The timing of one application.
+     */
+    public static class Webapp
+    {
+        private Webapp(String root, String name, long load)
+        {
+            myRoot = root;
+            myName = name;
+            myLoadTime = load;
+        }
+
+        private Webapp(Webapp w)
+        {
+            myRoot = w.myRoot;
+            myName = w.myName;
+            myLoadTime = w.myLoadTime;
+            myCompileTime = w.myCompileTime;
+            myReused = w.myReused;
+        }
+
+        /**
+         * The context root of the application (null if single app).
+         */
+        public String getRoot()
+        {
+            return myRoot;
+        }
+
+        /**
+         * The name of the application (its abbrev).
+         */
+        public String getName()
+        {
+            return myName;
+        }
+
+        /**
+         * The time it took to load the application, in milliseconds.
+         */
+        public long getLoadTime()
+        {
+            return myLoadTime;
+        }
+
+        /**
+         * Whether the application did not change, and has been kept as is.
+         */
+        public boolean isReused()
+        {
+            return myReused;
+        }
+
+        /**
+         * The time it took to compile the application, in milliseconds.
+         * 
+         * It is -1 if the application was not compiled ahead of time.
+         */
+        public long getCompileTime()
+        {
+            return myCompileTime;
+        }
+
+        private final String myRoot;
+        private final String myName;
+        private final long myLoadTime;
+        private long myCompileTime = -1;
+        private boolean myReused = false;
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -12,13 +12,17 @@ package org.expath.servlex;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.UUID;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.namespace.QName;
 import org.expath.servlex.processors.Attribute;
@@ -27,6 +31,9 @@ import org.expath.servlex.processors.Item;
 import org.expath.servlex.processors.Processors;
 import org.expath.servlex.processors.Sequence;
 import org.expath.servlex.processors.Serializer;
+import org.expath.servlex.tools.Compressor;
+import org.expath.servlex.tools.Conditional;
+import org.expath.servlex.tools.FileSender;
 import org.expath.servlex.tools.Log;
 
 /**
@@ -92,13 +99,51 @@ public class Result
     /**
      * Respond to the client.
      * 
+     * @param req The servlet standard request object being responded to
+     * (for conditional and range requests, null if none).
+     * 
      * @param resp The servlet standard response object where to respond to.
      * 
      * @throws ServlexException In case of error.
      */
-    public void respond(HttpServletResponse resp)
+    public void respond(HttpServletRequest req, HttpServletResponse resp)
             throws ServlexException
     {
+        respond(req, resp, null);
+    }
+
+    /**
+     * Respond to the client, compressing the body if negotiated.
+     * 
+     * @param req The servlet standard request object being responded to
+     * (for conditional and range requests, and for content negotiation, null
+     * if none).
+     * 
+     * @param resp The servlet standard response object where to respond to.
+     * 
+     * @param compressor The compressor for the body, null not to compress it.
+     * 
+     * @throws ServlexException In case of error.
+     */
+    public void respond(HttpServletRequest req, HttpServletResponse resp, Compressor compressor)
+            throws ServlexException
+    {
+        myRequest = req;
+        myCompressor = compressor;
+        if ( Conditional.isNotModified(myRequest, myStatus, getETag()) ) {
+            // the servlet returned an ETag matching If-None-Match, drop the body
+            resp.setStatus(304);
+            for ( Result.Header h : myHeaders ) {
+                String value = "ETag".equalsIgnoreCase(h.name)
+                        ? Conditional.notModifiedTag(myRequest, h.value)
+                        : h.value;
+                resp.addHeader(h.name, value);
+            }
+            if ( myCompressor != null ) {
+                resp.addHeader("Vary", "Accept-Encoding");
+            }
+            return;
+        }
         resp.setStatus(myStatus, myMsg);
         for ( Result.Header h : myHeaders ) {
             resp.addHeader(h.name, h.value);
@@ -114,6 +159,19 @@ public class Result
         }
     }
 
+    /**
+     * Return the value of the header ETag, if the servlet returned one.
+     */
+    private String getETag()
+    {
+        for ( Result.Header h : myHeaders ) {
+            if ( "ETag".equalsIgnoreCase(h.name) ) {
+                return h.value;
+            }
+        }
+        return null;
+    }
+
     // =======================================================================
     //     Decode the response
     //     -------------------
@@ -148,7 +206,7 @@ public class Result
             Element child = children.next();
             QName name = child.name();
             if ( name.equals(HEADER_NAME) ) {
-                handleHeader(child);
+                myHeaders.add(handleHeader(child));
             }
             else if ( name.equals(MULTI_NAME) ) {
                 handleMultipart(child, bodies);
@@ -169,7 +227,7 @@ public class Result
         }
     }
 
-    private void handleHeader(Element header)
+    private Header handleHeader(Element header)
             throws ServlexException
                  , TechnicalException
     {
@@ -188,7 +246,7 @@ public class Result
                 error(500, "Unknown attribute on web:header: " + name);
             }
         }
-        myHeaders.add(h);
+        return h;
     }
 
     private void handleMultipart(Element multipart, Sequence bodies)
@@ -212,13 +270,14 @@ public class Result
         }
         myMultipart.bodies = new ArrayList<>();
         int body_count = 0;
+        // the headers of the next part, those web:header before its web:body
+        List<Header> headers = new ArrayList<>();
         Iterator<Element> children = multipart.elements();
         while ( children.hasNext() ) {
             Element child = children.next();
             QName name = child.name();
-            // TODO: Support web:multipart/web:header elements !
             if ( name.equals(HEADER_NAME) ) {
-                error(501, "TODO: web:multipart/web:header not supported yet!");
+                headers.add(handleHeader(child));
             }
             else if ( name.equals(BODY_NAME) ) {
                 Body b = handleBody(child);
@@ -226,12 +285,17 @@ public class Result
                     Item body = bodies.itemAt(body_count++);
                     b.value = body.asSequence();
                 }
+                b.headers = headers;
+                headers = new ArrayList<>();
                 myMultipart.bodies.add(b);
             }
             else {
                 error(500, "Unknown web:multipart child: " + name);
             }
         }
+        if ( ! headers.isEmpty() ) {
+            error(500, "A web:header in web:multipart must be followed by a web:body");
+        }
     }
 
     private Body handleBody(Element body)
@@ -254,10 +318,7 @@ public class Result
             if ( LOG.debug()) {
                 LOG.debug("body attribute: " + name + " = " + value);
             }
-            if ( name.equals(TYPE_NAME) ) {
-                b.serializer.setMediaType(value);
-            }
-            else if ( name.equals(ID_NAME) ) {
+            if ( name.equals(ID_NAME) ) {
                 b.id = value;
             }
             else if ( name.equals(DESC_NAME) ) {
@@ -266,61 +327,8 @@ public class Result
             else if ( name.equals(SRC_NAME) ) {
                 b.src = value;
             }
-            else if ( name.equals(METHOD_NAME) ) {
-                b.serializer.setMethod(value);
-            }
-            else if ( name.equals(ENC_NAME) ) {
-                b.serializer.setEncoding(value);
-            }
-            else if ( name.equals(BYTE_ORDER_NAME) ) {
-                b.serializer.setByteOrderMark(value);
-            }
-            else if ( name.equals(CDATA_ELEMENTS_NAME) ) {
-                b.serializer.setCdataSectionElements(value);
-            }
-            else if ( name.equals(PUBID_NAME) ) {
-                b.serializer.setDoctypePublic(value);
-            }
-            else if ( name.equals(SYSID_NAME) ) {
-                b.serializer.setDoctypeSystem(value);
-            }
-            else if ( name.equals(ESCAPE_URI_NAME) ) {
-                b.serializer.setEscapeUriAttributes(value);
-            }
-            else if ( name.equals(INCLUDE_CT_NAME) ) {
-                b.serializer.setIncludeContentType(value);
-            }
-            else if ( name.equals(INDENT_NAME) ) {
-                b.serializer.setIndent(value);
-            }
-            else if ( name.equals(NORM_FORM_NAME) ) {
-                b.serializer.setNormalizationForm(value);
-            }
-            else if ( name.equals(OMIT_XML_DECL_NAME) ) {
-                b.serializer.setOmitXmlDeclaration(value);
-            }
-            else if ( name.equals(STANDALONE_NAME) ) {
-                b.serializer.setStandalone(value);
-            }
-            else if ( name.equals(UNDECL_PREFIXES_NAME) ) {
-                b.serializer.setUndeclarePrefixes(value);
-            }
-            else if ( name.equals(USE_CHAR_MAPS_NAME) ) {
-                b.serializer.setUseCharacterMaps(value);
-            }
-            else if ( name.equals(VERSION_NAME) ) {
-                b.serializer.setVersion(value);
-            }
-            else if ( "xml".equals(name.getPrefix()) ) {
-                // nothing (ignore standard XML attributes, like xml:base, xml:id...)
-            }
             else {
-                try {
-                    b.serializer.setExtension(name, value);
-                }
-                catch ( TechnicalException ex ) {
-                    error(500, "Unknown attribute on web:body: " + name, ex);
-                }
+                setOutputProperty(b.serializer, name, value);
             }
         }
         Iterator<Item> children = body.children();
@@ -335,6 +343,77 @@ public class Result
         return b;
     }
 
+    /**
+     * Set a serialization parameter, as found on a web:body element.
+     * 
+     * Standard XML attributes (like xml:base) are ignored.  Other unknown
+     * attributes are passed to the serializer as extensions, and raise an
+     * error if it does not support them.
+     */
+    static void setOutputProperty(Serializer serializer, QName name, String value)
+            throws ServlexException
+    {
+        if ( name.equals(TYPE_NAME) ) {
+            serializer.setMediaType(value);
+        }
+        else if ( name.equals(METHOD_NAME) ) {
+            serializer.setMethod(value);
+        }
+        else if ( name.equals(ENC_NAME) ) {
+            serializer.setEncoding(value);
+        }
+        else if ( name.equals(BYTE_ORDER_NAME) ) {
+            serializer.setByteOrderMark(value);
+        }
+        else if ( name.equals(CDATA_ELEMENTS_NAME) ) {
+            serializer.setCdataSectionElements(value);
+        }
+        else if ( name.equals(PUBID_NAME) ) {
+            serializer.setDoctypePublic(value);
+        }
+        else if ( name.equals(SYSID_NAME) ) {
+            serializer.setDoctypeSystem(value);
+        }
+        else if ( name.equals(ESCAPE_URI_NAME) ) {
+            serializer.setEscapeUriAttributes(value);
+        }
+        else if ( name.equals(INCLUDE_CT_NAME) ) {
+            serializer.setIncludeContentType(value);
+        }
+        else if ( name.equals(INDENT_NAME) ) {
+            serializer.setIndent(value);
+        }
+        else if ( name.equals(NORM_FORM_NAME) ) {
+            serializer.setNormalizationForm(value);
+        }
+        else if ( name.equals(OMIT_XML_DECL_NAME) ) {
+            serializer.setOmitXmlDeclaration(value);
+        }
+        else if ( name.equals(STANDALONE_NAME) ) {
+            serializer.setStandalone(value);
+        }
+        else if ( name.equals(UNDECL_PREFIXES_NAME) ) {
+            serializer.setUndeclarePrefixes(value);
+        }
+        else if ( name.equals(USE_CHAR_MAPS_NAME) ) {
+            serializer.setUseCharacterMaps(value);
+        }
+        else if ( name.equals(VERSION_NAME) ) {
+            serializer.setVersion(value);
+        }
+        else if ( "xml".equals(name.getPrefix()) ) {
+            // nothing (ignore standard XML attributes, like xml:base, xml:id...)
+        }
+        else {
+            try {
+                serializer.setExtension(name, value);
+            }
+            catch ( TechnicalException ex ) {
+                error(500, "Unknown attribute on web:body: " + name, ex);
+            }
+        }
+    }
+
     // =======================================================================
     //     Send the response
     //     -----------------
@@ -360,22 +439,21 @@ public class Result
             }
             if ( myBody.src != null ) {
                 src = myBody.base.resolve(myBody.src);
-                InputStream in = null;
                 if ( "jar".equals(src.getScheme()) ) {
-                    in = resolveJarUri(src);
+                    copySource(src, resp.getOutputStream());
                 }
                 else if ("file".equals(src.getScheme())) {
-                    in = new FileInputStream(new File(src));
+                    File file = new File(src);
+                    if ( ! file.isFile() ) {
+                        throw new FileNotFoundException("Not a file: " + file);
+                    }
+                    // zero-copy, with ranges
+                    FileSender sender = new FileSender(file, type, getETag(), -1);
+                    sender.send(myRequest, resp, myStatus == 200);
                 }
                 else {
                     throw new ServlexException(500, "Unsupported URI scheme: " + src);
                 }
-                OutputStream out = resp.getOutputStream();
-                byte[] buf = new byte[4096];
-                int len;
-                while ( (len = in.read(buf)) > 0 ) {
-                    out.write(buf, 0, len);
-                }
             }
             else {
                 // TODO: FIXME: Take b.type into account... (different
@@ -384,7 +462,18 @@ public class Result
                 // TODO: Should actualy web:body be able to have same
                 //   properties as xsl:output and xsl:result-document (aka
                 //   serialization properties) ?
-                myBody.serializer.serialize(myBody.value, resp.getOutputStream());
+                OutputStream out = myCompressor == null
+                        ? resp.getOutputStream()
+                        : myCompressor.open(myRequest, resp, type, myStatus);
+                try {
+                    myBody.serializer.serialize(myBody.value, out);
+                }
+                catch ( TechnicalException | RuntimeException ex ) {
+                    // do not finish a truncated body
+                    Compressor.abort(out);
+                    throw ex;
+                }
+                out.close();
             }
         }
         catch ( FileNotFoundException ex ) {
@@ -396,6 +485,38 @@ public class Result
         }
     }
 
+    /**
+     * Copy the content at {@code src} (a jar: or a file: URI) to {@code out}.
+     */
+    private static void copySource(URI src, OutputStream out)
+            throws ServlexException
+                 , IOException
+    {
+        InputStream in;
+        if ( "jar".equals(src.getScheme()) ) {
+            in = resolveJarUri(src);
+            if ( in == null ) {
+                throw new FileNotFoundException("Resource not in the classpath: " + src);
+            }
+        }
+        else if ( "file".equals(src.getScheme()) ) {
+            in = new FileInputStream(new File(src));
+        }
+        else {
+            throw new ServlexException(500, "Unsupported URI scheme: " + src);
+        }
+        try {
+            byte[] buf = new byte[4096];
+            int len;
+            while ( (len = in.read(buf)) > 0 ) {
+                out.write(buf, 0, len);
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
     /**
      * Resolve a URI of the form jar:file:/dir/file.jar!/some/resource.xml.
      *
@@ -417,21 +538,112 @@ public class Result
         return loader.getResourceAsStream(rsrc);
     }
 
+    /**
+     * Write each part straight to the response, and flush it, one after the other.
+     * 
+     * Each part has its own headers: its content type (from its serializer),
+     * its ID and description if any, and the web:header elements right
+     * before its web:body (which override the former).
+     */
     private void respondMultipart(HttpServletResponse resp)
             throws ServlexException
     {
-        error(501, "TODO: Multipart response not implemented yet!");
+        String boundary = myMultipart.boundary;
+        if ( boundary == null ) {
+            boundary = "servlex-" + UUID.randomUUID().toString().replace("-", "");
+        }
+        String type = myMultipart.type == null ? "multipart/mixed" : myMultipart.type;
+        String ctype = type + "; boundary=" + boundary;
+        if ( LOG.debug() ) {
+            LOG.debug("multipart: " + ctype + ", " + myMultipart.bodies.size() + " parts");
+        }
+        resp.setContentType(ctype);
+        try {
+            OutputStream out = myCompressor == null
+                    ? resp.getOutputStream()
+                    : myCompressor.open(myRequest, resp, ctype, myStatus);
+            try {
+                for ( Body b : myMultipart.bodies ) {
+                    respondPart(b, boundary, out);
+                    // send each part as soon as it is serialized
+                    out.flush();
+                }
+                out.write(ascii("--" + boundary + "--\r\n"));
+            }
+            catch ( ServlexException | TechnicalException | IOException | RuntimeException ex ) {
+                // do not finish a truncated body
+                Compressor.abort(out);
+                throw ex;
+            }
+            out.close();
+        }
+        catch ( TechnicalException | IOException ex ) {
+            error(500, "Internal error", ex);
+        }
+    }
+
+    private void respondPart(Body b, String boundary, OutputStream out)
+            throws ServlexException
+                 , TechnicalException
+                 , IOException
+    {
+        StringBuilder head = new StringBuilder();
+        head.append("--").append(boundary).append("\r\n");
+        String type = b.serializer.getMediaType();
+        if ( type != null && ! hasHeader(b, "Content-Type") ) {
+            head.append("Content-Type: ").append(type);
+            String encoding = b.serializer.getEncoding();
+            if ( encoding != null ) {
+                head.append("; charset=").append(encoding);
+            }
+            head.append("\r\n");
+        }
+        if ( b.id != null && ! hasHeader(b, "Content-ID") ) {
+            head.append("Content-ID: ").append(b.id).append("\r\n");
+        }
+        if ( b.description != null && ! hasHeader(b, "Content-Description") ) {
+            head.append("Content-Description: ").append(b.description).append("\r\n");
+        }
+        for ( Header h : b.headers ) {
+            head.append(h.name).append(": ").append(h.value).append("\r\n");
+        }
+        head.append("\r\n");
+        out.write(ascii(head.toString()));
+        // the part content must not close the response stream
+        OutputStream part = new PartStream(out);
+        if ( b.src != null ) {
+            copySource(b.base.resolve(b.src), part);
+        }
+        else {
+            b.serializer.serialize(b.value, part);
+        }
+        out.write(ascii("\r\n"));
+    }
+
+    private static boolean hasHeader(Body b, String name)
+    {
+        for ( Header h : b.headers ) {
+            if ( name.equalsIgnoreCase(h.name) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] ascii(String s)
+    {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
     }
 
     // TODO: Error management!
-    private void error(int code, String msg)
+    private static void error(int code, String msg)
             throws ServlexException
     {
         LOG.error(msg);
         throw new ServlexException(code, msg);
     }
 
-    private void error(int code, String msg, Throwable ex)
+    private static void error(int code, String msg, Throwable ex)
             throws ServlexException
     {
         LOG.error(msg, ex);
@@ -475,6 +687,10 @@ public class Result
     private static final Log LOG = new Log(Result.class);
 
     private Processors myProcs;
+    /** The request being responded to, if any. */
+    private HttpServletRequest myRequest;
+    /** The compressor for the body, if any. */
+    private Compressor myCompressor;
     private int myStatus;
     private String myMsg;
     private List<Header> myHeaders;
@@ -493,6 +709,7 @@ public class Result
 
     private static class Body
     {
+        public List<Header> headers = new ArrayList<>();
         public String     id;
         public String     description;
         public String     src;
@@ -507,6 +724,31 @@ public class Result
         public String     boundary;
         public List<Body> bodies;
     }
+
+    /**
+     * The content of one part, which must not close the response stream.
+     */
+    private static class PartStream
+            extends FilterOutputStream
+    {
+        public PartStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+                throws IOException
+        {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close()
+        {
+            // the response stream is flushed once the whole part is written
+        }
+    }
 }
 
 
@@ -10,7 +10,18 @@
 package org.expath.servlex;
 
 import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import org.expath.pkg.repo.ClasspathStorage;
@@ -20,14 +31,29 @@ import org.expath.pkg.repo.Repository;
 import org.expath.pkg.repo.Storage;
 import org.expath.servlex.model.Application;
 import org.expath.servlex.processors.Processors;
+import org.expath.servlex.runtime.RequestContext;
+import org.expath.servlex.tools.Compressor;
 import org.expath.servlex.tools.ProcessorsMap;
 
+import static org.expath.servlex.ServlexConstants.ASYNC_PROPERTY;
+import static org.expath.servlex.ServlexConstants.COMPRESS_LEVEL_DEFAULT;
+import static org.expath.servlex.ServlexConstants.COMPRESS_LEVEL_PROPERTY;
+import static org.expath.servlex.ServlexConstants.COMPRESS_MIN_DEFAULT;
+import static org.expath.servlex.ServlexConstants.COMPRESS_MIN_PROPERTY;
+import static org.expath.servlex.ServlexConstants.COMPRESS_PROPERTY;
+import static org.expath.servlex.ServlexConstants.COMPRESS_TYPES_DEFAULT;
+import static org.expath.servlex.ServlexConstants.COMPRESS_TYPES_PROPERTY;
 import static org.expath.servlex.ServlexConstants.DEFAULT_CHARSET_PROPERTY;
+import static org.expath.servlex.ServlexConstants.PART_THREADS_DEFAULT;
+import static org.expath.servlex.ServlexConstants.PART_THREADS_PROPERTY;
 import static org.expath.servlex.ServlexConstants.DEFAULT_PROCESSORS;
 import static org.expath.servlex.ServlexConstants.PROCESSORS_PROPERTY;
 import static org.expath.servlex.ServlexConstants.PROFILE_DIR_PROPERTY;
 import static org.expath.servlex.ServlexConstants.REPO_CP_PROPERTY;
 import static org.expath.servlex.ServlexConstants.REPO_DIR_PROPERTY;
+import static org.expath.servlex.ServlexConstants.SPILL_THRESHOLD_DEFAULT;
+import static org.expath.servlex.ServlexConstants.SPILL_THRESHOLD_PROPERTY;
+import static org.expath.servlex.ServlexConstants.STREAMING_PROPERTY;
 import static org.expath.servlex.ServlexConstants.TRACE_CONTENT_PROPERTY;
 import org.expath.servlex.tools.Log;
 
@@ -114,6 +140,75 @@ public class ServerConfig
         return myTraceContent;
     }
 
+    /**
+     * Return true if the result of the last component can be streamed straight to the response.
+     * 
+     * False by default, can be enabled by setting the system property
+     * {@code org.expath.servlex.response.streaming} to "true".  Once part of
+     * the result has been sent, an error cannot be turned into an error page
+     * anymore, and the client gets a truncated response.
+     */
+    public boolean isStreamingEnabled()
+    {
+        return myStreaming;
+    }
+
+    /**
+     * Return the size in bytes above which binary request bodies are spilled to disk.
+     * 
+     * A negative value means never.  A spilled body is not exposed to the
+     * components as a binary item, but by the path of the temporary file (as
+     * a string item, and on the web:body element, see {@link
+     * org.expath.servlex.tools.RequestParser}).  Negative by default, can be
+     * set with the system property {@code org.expath.servlex.request.spill.threshold}.
+     */
+    public long getSpillThreshold()
+    {
+        return mySpillThreshold;
+    }
+
+    /**
+     * Return the worker pool to parse the parts of multipart requests in parallel.
+     * 
+     * Null if the parts are to be parsed in sequence, on the request thread
+     * (the default).  The number of threads of the pool, shared by all the
+     * requests, can be set with the system property
+     * {@code org.expath.servlex.request.part.threads}.  When all threads are
+     * busy and the queue is full, the parts are parsed on the request thread.
+     */
+    public ExecutorService getPartExecutor()
+    {
+        return myPartExecutor;
+    }
+
+    /**
+     * Return the executor to serve the requests asynchronously, off the container threads.
+     * 
+     * Null if the requests are served synchronously, on the container thread
+     * (the default).  The system property {@code org.expath.servlex.async}
+     * can be set to {@code virtual}, to serve each request on its own virtual
+     * thread (which requires Java 21 or later), or to a number of threads, to
+     * serve them on a bounded pool.  When all threads of the pool are busy
+     * and its queue is full, the request is rejected with a 503.
+     */
+    public ExecutorService getAsyncExecutor()
+    {
+        return myAsyncExecutor;
+    }
+
+    /**
+     * Return the compressor for the dynamic responses, null if disabled.
+     * 
+     * Enabled by default, can be disabled by setting the system property
+     * {@code org.expath.servlex.response.compress} to "false".  The media
+     * types to compress, the min size and the level can be set as well
+     * (see {@link ServlexConstants#COMPRESS_TYPES_PROPERTY} et al.)
+     */
+    public Compressor getCompressor()
+    {
+        return myCompressor;
+    }
+
     /**
      * Return the default charset to use in case none is set on the request. Can be null.
      */
@@ -131,13 +226,19 @@ public class ServerConfig
     }
 
     /**
-     * Return a file in the profile dir, with a name based on current time.
+     * Return a file in the profile dir, with a name based on the request id.
+     *
+     * The request id is taken from {@code ctxt}, which can be null only when
+     * profiling is disabled.
      */
-    public File getProfileFile(String prefix)
+    public File getProfileFile(String prefix, RequestContext ctxt)
             throws TechnicalException
     {
         if ( myProfileDir != null ) {
-            String id = Servlex.getRequestMap().getPrivate("web:request-id");
+            if ( ctxt == null ) {
+                throw new TechnicalException("No request context for the profiling file: " + prefix);
+            }
+            String id = ctxt.getRequestId();
             File file = new File(myProfileDir, prefix + "-" + id + ".xml");
             if ( file.exists() ) {
                 // TODO: What if the file already exists?
@@ -237,7 +338,12 @@ public class ServerConfig
     {
         myProfileDir = initProfiling();
         myTraceContent = initTracing();
+        myStreaming = initStreaming();
         myDefaultCharset = initCharset();
+        mySpillThreshold = Long.getLong(SPILL_THRESHOLD_PROPERTY, SPILL_THRESHOLD_DEFAULT);
+        myPartExecutor = initPartExecutor();
+        myAsyncExecutor = initAsyncExecutor();
+        myCompressor = initCompressor();
     }
 
     private static Repository initRepo(Storage storage)
@@ -269,10 +375,21 @@ public class ServerConfig
     private static boolean initTracing()
             throws TechnicalException
     {
-        String name = TRACE_CONTENT_PROPERTY;
+        return initBoolean(TRACE_CONTENT_PROPERTY, false);
+    }
+
+    private static boolean initStreaming()
+            throws TechnicalException
+    {
+        return initBoolean(STREAMING_PROPERTY, false);
+    }
+
+    private static boolean initBoolean(String name, boolean dflt)
+            throws TechnicalException
+    {
         String value = System.getProperty(name);
         if ( value == null ) {
-            return false;
+            return dflt;
         }
         else if ( "true".equals(value) ) {
             return true;
@@ -285,6 +402,80 @@ public class ServerConfig
         }
     }
 
+    private static Compressor initCompressor()
+            throws TechnicalException
+    {
+        if ( ! initBoolean(COMPRESS_PROPERTY, true) ) {
+            return null;
+        }
+        int min = Integer.getInteger(COMPRESS_MIN_PROPERTY, COMPRESS_MIN_DEFAULT);
+        int level = Integer.getInteger(COMPRESS_LEVEL_PROPERTY, COMPRESS_LEVEL_DEFAULT);
+        if ( level < 1 || level > 9 ) {
+            throw new TechnicalException("Invalid value for the property " + COMPRESS_LEVEL_PROPERTY + ": " + level);
+        }
+        String types = System.getProperty(COMPRESS_TYPES_PROPERTY, COMPRESS_TYPES_DEFAULT);
+        Set<String> set = new HashSet<>();
+        for ( String t : types.split(",") ) {
+            if ( ! t.trim().isEmpty() ) {
+                set.add(t.trim());
+            }
+        }
+        return new Compressor(set, min, level);
+    }
+
+    private static ExecutorService initPartExecutor()
+    {
+        int threads = Integer.getInteger(PART_THREADS_PROPERTY, PART_THREADS_DEFAULT);
+        if ( threads <= 0 ) {
+            return null;
+        }
+        LOG.info("Parse multipart parts in parallel, on " + threads + " threads");
+        return new ThreadPoolExecutor(
+                threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * PART_QUEUE_FACTOR),
+                new NamedThreads("servlex-part-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private static ExecutorService initAsyncExecutor()
+            throws TechnicalException
+    {
+        String value = System.getProperty(ASYNC_PROPERTY);
+        if ( value == null || "off".equals(value) ) {
+            return null;
+        }
+        if ( "virtual".equals(value) ) {
+            // by reflection, to still run on older JVMs when not used
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                LOG.info("Serve the requests asynchronously, on virtual threads");
+                return (ExecutorService) factory.invoke(null);
+            }
+            catch ( NoSuchMethodException ex ) {
+                throw new TechnicalException("Virtual threads require Java 21 or later (" + ASYNC_PROPERTY + ")", ex);
+            }
+            catch ( IllegalAccessException | InvocationTargetException ex ) {
+                throw new TechnicalException("Error creating the virtual thread executor", ex);
+            }
+        }
+        int threads;
+        try {
+            threads = Integer.parseInt(value);
+        }
+        catch ( NumberFormatException ex ) {
+            threads = -1;
+        }
+        if ( threads <= 0 ) {
+            throw new TechnicalException("Invalid value for the property " + ASYNC_PROPERTY + ": " + value);
+        }
+        LOG.info("Serve the requests asynchronously, on " + threads + " threads");
+        return new ThreadPoolExecutor(
+                threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * ASYNC_QUEUE_FACTOR),
+                new NamedThreads("servlex-async-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
     private static String initCharset()
             throws TechnicalException
     {
@@ -325,6 +516,10 @@ public class ServerConfig
 
     /** The logger. */
     private static final Log LOG = new Log(ServerConfig.class);
+    /** The number of parts queued per thread of the part worker pool, before using the request thread. */
+    private static final int PART_QUEUE_FACTOR = 16;
+    /** The number of requests queued per thread of the async pool, before rejecting them. */
+    private static final int ASYNC_QUEUE_FACTOR = 16;
 
     /** The singleton instance. */
     private static ServerConfig INSTANCE;
@@ -335,10 +530,43 @@ public class ServerConfig
     private ProcessorsMap myProcessors;
     /** Include request and response content in the logs? */
     private boolean myTraceContent = false;
+    /** Stream the result of the last component straight to the response? */
+    private boolean myStreaming = false;
     /** Default charset to use when none is set on the request. */
     private String myDefaultCharset = null;
+    /** The size above which binary request bodies are spilled to disk, unless negative. */
+    private long mySpillThreshold = SPILL_THRESHOLD_DEFAULT;
+    /** The worker pool to parse multipart parts in parallel, if any. */
+    private ExecutorService myPartExecutor = null;
+    /** The executor to serve the requests asynchronously, if any. */
+    private ExecutorService myAsyncExecutor = null;
+    /** The compressor for the dynamic responses, if enabled. */
+    private Compressor myCompressor = null;
     /** The profile directory, if profiling is enabled. */
     private File myProfileDir;
+
+    /**
+     * Create the threads of the worker pools, as daemons, named after the pool.
+     */
+    private static class NamedThreads
+            implements ThreadFactory
+    {
+        public NamedThreads(String prefix)
+        {
+            myPrefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread t = new Thread(r, myPrefix + myCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+
+        private final String myPrefix;
+        private final AtomicInteger myCount = new AtomicInteger();
+    }
 }
 
 
@@ -11,12 +11,12 @@ package org.expath.servlex;
 
 import org.expath.servlex.runtime.Invocation;
 import org.expath.servlex.model.Application;
+import org.expath.servlex.model.Bulkhead;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -28,7 +28,10 @@ import org.expath.servlex.connectors.Connector;
 import org.expath.servlex.connectors.RequestConnector;
 import org.expath.servlex.processors.Processors;
 import org.expath.servlex.runtime.ComponentError;
+import org.expath.servlex.runtime.ExecutionContext;
+import org.expath.servlex.runtime.RequestContext;
 import org.expath.servlex.tools.Auditor;
+import org.expath.servlex.tools.DeferredTree;
 import org.expath.servlex.tools.SequenceProperties;
 import org.expath.servlex.tools.StringsProperties;
 
@@ -53,26 +56,22 @@ public class Servlex
         extends HttpServlet
 {
     /**
-     * Get the request properties.
+     * Get the properties of the request being served in {@code ctxt}.
      */
-    public static SequenceProperties getRequestMap()
+    public static SequenceProperties getRequestMap(RequestContext ctxt)
             throws TechnicalException
     {
-        HttpServletRequest request = myCurrentRequest.get();
+        HttpServletRequest request = ctxt.getRequest();
         Object obj = request.getAttribute(REQUEST_MAP_ATTR);
         if ( obj == null ) {
-            Application app = myCurrentApplication.get();
+            Application app = ctxt.getApplication();
             if ( app == null ) {
                 throw new TechnicalException("No current application when accessing the request map");
             }
             Processors procs = app.getProcessors();
             SequenceProperties props = new SequenceProperties(PRIVATE_PROPS_PREFIX, procs);
-            // TODO: Add a request unique identifier in the properties, in order to identify a
-            // request uniquely, e.g. to create file name for the audit..., say "web:request-id"...
             try {
-                String now  = NOW_FORMAT.format(new Date());
-                String uuid = UUID.randomUUID().toString();
-                props.setPrivate(PROP_REQUEST_ID, now + "-" + uuid);
+                props.setPrivate(PROP_REQUEST_ID, ctxt.getRequestId());
             }
             catch ( TechnicalException ex ) {
                 throw new TechnicalException("Unexpected exception", ex);
@@ -89,16 +88,15 @@ public class Servlex
     }
 
     /**
-     * Get the session properties.
+     * Get the properties of the session of the request being served in {@code ctxt}.
      */
-    public static SequenceProperties getSessionMap()
+    public static SequenceProperties getSessionMap(RequestContext ctxt)
             throws TechnicalException
     {
-        HttpServletRequest request = myCurrentRequest.get();
-        HttpSession session = request.getSession();
+        HttpSession session = ctxt.getRequest().getSession();
         Object obj = session.getAttribute(SESSION_MAP_ATTR);
         if ( obj == null ) {
-            Application app = myCurrentApplication.get();
+            Application app = ctxt.getApplication();
             if ( app == null ) {
                 throw new TechnicalException("No current application when accessing the session map");
             }
@@ -116,12 +114,12 @@ public class Servlex
     }
 
     /**
-     * Get the webapp properties.
+     * Get the properties of the webapp serving the request in {@code ctxt}.
      */
-    public static SequenceProperties getWebappMap()
+    public static SequenceProperties getWebappMap(RequestContext ctxt)
             throws TechnicalException
     {
-        Application app = myCurrentApplication.get();
+        Application app = ctxt.getApplication();
         if ( app == null ) {
             throw new TechnicalException("No current application when accessing the application map");
         }
@@ -129,12 +127,12 @@ public class Servlex
     }
 
     /**
-     * Get the current webapp in scope in this thread (serving the current request).
+     * Get the webapp serving the request in {@code ctxt}.
      */
-    public static Application getCurrentWebapp()
+    public static Application getCurrentWebapp(RequestContext ctxt)
             throws TechnicalException
     {
-        Application app = myCurrentApplication.get();
+        Application app = ctxt.getApplication();
         if ( app == null ) {
             throw new TechnicalException("No current application when trying to access it");
         }
@@ -220,14 +218,45 @@ public class Servlex
 
     /**
      * Handles HTTP requests.
+     * 
+     * In asynchronous mode, the request is served on the async executor, and
+     * the container thread is released right away.  Else it is served on the
+     * container thread (see {@link ServerConfig#getAsyncExecutor()}).
      */
     @Override
     protected void service(HttpServletRequest req, HttpServletResponse resp)
             throws IOException
     {
         LOG.info("Received request: " + req.getMethod() + " " + req.getRequestURL());
-        // set the contextual request
-        myCurrentRequest.set(req);
+        ExecutorService executor = ourConfig.getAsyncExecutor();
+        if ( executor == null || ! req.isAsyncSupported() ) {
+            serve(new RequestContext(req), resp);
+            return;
+        }
+        AsyncContext async = req.startAsync(req, resp);
+        // no timeout, as in synchronous mode
+        async.setTimeout(0);
+        try {
+            executor.execute(new AsyncServe(new RequestContext(req), async));
+        }
+        catch ( RejectedExecutionException ex ) {
+            LOG.error("503: No thread available to serve the request", ex);
+            try {
+                resp.sendError(503, "Service Unavailable");
+            }
+            finally {
+                async.complete();
+            }
+        }
+    }
+
+    /**
+     * Serve a request, on the current thread.
+     */
+    private void serve(RequestContext ctxt, HttpServletResponse resp)
+            throws IOException
+    {
+        HttpServletRequest req = ctxt.getRequest();
         // set the encoding if not explicit
         if ( req.getCharacterEncoding() == null ) {
             String charset = ourConfig.getDefaultCharset();
@@ -240,28 +269,67 @@ public class Servlex
             // parse the request path
             PathInfo path = new PathInfo(req);
             Application app = path.getApplication();
-            myCurrentApplication.set(app);
+            ctxt.setApplication(app);
             if ( app == null ) {
                 welcome(resp);
             }
             else {
-                invoke(path, req, resp);
+                // count it in flight, for the app not to be retired meanwhile
+                app.enter();
+                try {
+                    invoke(path, ctxt, resp);
+                }
+                finally {
+                    app.leave();
+                }
             }
         }
         catch ( ServlexException ex ) {
             LOG.error("Servlet threw an exception", ex);
-            ex.sendError(resp);
+            if ( resp.isCommitted() ) {
+                // the response has been streamed, too late for an error page
+                LOG.error("Response already committed, cannot send the error");
+            }
+            else {
+                ex.sendError(resp);
+            }
         }
         catch ( Throwable ex ) {
             // in last resort... (this function is the main entry point in Servlex)
             LOG.error("Servlet threw an unexpected exception", ex);
             resp.sendError(500, "Internal Server Error");
         }
-        finally {
-            myCurrentRequest.remove();
-            myCurrentApplication.remove();
+    }
+
+    /**
+     * Serve a request on the async executor, then complete it.
+     */
+    private class AsyncServe
+            implements Runnable
+    {
+        public AsyncServe(RequestContext ctxt, AsyncContext async)
+        {
+            myCtxt = ctxt;
+            myAsync = async;
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                serve(myCtxt, (HttpServletResponse) myAsync.getResponse());
+            }
+            catch ( IOException ex ) {
+                LOG.error("Error serving the request asynchronously", ex);
+            }
+            finally {
+                myAsync.complete();
+            }
         }
-    } 
+
+        private final RequestContext myCtxt;
+        private final AsyncContext myAsync;
+    }
 
     /**
      * Display a welcome message and a link to the manager.
@@ -289,20 +357,42 @@ public class Servlex
         }
     }
 
+    /**
+     * Invoke the application, once the request has been admitted by its bulkhead.
+     * 
+     * The request is rejected with a 503 if the application is already
+     * serving too many requests (see {@link Bulkhead}).
+     */
+    private void invoke(PathInfo info, RequestContext ctxt, HttpServletResponse resp)
+            throws IOException
+                 , ServlexException
+    {
+        // admission control, before resolving anything
+        Bulkhead bulkhead = info.getApplication().getBulkhead();
+        bulkhead.acquire();
+        try {
+            doInvoke(info, ctxt, resp);
+        }
+        finally {
+            bulkhead.release();
+        }
+    }
+
     /**
      * TODO: ...
      */
-    private void invoke(PathInfo info, HttpServletRequest req, HttpServletResponse resp)
+    private void doInvoke(PathInfo info, RequestContext rctxt, HttpServletResponse resp)
             throws IOException
                  , ServlexException
     {
+        HttpServletRequest req = rctxt.getRequest();
         // retrieve the application
         String      appname = info.getAppName();
         String      path    = info.getPath();
         Application app     = info.getApplication();
         Processors  procs   = app.getProcessors();
         req.setAttribute("servlex.webapp", app);
-        Auditor auditor = new Auditor(ourConfig, procs);
+        Auditor auditor = new Auditor(ourConfig, procs, rctxt);
         // resolve the component
         RequestConnector request = new RequestConnector(req, path, appname, procs, auditor);
         Invocation invoc;
@@ -314,28 +404,46 @@ public class Servlex
         }
         // log request and profiling info
         auditor.begin(request);
-        // invoke the component
-        Connector result = null;
+        // the resources acquired for this request only, by the components
+        ExecutionContext ctxt = new ExecutionContext(rctxt);
+        // the request itself (e.g. spilled bodies) is released after the response
+        ctxt.register(request);
         try {
-            result = invoc.invoke(request, app, ourConfig, auditor);
+            // invoke the component
+            Connector result;
+            try {
+                result = invoc.invoke(request, app, ourConfig, auditor, ctxt);
+            }
+            catch ( ComponentError ex ) {
+                // TODO: Shouldn't we set the result even in this case...?
+                throw new ServlexException(500, "Internal error", ex);
+            }
+            finally {
+                invoc.cleanup(auditor);
+            }
+            // connect the result to the client
+            result.connectToResponse(req, resp, ourConfig, procs);
+            // clean everything
+            result.cleanup(auditor);
         }
-        catch ( ComponentError ex ) {
-            // TODO: Shouldn't we set the result even in this case...?
-            throw new ServlexException(500, "Internal error", ex);
+        catch ( ServlexException ex ) {
+            // a malformed streamed body is a bad request, whatever the error
+            throw request.checkBodyError(ex);
+        }
+        catch ( DeferredTree.BuildError ex ) {
+            // a part of web:request built on first access, by a component
+            throw request.checkBodyError(new ServlexException(500, "Internal error", ex));
         }
         finally {
-            invoc.cleanup(auditor);
-            // end the audit in case of exception (if result is null)
-            if ( result == null ) {
+            // release the request resources only once the response is sent
+            // (or in case of exception), and end the audit in all cases
+            try {
+                ctxt.cleanup(auditor);
+            }
+            finally {
                 auditor.end();
             }
         }
-        // connect the result to the client
-        result.connectToResponse(resp, ourConfig, procs);
-        // clean everything
-        result.cleanup(auditor);
-        // end the audit
-        auditor.end();
     }
 
     /** The name of the attributes used in this class (on the requests, sessions, and contexts). */
@@ -346,16 +454,6 @@ public class Servlex
     /** The logger. */
     private static final Log LOG = new Log(Servlex.class);
 
-    /** The date formatter. */
-    private static final DateFormat NOW_FORMAT = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS");
-
-    /** The HTTP request currently handled (thread-local storage). */
-    private static final ThreadLocal<HttpServletRequest> myCurrentRequest
-            = new ThreadLocal<HttpServletRequest>();
-    /** The webapp serving the HTTP request currently handled (thread-local storage). */
-    private static final ThreadLocal<Application> myCurrentApplication
-            = new ThreadLocal<Application>();
-
     /**
      * The config of this servlet.
      *
@@ -63,6 +63,47 @@ public class ServlexConstants
     public static final String TRACE_CONTENT_PROPERTY   = "org.expath.servlex.trace.content";
     /** The system property name for whether logging HTTP entity content. */
     public static final String DEFAULT_CHARSET_PROPERTY = "org.expath.servlex.default.charset";
+    /** The system property name for the max number of path resolutions cached per application. */
+    public static final String RESOLVE_CACHE_PROPERTY   = "org.expath.servlex.resolve.cache.size";
+    /** The default max number of path resolutions cached per application. */
+    public static final int    RESOLVE_CACHE_DEFAULT    = 1024;
+    /** The system property name for the max number of bytes of static resources cached per application. */
+    public static final String RESOURCE_CACHE_PROPERTY  = "org.expath.servlex.resource.cache.size";
+    /** The default max number of bytes of static resources cached per application (16 MiB). */
+    public static final long   RESOURCE_CACHE_DEFAULT   = 16 * 1024 * 1024;
+    /** The system property name for whether compiling components at deploy and startup. */
+    public static final String COMPILE_EAGER_PROPERTY   = "org.expath.servlex.compile.eager";
+    /** The system property name for the max number of idle pipelines pooled per XProc component. */
+    public static final String XPROC_POOL_PROPERTY      = "org.expath.servlex.xproc.pool.size";
+    /** The default max number of idle pipelines pooled per XProc component. */
+    public static final int    XPROC_POOL_DEFAULT       = 8;
+    /** The system property name for streaming the final result straight to the HTTP response. */
+    public static final String STREAMING_PROPERTY       = "org.expath.servlex.response.streaming";
+    /** The system property name for the size above which binary request bodies are spilled to disk. */
+    public static final String SPILL_THRESHOLD_PROPERTY = "org.expath.servlex.request.spill.threshold";
+    /** The default size above which binary request bodies are spilled to disk (never). */
+    public static final long   SPILL_THRESHOLD_DEFAULT  = -1;
+    /** The system property name for the number of threads parsing multipart parts in parallel. */
+    public static final String PART_THREADS_PROPERTY    = "org.expath.servlex.request.part.threads";
+    /** The default number of threads parsing multipart parts in parallel (none, parse them in sequence). */
+    public static final int    PART_THREADS_DEFAULT     = 0;
+    /** The system property name for serving the requests asynchronously ("virtual", or a number of threads). */
+    public static final String ASYNC_PROPERTY           = "org.expath.servlex.async";
+    /** The system property name for compressing the responses, if the client accepts gzip. */
+    public static final String COMPRESS_PROPERTY        = "org.expath.servlex.response.compress";
+    /** The system property name for the min size of a response to compress it, in bytes. */
+    public static final String COMPRESS_MIN_PROPERTY    = "org.expath.servlex.response.compress.min";
+    /** The default min size of a response to compress it, in bytes. */
+    public static final int    COMPRESS_MIN_DEFAULT     = 1024;
+    /** The system property name for the media types to compress (comma-separated, "+xml" for a suffix). */
+    public static final String COMPRESS_TYPES_PROPERTY  = "org.expath.servlex.response.compress.types";
+    /** The default media types to compress. */
+    public static final String COMPRESS_TYPES_DEFAULT   = "text/html,text/plain,text/css,text/xml,text/javascript,"
+            + "application/xml,application/json,application/javascript,+xml,+json";
+    /** The system property name for the compression level, from 1 (fastest) to 9 (best). */
+    public static final String COMPRESS_LEVEL_PROPERTY  = "org.expath.servlex.response.compress.level";
+    /** The default compression level. */
+    public static final int    COMPRESS_LEVEL_DEFAULT   = 6;
 
     /** The system property name for the path to a Saxon configuration file. */
     public static final String SAXON_CONFIG_FILE_PROPERTY = "org.expath.servlex.saxon.config.file";
@@ -42,6 +42,14 @@ public class ServlexException
         myCode = code;
     }
 
+    /**
+     * Return the HTTP status code of the error.
+     */
+    public int getCode()
+    {
+        return myCode;
+    }
+
     /**
      * Add a new header, to be set on the response in case sendError() is called.
      */
@@ -0,0 +1,771 @@
+/****************************************************************************/
+/*  File:       StreamingResult.java                                        */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.namespace.QName;
+import org.expath.servlex.processors.Processors;
+import org.expath.servlex.processors.Serializer;
+import org.expath.servlex.tools.Compressor;
+import org.expath.servlex.tools.Conditional;
+import org.expath.servlex.tools.Log;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.NamespaceSupport;
+
+/**
+ * Respond to the client as the result of the last component is produced.
+ *
+ * This is the streaming counterpart of {@link Result}.  The SAX events of the
+ * result are intercepted: the element web:response and its children
+ * web:header are decoded on the fly, and the status and headers are set on
+ * the response as soon as the body starts.  The content of the web:body is
+ * then piped through the serializer, straight to the output stream of the
+ * response, without building any intermediary tree.  If the web:body is
+ * empty, the body is the next item after the web:response element, like
+ * with {@link Result}.
+ *
+ * As long as nothing has been sent to the client, all events are also sent
+ * to a buffer (typically a tree builder).  If the result uses anything this
+ * class does not support (e.g. web:multipart or web:body/@src) or if it is
+ * invalid, it stops intercepting and the events are only sent to the buffer.
+ * In that case, {@link #isBuffered()} returns true and the caller must
+ * respond using {@link Result} on the tree built from the buffer, which also
+ * takes care of reporting errors.  Once the response has been committed,
+ * errors are reported as SAX exceptions.
+ *
+ * @author Florent Georges
+ */
+public class StreamingResult
+        implements ContentHandler
+                 , LexicalHandler
+{
+    /**
+     * Build a new streaming result.
+     * 
+     * @param req The servlet standard request object being responded to
+     * (for conditional requests and content negotiation, null if none).
+     * 
+     * @param resp The servlet standard response object where to respond to.
+     * 
+     * @param procs The processors used for the request.
+     * 
+     * @param buffer The handler receiving all events until the response is
+     * committed, used to fall back to {@link Result}.
+     */
+    public StreamingResult(HttpServletRequest req, HttpServletResponse resp, Processors procs, ContentHandler buffer)
+    {
+        this(req, resp, procs, buffer, null);
+    }
+
+    /**
+     * Build a new streaming result, compressing the body if negotiated.
+     * 
+     * @param compressor The compressor for the body, null not to compress it.
+     */
+    public StreamingResult(HttpServletRequest req, HttpServletResponse resp, Processors procs, ContentHandler buffer, Compressor compressor)
+    {
+        myRequest = req;
+        myResp = resp;
+        myCompressor = compressor;
+        myProcs = procs;
+        myBuffer = buffer;
+        myState = State.START;
+        myNamespaces = new NamespaceSupport();
+        myHeaders = new ArrayList<>();
+    }
+
+    /**
+     * Return true if the result could not be streamed.
+     * 
+     * In that case, nothing has been sent to the client, and the buffer has
+     * received all the events.
+     */
+    public boolean isBuffered()
+    {
+        return myState == State.BUFFERED;
+    }
+
+    /**
+     * Abort the body being streamed, if any, after an error producing it.
+     * 
+     * A compressed body is left unfinished, so the client cannot take it for
+     * a complete one.
+     */
+    public void abort()
+    {
+        if ( myStream != null ) {
+            Compressor.abort(myStream);
+            myStream = null;
+        }
+    }
+
+    // =======================================================================
+    //     Content handler
+    //     ---------------
+    // -----------------------------------------------------------------------
+
+    @Override
+    public void setDocumentLocator(Locator locator)
+    {
+        if ( myBuffer != null ) {
+            myBuffer.setDocumentLocator(locator);
+        }
+    }
+
+    @Override
+    public void startDocument()
+            throws SAXException
+    {
+        if ( myBuffer != null ) {
+            myBuffer.startDocument();
+        }
+    }
+
+    @Override
+    public void endDocument()
+            throws SAXException
+    {
+        if ( myBuffer != null ) {
+            myBuffer.endDocument();
+        }
+        switch ( myState ) {
+            case TEXT:
+                endBody();
+                break;
+            case AFTER:
+                // the body is the next item, but there is none
+                irregular("Not enough bodies: 1");
+                break;
+            case START:
+                irregular("First item must be an element");
+                break;
+            default:
+                // nothing
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri)
+            throws SAXException
+    {
+        if ( myBuffer != null ) {
+            myBuffer.startPrefixMapping(prefix, uri);
+        }
+        if ( myOut != null ) {
+            myOut.startPrefixMapping(prefix, uri);
+        }
+        if ( ! myContextPushed ) {
+            myNamespaces.pushContext();
+            myContextPushed = true;
+        }
+        myNamespaces.declarePrefix(prefix, uri);
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix)
+            throws SAXException
+    {
+        if ( myBuffer != null ) {
+            myBuffer.endPrefixMapping(prefix);
+        }
+        if ( myOut != null ) {
+            myOut.endPrefixMapping(prefix);
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String local, String qname, Attributes atts)
+            throws SAXException
+    {
+        if ( ! myContextPushed ) {
+            myNamespaces.pushContext();
+        }
+        myContextPushed = false;
+        int depth = myDepth++;
+        if ( myBuffer != null ) {
+            myBuffer.startElement(uri, local, qname, atts);
+        }
+        if ( myOut != null && myState != State.TEXT ) {
+            myOut.startElement(uri, local, qname, atts);
+            return;
+        }
+        QName name = new QName(uri, local);
+        switch ( myState ) {
+            case START:
+                if ( name.equals(RESP_NAME) ) {
+                    handleResponse(atts);
+                }
+                else {
+                    irregular("First item must be a web:response element (" + name + ")");
+                }
+                break;
+            case RESPONSE:
+                if ( depth == 1 ) {
+                    handleResponseChild(name, atts);
+                }
+                break;
+            case BODY:
+                if ( commit() ) {
+                    myOut.startElement(uri, local, qname, atts);
+                }
+                break;
+            case AFTER:
+                if ( commit() ) {
+                    myState = State.ITEM;
+                    myOut.startElement(uri, local, qname, atts);
+                }
+                break;
+            case TEXT:
+                endBody();
+                break;
+            default:
+                // nothing
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String local, String qname)
+            throws SAXException
+    {
+        myNamespaces.popContext();
+        int depth = --myDepth;
+        if ( myBuffer != null ) {
+            myBuffer.endElement(uri, local, qname);
+        }
+        switch ( myState ) {
+            case RESPONSE:
+                if ( depth == 0 ) {
+                    endResponse();
+                }
+                break;
+            case BODY:
+                if ( depth == 1 ) {
+                    if ( myOut != null ) {
+                        endBody();
+                    }
+                    else {
+                        // empty web:body, the body is the next item
+                        myPending = true;
+                        myState = State.RESPONSE;
+                    }
+                }
+                else {
+                    myOut.endElement(uri, local, qname);
+                }
+                break;
+            case ITEM:
+                myOut.endElement(uri, local, qname);
+                if ( depth == 0 ) {
+                    endBody();
+                }
+                break;
+            default:
+                // nothing
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length)
+            throws SAXException
+    {
+        if ( myBuffer != null ) {
+            myBuffer.characters(ch, start, length);
+        }
+        if ( myState == State.BODY && myOut == null ) {
+            commit();
+        }
+        else if ( myState == State.AFTER && myDepth == 0 && commit() ) {
+            myState = State.TEXT;
+        }
+        if ( myOut != null ) {
+            myOut.characters(ch, start, length);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length)
+            throws SAXException
+    {
+        if ( myBuffer != null ) {
+            myBuffer.ignorableWhitespace(ch, start, length);
+        }
+        if ( myOut != null ) {
+            myOut.ignorableWhitespace(ch, start, length);
+        }
+    }
+
+    @Override
+    public void processingInstruction(String target, String data)
+            throws SAXException
+    {
+        if ( myBuffer != null ) {
+            myBuffer.processingInstruction(target, data);
+        }
+        if ( myState == State.BODY && myOut == null ) {
+            commit();
+        }
+        else if ( myState == State.AFTER ) {
+            irregular("Processing instruction not supported as a body");
+        }
+        if ( myOut != null ) {
+            myOut.processingInstruction(target, data);
+        }
+    }
+
+    @Override
+    public void skippedEntity(String name)
+            throws SAXException
+    {
+        if ( myBuffer != null ) {
+            myBuffer.skippedEntity(name);
+        }
+        if ( myOut != null ) {
+            myOut.skippedEntity(name);
+        }
+    }
+
+    // =======================================================================
+    //     Lexical handler
+    //     ---------------
+    // -----------------------------------------------------------------------
+
+    @Override
+    public void comment(char[] ch, int start, int length)
+            throws SAXException
+    {
+        if ( myBuffer instanceof LexicalHandler ) {
+            ((LexicalHandler) myBuffer).comment(ch, start, length);
+        }
+        if ( myState == State.BODY && myOut == null ) {
+            commit();
+        }
+        else if ( myState == State.AFTER ) {
+            irregular("Comment not supported as a body");
+        }
+        if ( myOut instanceof LexicalHandler ) {
+            ((LexicalHandler) myOut).comment(ch, start, length);
+        }
+    }
+
+    @Override
+    public void startCDATA()
+            throws SAXException
+    {
+        if ( myBuffer instanceof LexicalHandler ) {
+            ((LexicalHandler) myBuffer).startCDATA();
+        }
+        if ( myOut instanceof LexicalHandler ) {
+            ((LexicalHandler) myOut).startCDATA();
+        }
+    }
+
+    @Override
+    public void endCDATA()
+            throws SAXException
+    {
+        if ( myBuffer instanceof LexicalHandler ) {
+            ((LexicalHandler) myBuffer).endCDATA();
+        }
+        if ( myOut instanceof LexicalHandler ) {
+            ((LexicalHandler) myOut).endCDATA();
+        }
+    }
+
+    @Override
+    public void startDTD(String name, String publicId, String systemId)
+            throws SAXException
+    {
+        if ( myBuffer instanceof LexicalHandler ) {
+            ((LexicalHandler) myBuffer).startDTD(name, publicId, systemId);
+        }
+    }
+
+    @Override
+    public void endDTD()
+            throws SAXException
+    {
+        if ( myBuffer instanceof LexicalHandler ) {
+            ((LexicalHandler) myBuffer).endDTD();
+        }
+    }
+
+    @Override
+    public void startEntity(String name)
+            throws SAXException
+    {
+        if ( myBuffer instanceof LexicalHandler ) {
+            ((LexicalHandler) myBuffer).startEntity(name);
+        }
+    }
+
+    @Override
+    public void endEntity(String name)
+            throws SAXException
+    {
+        if ( myBuffer instanceof LexicalHandler ) {
+            ((LexicalHandler) myBuffer).endEntity(name);
+        }
+    }
+
+    // =======================================================================
+    //     Decode the response
+    //     -------------------
+    // -----------------------------------------------------------------------
+
+    private void handleResponse(Attributes atts)
+            throws SAXException
+    {
+        myState = State.RESPONSE;
+        for ( int i = 0; i < atts.getLength(); ++i ) {
+            QName name = new QName(atts.getURI(i), atts.getLocalName(i));
+            String value = atts.getValue(i);
+            if ( name.equals(STATUS_NAME) ) {
+                try {
+                    myStatus = Integer.valueOf(value);
+                }
+                catch ( NumberFormatException ex ) {
+                    irregular("Invalid status on web:response: " + value);
+                }
+            }
+            else if ( name.equals(MSG_NAME) ) {
+                myMsg = value;
+            }
+            else if ( name.getNamespaceURI().equals("") ) {
+                irregular("Unknown attribute on web:response: " + name);
+            }
+        }
+    }
+
+    private void handleResponseChild(QName name, Attributes atts)
+            throws SAXException
+    {
+        if ( name.equals(HEADER_NAME) ) {
+            if ( myCommitted ) {
+                irregular("Header after the body has been sent: " + atts.getValue("name"));
+                return;
+            }
+            String[] h = new String[2];
+            for ( int i = 0; i < atts.getLength(); ++i ) {
+                QName n = new QName(atts.getURI(i), atts.getLocalName(i));
+                if ( n.equals(NAME_NAME) ) {
+                    h[0] = atts.getValue(i);
+                }
+                else if ( n.equals(VALUE_NAME) ) {
+                    h[1] = atts.getValue(i);
+                }
+                else {
+                    irregular("Unknown attribute on web:header: " + n);
+                }
+            }
+            myHeaders.add(h);
+        }
+        else if ( name.equals(BODY_NAME) ) {
+            if ( myCommitted || myPending ) {
+                irregular("Only one web:body is supported");
+                return;
+            }
+            handleBody(atts);
+        }
+        else if ( name.equals(MULTI_NAME) ) {
+            irregular("Multipart not supported when streaming");
+        }
+        else {
+            irregular("Unknown web:response child: " + name);
+        }
+    }
+
+    private void handleBody(Attributes atts)
+            throws SAXException
+    {
+        try {
+            mySerializer = myProcs.makeSerializer();
+            for ( int i = 0; i < atts.getLength(); ++i ) {
+                String qname = atts.getQName(i);
+                int colon = qname.indexOf(':');
+                String prefix = colon < 0 ? "" : qname.substring(0, colon);
+                QName name = new QName(atts.getURI(i), atts.getLocalName(i), prefix);
+                String value = atts.getValue(i);
+                if ( name.equals(ID_NAME) ) {
+                    myId = value;
+                }
+                else if ( name.equals(DESC_NAME) ) {
+                    myDescription = value;
+                }
+                else if ( name.equals(SRC_NAME) ) {
+                    irregular("Attribute web:body/@src not supported when streaming");
+                    return;
+                }
+                else {
+                    Result.setOutputProperty(mySerializer, name, value);
+                }
+            }
+            myState = State.BODY;
+        }
+        catch ( TechnicalException | ServlexException ex ) {
+            irregular("Error configuring the serializer: " + ex.getMessage());
+        }
+    }
+
+    private void endResponse()
+            throws SAXException
+    {
+        if ( myPending ) {
+            myState = State.AFTER;
+        }
+        else {
+            if ( myCommitted || commit() ) {
+                myState = State.DONE;
+            }
+        }
+    }
+
+    // =======================================================================
+    //     Send the response
+    //     -----------------
+    // -----------------------------------------------------------------------
+
+    /**
+     * Send the status and the headers, and open the body if any.
+     * 
+     * Return false if the result falls back to the buffer instead.
+     */
+    private boolean commit()
+            throws SAXException
+    {
+        if ( Conditional.isNotModified(myRequest, myStatus, getETag()) ) {
+            return commitNotModified();
+        }
+        ContentHandler out = null;
+        if ( mySerializer != null ) {
+            try {
+                OutputStream stream = myCompressor == null
+                        ? myResp.getOutputStream()
+                        : myCompressor.open(myRequest, myResp, mySerializer.getMediaType(), myStatus);
+                out = mySerializer.makeContentHandler(stream);
+                myStream = stream;
+            }
+            catch ( IOException | TechnicalException ex ) {
+                LOG.error("Error opening the response body", ex);
+                irregular("Error opening the response body");
+                return false;
+            }
+        }
+        myResp.setStatus(myStatus, myMsg);
+        for ( String[] h : myHeaders ) {
+            myResp.addHeader(h[0], h[1]);
+        }
+        myCommitted = true;
+        myBuffer = null;
+        if ( out == null ) {
+            return true;
+        }
+        String type     = mySerializer.getMediaType();
+        String encoding = mySerializer.getEncoding();
+        if ( LOG.debug() ) {
+            LOG.debug("Streaming, media type: " + type + ", encoding: " + encoding);
+        }
+        myResp.setContentType(type);
+        myResp.setCharacterEncoding(encoding);
+        if ( myDescription != null ) {
+            myResp.addHeader("Content-Description", myDescription);
+        }
+        if ( myId != null ) {
+            myResp.addHeader("Content-ID", myId);
+        }
+        myOut = out;
+        myOut.startDocument();
+        // the namespace declarations in scope, declared on web:response et al.
+        Enumeration<?> prefixes = myNamespaces.getPrefixes();
+        while ( prefixes.hasMoreElements() ) {
+            replayPrefix((String) prefixes.nextElement());
+        }
+        replayPrefix("");
+        return true;
+    }
+
+    /**
+     * The servlet returned an ETag matching If-None-Match, send a 304 and drop the body.
+     */
+    private boolean commitNotModified()
+            throws SAXException
+    {
+        myResp.setStatus(304);
+        for ( String[] h : myHeaders ) {
+            String value = "ETag".equalsIgnoreCase(h[0])
+                    ? Conditional.notModifiedTag(myRequest, h[1])
+                    : h[1];
+            myResp.addHeader(h[0], value);
+        }
+        if ( myCompressor != null ) {
+            myResp.addHeader("Vary", "Accept-Encoding");
+        }
+        myCommitted = true;
+        myBuffer = null;
+        if ( mySerializer == null ) {
+            return true;
+        }
+        // the body events are consumed, but go nowhere
+        myOut = new DefaultHandler();
+        myOut.startDocument();
+        return true;
+    }
+
+    /**
+     * Return the value of the header ETag, if the servlet returned one.
+     */
+    private String getETag()
+    {
+        for ( String[] h : myHeaders ) {
+            if ( "ETag".equalsIgnoreCase(h[0]) ) {
+                return h[1];
+            }
+        }
+        return null;
+    }
+
+    private void replayPrefix(String prefix)
+            throws SAXException
+    {
+        String uri = myNamespaces.getURI(prefix);
+        if ( uri != null && ! "xml".equals(prefix) ) {
+            myOut.startPrefixMapping(prefix, uri);
+        }
+    }
+
+    private void endBody()
+            throws SAXException
+    {
+        myOut.endDocument();
+        myOut = null;
+        if ( myStream != null ) {
+            // finish the compressed body, if any
+            try {
+                myStream.close();
+            }
+            catch ( IOException ex ) {
+                throw new SAXException("Error closing the response body", ex);
+            }
+            myStream = null;
+        }
+        myState = myState == State.BODY ? State.RESPONSE : State.DONE;
+    }
+
+    /**
+     * Fall back to the buffer, or raise an error if the response is committed.
+     */
+    private void irregular(String msg)
+            throws SAXException
+    {
+        if ( myCommitted ) {
+            LOG.error(msg);
+            throw new SAXException(msg);
+        }
+        if ( LOG.debug() ) {
+            LOG.debug("Cannot stream the result, fall back to buffering: " + msg);
+        }
+        myState = State.BUFFERED;
+    }
+
+    /** Where we are in the result. */
+    private enum State
+    {
+        /** Before the web:response element. */
+        START,
+        /** Within the web:response element. */
+        RESPONSE,
+        /** Within the web:body element. */
+        BODY,
+        /** After the web:response element, the body is the next item. */
+        AFTER,
+        /** Streaming the next item, an element, as the body. */
+        ITEM,
+        /** Streaming the next item, a text node, as the body. */
+        TEXT,
+        /** Everything has been sent, ignore the rest. */
+        DONE,
+        /** The result cannot be streamed, only send events to the buffer. */
+        BUFFERED
+    }
+
+    // the webapp namespace URI
+    private static final String WEB_NS   = "http://expath.org/ns/webapp";
+    // element names
+    private static final QName RESP_NAME   = new QName(WEB_NS, "response");
+    private static final QName HEADER_NAME = new QName(WEB_NS, "header");
+    private static final QName BODY_NAME   = new QName(WEB_NS, "body");
+    private static final QName MULTI_NAME  = new QName(WEB_NS, "multipart");
+    // attribute names
+    private static final QName STATUS_NAME = new QName("status");
+    private static final QName MSG_NAME    = new QName("message");
+    private static final QName NAME_NAME   = new QName("name");
+    private static final QName VALUE_NAME  = new QName("value");
+    private static final QName ID_NAME     = new QName("id");
+    private static final QName DESC_NAME   = new QName("description");
+    private static final QName SRC_NAME    = new QName("src");
+
+    private static final Log LOG = new Log(StreamingResult.class);
+
+    private final HttpServletRequest myRequest;
+    private final HttpServletResponse myResp;
+    /** The compressor for the body, if any. */
+    private final Compressor myCompressor;
+    /** The stream the body is written to, once opened. */
+    private OutputStream myStream;
+    private final Processors myProcs;
+    /** Receive all events until the response is committed, then null. */
+    private ContentHandler myBuffer;
+    /** The serializer handler, while streaming the body. */
+    private ContentHandler myOut;
+    private State myState;
+    private final NamespaceSupport myNamespaces;
+    private boolean myContextPushed = false;
+    private int myDepth = 0;
+    private boolean myCommitted = false;
+    /** An empty web:body has been seen, the body is the next item. */
+    private boolean myPending = false;
+    private int myStatus = -1;
+    private String myMsg;
+    private final List<String[]> myHeaders;
+    private Serializer mySerializer;
+    private String myId;
+    private String myDescription;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -10,11 +10,18 @@
 package org.expath.servlex;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import org.expath.pkg.repo.FileSystemStorage;
 import org.expath.pkg.repo.PackageException;
 import org.expath.pkg.repo.Package;
@@ -28,12 +35,32 @@ import org.expath.servlex.parser.EXPathWebParser;
 import org.expath.servlex.parser.WebappDecl;
 import org.expath.servlex.parser.WebappsParser;
 import org.expath.servlex.tools.Log;
+import org.expath.servlex.tools.PackageDigest;
 import org.expath.servlex.tools.ProcessorsMap;
 import org.expath.servlex.tools.WebappsXmlFile;
 
+import static org.expath.servlex.ServlexConstants.COMPILE_EAGER_PROPERTY;
+
 /**
  * The package repository, with support for EXPath Webapp.
  *
+ * The applications are kept in an immutable map, from context roots to
+ * applications.  Reading it never blocks.  Installing, removing or reloading
+ * applications builds a new map, then replaces the old one in one single
+ * write.  A request thread thus always sees a complete, consistent set of
+ * applications, either the one before or the one after the change.  The
+ * methods changing the map are synchronized, to serialize them.
+ *
+ * The applications can also be reloaded in the background, see {@link
+ * #reloadInBackground()}.
+ *
+ * If the system property {@code org.expath.servlex.compile.eager} is true,
+ * all components are compiled when the applications are loaded (at startup,
+ * install and reload), instead of lazily when first used.  A compilation
+ * error then makes the startup, install or reload fail.  When a forced
+ * install fails that way, the package it replaced is restored, so the
+ * application already served keeps working.
+ *
  * @author Florent Georges
  */
 public class WebRepository
@@ -46,7 +73,15 @@ public class WebRepository
     {
         myUnderlying = underlying;
         myProcs = procs;
-        myApps = initApplications();
+        myEagerCompile = Boolean.getBoolean(COMPILE_EAGER_PROPERTY);
+        myLastReload = new ReloadReport(false);
+        Map<String, Application> none = Collections.emptyMap();
+        Map<String, Application> apps = initApplications(myLastReload, none);
+        if ( myEagerCompile ) {
+            compileApplications(myLastReload, apps, none);
+        }
+        myApps = apps;
+        myLastReload.done();
         myWebappsXml = canInstall() ? getWebappsXml(underlying) : null;
     }
 
@@ -71,13 +106,150 @@ public class WebRepository
     /**
      * Reload the applications from the repository.
      * 
-     * The existing application objects are thrown away, and the web descriptors
-     * of all deployed applications are parsed again.
+     * The web descriptors of the deployed applications which changed since
+     * they were loaded are parsed again, and the corresponding application
+     * objects are thrown away.  The applications which did not change are
+     * kept as is (including their compiled components).  See {@link
+     * PackageDigest} for how changes are detected.
      */
     public synchronized void reload()
             throws TechnicalException
     {
-        myApps = initApplications();
+        ReloadReport report = new ReloadReport(false);
+        myLastReload = report;
+        Map<String, Application> retired = swap(report, false);
+        // no draining, the caller might be one of the in-flight requests
+        for ( Application app : retired.values() ) {
+            app.clearCaches();
+        }
+    }
+
+    /**
+     * Reload the applications from the repository, in the background.
+     * 
+     * The new applications are loaded and all their components are compiled
+     * on a background thread, while the current applications keep serving the
+     * requests.  As for {@link #reload()}, only the applications which changed
+     * are loaded again.  Then the new set of applications replaces the current one, at
+     * once.  The old applications are retired only when the requests they were
+     * serving are done (or after a timeout).  If anything goes wrong while
+     * loading or compiling the new applications, the current ones are kept.
+     * 
+     * This method returns immediately.  The returned report is updated while
+     * the reload progresses.  If a background reload is already running, its
+     * report is returned, and no other reload is started.
+     */
+    public ReloadReport reloadInBackground()
+    {
+        synchronized ( myReloadLock ) {
+            ReloadReport last = myLastReload;
+            if ( last.isBackground() && last.isRunning() ) {
+                return last;
+            }
+            ReloadReport report = new ReloadReport(true);
+            myLastReload = report;
+            RELOADER.submit(new BackgroundReload(report));
+            return report;
+        }
+    }
+
+    /**
+     * Return the report of the last reload (or of the initial load).
+     */
+    public ReloadReport getLastReload()
+    {
+        return myLastReload;
+    }
+
+    /**
+     * Implement the background reload, on the reloader thread.
+     */
+    private void backgroundReload(ReloadReport report)
+    {
+        LOG.info("Start reloading the applications in the background");
+        Map<String, Application> retired;
+        try {
+            retired = swap(report, true);
+        }
+        catch ( TechnicalException | RuntimeException ex ) {
+            LOG.error("Error reloading the applications, keep the current ones", ex);
+            report.failed(ex.getMessage());
+            return;
+        }
+        for ( Map.Entry<String, Application> entry : retired.entrySet() ) {
+            Application app = entry.getValue();
+            try {
+                if ( ! app.awaitIdle(DRAIN_TIMEOUT) ) {
+                    LOG.info("Retire the application " + entry.getKey() + " with "
+                            + app.getInFlight() + " requests still in flight");
+                }
+            }
+            catch ( InterruptedException ex ) {
+                LOG.error("Interrupted while waiting for in-flight requests on " + entry.getKey(), ex);
+                Thread.currentThread().interrupt();
+            }
+            app.clearCaches();
+        }
+        LOG.info("Applications reloaded in the background in " + report.getDuration() + " ms");
+    }
+
+    /**
+     * Load the applications and replace the current ones with them.
+     * 
+     * If {@code warmup} is true, all components of the newly loaded applications
+     * are compiled before replacing the current ones.  The report is marked as
+     * done or failed.
+     * 
+     * @return The previous applications which have been replaced or removed
+     * (not those kept as is), by context root.
+     */
+    private synchronized Map<String, Application> swap(ReloadReport report, boolean warmup)
+            throws TechnicalException
+    {
+        try {
+            Map<String, Application> old  = myApps;
+            Map<String, Application> apps = initApplications(report, old);
+            if ( warmup || myEagerCompile ) {
+                compileApplications(report, apps, old);
+            }
+            myApps = apps;
+            report.done();
+            Map<String, Application> retired = new HashMap<>();
+            for ( Map.Entry<String, Application> entry : old.entrySet() ) {
+                if ( apps.get(entry.getKey()) != entry.getValue() ) {
+                    retired.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return retired;
+        }
+        catch ( TechnicalException | RuntimeException ex ) {
+            report.failed(ex.getMessage());
+            throw ex;
+        }
+    }
+
+    /**
+     * Compile all components of the applications in {@code apps}.
+     * 
+     * The applications also in {@code old} (at the same context root) are
+     * skipped, as they were kept as is and are already in use.
+     */
+    private void compileApplications(ReloadReport report, Map<String, Application> apps, Map<String, Application> old)
+            throws TechnicalException
+    {
+        for ( Map.Entry<String, Application> entry : apps.entrySet() ) {
+            Application app = entry.getValue();
+            if ( old.get(entry.getKey()) == app ) {
+                continue;
+            }
+            try {
+                app.compile();
+            }
+            catch ( ServlexException ex ) {
+                throw new TechnicalException("Error compiling the application: " + app.getName(), ex);
+            }
+            report.compiled(entry.getKey(), app.getCompileTime());
+        }
     }
 
     /**
@@ -109,7 +281,7 @@ public class WebRepository
      */
     public boolean isSingleApp()
     {
-        return myIsSingleApp;
+        return myApps.containsKey(null);
     }
 
     /**
@@ -153,8 +325,29 @@ public class WebRepository
                  , PackageException
     {
         installPreconditions(root);
-        Package pkg = myUnderlying.installPackage(archive, force, new LoggingUserInteraction());
-        return doInstall(pkg, root, config);
+        UserInteractionStrategy interact = new LoggingUserInteraction();
+        if ( ! force || ! myEagerCompile ) {
+            Package pkg = myUnderlying.installPackage(archive, force, interact);
+            return doInstall(pkg, root, config, null);
+        }
+        // keep a copy of the package replaced, if any, in case the new one does not compile
+        Package pkg;
+        PackageBackup backup = null;
+        try {
+            pkg = myUnderlying.installPackage(archive, false, interact);
+        }
+        catch ( Repository.AlreadyInstalledException ex ) {
+            backup = backupPackage(ex.getName(), ex.getVersion());
+            pkg = myUnderlying.installPackage(archive, true, interact);
+        }
+        try {
+            return doInstall(pkg, root, config, backup);
+        }
+        finally {
+            if ( backup != null ) {
+                backup.discard();
+            }
+        }
     }
 
     /**
@@ -179,8 +372,29 @@ public class WebRepository
                  , PackageException
     {
         installPreconditions(root);
-        Package pkg = myUnderlying.installPackage(uri, force, new LoggingUserInteraction());
-        return doInstall(pkg, root, config);
+        UserInteractionStrategy interact = new LoggingUserInteraction();
+        if ( ! force || ! myEagerCompile ) {
+            Package pkg = myUnderlying.installPackage(uri, force, interact);
+            return doInstall(pkg, root, config, null);
+        }
+        // keep a copy of the package replaced, if any, in case the new one does not compile
+        Package pkg;
+        PackageBackup backup = null;
+        try {
+            pkg = myUnderlying.installPackage(uri, false, interact);
+        }
+        catch ( Repository.AlreadyInstalledException ex ) {
+            backup = backupPackage(ex.getName(), ex.getVersion());
+            pkg = myUnderlying.installPackage(uri, true, interact);
+        }
+        try {
+            return doInstall(pkg, root, config, backup);
+        }
+        finally {
+            if ( backup != null ) {
+                backup.discard();
+            }
+        }
     }
 
     /**
@@ -201,7 +415,10 @@ public class WebRepository
         }
         Package pkg = app.getPackage();
         myUnderlying.removePackage(pkg.getName(), true, new LoggingUserInteraction());
-        myApps.remove(appname);
+        Map<String, Application> apps = new HashMap<>(myApps);
+        apps.remove(appname);
+        myApps = Collections.unmodifiableMap(apps);
+        app.clearCaches();
         // Update [repo]/.expath-web/webapps.xml.
         myWebappsXml.removeWebapp(appname);
     }
@@ -210,8 +427,13 @@ public class WebRepository
      * Return a map from context roots to applications.
      * 
      * The applications are all the enabled web applications in this repository.
+     * The map is fully built before being returned, and cannot be modified.
+     * The time it takes to load each application is recorded in the report.
+     * 
+     * An application in {@code current} is reused instead of being loaded
+     * again, if it is at the same context root and its digest did not change.
      */
-    private Map<String, Application> initApplications()
+    private Map<String, Application> initApplications(ReloadReport report, Map<String, Application> current)
             throws TechnicalException
     {
         // the webapps.xml parser
@@ -222,12 +444,14 @@ public class WebRepository
         EXPathWebParser expath_parser = new EXPathWebParser(myProcs);
         // the application map
         Map<String, Application> applications = new HashMap<>();
+        // is there an application with no context root?
+        boolean single = false;
         // parse and save the result in the map
         for ( WebappDecl decl : decls ) {
             URI    name = decl.getName();
             String root = decl.getRoot();
             if ( root == null ) {
-                myIsSingleApp = true;
+                single = true;
             }
             // resolve the package
             Packages packages = myUnderlying.getPackages(name.toString());
@@ -238,21 +462,33 @@ public class WebRepository
                 throw new TechnicalException("Package " + name + " not installed (but in .expath-web/webapps.xml).");
             }
             org.expath.pkg.repo.Package pkg = packages.latest();
+            // reuse the current application if it did not change
+            String digest = PackageDigest.digest(myUnderlying.getStorage(), pkg, root, decl.getConfigParams());
+            Application existing = current.get(root);
+            if ( existing != null && digest.equals(existing.getDigest()) ) {
+                LOG.info("Keep the application unchanged: " + root + " / " + existing.getName());
+                report.reused(root, existing.getName());
+                applications.put(root, existing);
+                continue;
+            }
             // parse the application
+            long start = System.currentTimeMillis();
             Application app = expath_parser.loadPackage(pkg);
             if ( app == null ) {
                 throw new TechnicalException("Not an application: " + name + " / " + pkg);
             }
             // override the config parameters from expath-web.xml with .expath-web/webapps.xml
             overrideConfigParams(app, decl.getConfigParams());
+            app.setDigest(digest);
+            report.loaded(root, app.getName(), System.currentTimeMillis() - start);
             LOG.info("Add the application to the store: " + root + " / " + app.getName());
             applications.put(root, app);
         }
         // the check must already been done in the parser, but better safe than sorry
-        if ( myIsSingleApp && applications.size() > 1 ) {
+        if ( single && applications.size() > 1 ) {
             throw new TechnicalException("There cannot be more than one application if it has no context root.");
         }
-        return applications;
+        return Collections.unmodifiableMap(applications);
     }
 
     /**
@@ -275,8 +511,12 @@ public class WebRepository
 
     /**
      * Implements the installation methods.
+     * 
+     * If the new package does not compile (when compiling eagerly), it is
+     * removed, and the package it replaced is restored from {@code backup}
+     * (if not null), so the application still served keeps working.
      */
-    private String doInstall(Package pkg, String ctxt_root, Map<String, String> config)
+    private String doInstall(Package pkg, String ctxt_root, Map<String, String> config, PackageBackup backup)
             throws TechnicalException
                  , PackageException
     {
@@ -299,13 +539,55 @@ public class WebRepository
         overrideConfigParams(app, config);
         // by default use the webapp's own abbrev
         String root = ctxt_root == null ? app.getName() : ctxt_root;
-        // package is a webapp
-        myApps.put(root, app);
+        app.setDigest(PackageDigest.digest(myUnderlying.getStorage(), pkg, root, config));
+        // compile it before making it available, if asked to
+        if ( myEagerCompile ) {
+            try {
+                app.compile();
+            }
+            catch ( ServlexException ex ) {
+                LOG.error("Error compiling the application, remove its package: " + pkg.getName(), ex);
+                // only this version, not the other versions installed next to it
+                myUnderlying.removePackage(pkg.getName(), pkg.getVersion(), true, new LoggingUserInteraction());
+                if ( backup != null ) {
+                    backup.restore();
+                }
+                throw new TechnicalException("Error compiling the application: " + app.getName(), ex);
+            }
+        }
+        // package is a webapp, publish a new map including it
+        Map<String, Application> apps = new HashMap<>(myApps);
+        Application replaced = apps.put(root, app);
+        myApps = Collections.unmodifiableMap(apps);
+        if ( replaced != null ) {
+            replaced.clearCaches();
+        }
         // update [repo]/.expath-web/webapps.xml
         myWebappsXml.addWebapp(root, pkg.getName(), config);
         return root;
     }
 
+    /**
+     * Copy the package {@code name} version {@code version}, before it is replaced.
+     * 
+     * Return null if there is no such package, or if it is not stored on the
+     * file system.
+     */
+    private PackageBackup backupPackage(String name, String version)
+            throws TechnicalException
+                 , PackageException
+    {
+        if ( ! (myUnderlying.getStorage() instanceof FileSystemStorage) ) {
+            return null;
+        }
+        Packages versions = myUnderlying.getPackages(name);
+        Package pkg = versions == null ? null : versions.version(version);
+        if ( pkg == null ) {
+            return null;
+        }
+        return new PackageBackup(pkg);
+    }
+
     private void overrideConfigParams(Application app, Map<String, String> config)
     {
         for ( Map.Entry<String, String> entry : config.entrySet() ) {
@@ -326,6 +608,11 @@ public class WebRepository
 
     /** The logger. */
     private static final Log LOG = new Log(ServerConfig.class);
+    /** The max time to wait for in-flight requests before retiring an application, in ms. */
+    private static final long DRAIN_TIMEOUT = 60 * 1000;
+    /** The thread for background reloads (one at a time). */
+    private static final ExecutorService RELOADER
+            = Executors.newSingleThreadExecutor(new ReloaderThreads());
 
     /** The underlying package repository. */
     private final Repository myUnderlying;
@@ -333,10 +620,139 @@ public class WebRepository
     private final WebappsXmlFile myWebappsXml;
     /** The map of Processors objects. */
     private final ProcessorsMap myProcs;
-    /** The application map. */
-    private Map<String, Application> myApps;
-    /** Is there only one webapp, with no context root? */
-    private boolean myIsSingleApp = false;
+    /** Whether to compile all components when loading the applications. */
+    private final boolean myEagerCompile;
+    /** The application map, immutable, replaced as a whole on every change. */
+    private volatile Map<String, Application> myApps;
+    /** The report of the last reload. */
+    private volatile ReloadReport myLastReload;
+    /** Guard starting background reloads. */
+    private final Object myReloadLock = new Object();
+
+    /**
+     * A background reload, to run on the reloader thread.
+     */
+    private class BackgroundReload
+            implements Runnable
+    {
+        public BackgroundReload(ReloadReport report)
+        {
+            myReport = report;
+        }
+
+        @Override
+        public void run()
+        {
+            backgroundReload(myReport);
+        }
+
+        private final ReloadReport myReport;
+    }
+
+    /**
+     * A copy of an installed package, taken before a forced install replaces it.
+     * 
+     * The copy is taken in a temporary directory of the storage, keeping the
+     * file times, so the package digest does not change when it is restored.
+     */
+    private class PackageBackup
+    {
+        public PackageBackup(Package pkg)
+                throws TechnicalException
+                     , PackageException
+        {
+            FileSystemStorage storage = (FileSystemStorage) myUnderlying.getStorage();
+            myPkg = pkg;
+            myKey = pkg.getResolver().getResourceName();
+            myDir = storage.makeTempDir("backup");
+            copyDir(new File(storage.getRootDirectory(), myKey), myDir);
+        }
+
+        /**
+         * Put the package back in place, in lieu of the package which replaced it.
+         * 
+         * The package which replaced it must have been removed already.
+         */
+        public void restore()
+                throws PackageException
+        {
+            LOG.info("Restore the previous package: " + myPkg.getName() + " / " + myPkg.getVersion());
+            Storage storage = myUnderlying.getStorage();
+            storage.storeInstallDir(myDir, myKey, myPkg);
+            storage.updatePackageLists(myPkg);
+            myUnderlying.reload();
+            myDir = null;
+        }
+
+        /**
+         * Delete the copy, if it has not been restored.
+         */
+        public void discard()
+        {
+            if ( myDir != null ) {
+                deleteDir(myDir);
+                myDir = null;
+            }
+        }
+
+        private void copyDir(File from, File to)
+                throws TechnicalException
+        {
+            File[] children = from.listFiles();
+            if ( children == null ) {
+                throw new TechnicalException("Cannot list the package directory: " + from);
+            }
+            try {
+                for ( File f : children ) {
+                    File target = new File(to, f.getName());
+                    if ( f.isDirectory() ) {
+                        if ( ! target.mkdir() ) {
+                            throw new TechnicalException("Cannot create the directory: " + target);
+                        }
+                        copyDir(f, target);
+                    }
+                    else {
+                        Files.copy(f.toPath(), target.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+                    }
+                }
+            }
+            catch ( IOException ex ) {
+                throw new TechnicalException("Error copying the package directory: " + from, ex);
+            }
+        }
+
+        private void deleteDir(File dir)
+        {
+            File[] children = dir.listFiles();
+            if ( children != null ) {
+                for ( File f : children ) {
+                    deleteDir(f);
+                }
+            }
+            if ( ! dir.delete() ) {
+                LOG.error("Cannot delete the package backup: " + dir);
+            }
+        }
+
+        private final Package myPkg;
+        private final String myKey;
+        private File myDir;
+    }
+
+    /**
+     * Create the reloader thread, as a daemon, so it does not prevent shutdown.
+     */
+    private static class ReloaderThreads
+            implements ThreadFactory
+    {
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread t = new Thread(r, "servlex-reload");
+            t.setDaemon(true);
+            return t;
+        }
+    }
 
     /**
      * Specific exception when trying to install a package in a read-only repository.
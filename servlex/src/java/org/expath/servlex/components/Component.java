@@ -13,20 +13,35 @@ import org.expath.servlex.ServerConfig;
 import org.expath.servlex.ServlexException;
 import org.expath.servlex.connectors.Connector;
 import org.expath.servlex.runtime.ComponentError;
+import org.expath.servlex.runtime.ExecutionContext;
 import org.expath.servlex.tools.Auditor;
-import org.expath.servlex.tools.Cleanable;
 import org.expath.servlex.tools.Log;
 
 /**
  * A servlet entry point.
  *
+ * A component is compiled once, and run concurrently by any number of
+ * requests.  It must not keep any state specific to one request.  Any
+ * resource it needs to release at the end of a request must be registered on
+ * the execution context passed to {@link #run(Connector, ServerConfig, Auditor, ExecutionContext)}.
+ *
  * @author Florent Georges
  */
 public interface Component
-        extends Cleanable
 {
     public void logApplication(Log log);
 
+    /**
+     * Compile the component ahead of time.
+     *
+     * Components are compiled lazily, the first time they are run.  This
+     * method forces it beforehand, e.g. to warm up an application before it
+     * serves any request.  It does nothing if the component is already
+     * compiled, or if there is nothing to compile.
+     */
+    public void compile()
+            throws ServlexException;
+
     /**
      * Implement an entry point invocation.
      *
@@ -42,13 +57,17 @@ public interface Component
      * @param auditor
      *          The auditor object.
      * 
+     * @param ctxt
+     *          The execution context of the request, to register the resources
+     *          to clean up when the request is over.
+     * 
      * @return
      *          The result of the component. If Servlex is the direct caller,
      *          that must be the web:response element and the HTTP response
      *          entity content. It can be different if there are any filter or
      *          error handler in between.
      */
-    public Connector run(Connector connector, ServerConfig config, Auditor auditor)
+    public Connector run(Connector connector, ServerConfig config, Auditor auditor, ExecutionContext ctxt)
             throws ServlexException
                  , ComponentError;
 }
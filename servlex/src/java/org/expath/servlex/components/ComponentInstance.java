@@ -9,10 +9,12 @@
 
 package org.expath.servlex.components;
 
+import javax.xml.transform.URIResolver;
 import org.expath.servlex.TechnicalException;
 import org.expath.servlex.processors.Document;
 import org.expath.servlex.processors.Sequence;
 import org.expath.servlex.runtime.ComponentError;
+import org.expath.servlex.tools.StreamedBody;
 
 /**
  * One instance of a component (a component is the compiled for, this is the runtime).
@@ -27,6 +29,27 @@ public interface ComponentInstance
     public void connect(Sequence input)
             throws TechnicalException;
 
+    /**
+     * Return true if the instance can access the bodies in its input sequence.
+     * 
+     * That is, if it can access the input sequence beyond its first item,
+     * the web:request element.  If not, the request body might not be parsed
+     * at all, and the input sequence might contain the web:request element
+     * only.
+     */
+    public boolean needsBodies();
+
+    /**
+     * Connect a request body to be parsed on first access.
+     * 
+     * The body is accessible through its URI, {@link StreamedBody#URI}, with
+     * the resolver returned by {@link StreamedBody#makeResolver(URIResolver)}.
+     * Return false if the instance cannot resolve documents that way, in
+     * which case the body is parsed upfront, and put in the input sequence.
+     */
+    public boolean connectBody(StreamedBody body)
+            throws TechnicalException;
+
     /**
      * Connect the error information.
      * 
@@ -10,6 +10,7 @@
 package org.expath.servlex.connectors;
 
 import java.io.IOException;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.expath.servlex.ServerConfig;
 import org.expath.servlex.ServlexException;
@@ -64,7 +65,7 @@ public interface Connector
     /**
      * Connect to the final HTTP Servlet response.
      */
-    public void connectToResponse(HttpServletResponse resp, ServerConfig config, Processors procs)
+    public void connectToResponse(HttpServletRequest req, HttpServletResponse resp, ServerConfig config, Processors procs)
             throws ServlexException, IOException;
 }
 
@@ -0,0 +1,192 @@
+/****************************************************************************/
+/*  File:       DeferredConnector.java                                      */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.connectors;
+
+import java.io.IOException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.expath.servlex.ServerConfig;
+import org.expath.servlex.ServlexException;
+import org.expath.servlex.components.ComponentInstance;
+import org.expath.servlex.processors.Processors;
+import org.expath.servlex.runtime.ComponentError;
+import org.expath.servlex.tools.Auditor;
+
+/**
+ * Connector to the result of a component which has not been evaluated yet.
+ *
+ * The evaluation of the component is deferred until the connector is
+ * actually used.  If it is connected to the response, and streaming is
+ * enabled, the component is evaluated straight to the response, without
+ * building its result first (see {@link ServerConfig#isStreamingEnabled()}).
+ * Else, the component is evaluated to a concrete connector, to which this
+ * one delegates.
+ *
+ * Because an evaluation error would otherwise only be raised when connecting
+ * the result, invocations consuming the result of a component in a way they
+ * can recover from (e.g. error handlers) must call {@link #materialize(Connector)}
+ * first.
+ *
+ * @author Florent Georges
+ */
+public abstract class DeferredConnector
+        implements Connector
+{
+    public DeferredConnector(Auditor auditor)
+    {
+        myAuditor = auditor;
+    }
+
+    /**
+     * Evaluate the component to a concrete connector.
+     */
+    protected abstract Connector evaluate()
+            throws ServlexException
+                 , ComponentError;
+
+    /**
+     * Evaluate the component, and stream its result straight to the response.
+     */
+    protected abstract void stream(HttpServletRequest req, HttpServletResponse resp, ServerConfig config, Processors procs)
+            throws ServlexException
+                 , ComponentError
+                 , IOException;
+
+    /**
+     * Return the concrete connector, evaluating the component if not done yet.
+     */
+    public Connector materialize()
+            throws ServlexException
+                 , ComponentError
+    {
+        if ( myConnector == null ) {
+            myConnector = evaluate();
+        }
+        return myConnector;
+    }
+
+    /**
+     * Return {@code connector} itself, or its concrete connector if it is deferred.
+     */
+    public static Connector materialize(Connector connector)
+            throws ServlexException
+                 , ComponentError
+    {
+        if ( connector instanceof DeferredConnector ) {
+            return ((DeferredConnector) connector).materialize();
+        }
+        return connector;
+    }
+
+    @Override
+    public void cleanup(Auditor auditor)
+            throws ServlexException
+    {
+        if ( myConnector != null ) {
+            myConnector.cleanup(auditor);
+        }
+    }
+
+    @Override
+    public Auditor getAuditor()
+    {
+        return myAuditor;
+    }
+
+    @Override
+    public void connectToXQueryFunction(ComponentInstance comp, ServerConfig config)
+            throws ServlexException
+    {
+        concrete().connectToXQueryFunction(comp, config);
+    }
+
+    @Override
+    public void connectToQuery(ComponentInstance comp, ServerConfig config)
+            throws ServlexException
+    {
+        concrete().connectToQuery(comp, config);
+    }
+
+    @Override
+    public void connectToXSLTComponent(ComponentInstance comp, ServerConfig config)
+            throws ServlexException
+    {
+        concrete().connectToXSLTComponent(comp, config);
+    }
+
+    @Override
+    public void connectToStylesheet(ComponentInstance comp, ServerConfig config)
+            throws ServlexException
+    {
+        concrete().connectToStylesheet(comp, config);
+    }
+
+    @Override
+    public void connectToPipeline(ComponentInstance comp, ServerConfig config)
+            throws ServlexException
+    {
+        concrete().connectToPipeline(comp, config);
+    }
+
+    @Override
+    public void connectToResponse(HttpServletRequest req, HttpServletResponse resp, ServerConfig config, Processors procs)
+            throws ServlexException
+                 , IOException
+    {
+        if ( myConnector != null || ! config.isStreamingEnabled() ) {
+            concrete().connectToResponse(req, resp, config, procs);
+            return;
+        }
+        myAuditor.connect("deferred", "response");
+        try {
+            stream(req, resp, config, procs);
+        }
+        catch ( ComponentError ex ) {
+            throw new ServlexException(500, "Internal error", ex);
+        }
+    }
+
+    private Connector concrete()
+            throws ServlexException
+    {
+        try {
+            return materialize();
+        }
+        catch ( ComponentError ex ) {
+            throw new ServlexException(500, "Internal error", ex);
+        }
+    }
+
+    /** The auditor object. */
+    private final Auditor myAuditor;
+    /** The concrete connector, once evaluated. */
+    private Connector myConnector;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -10,6 +10,7 @@
 package org.expath.servlex.connectors;
 
 import java.io.IOException;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.expath.servlex.ServerConfig;
 import org.expath.servlex.ServlexException;
@@ -129,7 +130,7 @@ public class ErrorConnector
      * TODO: Mapping to define, then implement.
      */
     @Override
-    public void connectToResponse(HttpServletResponse resp, ServerConfig config, Processors procs)
+    public void connectToResponse(HttpServletRequest req, HttpServletResponse resp, ServerConfig config, Processors procs)
             throws ServlexException
                  , IOException
     {
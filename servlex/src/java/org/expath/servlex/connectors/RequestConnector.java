@@ -26,8 +26,11 @@ import org.expath.servlex.processors.Processors;
 import org.expath.servlex.processors.Sequence;
 import org.expath.servlex.processors.TreeBuilder;
 import org.expath.servlex.tools.Auditor;
+import org.expath.servlex.tools.DeferredTree;
+import org.expath.servlex.tools.Conditional;
 import org.expath.servlex.tools.Log;
 import org.expath.servlex.tools.RegexMatcher;
+import org.expath.servlex.tools.StreamedBody;
 
 /**
  * Connector to the HTTP servlet request object.
@@ -39,6 +42,7 @@ public class RequestConnector
 {
     public RequestConnector(HttpServletRequest request, String path, String appname, Processors procs, Auditor auditor)
     {
+        myRequest = request;
         myParser  = new RequestParser(request, path, appname, procs);
         myProcs   = procs;
         myAuditor = auditor;
@@ -49,7 +53,10 @@ public class RequestConnector
             throws ServlexException
     {
         auditor.cleanup("request");
-        myServlet.cleanup(auditor);
+        if ( myServlet != null ) {
+            myServlet.cleanup(auditor);
+        }
+        myParser.cleanup();
     }
 
     @Override
@@ -58,6 +65,62 @@ public class RequestConnector
         return myAuditor;
     }
 
+    /**
+     * Return true if the client accepts the content coding {@code coding}.
+     */
+    public boolean acceptsEncoding(String coding)
+    {
+        return acceptsEncoding(myRequest.getHeader("Accept-Encoding"), coding);
+    }
+
+    /**
+     * Return true if the Accept-Encoding header value {@code header} accepts {@code coding}.
+     * 
+     * The coding is accepted if it is listed, or if "*" is listed, with a
+     * non-zero quality value (when the coding is listed explicitly, its own
+     * quality value wins over the one of "*").
+     */
+    public static boolean acceptsEncoding(String header, String coding)
+    {
+        if ( header == null ) {
+            return false;
+        }
+        Boolean star = null;
+        for ( String item : header.split(",") ) {
+            String[] params = item.split(";");
+            String name = params[0].trim();
+            boolean accepted = true;
+            for ( int i = 1; i < params.length; ++i ) {
+                String p = params[i].trim();
+                if ( p.startsWith("q=") ) {
+                    try {
+                        accepted = Double.parseDouble(p.substring(2).trim()) > 0;
+                    }
+                    catch ( NumberFormatException ex ) {
+                        accepted = false;
+                    }
+                }
+            }
+            if ( name.equalsIgnoreCase(coding) ) {
+                return accepted;
+            }
+            else if ( name.equals("*") ) {
+                star = accepted;
+            }
+        }
+        return star != null && star;
+    }
+
+    /**
+     * Return true if the response can be a 304, given its validators.
+     * 
+     * @see Conditional#isNotModified(HttpServletRequest, String, long)
+     */
+    public boolean isNotModified(String etag, long modified)
+    {
+        return Conditional.isNotModified(myRequest, etag, modified);
+    }
+
     public void setMatcher(RegexMatcher matcher)
     {
         myParser.setMatcher(matcher);
@@ -75,29 +138,43 @@ public class RequestConnector
     public Document getWebRequest(ServerConfig config)
             throws ServlexException
     {
-        ensureParsing(config);
+        ensureParsing(config, false);
         return myWebRequest;
     }
 
-    private synchronized void ensureParsing(ServerConfig config)
+    /**
+     * Parse the request if not done yet.
+     * 
+     * The body is parsed only if {@code bodies} is true, or when a later call
+     * asks for it (see {@link RequestParser#parsePendingBodies(List, boolean)}).
+     * The web:request element is a {@link DeferredTree}, its parts not used
+     * by the components are never built.
+     */
+    private synchronized void ensureParsing(ServerConfig config, boolean bodies)
             throws ServlexException
     {
-        if ( myInput == null ) {
-            try {
+        try {
+            boolean trace_content = config.isTraceContentEnabled();
+            if ( myInput == null ) {
                 // where to put the web:request element
-                TreeBuilder builder = myProcs.makeTreeBuilder(NS_URI, NS_PREFIX);
+                TreeBuilder builder = new DeferredTree(myProcs, NS_URI, NS_PREFIX);
                 // parse the request (to web:request + sequence of bodies)
                 // (parseRequest() puts everything in the list, and returns the
                 // web:request document node)
-                List<Item> input = new ArrayList<>();
-                boolean trace_content = config.isTraceContentEnabled();
-                myWebRequest = myParser.parse(builder, input, trace_content);
-                myInput = myProcs.buildSequence(input);
+                myItems = new ArrayList<>();
+                myParser.setSpillThreshold(config.getSpillThreshold());
+                myParser.setExecutor(config.getPartExecutor());
+                myWebRequest = myParser.parse(builder, myItems, trace_content, bodies);
+                myInput = myProcs.buildSequence(myItems);
             }
-            catch ( TechnicalException ex ) {
-                error(500, "Internal error", ex);
+            else if ( bodies && myParser.hasPendingBody() ) {
+                myParser.parsePendingBodies(myItems, trace_content);
+                myInput = myProcs.buildSequence(myItems);
             }
         }
+        catch ( TechnicalException ex ) {
+            error(500, "Internal error", ex);
+        }
     }
 
     @Override
@@ -105,8 +182,9 @@ public class RequestConnector
             throws ServlexException
     {
         myAuditor.connect("request", "xquery function");
-        ensureParsing(config);
+        ensureParsing(config, comp.needsBodies());
         try {
+            connectBody(comp, config);
             comp.connect(myInput);
         }
         catch ( TechnicalException ex ) {
@@ -119,8 +197,9 @@ public class RequestConnector
             throws ServlexException
     {
         myAuditor.connect("request", "query");
-        ensureParsing(config);
+        ensureParsing(config, comp.needsBodies());
         try {
+            connectBody(comp, config);
             comp.connect(myInput);
         }
         catch ( TechnicalException ex ) {
@@ -133,8 +212,9 @@ public class RequestConnector
             throws ServlexException
     {
         myAuditor.connect("request", "xslt component");
-        ensureParsing(config);
+        ensureParsing(config, comp.needsBodies());
         try {
+            connectBody(comp, config);
             comp.connect(myInput);
         }
         catch ( TechnicalException ex ) {
@@ -147,8 +227,9 @@ public class RequestConnector
             throws ServlexException
     {
         myAuditor.connect("request", "style");
-        ensureParsing(config);
+        ensureParsing(config, comp.needsBodies());
         try {
+            connectBody(comp, config);
             comp.connect(myInput);
         }
         catch ( TechnicalException ex ) {
@@ -161,8 +242,9 @@ public class RequestConnector
             throws ServlexException
     {
         myAuditor.connect("request", "pipeline");
-        ensureParsing(config);
+        ensureParsing(config, comp.needsBodies());
         try {
+            connectBody(comp, config);
             comp.connect(myInput);
         }
         catch ( TechnicalException ex ) {
@@ -170,11 +252,62 @@ public class RequestConnector
         }
     }
 
+    /**
+     * Connect the streamed body, if any, to the component.
+     * 
+     * If the component cannot parse it by itself, it is parsed here, and
+     * added to the input sequence, like any other body.
+     */
+    private void connectBody(ComponentInstance comp, ServerConfig config)
+            throws ServlexException
+                 , TechnicalException
+    {
+        StreamedBody body = myParser.getStreamedBody();
+        if ( body == null || comp.connectBody(body) ) {
+            return;
+        }
+        synchronized ( this ) {
+            if ( ! myBodyParsed ) {
+                LOG.debug("Component cannot resolve the streamed body, parse it upfront: " + comp);
+                myItems.add(myProcs.buildDocument(body.getSource()));
+                myInput = myProcs.buildSequence(myItems);
+                myBodyParsed = true;
+            }
+        }
+    }
+
+    /**
+     * Return the error to report, given the error {@code ex} raised while serving the request.
+     * 
+     * If the streamed body (if any) has been found not to be well-formed,
+     * then this is a bad request, whatever the component made of it, so a
+     * 400 error is returned instead of {@code ex}.  The same way, if a limit
+     * has been crossed while parsing a body, or if a multipart body parsed on
+     * first access is not valid, this is reported instead.
+     */
+    public ServlexException checkBodyError(ServlexException ex)
+    {
+        ServlexException violation = myParser.getLimitViolation();
+        if ( violation != null ) {
+            return violation;
+        }
+        ServlexException deferred = myParser.getDeferredError();
+        if ( deferred != null ) {
+            return deferred;
+        }
+        StreamedBody body = myParser.getStreamedBody();
+        if ( body == null || body.getError() == null ) {
+            return ex;
+        }
+        LOG.error("400: Malformed request body", body.getError());
+        return new ServlexException(400, "Malformed request body", body.getError());
+    }
+
     /**
      * Throws an error, as a request cannot be connected directly to the response.
      */
     @Override
-    public void connectToResponse(HttpServletResponse resp, ServerConfig config, Processors procs)
+    public void connectToResponse(HttpServletRequest req, HttpServletResponse resp, ServerConfig config, Processors procs)
             throws ServlexException
                  , IOException
     {
@@ -195,6 +328,8 @@ public class RequestConnector
     /** The logger. */
     private static final Log LOG = new Log(RequestConnector.class);
 
+    /** The servlet request. */
+    private final HttpServletRequest myRequest;
     /** The request parser. */
     private final RequestParser myParser;
     /** The auditor object. */
@@ -206,6 +341,10 @@ public class RequestConnector
     private Servlet myServlet = null;
     /** The all input sequence, that is, the request element followed by bodies. */
     private Sequence myInput = null;
+    /** The items of the input sequence. */
+    private List<Item> myItems = null;
+    /** Has the streamed body been parsed upfront already? */
+    private boolean myBodyParsed = false;
     /** The web:request document node, null at beginning, placed here when parsed. */
     private Document myWebRequest = null;
 }
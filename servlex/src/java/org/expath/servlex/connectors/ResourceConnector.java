@@ -9,9 +9,14 @@
 
 package org.expath.servlex.connectors;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.expath.servlex.ServerConfig;
 import org.expath.servlex.ServlexException;
@@ -22,7 +27,10 @@ import org.expath.servlex.processors.Processors;
 import org.expath.servlex.processors.Sequence;
 import org.expath.servlex.tools.Auditor;
 import org.expath.servlex.tools.BodyParser;
+import org.expath.servlex.tools.Conditional;
 import org.expath.servlex.tools.ContentType;
+import org.expath.servlex.tools.FileSender;
+import org.expath.servlex.tools.ResourceCache;
 
 /**
  * Connector for a resource, can be connected only to the http servlet response.
@@ -35,19 +43,86 @@ public class ResourceConnector
     /**
      * Constructor.
      * 
-     * @param in The input stream to get the resource content from.
+     * @param in The input stream to get the resource content from (null for a 304).
      * @param status The HTTP status code to set on the response.
      * @param type The MIME content type to set on the response.
      */
     public ResourceConnector(InputStream in, int status, String type, Processors procs, Auditor auditor)
     {
         myIn = in;
+        myFile = null;
+        myEntry = null;
+        myGzip = false;
         myStatus = status;
         myType = type;
         myProcs = procs;
         myAuditor = auditor;
     }
 
+    /**
+     * Constructor for a file, opened only when needed.
+     * 
+     * When connected to the response, the file is sent without copying it
+     * through the heap, and honouring HTTP ranges.
+     * 
+     * @param file The file containing the resource content.
+     * @param status The HTTP status code to set on the response.
+     * @param type The MIME content type to set on the response.
+     */
+    public ResourceConnector(File file, int status, String type, Processors procs, Auditor auditor)
+    {
+        myIn = null;
+        myFile = file;
+        myEntry = null;
+        myGzip = false;
+        myStatus = status;
+        myType = type;
+        myProcs = procs;
+        myAuditor = auditor;
+    }
+
+    /**
+     * Constructor for a cached resource.
+     * 
+     * @param entry The cached resource content.
+     * @param gzip Whether the client accepts gzip, so its gzip variant can be sent, if any.
+     * @param status The HTTP status code to set on the response.
+     * @param type The MIME content type to set on the response.
+     */
+    public ResourceConnector(ResourceCache.Entry entry, boolean gzip, int status, String type, Processors procs, Auditor auditor)
+    {
+        myIn = entry.openStream();
+        myFile = null;
+        myEntry = entry;
+        myGzip = gzip;
+        myStatus = status;
+        myType = type;
+        myProcs = procs;
+        myAuditor = auditor;
+    }
+
+    /**
+     * Set the caching headers to send with the resource.
+     * 
+     * @param etag The entity tag, null if none.
+     * @param modified The last modification date, negative if none.
+     * @param control The value of the header Cache-Control, null if none.
+     */
+    public void setCaching(String etag, long modified, String control)
+    {
+        myETag = etag;
+        myModified = modified;
+        myCacheControl = control;
+    }
+
+    /**
+     * The resource may have a gzip variant, so a 304 depends on Accept-Encoding as well.
+     */
+    public void setVaryEncoding()
+    {
+        myVaryEncoding = true;
+    }
+
     @Override
     public void cleanup(Auditor auditor)
             throws ServlexException
@@ -88,12 +163,21 @@ public class ResourceConnector
     {
         myAuditor.connect("resource", "style");
         try {
+            if ( myFile != null ) {
+                myIn = new FileInputStream(myFile);
+            }
+            if ( myIn == null ) {
+                throw new ServlexException(500, "Cannot connect a resource without content to a stylesheet.");
+            }
             BodyParser parser = new BodyParser(config.isTraceContentEnabled(), myProcs);
             ContentType ctype = new ContentType(myType);
             Item content = parser.parse(myIn, ctype);
             Sequence input = content.asSequence();
             comp.connect(input);
         }
+        catch ( FileNotFoundException ex ) {
+            throw new ServlexException(500, "Error opening the file: " + myFile);
+        }
         catch ( TechnicalException ex ) {
             // TODO: Could probably fallback on some specific errors...
             // (or at least have more useful message for some of them).
@@ -109,11 +193,40 @@ public class ResourceConnector
     }
 
     @Override
-    public void connectToResponse(HttpServletResponse resp, ServerConfig config, Processors procs)
+    public void connectToResponse(HttpServletRequest req, HttpServletResponse resp, ServerConfig config, Processors procs)
             throws ServlexException
                  , IOException
     {
         myAuditor.connect("resource", "response");
+        resp.setStatus(myStatus);
+        if ( myETag != null ) {
+            // on a 304, the tag of the variant the client validated, if gzip
+            String etag = myStatus == 304 ? Conditional.notModifiedTag(req, myETag) : myETag;
+            resp.setHeader("ETag", etag);
+        }
+        if ( myStatus == 304 && myVaryEncoding ) {
+            resp.addHeader("Vary", "Accept-Encoding");
+        }
+        if ( myModified >= 0 ) {
+            resp.setDateHeader("Last-Modified", myModified);
+        }
+        if ( myCacheControl != null ) {
+            resp.setHeader("Cache-Control", myCacheControl);
+        }
+        if ( myIn == null && myFile == null ) {
+            // not modified, no body
+            return;
+        }
+        resp.setContentType(myType);
+        if ( myEntry != null ) {
+            sendCached(resp);
+            return;
+        }
+        if ( myFile != null ) {
+            FileSender sender = new FileSender(myFile, myType, myETag, myModified);
+            sender.send(req, resp, myStatus == 200);
+            return;
+        }
         OutputStream out = null;
         try {
             out = resp.getOutputStream();
@@ -122,17 +235,65 @@ public class ResourceConnector
             while ( (len = myIn.read(buf)) > 0 ) {
                 out.write(buf, 0, len);
             }
-            resp.setStatus(myStatus);
-            resp.setContentType(myType);
         }
         finally {
+            myIn.close();
             if ( out != null ) {
                 out.close();
             }
         }
     }
 
+    /**
+     * Send the cached content, or its gzip variant, with its exact length.
+     */
+    private void sendCached(HttpServletResponse resp)
+            throws IOException
+    {
+        ByteBuffer content = myEntry.getContent();
+        ByteBuffer gzip = myEntry.getGzip();
+        if ( gzip != null ) {
+            // the response depends on Accept-Encoding, for any client
+            resp.addHeader("Vary", "Accept-Encoding");
+            if ( myGzip ) {
+                resp.setHeader("Content-Encoding", "gzip");
+                if ( myETag != null ) {
+                    // a strong tag must differ from the identity variant
+                    resp.setHeader("ETag", Conditional.gzipTag(myETag));
+                }
+                content = gzip;
+            }
+        }
+        resp.setContentLength(content.remaining());
+        OutputStream out = resp.getOutputStream();
+        try {
+            byte[] buf = new byte[Math.min(content.remaining(), 8192)];
+            while ( content.hasRemaining() ) {
+                int len = Math.min(buf.length, content.remaining());
+                content.get(buf, 0, len);
+                out.write(buf, 0, len);
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
     private InputStream myIn;
+    /** The file content, if any (opened only when needed). */
+    private final File myFile;
+    /** The cached content, if any. */
+    private final ResourceCache.Entry myEntry;
+    /** Whether the client accepts the gzip variant. */
+    private final boolean myGzip;
+    /** The entity tag, if any. */
+    private String myETag = null;
+    /** The last modification date, if any (negative if not). */
+    private long myModified = -1;
+    /** The value of the header Cache-Control, if any. */
+    private String myCacheControl = null;
+    /** Whether to send Vary: Accept-Encoding with a 304. */
+    private boolean myVaryEncoding = false;
     private int myStatus;
     private String myType;
     private Processors myProcs;
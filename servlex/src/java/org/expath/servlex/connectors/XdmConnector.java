@@ -10,6 +10,7 @@
 package org.expath.servlex.connectors;
 
 import java.io.IOException;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.expath.servlex.Result;
 import org.expath.servlex.ServerConfig;
@@ -137,7 +138,7 @@ public class XdmConnector
      * TODO: ...
      */
     @Override
-    public void connectToResponse(HttpServletResponse resp, ServerConfig config, Processors procs)
+    public void connectToResponse(HttpServletRequest req, HttpServletResponse resp, ServerConfig config, Processors procs)
             throws ServlexException
                  , IOException
     {
@@ -146,7 +147,7 @@ public class XdmConnector
         // its content moved to this class, which is really the one responsible
         // to write an XDM sequence to the HTTP servlet response object.
         Result result = new Result(mySequence, procs);
-        result.respond(resp);
+        result.respond(req, resp, config.getCompressor());
     }
 
     private Sequence mySequence;
@@ -9,6 +9,8 @@
 
 package org.expath.servlex.model;
 
+import java.util.Set;
+import org.expath.servlex.components.Component;
 import org.expath.servlex.runtime.Invocation;
 import org.expath.servlex.ServlexException;
 import org.expath.servlex.TechnicalException;
@@ -60,18 +62,38 @@ public abstract class AddressHandler
             throws ServlexException
                  , TechnicalException
     {
-        RegexMatcher matcher = myRegex.matcher(path);
-        if ( matcher.matches() ) {
-            connector.setMatcher(matcher);
-            Invocation invoc = makeInvocation(path, method, connector);
-            if ( myWrapper != null ) {
-                invoc = myWrapper.makeInvocation(path, connector, invoc);
-            }
-            return invoc;
-        }
-        else {
+        RegexMatcher matcher = match(path);
+        if ( matcher == null ) {
             return null;
         }
+        return resolve(path, method, connector, matcher);
+    }
+
+    /**
+     * Match the path against the address pattern of this handler.
+     *
+     * @return The matcher if the path matches, null if it does not.
+     */
+    RegexMatcher match(String path)
+            throws TechnicalException
+    {
+        RegexMatcher matcher = myRegex.matcher(path);
+        return matcher.matches() ? matcher : null;
+    }
+
+    /**
+     * Make the invocation for a path which already matched this handler.
+     */
+    Invocation resolve(String path, String method, RequestConnector connector, RegexMatcher matcher)
+            throws ServlexException
+                 , TechnicalException
+    {
+        connector.setMatcher(matcher);
+        Invocation invoc = makeInvocation(path, method, connector);
+        if ( myWrapper != null ) {
+            invoc = myWrapper.makeInvocation(path, connector, invoc);
+        }
+        return invoc;
     }
 
     /**
@@ -86,6 +108,26 @@ public abstract class AddressHandler
         myWrapper = w;
     }
 
+    /**
+     * Return true if this handler has a wrapper (filter, error handler, etc).
+     */
+    public boolean isWrapped()
+    {
+        return myWrapper != null;
+    }
+
+    /**
+     * Add the components used by this handler to {@code components}.
+     * 
+     * That includes the components of its wrapper, if any.
+     */
+    void collectComponents(Set<Component> components)
+    {
+        if ( myWrapper != null ) {
+            myWrapper.collectComponents(components);
+        }
+    }
+
     public void logApplication(Log log)
     {
         log.debug("   Address Handler:");
@@ -11,17 +11,33 @@ package org.expath.servlex.model;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.expath.pkg.repo.Package;
 import org.expath.servlex.runtime.Invocation;
 import org.expath.servlex.ServlexException;
 import org.expath.servlex.TechnicalException;
+import org.expath.servlex.components.Component;
 import org.expath.servlex.connectors.RequestConnector;
 import org.expath.servlex.processors.Processors;
 import org.expath.servlex.tools.Log;
+import org.expath.servlex.tools.LruCache;
+import org.expath.servlex.tools.RegexMatcher;
+import org.expath.servlex.tools.ResourceCache;
 import org.expath.servlex.tools.SequenceProperties;
 
+import static org.expath.servlex.ServlexConstants.RESOLVE_CACHE_DEFAULT;
+import static org.expath.servlex.ServlexConstants.RESOLVE_CACHE_PROPERTY;
+import static org.expath.servlex.ServlexConstants.RESOURCE_CACHE_DEFAULT;
+import static org.expath.servlex.ServlexConstants.RESOURCE_CACHE_PROPERTY;
+
 
 /**
  * Represent a webapp, with its metadata, its resources and its servlets.
@@ -40,6 +56,11 @@ public class Application
         myPkg        = pkg;
         myProcessors = procs;
         myProperties = new SequenceProperties("web:", procs);
+        int size = Integer.getInteger(RESOLVE_CACHE_PROPERTY, RESOLVE_CACHE_DEFAULT);
+        myResolutions = new LruCache<>(size);
+        long budget = Long.getLong(RESOURCE_CACHE_PROPERTY, RESOURCE_CACHE_DEFAULT);
+        myResources = new ResourceCache(budget);
+        myLoaded = System.currentTimeMillis();
     }
 
     /**
@@ -74,18 +95,113 @@ public class Application
         return myHandlers;
     }
 
+    /**
+     * Return the digest of the installed webapp this application was loaded from.
+     * 
+     * Used to detect whether the webapp changed since, see {@link
+     * org.expath.servlex.tools.PackageDigest}.  Return null if unknown.
+     */
+    public String getDigest()
+    {
+        return myDigest;
+    }
+
+    /**
+     * Set the digest of the installed webapp this application was loaded from.
+     */
+    public void setDigest(String digest)
+    {
+        myDigest = digest;
+    }
+
+    /**
+     * Return the admission control of the application (see servlex.xml).
+     */
+    public Bulkhead getBulkhead()
+    {
+        return myBulkhead;
+    }
+
+    public void setBulkhead(Bulkhead bulkhead)
+    {
+        myBulkhead = bulkhead;
+    }
+
     /**
      * Add one handler to the application (either a resource or a servlet).
      * 
      * The order they are added to the application is relevant.  When resolving
      * a path, the code tries each in sequence, until it finds a match.  So the
      * first handler added is the first one tries to match a path.
+     * 
+     * Adding a handler drops the route index, if any, so {@link #indexHandlers()}
+     * must be called again once all handlers have been added.  It also clears
+     * the resolution cache.
      */
     public void addHandler(AddressHandler h)
             throws TechnicalException
     {
         h.setApplication(this);
         myHandlers.add(h);
+        myRoutes = null;
+        myResolutions.clear();
+    }
+
+    /**
+     * Build the route index, once all handlers have been added.
+     * 
+     * The index narrows the handlers to try when resolving a path, down to
+     * those whose regex literal prefix is a prefix of the path.  Without it,
+     * each handler is tried in turn.
+     */
+    public void indexHandlers()
+    {
+        myRoutes = new RouteIndex(myHandlers);
+        myResolutions.clear();
+    }
+
+    /**
+     * Clear the resolution cache and the static resource cache.
+     * 
+     * Must be called when the application is replaced or removed, so the
+     * handlers it refers to can be garbage collected (and not used anymore),
+     * and the off-heap memory of the cached resources can be released.
+     */
+    public void clearCaches()
+    {
+        // log the counters of the cache it is about to lose, to help sizing it
+        LOG.info("Resolution cache of " + myName + ": " + myResolutions.size() + " entries (max "
+                + myResolutions.getCapacity() + "), " + myResolutions.getHits() + " hits, "
+                + myResolutions.getMisses() + " misses");
+        myResolutions.clear();
+        myResources.clear();
+    }
+
+    /**
+     * Return the resolution cache, to get its size and hit/miss counters.
+     */
+    public LruCache<String, Resolution> getResolutions()
+    {
+        return myResolutions;
+    }
+
+    /**
+     * Return the time this application was loaded.
+     * 
+     * A new application is created each time the package is (re)installed,
+     * so this is the last modification date of its static resources.
+     */
+    public long getLoaded()
+    {
+        return myLoaded;
+    }
+
+    /**
+     * Return the cache of the static resources of this application.
+     */
+    public ResourceCache getResourceCache()
+    {
+        return myResources;
     }
 
     /**
@@ -136,21 +252,172 @@ public class Application
      * The component is either a servlet or a resource.  A corresponding
      * invocation object is returned, which can be used to get the response
      * corresponding to the actual request.
+     * 
+     * If the route index has been built, only the handlers it returns as
+     * candidates are tried (still in declaration order).
+     * 
+     * Successful matches are cached by path (the handler and its regex group
+     * boundaries), so a path already seen does not evaluate any regex.  The
+     * invocation itself is still created for each request.  Unmatched paths
+     * are not cached, so random 404s cannot evict the useful entries.  The
+     * size of the cache is set by the system property {@code
+     * org.expath.servlex.resolve.cache.size} (0 disables it).
      */
     public Invocation resolve(String path, String method, RequestConnector connector)
             throws ServlexException
                  , TechnicalException
     {
-        for ( AddressHandler h : myHandlers ) {
-            Invocation invoc = h.resolve(path, method, connector);
-            if ( invoc != null ) {
-                return invoc;
+        Resolution cached = myResolutions.get(path);
+        if ( cached != null ) {
+            RegexMatcher matcher = new RegexMatcher(path, cached.myBounds);
+            return cached.myHandler.resolve(path, method, connector, matcher);
+        }
+        RouteIndex routes = myRoutes;
+        List<AddressHandler> handlers = routes == null ? myHandlers : routes.candidates(path);
+        for ( AddressHandler h : handlers ) {
+            RegexMatcher matcher = h.match(path);
+            if ( matcher != null ) {
+                myResolutions.put(path, new Resolution(h, matcher.getBounds()));
+                return h.resolve(path, method, connector, matcher);
             }
         }
         LOG.error("404: Page not found: " + path);
         throw new ServlexException(404, "Page not found");
     }
 
+    /**
+     * Return all the components used in the application.
+     * 
+     * That is, the implementations of all servlets, and of all their filters
+     * and error handlers.  Each component is returned only once, even if it
+     * is used at several places.
+     */
+    public Set<Component> getComponents()
+    {
+        Set<Component> components = new LinkedHashSet<>();
+        for ( AddressHandler h : myHandlers ) {
+            h.collectComponents(components);
+        }
+        return components;
+    }
+
+    /**
+     * Compile all components of the application, ahead of time.
+     * 
+     * Without this, components compile lazily, when they are first used.  The
+     * components are compiled in parallel, on a fork/join pool sized to the
+     * number of cores.  The time it took to compile each of them is logged.
+     * The total time is available afterwards with {@link #getCompileTime()}.
+     * 
+     * @throws ServlexException If any component fails to compile (the first
+     * error is thrown, after all compilations are over).
+     */
+    public void compile()
+            throws ServlexException
+    {
+        long start = System.currentTimeMillis();
+        List<Future<Long>> tasks = new ArrayList<>();
+        for ( Component c : getComponents() ) {
+            tasks.add(COMPILER.submit(new Compilation(c)));
+        }
+        ServlexException error = null;
+        for ( Future<Long> t : tasks ) {
+            try {
+                t.get();
+            }
+            catch ( ExecutionException ex ) {
+                if ( error == null ) {
+                    // the fork/join pool might rethrow a copy of the original
+                    // exception, wrapping it, so look for it along the chain
+                    Throwable cause = ex.getCause();
+                    while ( cause != null && ! (cause instanceof ServlexException) ) {
+                        cause = cause.getCause();
+                    }
+                    error = cause != null
+                            ? (ServlexException) cause
+                            : new ServlexException(500, "Error compiling a component", ex.getCause());
+                }
+            }
+            catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+                throw new ServlexException(500, "Interrupted while compiling the application: " + myName, ex);
+            }
+        }
+        if ( error != null ) {
+            throw error;
+        }
+        myCompileTime = System.currentTimeMillis() - start;
+        LOG.info("Compiled the application " + myName + " in " + myCompileTime + " ms");
+    }
+
+    /**
+     * Return the time it took to compile the application, in milliseconds.
+     * 
+     * Return -1 if it has not been compiled ahead of time.
+     */
+    public long getCompileTime()
+    {
+        return myCompileTime;
+    }
+
+    /**
+     * Record a request starting to be served by this application.
+     * 
+     * Each call must be followed by a call to {@link #leave()}, once the
+     * request has been served (typically in a {@code finally} block).
+     */
+    public void enter()
+    {
+        myInFlight.incrementAndGet();
+    }
+
+    /**
+     * Record a request done being served by this application.
+     */
+    public void leave()
+    {
+        if ( myInFlight.decrementAndGet() == 0 ) {
+            synchronized ( myInFlight ) {
+                myInFlight.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Return the number of requests being currently served by this application.
+     */
+    public int getInFlight()
+    {
+        return myInFlight.get();
+    }
+
+    /**
+     * Wait for all requests being served by this application to be done.
+     * 
+     * Used when the application has been replaced, to retire it only after
+     * the requests it was serving at that time are done.
+     * 
+     * @param timeout The max time to wait, in milliseconds.
+     * 
+     * @return True if no more request is being served, false if the timeout
+     * expired first.
+     */
+    public boolean awaitIdle(long timeout)
+            throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + timeout;
+        synchronized ( myInFlight ) {
+            while ( myInFlight.get() > 0 ) {
+                long remaining = end - System.currentTimeMillis();
+                if ( remaining <= 0 ) {
+                    return false;
+                }
+                myInFlight.wait(remaining);
+            }
+        }
+        return true;
+    }
+
     public void logApplication()
     {
         // TODO: Create a property to control logging the application structure
@@ -167,6 +434,9 @@ public class Application
 
     /** The logger. */
     private static final Log LOG = new Log(Application.class);
+    /** The pool to compile the components. */
+    private static final ForkJoinPool COMPILER
+            = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 
     private final String myName;
     private final String myTitle;
@@ -175,6 +445,62 @@ public class Application
     private final SequenceProperties myProperties;
     private final List<AddressHandler>     myHandlers     = new ArrayList<>();
     private final Map<String, ConfigParam> myConfigParams = new HashMap<>();
+    /** The route index, null until {@link #indexHandlers()} is called. */
+    private volatile RouteIndex myRoutes = null;
+    /** The digest of the installed webapp, if known. */
+    private volatile String myDigest = null;
+    /** The number of requests being served. */
+    private final AtomicInteger myInFlight = new AtomicInteger(0);
+    /** The admission control, unbounded by default. */
+    private volatile Bulkhead myBulkhead = Bulkhead.NONE;
+    /** The time it took to compile the application ahead of time (-1 if not). */
+    private volatile long myCompileTime = -1;
+    /** The cache of the handlers matched by paths. */
+    private final LruCache<String, Resolution> myResolutions;
+    /** The time this application was loaded. */
+    private final long myLoaded;
+    /** The cache of the static resources content. */
+    private final ResourceCache myResources;
+
+    /**
+     * The compilation of one component, on the compiler pool.
+     */
+    private static class Compilation
+            implements Callable<Long>
+    {
+        public Compilation(Component component)
+        {
+            myComponent = component;
+        }
+
+        @Override
+        public Long call()
+                throws ServlexException
+        {
+            long start = System.currentTimeMillis();
+            myComponent.compile();
+            long time = System.currentTimeMillis() - start;
+            LOG.info("Compiled the component " + myComponent + " in " + time + " ms");
+            return time;
+        }
+
+        private final Component myComponent;
+    }
+
+    /**
+     * A cached resolution: the handler matching a path, and the group boundaries.
+     */
+    public static final class Resolution
+    {
+        private Resolution(AddressHandler handler, int[] bounds)
+        {
+            myHandler = handler;
+            myBounds  = bounds;
+        }
+
+        private final AddressHandler myHandler;
+        private final int[] myBounds;
+    }
 }
 
 
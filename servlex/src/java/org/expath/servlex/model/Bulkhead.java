@@ -0,0 +1,168 @@
+/****************************************************************************/
+/*  File:       Bulkhead.java                                               */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.model;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.expath.servlex.ServlexException;
+import org.expath.servlex.tools.Log;
+
+/**
+ * The admission control of a webapp, isolating it from the other ones.
+ *
+ * It limits the number of requests the webapp serves concurrently, and the
+ * number of requests waiting for their turn.  They are set in servlex.xml,
+ * on the element {@code bulkhead}, with the attributes {@code max-concurrent},
+ * {@code max-queued} (0 by default), {@code max-wait} (the max time in the
+ * queue, in milliseconds, 1000 by default) and {@code retry-after} (in
+ * seconds, 1 by default).  Without {@code max-concurrent}, there is no limit.
+ *
+ * A request must {@link #acquire()} a slot before being served, then
+ * {@link #release()} it.  When the queue is full, or the wait times out,
+ * the request is rejected with a 503, and the header {@code Retry-After}.
+ *
+ * @author Florent Georges
+ */
+public class Bulkhead
+{
+    /**
+     * No limit, for webapps without any bulkhead.
+     */
+    public static final Bulkhead NONE = new Bulkhead(-1, 0, 0, 0);
+
+    public Bulkhead(int concurrent, int queued, long wait, int retry)
+    {
+        myMaxConcurrent = concurrent;
+        myMaxQueued = queued;
+        myMaxWait = wait;
+        myRetryAfter = retry;
+        mySlots = concurrent < 0 ? null : new Semaphore(concurrent, true);
+    }
+
+    /**
+     * Take a slot to serve a request, waiting in the queue if needed.
+     * 
+     * Throw a 503 if the request is rejected.  It must be followed by a call
+     * to {@link #release()} if it succeeds, and only in that case.
+     */
+    public void acquire()
+            throws ServlexException
+    {
+        if ( mySlots == null || mySlots.tryAcquire() ) {
+            return;
+        }
+        if ( myQueued.incrementAndGet() > myMaxQueued ) {
+            myQueued.decrementAndGet();
+            reject("the queue is full");
+        }
+        boolean acquired = false;
+        try {
+            acquired = mySlots.tryAcquire(myMaxWait, TimeUnit.MILLISECONDS);
+        }
+        catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            myQueued.decrementAndGet();
+        }
+        if ( ! acquired ) {
+            reject("no slot within " + myMaxWait + " ms");
+        }
+    }
+
+    /**
+     * Give back the slot taken by {@link #acquire()}.
+     */
+    public void release()
+    {
+        if ( mySlots != null ) {
+            mySlots.release();
+        }
+    }
+
+    public int getMaxConcurrent()
+    {
+        return myMaxConcurrent;
+    }
+
+    /**
+     * Return the number of requests waiting in the queue.
+     */
+    public int getQueued()
+    {
+        return myQueued.get();
+    }
+
+    /**
+     * Return the number of requests rejected so far.
+     */
+    public long getRejected()
+    {
+        return myRejected.get();
+    }
+
+    private void reject(String reason)
+            throws ServlexException
+    {
+        myRejected.incrementAndGet();
+        LOG.error("503: Request rejected by the bulkhead, " + reason);
+        ServlexException ex = new ServlexException(503, "Service Unavailable");
+        ex.addHeader("Retry-After", Integer.toString(myRetryAfter));
+        throw ex;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "concurrent=" + myMaxConcurrent + ", queued=" + myMaxQueued
+                + ", wait=" + myMaxWait + ", retry-after=" + myRetryAfter;
+    }
+
+    /** The logger. */
+    private static final Log LOG = new Log(Bulkhead.class);
+
+    /** The max number of requests served concurrently, unbounded if negative. */
+    private final int myMaxConcurrent;
+    /** The max number of requests waiting for a slot. */
+    private final int myMaxQueued;
+    /** The max time to wait for a slot, in milliseconds. */
+    private final long myMaxWait;
+    /** The number of seconds to tell a rejected client to wait before retrying. */
+    private final int myRetryAfter;
+    /** The slots, null if unbounded. */
+    private final Semaphore mySlots;
+    /** The number of requests waiting for a slot. */
+    private final AtomicInteger myQueued = new AtomicInteger(0);
+    /** The number of requests rejected. */
+    private final AtomicLong myRejected = new AtomicLong(0);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -9,7 +9,9 @@
 
 package org.expath.servlex.model;
 
+import java.util.Set;
 import org.expath.servlex.ServlexException;
+import org.expath.servlex.components.Component;
 import org.expath.servlex.connectors.RequestConnector;
 import org.expath.servlex.runtime.Invocation;
 import org.expath.servlex.tools.Auditor;
@@ -56,6 +58,14 @@ public class Chain
         }
     }
 
+    @Override
+    void collectComponents(Set<Component> components)
+    {
+        for ( Wrapper w : myWrappers ) {
+            w.collectComponents(components);
+        }
+    }
+
     @Override
     public Invocation makeInvocation(String path, RequestConnector request, Invocation wrapped)
     {
@@ -9,6 +9,7 @@
 
 package org.expath.servlex.model;
 
+import java.util.Set;
 import javax.xml.namespace.QName;
 import org.expath.servlex.ServlexException;
 import org.expath.servlex.components.Component;
@@ -74,7 +75,6 @@ public class ErrorHandler
             throws ServlexException
     {
         auditor.cleanup("error handler");
-        myImpl.cleanup(auditor);
         if ( myWrapper != null ) {
             myWrapper.cleanup(auditor);
         }
@@ -106,6 +106,15 @@ public class ErrorHandler
         myWrapper = w;
     }
 
+    @Override
+    void collectComponents(Set<Component> components)
+    {
+        components.add(myImpl);
+        if ( myWrapper != null ) {
+            myWrapper.collectComponents(components);
+        }
+    }
+
     @Override
     public Invocation makeInvocation(String path, RequestConnector request, Invocation wrapped)
     {
@@ -9,6 +9,7 @@
 
 package org.expath.servlex.model;
 
+import java.util.Set;
 import org.expath.servlex.ServlexException;
 import org.expath.servlex.components.Component;
 import org.expath.servlex.connectors.RequestConnector;
@@ -37,12 +38,6 @@ public class Filter
             throws ServlexException
     {
         auditor.cleanup("filter");
-        if ( myIn != null ) {
-            myIn.cleanup(auditor);
-        }
-        if ( myOut != null ) {
-            myOut.cleanup(auditor);
-        }
     }
 
     @Override
@@ -59,6 +54,17 @@ public class Filter
         }
     }
 
+    @Override
+    void collectComponents(Set<Component> components)
+    {
+        if ( myIn != null ) {
+            components.add(myIn);
+        }
+        if ( myOut != null ) {
+            components.add(myOut);
+        }
+    }
+
     @Override
     public Invocation makeInvocation(String path, RequestConnector request, Invocation wrapped)
     {
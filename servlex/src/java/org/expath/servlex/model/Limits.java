@@ -0,0 +1,117 @@
+/****************************************************************************/
+/*  File:       Limits.java                                                 */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.model;
+
+/**
+ * Limits on what a request can make Servlex parse.
+ *
+ * Each limit is unbounded when negative.  Limits are set on the webapp
+ * and/or on servlets, in expath-web.xml, with the attributes
+ * {@code max-body-size} (total number of bytes of the request body),
+ * {@code max-parts} (number of parts of a multipart body),
+ * {@code max-depth} (depth of elements in an XML or HTML body) and
+ * {@code max-nodes} (number of elements, attributes and text nodes in an
+ * XML or HTML body).  The limits of a servlet override those of its webapp.
+ *
+ * @author Florent Georges
+ */
+public class Limits
+{
+    public Limits(long bytes, long parts, long depth, long nodes)
+    {
+        myBytes = bytes;
+        myParts = parts;
+        myDepth = depth;
+        myNodes = nodes;
+    }
+
+    /**
+     * Return new limits, with the limits set in {@code specific}, and these ones for the others.
+     */
+    public Limits override(Limits specific)
+    {
+        return new Limits(
+                specific.myBytes < 0 ? myBytes : specific.myBytes,
+                specific.myParts < 0 ? myParts : specific.myParts,
+                specific.myDepth < 0 ? myDepth : specific.myDepth,
+                specific.myNodes < 0 ? myNodes : specific.myNodes);
+    }
+
+    /**
+     * Return true if at least one limit is set.
+     */
+    public boolean isBounded()
+    {
+        return myBytes >= 0 || myParts >= 0 || myDepth >= 0 || myNodes >= 0;
+    }
+
+    /**
+     * Return true if the depth or the nodes of a tree are limited.
+     */
+    public boolean hasTreeLimits()
+    {
+        return myDepth >= 0 || myNodes >= 0;
+    }
+
+    public long getMaxBytes()
+    {
+        return myBytes;
+    }
+
+    public long getMaxParts()
+    {
+        return myParts;
+    }
+
+    public long getMaxDepth()
+    {
+        return myDepth;
+    }
+
+    public long getMaxNodes()
+    {
+        return myNodes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "bytes=" + myBytes + ", parts=" + myParts + ", depth=" + myDepth + ", nodes=" + myNodes;
+    }
+
+    /** No limit at all. */
+    public static final Limits NONE = new Limits(-1, -1, -1, -1);
+
+    private final long myBytes;
+    private final long myParts;
+    private final long myDepth;
+    private final long myNodes;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -28,10 +28,23 @@ public class Resource
         extends AddressHandler
 {
     public Resource(RegexPattern regex, String rewrite, String type)
+    {
+        this(regex, rewrite, type, null, true);
+    }
+
+    /**
+     * Constructor, with the caching settings.
+     * 
+     * @param control The value of the header Cache-Control to send, null if none.
+     * @param modified Whether to send the header Last-Modified (and to honour If-Modified-Since).
+     */
+    public Resource(RegexPattern regex, String rewrite, String type, String control, boolean modified)
     {
         super(regex);
         myType = type;
         myRewrite = rewrite;
+        myCacheControl = control;
+        myLastModified = modified;
     }
 
     @Override
@@ -84,6 +97,22 @@ public class Resource
         return myType;
     }
 
+    /**
+     * Return the value of the header Cache-Control to send, null if none.
+     */
+    public String getCacheControl()
+    {
+        return myCacheControl;
+    }
+
+    /**
+     * Return true if the header Last-Modified is to be sent.
+     */
+    public boolean isLastModified()
+    {
+        return myLastModified;
+    }
+
     @Override
     public void logApplication(Log log)
     {
@@ -91,6 +120,7 @@ public class Resource
         log.debug("   (is a Resource):");
         log.debug("      type   : " + myType);
         log.debug("      rewrite: " + myRewrite);
+        log.debug("      cache  : " + myCacheControl);
     }
 
     @Override
@@ -103,7 +133,9 @@ public class Resource
             ex.addHeader("Allow", "GET");
             throw ex;
         }
-        return new ResourceInvocation(this, path, connector, myRegex, myRewrite);
+        // a wrapped resource response is not sent as is, so it cannot be a 304
+        boolean conditional = ! isWrapped();
+        return new ResourceInvocation(this, path, connector, myRegex, myRewrite, conditional);
     }
 
     /** The logger. */
@@ -111,6 +143,8 @@ public class Resource
 
     private final String myType;
     private String myRewrite;
+    private final String myCacheControl;
+    private final boolean myLastModified;
 }
 
 
@@ -0,0 +1,137 @@
+/****************************************************************************/
+/*  File:       RouteIndex.java                                             */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the address handlers of an application, to resolve paths quickly.
+ *
+ * Each handler is indexed by the literal prefix of its regex, in a trie of
+ * chars.  Resolving a path walks the trie along the path, and gathers the
+ * handlers indexed on the way (that is, the handlers whose literal prefix is a
+ * prefix of the path).  Only those candidates can match the path, so only
+ * their regexes are evaluated.
+ *
+ * The candidates are always returned in the order the handlers have been
+ * declared, so the first handler matching a path is still the one used.
+ *
+ * The index is immutable once built, so it can be shared by all threads.
+ *
+ * @author Florent Georges
+ */
+class RouteIndex
+{
+    /**
+     * Build the index for a list of handlers, in declaration order.
+     */
+    public RouteIndex(List<AddressHandler> handlers)
+    {
+        myHandlers = handlers.toArray(new AddressHandler[handlers.size()]);
+        myRoot = new Node();
+        for ( int i = 0; i < myHandlers.length; ++i ) {
+            String prefix = myHandlers[i].myRegex.getLiteralPrefix();
+            Node node = myRoot;
+            for ( int c = 0; c < prefix.length(); ++c ) {
+                node = node.child(prefix.charAt(c), true);
+            }
+            node.add(i);
+        }
+        myRoot.freeze();
+    }
+
+    /**
+     * Return the handlers which can match {@code path}, in declaration order.
+     */
+    public List<AddressHandler> candidates(String path)
+    {
+        BitSet found = new BitSet(myHandlers.length);
+        Node node = myRoot;
+        int i = 0;
+        while ( node != null ) {
+            for ( int h : node.myIndexes ) {
+                found.set(h);
+            }
+            node = i < path.length() ? node.child(path.charAt(i++), false) : null;
+        }
+        List<AddressHandler> result = new ArrayList<>(found.cardinality());
+        for ( int h = found.nextSetBit(0); h >= 0; h = found.nextSetBit(h + 1) ) {
+            result.add(myHandlers[h]);
+        }
+        return result;
+    }
+
+    /** All the handlers, in declaration order. */
+    private final AddressHandler[] myHandlers;
+    /** The root of the trie (for handlers with no literal prefix). */
+    private final Node myRoot;
+
+    /**
+     * A node in the trie, with the indexes of the handlers ending there.
+     */
+    private static class Node
+    {
+        public Node child(char c, boolean create)
+        {
+            Node child = myChildren.get(c);
+            if ( child == null && create ) {
+                child = new Node();
+                myChildren.put(c, child);
+            }
+            return child;
+        }
+
+        public void add(int index)
+        {
+            myBuffer.add(index);
+        }
+
+        public void freeze()
+        {
+            myIndexes = new int[myBuffer.size()];
+            for ( int i = 0; i < myIndexes.length; ++i ) {
+                myIndexes[i] = myBuffer.get(i);
+            }
+            myBuffer = null;
+            for ( Node child : myChildren.values() ) {
+                child.freeze();
+            }
+        }
+
+        private final Map<Character, Node> myChildren = new HashMap<>();
+        private List<Integer> myBuffer = new ArrayList<>();
+        private int[] myIndexes;
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
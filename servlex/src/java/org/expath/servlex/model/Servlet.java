@@ -9,6 +9,7 @@
 
 package org.expath.servlex.model;
 
+import java.util.Set;
 import org.apache.commons.lang3.StringUtils;
 import org.expath.servlex.components.Component;
 import org.expath.servlex.ServlexException;
@@ -29,11 +30,24 @@ public class Servlet
         extends AddressHandler
 {
     public Servlet(String name, Component implem, RegexPattern regex, String[] groups)
+    {
+        this(name, implem, regex, groups, false, Limits.NONE);
+    }
+
+    /**
+     * @param streaming True if the request body is to be parsed by the
+     * component itself, on first access (see {@link #isStreamingBody()}).
+     * 
+     * @param limits The limits on parsing the requests (see {@link #getLimits()}).
+     */
+    public Servlet(String name, Component implem, RegexPattern regex, String[] groups, boolean streaming, Limits limits)
     {
         super(regex);
         myName = name;
         myImpl = implem;
         myGroups = groups;
+        myStreaming = streaming;
+        myLimits = limits;
     }
 
     @Override
@@ -42,7 +56,6 @@ public class Servlet
     {
         super.cleanup(auditor);
         auditor.cleanup("servlet " + myName);
-        myImpl.cleanup(auditor);
     }
 
     public String getName()
@@ -60,6 +73,39 @@ public class Servlet
         return myGroups;
     }
 
+    /**
+     * Return true if an XML request body is parsed by the component, on first access.
+     * 
+     * This is set by {@code body="stream"} on the servlet in expath-web.xml.
+     * The body is then not parsed upfront, nor put in the input sequence.
+     * Instead, the component accesses it with {@code doc(@href)} on its
+     * web:body element (see {@link org.expath.servlex.tools.StreamedBody}).
+     */
+    public boolean isStreamingBody()
+    {
+        return myStreaming;
+    }
+
+    /**
+     * Return the limits on what a request can make Servlex parse.
+     * 
+     * The limits set on the servlet itself, completed by those set on the
+     * webapp (never null, but possibly {@link Limits#NONE}).
+     */
+    public Limits getLimits()
+    {
+        return myLimits;
+    }
+
+    @Override
+    void collectComponents(Set<Component> components)
+    {
+        super.collectComponents(components);
+        if ( myImpl != null ) {
+            components.add(myImpl);
+        }
+    }
+
     @Override
     public void logApplication(Log log)
     {
@@ -69,6 +115,8 @@ public class Servlet
             log.debug("      name   : " + myName);
             log.debug("      groups : " + StringUtils.join(myGroups, ", "));
             log.debug("      impl   : " + myImpl);
+            log.debug("      stream : " + myStreaming);
+            log.debug("      limits : " + myLimits);
         }
         if ( myImpl != null ) {
             myImpl.logApplication(log);
@@ -86,6 +134,10 @@ public class Servlet
     private final Component myImpl;
     /** Match group names (group[i] is null if it is not set). */
     private final String[]  myGroups;
+    /** Is the request body parsed by the component, on first access? */
+    private final boolean   myStreaming;
+    /** The limits on parsing the requests. */
+    private final Limits    myLimits;
 }
 
 
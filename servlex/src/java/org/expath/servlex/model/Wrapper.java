@@ -9,7 +9,9 @@
 
 package org.expath.servlex.model;
 
+import java.util.Set;
 import org.expath.servlex.ServlexException;
+import org.expath.servlex.components.Component;
 import org.expath.servlex.connectors.RequestConnector;
 import org.expath.servlex.runtime.Invocation;
 import org.expath.servlex.tools.Auditor;
@@ -46,6 +48,11 @@ public abstract class Wrapper
 
     public abstract void logApplication(Log log);
 
+    /**
+     * Add the components used by this wrapper to {@code components}.
+     */
+    abstract void collectComponents(Set<Component> components);
+
     public abstract Invocation makeInvocation(String path, RequestConnector request, Invocation wrapped);
 
     private String myName;
@@ -21,7 +21,9 @@ import org.expath.servlex.TechnicalException;
 import org.expath.servlex.components.Component;
 import org.expath.servlex.model.AddressHandler;
 import org.expath.servlex.model.Application;
+import org.expath.servlex.model.Bulkhead;
 import org.expath.servlex.model.ConfigParam;
+import org.expath.servlex.model.Limits;
 import org.expath.servlex.processors.Processors;
 import org.expath.servlex.tools.Log;
 import org.expath.servlex.tools.ProcessorsMap;
@@ -152,6 +154,13 @@ public class EXPathWebParser
                     // this is a non-fatal error (and we can have several such elements)
                     LOG.warn("Error instantiating Processors implementation: " + clazz, ex);
                 }
+                parser.nextTag(); // </processors>
+                parser.ensureEndTag("processors");
+            }
+            else if ( elem.equals("bulkhead") ) {
+                ctxt.setBulkhead(handleBulkhead(parser));
+                parser.nextTag(); // </bulkhead>
+                parser.ensureEndTag("bulkhead");
             }
             else {
                 String msg = "Unkown element in the servlex extensions for webapp ";
@@ -193,6 +202,8 @@ public class EXPathWebParser
         String abbrev = parser.getAttribute("abbrev");
         ctxt.setAbbrev(abbrev);
         LOG.info("  webapp abbrev: " + abbrev);
+        // the limits, for all servlets
+        ctxt.setLimits(handleLimitsAttrs(parser));
 
         for ( ; /* ever */; ) {
             parser.nextTag();
@@ -302,6 +313,7 @@ public class EXPathWebParser
         String      title  = ctxt.getTitle();
         Processors  procs  = ctxt.getProcessors();
         Application app    = new Application(abbrev, title, pkg, procs);
+        app.setBulkhead(ctxt.getBulkhead());
         // add config params
         for ( ParsingConfigParam c : ctxt.getConfigParams()) {
             ConfigParam config = c.makeConfigParam(ctxt);
@@ -312,6 +324,8 @@ public class EXPathWebParser
             AddressHandler handler = h.makeAddressHandler(ctxt, LOG);
             app.addHandler(handler);
         }
+        // index the handlers, once for all, to speed up resolving paths
+        app.indexHandlers();
         return app;
     }
 
@@ -441,6 +455,65 @@ public class EXPathWebParser
         handleFiltersAttr(parser, handler);
     }
 
+    /**
+     * Handle the limits attributes on elements 'webapp' or 'servlet'.
+     *
+     * Like handleAdressHandler(), this one does not consume any new events in
+     * the parsing event stream.  It only looks at attributes.  An attribute
+     * not set results in no limit (a negative value).
+     */
+    private Limits handleLimitsAttrs(StreamParser parser)
+            throws ParseException
+    {
+        long bytes = parseLimit(parser, "max-body-size");
+        long parts = parseLimit(parser, "max-parts");
+        long depth = parseLimit(parser, "max-depth");
+        long nodes = parseLimit(parser, "max-nodes");
+        return new Limits(bytes, parts, depth, nodes);
+    }
+
+    /**
+     * Handle the element 'bulkhead' in servlex.xml (only looks at its attributes).
+     */
+    private Bulkhead handleBulkhead(StreamParser parser)
+            throws ParseException
+    {
+        long concurrent = parseLimit(parser, "max-concurrent");
+        long queued     = parseLimit(parser, "max-queued");
+        long wait       = parseLimit(parser, "max-wait");
+        long retry      = parseLimit(parser, "retry-after");
+        Bulkhead bulkhead = new Bulkhead(
+                concurrent < 0 ? -1 : (int) Math.min(concurrent, Integer.MAX_VALUE),
+                queued     < 0 ? 0 : (int) Math.min(queued, Integer.MAX_VALUE),
+                wait       < 0 ? 1000 : wait,
+                retry      < 0 ? 1 : (int) Math.min(retry, Integer.MAX_VALUE));
+        LOG.info("  webapp bulkhead: " + bulkhead);
+        return bulkhead;
+    }
+
+    /**
+     * Parse one limit attribute, return -1 if it is not set.
+     */
+    private long parseLimit(StreamParser parser, String name)
+            throws ParseException
+    {
+        String value = parser.getAttribute(name);
+        if ( value == null ) {
+            return -1;
+        }
+        long limit = -1;
+        try {
+            limit = Long.parseLong(value.trim());
+        }
+        catch ( NumberFormatException ex ) {
+            parser.parseError("@" + name + " is not an integer: '" + value + "'", ex);
+        }
+        if ( limit < 0 ) {
+            parser.parseError("@" + name + " is negative: '" + value + "'");
+        }
+        return limit;
+    }
+
     /**
      * Handle an element 'resource' in the webapp descriptor.
      *
@@ -463,6 +536,22 @@ public class EXPathWebParser
         // the media type
         String type = parser.getAttribute("media-type");
         rsrc.setMediaType(type);
+        // the caching settings
+        String control = parser.getAttribute("cache-control");
+        rsrc.setCacheControl(control);
+        String modified = parser.getAttribute("last-modified");
+        if ( modified != null ) {
+            switch ( modified.trim() ) {
+                case "true":
+                    rsrc.setLastModified(true);
+                    break;
+                case "false":
+                    rsrc.setLastModified(false);
+                    break;
+                default:
+                    parser.parseError("@last-modified is not a boolean: '" + modified + "'");
+            }
+        }
         parser.nextTag();
         parser.ensureEndTag();
         return rsrc;
@@ -551,6 +640,18 @@ public class EXPathWebParser
         LOG.debug("expath-web parser: servlet: " + name);
         ParsingServlet servlet = new ParsingServlet(name);
         handleAdressHandler(servlet, parser, ctxt);
+        // how to parse the request body
+        String body = parser.getAttribute("body");
+        if ( body == null || "parse".equals(body) ) {
+            servlet.setStreamingBody(false);
+        }
+        else if ( "stream".equals(body) ) {
+            servlet.setStreamingBody(true);
+        }
+        else {
+            throw new ParseException("servlet/@body is neither 'parse' nor 'stream', it is: '" + body + "'");
+        }
+        servlet.setLimits(handleLimitsAttrs(parser));
         parser.nextTag();
         parser.ensureNamespace();
         Component implem = handleComponent(parser, ctxt);
@@ -16,6 +16,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import org.expath.servlex.model.Bulkhead;
+import org.expath.servlex.model.Limits;
 import org.expath.servlex.model.Wrapper;
 import org.expath.servlex.processors.Processors;
 import org.expath.servlex.tools.Log;
@@ -61,6 +63,20 @@ class ParsingContext
         return myApp;
     }
 
+    public void setLimits(Limits l) {
+        myLimits = l;
+    }
+    public Limits getLimits() {
+        return myLimits;
+    }
+
+    public void setBulkhead(Bulkhead b) {
+        myBulkhead = b;
+    }
+    public Bulkhead getBulkhead() {
+        return myBulkhead;
+    }
+
     public void setBase(URI b) throws ParseException {
         myBase = b;
     }
@@ -144,6 +160,8 @@ class ParsingContext
     private String     myTitle  = null;
     private ParsingApp myApp    = null;
     private URI        myBase   = null;
+    private Limits     myLimits = Limits.NONE;
+    private Bulkhead   myBulkhead = Bulkhead.NONE;
     private final List<ParsingConfigParam>     myConfigParams   = new ArrayList<>();
     private final List<ParsingHandler>         myHandlers       = new ArrayList<>();
     private final Stack<ParsingGroup>          myInScopeGroups  = new Stack<>();
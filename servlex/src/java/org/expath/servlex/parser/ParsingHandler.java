@@ -9,6 +9,7 @@
 
 package org.expath.servlex.parser;
 
+import java.util.regex.PatternSyntaxException;
 import org.expath.servlex.model.AddressHandler;
 import org.expath.servlex.model.Wrapper;
 import org.expath.servlex.tools.Log;
@@ -30,7 +31,13 @@ abstract class ParsingHandler
     public AddressHandler makeAddressHandler(ParsingContext ctxt, Log log)
             throws ParseException
     {
-        RegexPattern regex = new RegexPattern(myPattern);
+        RegexPattern regex;
+        try {
+            regex = new RegexPattern(myPattern);
+        }
+        catch ( PatternSyntaxException ex ) {
+            throw new ParseException("Invalid regex in address handler pattern: " + myPattern, ex);
+        }
         AddressHandler handler = makeIt(ctxt, regex);
         Wrapper wrapper = makeWrapper(ctxt);
         handler.setWrapper(wrapper);
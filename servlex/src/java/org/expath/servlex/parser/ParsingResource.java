@@ -32,14 +32,26 @@ class ParsingResource
         myMediaType = type;
     }
 
+    public void setCacheControl(String control)
+    {
+        myCacheControl = control;
+    }
+
+    public void setLastModified(boolean modified)
+    {
+        myLastModified = modified;
+    }
+
     @Override
     protected AddressHandler makeIt(ParsingContext ctxt, RegexPattern regex)
     {
-        return new Resource(regex, myRewrite, myMediaType);
+        return new Resource(regex, myRewrite, myMediaType, myCacheControl, myLastModified);
     }
 
     private String myRewrite;
     private String myMediaType;
+    private String myCacheControl;
+    private boolean myLastModified = true;
 }
 
 
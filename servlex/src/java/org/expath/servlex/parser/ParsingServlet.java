@@ -14,6 +14,7 @@ import java.util.List;
 import java.util.regex.Pattern;
 import org.expath.servlex.components.Component;
 import org.expath.servlex.model.AddressHandler;
+import org.expath.servlex.model.Limits;
 import org.expath.servlex.model.Servlet;
 import org.expath.servlex.tools.Auditor;
 import org.expath.servlex.tools.RegexPattern;
@@ -36,6 +37,16 @@ class ParsingServlet
         myImplem = implem;
     }
 
+    public void setStreamingBody(boolean streaming)
+    {
+        myStreaming = streaming;
+    }
+
+    public void setLimits(Limits limits)
+    {
+        myLimits = limits;
+    }
+
     public void addMatchGroup(String g)
     {
         myMatchGroups.add(g);
@@ -45,12 +56,16 @@ class ParsingServlet
     protected AddressHandler makeIt(ParsingContext ctxt, RegexPattern regex)
     {
         String[] groups = myMatchGroups.toArray(new String[]{ });
-        return new Servlet(myName, myImplem, regex, groups);
+        // the servlet limits override those of the webapp
+        Limits limits = ctxt.getLimits().override(myLimits);
+        return new Servlet(myName, myImplem, regex, groups, myStreaming, limits);
     }
 
     private String       myName        = null;
     private Component    myImplem      = null;
     private List<String> myMatchGroups = new ArrayList<>();
+    private boolean      myStreaming   = false;
+    private Limits       myLimits      = Limits.NONE;
 }
 
 
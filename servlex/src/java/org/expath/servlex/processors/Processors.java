@@ -43,6 +43,15 @@ public interface Processors
     public Document buildDocument(Source src)
             throws TechnicalException;
 
+    /**
+     * Return a document wrapping the DOM document {@code dom}, without copying it.
+     * 
+     * The DOM tree is navigated in place, only when it is accessed (see
+     * {@link org.expath.servlex.tools.DeferredTree}).
+     */
+    public Document wrapDocument(org.w3c.dom.Document dom)
+            throws TechnicalException;
+
     public Item buildString(String value)
             throws TechnicalException;
 
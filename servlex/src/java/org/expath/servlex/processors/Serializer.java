@@ -12,6 +12,7 @@ package org.expath.servlex.processors;
 import java.io.OutputStream;
 import javax.xml.namespace.QName;
 import org.expath.servlex.TechnicalException;
+import org.xml.sax.ContentHandler;
 
 /**
  * An abstract serializer.
@@ -40,6 +41,16 @@ public interface Serializer
     public void serialize(Sequence sequence, OutputStream out)
             throws TechnicalException;
 
+    /**
+     * Return a SAX content handler serializing the events it receives to an output stream.
+     * 
+     * The serializer uses the values of the various output properties, as
+     * they are set when this method is called.  The handler writes to the
+     * stream as the events are received, without building any tree.
+     */
+    public ContentHandler makeContentHandler(OutputStream out)
+            throws TechnicalException;
+
     /**
      * Return the output property {@code media-type}.
      */
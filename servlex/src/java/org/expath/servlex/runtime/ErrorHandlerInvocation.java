@@ -14,6 +14,7 @@ import org.expath.servlex.ServerConfig;
 import org.expath.servlex.ServlexException;
 import org.expath.servlex.components.Component;
 import org.expath.servlex.connectors.Connector;
+import org.expath.servlex.connectors.DeferredConnector;
 import org.expath.servlex.connectors.ErrorConnector;
 import org.expath.servlex.connectors.RequestConnector;
 import org.expath.servlex.model.Application;
@@ -53,11 +54,10 @@ public class ErrorHandlerInvocation
     {
         auditor.cleanup("error handler invocation");
         myWrapped.cleanup(auditor);
-        myImpl.cleanup(auditor);
     }
 
     @Override
-    public Connector invoke(Connector connector, Application app, ServerConfig config, Auditor auditor)
+    public Connector invoke(Connector connector, Application app, ServerConfig config, Auditor auditor, ExecutionContext ctxt)
             throws ServlexException
                  , ComponentError
     {
@@ -65,13 +65,15 @@ public class ErrorHandlerInvocation
                 "error handler", getName(), getPath(),
                 myImpl == null ? "" : myImpl.toString());
         try {
-            return myWrapped.invoke(connector, app, config, auditor);
+            // evaluate it here, for its errors to be caught
+            Connector result = myWrapped.invoke(connector, app, config, auditor, ctxt);
+            return DeferredConnector.materialize(result);
         }
         catch ( ComponentError ex ) {
             if ( matches(ex.getName()) ) {
                 try {
                     Connector c = new ErrorConnector(ex, getRequest(), auditor);
-                    return myImpl.run(c, config, auditor);
+                    return myImpl.run(c, config, auditor, ctxt);
                 }
                 catch ( ComponentError ex2 ) {
                     throw new ServlexException(500, "Internal error (error in an error handler)", ex2);
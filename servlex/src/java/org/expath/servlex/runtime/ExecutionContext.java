@@ -0,0 +1,132 @@
+/****************************************************************************/
+/*  File:       ExecutionContext.java                                       */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.expath.servlex.ServlexException;
+import org.expath.servlex.tools.Auditor;
+import org.expath.servlex.tools.Cleanable;
+import org.expath.servlex.tools.Log;
+
+/**
+ * The execution context of one request, shared by all the components it invokes.
+ *
+ * Components are compiled once and shared between all concurrent requests, so
+ * they must not keep any state specific to a request.  Instead, the resources
+ * a component acquires for one request are registered on its context, which
+ * releases them all when the request is over (after the response has been
+ * sent to the client, or when an error occurred).
+ *
+ * @author Florent Georges
+ */
+public class ExecutionContext
+        implements Cleanable
+{
+    /**
+     * A context not bound to any HTTP request (e.g. for testing purposes).
+     */
+    public ExecutionContext()
+    {
+        this(null);
+    }
+
+    public ExecutionContext(RequestContext request)
+    {
+        myRequest = request;
+    }
+
+    /**
+     * Return the context of the HTTP request being served, null if none.
+     */
+    public RequestContext getRequestContext()
+    {
+        return myRequest;
+    }
+
+    /**
+     * Register a resource to be cleaned up at the end of the request.
+     */
+    public synchronized void register(Cleanable resource)
+    {
+        if ( myResources == null ) {
+            throw new IllegalStateException("The execution context has already been cleaned up");
+        }
+        myResources.add(resource);
+    }
+
+    /**
+     * Clean up all the registered resources, in the reverse order.
+     *
+     * All resources are cleaned up, even if some of them fail.  In that case,
+     * the first error is thrown after all of them have been cleaned up.
+     * Cleaning up the context more than once does nothing.
+     */
+    @Override
+    public void cleanup(Auditor auditor)
+            throws ServlexException
+    {
+        List<Cleanable> resources;
+        synchronized ( this ) {
+            if ( myResources == null ) {
+                return;
+            }
+            resources = myResources;
+            myResources = null;
+        }
+        auditor.cleanup("execution context");
+        ServlexException error = null;
+        for ( int i = resources.size() - 1; i >= 0; --i ) {
+            try {
+                resources.get(i).cleanup(auditor);
+            }
+            catch ( ServlexException | RuntimeException ex ) {
+                LOG.error("Error cleaning up a resource: " + resources.get(i), ex);
+                if ( error == null ) {
+                    error = ex instanceof ServlexException
+                            ? (ServlexException) ex
+                            : new ServlexException(500, "Error cleaning up a resource", ex);
+                }
+            }
+        }
+        if ( error != null ) {
+            throw error;
+        }
+    }
+
+    /** The logger. */
+    private static final Log LOG = new Log(ExecutionContext.class);
+
+    /** The context of the HTTP request being served. */
+    private final RequestContext myRequest;
+    /** The resources to clean up, null once cleaned up. */
+    private List<Cleanable> myResources = new ArrayList<>();
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
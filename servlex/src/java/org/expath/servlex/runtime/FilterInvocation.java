@@ -13,6 +13,7 @@ import org.expath.servlex.ServerConfig;
 import org.expath.servlex.ServlexException;
 import org.expath.servlex.components.Component;
 import org.expath.servlex.connectors.Connector;
+import org.expath.servlex.connectors.DeferredConnector;
 import org.expath.servlex.connectors.RequestConnector;
 import org.expath.servlex.model.Application;
 import org.expath.servlex.tools.Auditor;
@@ -39,16 +40,10 @@ public class FilterInvocation
     {
         auditor.cleanup("filter invocation");
         myWrapped.cleanup(auditor);
-        if ( myIn != null ) {
-            myIn.cleanup(auditor);
-        }
-        if ( myOut != null ) {
-            myOut.cleanup(auditor);
-        }
     }
 
     @Override
-    public Connector invoke(Connector connector, Application app, ServerConfig config, Auditor auditor)
+    public Connector invoke(Connector connector, Application app, ServerConfig config, Auditor auditor, ExecutionContext ctxt)
             throws ServlexException
                  , ComponentError
     {
@@ -62,13 +57,15 @@ public class FilterInvocation
             // to the client, without calling the filtered component...
             // Use case: an authentication filter (if non authenticated, the
             // filter returns an authentication demand to the client).
-            connector = myIn.run(connector, config, auditor);
+            connector = myIn.run(connector, config, auditor, ctxt);
+            connector = DeferredConnector.materialize(connector);
         }
         // the filtered component
-        connector = myWrapped.invoke(connector, app, config, auditor);
+        connector = myWrapped.invoke(connector, app, config, auditor, ctxt);
         // outbound filter
         if ( myOut != null ) {
-            connector = myOut.run(connector, config, auditor);
+            connector = DeferredConnector.materialize(connector);
+            connector = myOut.run(connector, config, auditor, ctxt);
         }
         // return the filtered result
         return connector;
@@ -51,7 +51,7 @@ public abstract class Invocation
         return myRequest;
     }
 
-    public abstract Connector invoke(Connector connector, Application app, ServerConfig config, Auditor auditor)
+    public abstract Connector invoke(Connector connector, Application app, ServerConfig config, Auditor auditor, ExecutionContext ctxt)
             throws ServlexException
                  , ComponentError;
 
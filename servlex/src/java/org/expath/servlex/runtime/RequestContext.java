@@ -0,0 +1,157 @@
+/****************************************************************************/
+/*  File:       RequestContext.java                                         */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.runtime;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+import javax.servlet.http.HttpServletRequest;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.URIResolver;
+import org.expath.servlex.model.Application;
+
+/**
+ * The context of the request being served: the HTTP request, and the webapp.
+ *
+ * The context is created once per request, on the container thread, and is
+ * then passed explicitly to the objects serving it, whatever the thread they
+ * run on (the container thread itself, or a worker thread in asynchronous
+ * mode, see {@link org.expath.servlex.ServerConfig#getAsyncExecutor()}).
+ *
+ * The extension functions are called by the processors without any access
+ * to Servlex objects.  The components thus install the resolver returned by
+ * {@link #makeResolver(URIResolver)} on the dynamic context of each
+ * evaluation, so the functions can retrieve the context from there, with
+ * {@link #fromResolver(Object)}.
+ *
+ * @author Florent Georges
+ */
+public class RequestContext
+{
+    public RequestContext(HttpServletRequest request)
+    {
+        myRequest = request;
+        String now = NOW_FORMAT.format(LocalDateTime.now());
+        myRequestId = now + "-" + UUID.randomUUID().toString();
+    }
+
+    /**
+     * Return a resolver carrying this context, delegating to {@code fallback}.
+     *
+     * The returned resolver resolves all URIs using {@code fallback}, or
+     * returns null if it is null (to use the default resolution).  Its only
+     * purpose is to carry the context through the dynamic context of the
+     * processors.
+     */
+    public URIResolver makeResolver(URIResolver fallback)
+    {
+        return new ContextResolver(this, fallback);
+    }
+
+    /**
+     * Return the context carried by a resolver, or null if it does not carry any.
+     *
+     * @param resolver A resolver, returned by {@link #makeResolver(URIResolver)}
+     * or not (it can be null).
+     */
+    public static RequestContext fromResolver(Object resolver)
+    {
+        if ( resolver instanceof ContextResolver ) {
+            return ( (ContextResolver) resolver ).myContext;
+        }
+        return null;
+    }
+
+    public HttpServletRequest getRequest()
+    {
+        return myRequest;
+    }
+
+    /**
+     * Return the unique identifier of the request, based on its time of arrival.
+     */
+    public String getRequestId()
+    {
+        return myRequestId;
+    }
+
+    /**
+     * Return the webapp serving the request, null if not known (yet).
+     */
+    public Application getApplication()
+    {
+        return myApplication;
+    }
+
+    public void setApplication(Application app)
+    {
+        myApplication = app;
+    }
+
+    /**
+     * The resolver carrying a context, returned by {@link #makeResolver(URIResolver)}.
+     */
+    private static class ContextResolver
+            implements URIResolver
+    {
+        public ContextResolver(RequestContext ctxt, URIResolver fallback)
+        {
+            myContext = ctxt;
+            myFallback = fallback;
+        }
+
+        @Override
+        public Source resolve(String href, String base)
+                throws TransformerException
+        {
+            if ( myFallback == null ) {
+                return null;
+            }
+            else {
+                return myFallback.resolve(href, base);
+            }
+        }
+
+        private final RequestContext myContext;
+        private final URIResolver myFallback;
+    }
+
+    /** The date formatter, for the request ids (immutable and thread-safe). */
+    private static final DateTimeFormatter NOW_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    /** The Java EE HTTP request object. */
+    private final HttpServletRequest myRequest;
+    /** The unique identifier of the request. */
+    private final String myRequestId;
+    /** The webapp serving the request. */
+    private volatile Application myApplication = null;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
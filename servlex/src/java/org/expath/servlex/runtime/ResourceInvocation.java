@@ -10,8 +10,7 @@
 package org.expath.servlex.runtime;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import org.expath.servlex.model.Resource;
 import java.io.InputStream;
 import java.net.URI;
@@ -31,8 +30,11 @@ import org.expath.servlex.connectors.RequestConnector;
 import org.expath.servlex.connectors.ResourceConnector;
 import org.expath.servlex.model.Application;
 import org.expath.servlex.tools.Auditor;
+import org.expath.servlex.tools.Conditional;
+import org.expath.servlex.tools.ContentType;
 import org.expath.servlex.tools.Log;
 import org.expath.servlex.tools.RegexPattern;
+import org.expath.servlex.tools.ResourceCache;
 
 /**
  * Represent a specific invocation of an application's resource, at a specific URI.
@@ -42,12 +44,18 @@ import org.expath.servlex.tools.RegexPattern;
 public class ResourceInvocation
         extends Invocation
 {
-    public ResourceInvocation(Resource rsrc, String path, RequestConnector request, RegexPattern regex, String rewrite)
+    /**
+     * Constructor.
+     * 
+     * @param conditional Whether the response can be a 304, if the request validators match.
+     */
+    public ResourceInvocation(Resource rsrc, String path, RequestConnector request, RegexPattern regex, String rewrite, boolean conditional)
     {
         super(null, path, request);
         myRsrc = rsrc;
         myRegex = regex;
         myRewrite = rewrite;
+        myConditional = conditional;
     }
 
     @Override
@@ -59,7 +67,7 @@ public class ResourceInvocation
     }
 
     @Override
-    public Connector invoke(Connector connector, Application app, ServerConfig config, Auditor auditor)
+    public Connector invoke(Connector connector, Application app, ServerConfig config, Auditor auditor, ExecutionContext ctxt)
             throws ServlexException
     {
         auditor.invoke(
@@ -69,37 +77,43 @@ public class ResourceInvocation
         String orig_path = getPath();
         try {
             String path = myRegex.replace(orig_path, myRewrite);
-            Package pkg = myRsrc.getApplication().getPackage();
-            InputStream in;
-            if ( path.startsWith("file:") ) {
-                try {
-                    File f = new File(new URI(path));
-                    in = new FileInputStream(f);
-                }
-                catch ( URISyntaxException ex ) {
-                    throw new ServlexException(500, "The resource is not a proper file: URI: " + path);
-                }
-                catch ( FileNotFoundException ex ) {
-                    throw new ServlexException(500, "Error opening the file: " + path);
+            String type = myRsrc.getType();
+            File file = path.startsWith("file:") ? toFile(path) : null;
+            // the validators, checked before opening anything
+            String etag = null;
+            long modified = -1;
+            if ( file != null && file.exists() ) {
+                etag = Conditional.etag(file.length(), file.lastModified());
+                modified = file.lastModified();
+            }
+            else if ( file == null && app.getDigest() != null ) {
+                etag = Conditional.etag(app.getDigest(), path);
+                modified = app.getLoaded();
+            }
+            if ( ! myRsrc.isLastModified() ) {
+                modified = -1;
+            }
+            ResourceConnector result;
+            if ( myConditional && getRequest() != null && getRequest().isNotModified(etag, modified) ) {
+                result = new ResourceConnector((InputStream) null, 304, type, app.getProcessors(), auditor);
+                if ( file == null && app.getResourceCache().isEnabled()
+                        && ResourceCache.isCompressible(new ContentType(type)) ) {
+                    // as the 200 would, if the resource has a gzip variant
+                    result.setVaryEncoding();
                 }
             }
+            else if ( file != null ) {
+                result = openFile(file, path, type, app, auditor);
+            }
             else {
-                Source src = pkg.getResolver().resolveComponent(path);
-                // return a 404 if the resource does not exist
-                if ( src == null ) {
-                    throw new ServlexException(404, "Page not found");
-                }
-                StreamSource stream = null;
-                if ( src instanceof StreamSource ) {
-                    stream = (StreamSource) src;
-                }
-                else {
-                    throw new ServlexException(500, "The resource is not a StreamSource: " + src.getClass());
-                }
-                in = stream.getInputStream();
+                result = openResource(path, type, app, auditor, ctxt);
             }
-            String type = myRsrc.getType();
-            return new ResourceConnector(in, 200, type, app.getProcessors(), auditor);
+            result.setCaching(etag, modified, myRsrc.getCacheControl());
+            return result;
+        }
+        catch ( IOException ex ) {
+            LOG.error("Error reading the resource: " + orig_path, ex);
+            throw new ServlexException(500, "Internal server error");
         }
         catch ( Storage.NotExistException ex ) {
             LOG.error("Page not found: " + orig_path, ex);
@@ -115,12 +129,95 @@ public class ResourceInvocation
         }
     }
 
+    /**
+     * Open a file outside of the package (those are not cached, they can change anytime).
+     * 
+     * The file is actually opened only when sent, straight from the file
+     * channel to the response.
+     */
+    private ResourceConnector openFile(File file, String path, String type, Application app, Auditor auditor)
+            throws ServlexException
+    {
+        if ( ! file.isFile() ) {
+            throw new ServlexException(500, "Error opening the file: " + path);
+        }
+        return new ResourceConnector(file, 200, type, app.getProcessors(), auditor);
+    }
+
+    /**
+     * Open a resource within the package, through the resource cache.
+     * 
+     * A cached entry is registered on {@code ctxt}, so it is released once
+     * the response has been sent.
+     */
+    private ResourceConnector openResource(String path, String type, Application app, Auditor auditor, ExecutionContext ctxt)
+            throws ServlexException
+                 , PackageException
+                 , Storage.NotExistException
+                 , TechnicalException
+                 , IOException
+    {
+        ResourceCache cache = app.getResourceCache();
+        ResourceCache.Entry entry = cache.get(path);
+        if ( entry == null ) {
+            InputStream in = resolve(path);
+            if ( ! cache.isEnabled() ) {
+                return new ResourceConnector(in, 200, type, app.getProcessors(), auditor);
+            }
+            ResourceCache.Loader loader = cache.load(path, in, new ContentType(type));
+            entry = loader.getEntry();
+            if ( entry == null ) {
+                // too large to be cached
+                return new ResourceConnector(loader.getRemainder(), 200, type, app.getProcessors(), auditor);
+            }
+        }
+        ctxt.register(entry);
+        boolean gzip = getRequest() != null && getRequest().acceptsEncoding("gzip");
+        return new ResourceConnector(entry, gzip, 200, type, app.getProcessors(), auditor);
+    }
+
+    private File toFile(String path)
+            throws ServlexException
+    {
+        try {
+            return new File(new URI(path));
+        }
+        catch ( URISyntaxException | IllegalArgumentException ex ) {
+            throw new ServlexException(500, "The resource is not a proper file: URI: " + path);
+        }
+    }
+
+    /**
+     * Resolve the resource within the package, and open its content.
+     */
+    private InputStream resolve(String path)
+            throws ServlexException
+                 , PackageException
+                 , Storage.NotExistException
+    {
+        Package pkg = myRsrc.getApplication().getPackage();
+        Source src = pkg.getResolver().resolveComponent(path);
+        // return a 404 if the resource does not exist
+        if ( src == null ) {
+            throw new ServlexException(404, "Page not found");
+        }
+        StreamSource stream = null;
+        if ( src instanceof StreamSource ) {
+            stream = (StreamSource) src;
+        }
+        else {
+            throw new ServlexException(500, "The resource is not a StreamSource: " + src.getClass());
+        }
+        return stream.getInputStream();
+    }
+
     /** The logger. */
     private static final Log LOG = new Log(ResourceInvocation.class);
 
     private final Resource     myRsrc;
     private final RegexPattern myRegex;
     private final String       myRewrite;
+    private final boolean      myConditional;
 }
 
 
@@ -36,18 +36,17 @@ public class ServletInvocation
             throws ServlexException
     {
         auditor.cleanup("servlet invocation");
-        myImpl.cleanup(auditor);
     }
 
     @Override
-    public Connector invoke(Connector connector, Application app, ServerConfig config, Auditor auditor)
+    public Connector invoke(Connector connector, Application app, ServerConfig config, Auditor auditor, ExecutionContext ctxt)
             throws ServlexException
                  , ComponentError
     {
         auditor.invoke(
                 "servlet", getName(), getPath(),
                 myImpl == null ? "" : myImpl.toString());
-        return myImpl.run(connector, config, auditor);
+        return myImpl.run(connector, config, auditor, ctxt);
     }
 
     /** The implementation of this servlet, a specific component. */
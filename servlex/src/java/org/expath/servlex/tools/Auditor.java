@@ -14,12 +14,12 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import org.expath.servlex.ServerConfig;
-import org.expath.servlex.Servlex;
 import org.expath.servlex.ServlexException;
 import org.expath.servlex.TechnicalException;
 import org.expath.servlex.connectors.RequestConnector;
 import org.expath.servlex.processors.Document;
 import org.expath.servlex.processors.Processors;
+import org.expath.servlex.runtime.RequestContext;
 
 /**
  * Log audit information.
@@ -28,12 +28,17 @@ import org.expath.servlex.processors.Processors;
  */
 public class Auditor
 {
-    public Auditor(ServerConfig config, Processors procs)
+    /**
+     * @param ctxt The context of the request to audit (can be null if profiling
+     * is disabled in {@code config}).
+     */
+    public Auditor(ServerConfig config, Processors procs, RequestContext ctxt)
             throws ServlexException
     {
         myConfig = config;
+        myContext = ctxt;
         try {
-            myFile = config.getProfileFile("servlex-audit");
+            myFile = config.getProfileFile("servlex-audit", ctxt);
         }
         catch ( TechnicalException ex ) {
             String msg = "Internal error, opening the audit file";
@@ -56,14 +61,7 @@ public class Auditor
         myStart = new Date();
         if ( myWriter != null ) {
             // getting the request id
-            String id = null;
-            try {
-                id = Servlex.getRequestMap().getPrivate("web:request-id");
-            }
-            catch ( TechnicalException ex ) {
-                String msg = "Internal error, getting the request-id.";
-                throw new ServlexException(500, msg, ex);
-            }
+            String id = myContext.getRequestId();
             // opening the profile element
             try {
                 myWriter.openElement("profile", 0, a("request-id", id));
@@ -295,6 +293,7 @@ public class Auditor
     }
 
     private ServerConfig myConfig;
+    private RequestContext myContext;
     private File myFile;
     private XmlWriter myWriter;
     private Date myStart;
@@ -11,25 +11,34 @@ package org.expath.servlex.tools;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Source;
 import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamSource;
 import org.ccil.cowan.tagsoup.Parser;
+import org.expath.servlex.ServlexException;
 import org.expath.servlex.TechnicalException;
 import org.expath.servlex.connectors.RequestConnector;
 import org.expath.servlex.processors.Document;
 import org.expath.servlex.processors.Item;
 import org.expath.servlex.processors.Processors;
+import org.expath.servlex.processors.TreeBuilder;
 import static org.expath.servlex.tools.ContentType.MediaType.BINARY;
 import static org.expath.servlex.tools.ContentType.MediaType.HTML;
+import static org.expath.servlex.tools.ContentType.MediaType.JSON;
 import static org.expath.servlex.tools.ContentType.MediaType.TEXT;
 import static org.expath.servlex.tools.ContentType.MediaType.XML;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 /**
  * Parse bodies from HTTP requests or from files (i.e. from input streams).
@@ -51,8 +60,40 @@ public class BodyParser
         myProcs = procs;
     }
 
+    /**
+     * Set the size above which binary content is spilled to disk (never if negative, the default).
+     * 
+     * A binary content which is spilled to a temporary file is returned as
+     * the path of the file, as a string item.  The caller is responsible for
+     * deleting the file, see {@link #getSpilledFile()}.
+     */
+    public void setSpillThreshold(long threshold)
+    {
+        mySpillThreshold = threshold;
+    }
+
+    /**
+     * Set the limits to enforce while parsing XML, HTML and JSON content (none if null, the default).
+     * 
+     * Only the depth and the nodes are checked here.  The caller is
+     * responsible for wrapping the input stream to count the bytes.
+     */
+    public void setLimits(LimitChecker limits)
+    {
+        myLimits = limits;
+    }
+
+    /**
+     * Return the temporary file the content has been spilled to, if any.
+     */
+    public File getSpilledFile()
+    {
+        return mySpilled;
+    }
+
     public Item parse(InputStream input, ContentType ctype)
-            throws TechnicalException
+            throws ServlexException
+                 , TechnicalException
     {
         try {
             switch ( ctype.getMediaType() ) {
@@ -72,6 +113,14 @@ public class BodyParser
                     }
                     return parseBodyText(input, charset);
                 }
+                case JSON: {
+                    String charset = ctype.getCharset();
+                    if ( charset == null ) {
+                        // JSON is UTF-8 by default (RFC 8259)
+                        charset = "utf-8";
+                    }
+                    return parseBodyJson(input, charset);
+                }
                 case BINARY: {
                     return parseBodyBinary(input);
                 }
@@ -96,12 +145,15 @@ public class BodyParser
     {
         String sys_id = "TODO-find-a-useful-systemId";
         Source src;
-        if ( html ) {
-            Parser parser = new Parser();
-            parser.setFeature(Parser.namespacesFeature, true);
-            parser.setFeature(Parser.namespacePrefixesFeature, true);
+        boolean limited = myLimits != null && myLimits.hasTreeLimits();
+        if ( html || limited ) {
+            // only go through SAX when needed, Saxon parses a stream source faster
+            XMLReader reader = makeXmlReader(html);
+            if ( limited ) {
+                reader = myLimits.wrap(reader);
+            }
             InputSource source = new InputSource(input);
-            src = new SAXSource(parser, source);
+            src = new SAXSource(reader, source);
             src.setSystemId(sys_id);
         }
         else {
@@ -114,6 +166,33 @@ public class BodyParser
         return doc;
     }
 
+    /**
+     * Return a new XML reader, namespace-aware, tidying HTML up if {@code html} is true.
+     */
+    static XMLReader makeXmlReader(boolean html)
+            throws TechnicalException
+    {
+        try {
+            if ( html ) {
+                Parser parser = new Parser();
+                parser.setFeature(Parser.namespacesFeature, true);
+                parser.setFeature(Parser.namespacePrefixesFeature, true);
+                return parser;
+            }
+            else {
+                SAXParserFactory factory = SAXParserFactory.newInstance();
+                factory.setNamespaceAware(true);
+                return factory.newSAXParser().getXMLReader();
+            }
+        }
+        catch ( ParserConfigurationException ex ) {
+            throw new TechnicalException("Error creating the XML parser", ex);
+        }
+        catch ( SAXException ex ) {
+            throw new TechnicalException("Error creating the XML parser", ex);
+        }
+    }
+
     /**
      * Parse content as text.
      */
@@ -138,6 +217,32 @@ public class BodyParser
         return myProcs.buildString(str);
     }
 
+    /**
+     * Parse content as JSON, to its XML representation (see {@link JsonParser}).
+     * 
+     * Content which is not valid JSON is a bad request (400).
+     */
+    private Document parseBodyJson(InputStream input, String charset)
+            throws IOException
+                 , ServlexException
+                 , TechnicalException
+    {
+        Reader reader = new InputStreamReader(input, charset);
+        TreeBuilder builder = myProcs.makeTreeBuilder(JsonParser.NS, JsonParser.PREFIX);
+        Document doc;
+        try {
+            doc = new JsonParser(reader, builder, myLimits).parse();
+        }
+        catch ( JsonParser.InvalidJson ex ) {
+            LOG.error("400: Malformed request body", ex);
+            throw new ServlexException(400, "Malformed request body", ex);
+        }
+        if ( myTrace && LOG.trace()) {
+            LOG.trace("Content parsed as JSON: " + doc);
+        }
+        return doc;
+    }
+
     /**
      * Parse content as binary.
      */
@@ -149,12 +254,43 @@ public class BodyParser
         byte[] buf = new byte[4096];
         int read;
         while ( (read = input.read(buf)) > 0 ) {
+            if ( mySpillThreshold >= 0 && out.size() + read > mySpillThreshold ) {
+                return spillBodyBinary(out, buf, read, input);
+            }
             out.write(buf, 0, read);
         }
         byte[] bytes = out.toByteArray();
         return myProcs.buildBinary(bytes);
     }
 
+    /**
+     * Write binary content to a temporary file, and return its path.
+     * 
+     * {@code head} has been read already, then {@code read} bytes in {@code buf}.
+     */
+    private Item spillBodyBinary(ByteArrayOutputStream head, byte[] buf, int read, InputStream input)
+            throws IOException
+                 , TechnicalException
+    {
+        // set it first, for the caller to delete it even in case of error
+        mySpilled = File.createTempFile("servlex-body-", ".bin");
+        OutputStream out = new FileOutputStream(mySpilled);
+        try {
+            head.writeTo(out);
+            out.write(buf, 0, read);
+            while ( (read = input.read(buf)) > 0 ) {
+                out.write(buf, 0, read);
+            }
+        }
+        finally {
+            out.close();
+        }
+        if ( LOG.debug() ) {
+            LOG.debug("Content spilled to disk: " + mySpilled + " (" + mySpilled.length() + " bytes)");
+        }
+        return myProcs.buildString(mySpilled.getPath());
+    }
+
     /** The logger. */
     private static final Log LOG = new Log(RequestConnector.class);
 
@@ -162,6 +298,12 @@ public class BodyParser
     private boolean myTrace;
     /** Processors to use to build the data model objects. */
     private Processors myProcs;
+    /** The size above which binary content is spilled to disk, unless negative. */
+    private long mySpillThreshold = -1;
+    /** The limits to enforce while parsing XML, if any. */
+    private LimitChecker myLimits = null;
+    /** The temporary file the content has been spilled to, if any. */
+    private File mySpilled = null;
 }
 
 
@@ -0,0 +1,382 @@
+/****************************************************************************/
+/*  File:       Compressor.java                                             */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.expath.servlex.connectors.RequestConnector;
+
+/**
+ * Compress the dynamic responses, if the client accepts gzip.
+ *
+ * Only the responses with one of the configured media types are compressed,
+ * and only if they are at least as large as the threshold: the first bytes
+ * are buffered until the threshold is reached, then the header
+ * Content-Encoding is set and the content is compressed on the fly.  A
+ * response smaller than the threshold is sent as is, with its exact length.
+ *
+ * The deflaters are pooled, so compressing a response does not allocate one
+ * (and its native memory) each time.
+ *
+ * @author Florent Georges
+ */
+public class Compressor
+{
+    /**
+     * Constructor.
+     * 
+     * @param types The media types to compress.  An entry starting with "+"
+     * is a structured syntax suffix (e.g. "+xml" for "application/atom+xml").
+     * 
+     * @param threshold The min size of a response to compress it, in bytes.
+     * 
+     * @param level The compression level, from 1 (fastest) to 9 (best).
+     */
+    public Compressor(Set<String> types, int threshold, int level)
+    {
+        myTypes = new HashSet<>();
+        for ( String t : types ) {
+            myTypes.add(t.trim().toLowerCase());
+        }
+        myThreshold = Math.max(threshold, 0);
+        myLevel = level;
+        myPool = new ArrayBlockingQueue<>(POOL_SIZE);
+    }
+
+    /**
+     * Return true if the media type {@code type} is to be compressed (parameters are ignored).
+     */
+    public boolean isCompressible(String type)
+    {
+        if ( type == null ) {
+            return false;
+        }
+        int semi = type.indexOf(';');
+        String t = (semi < 0 ? type : type.substring(0, semi)).trim().toLowerCase();
+        if ( myTypes.contains(t) ) {
+            return true;
+        }
+        int plus = t.lastIndexOf('+');
+        return plus >= 0 && myTypes.contains(t.substring(plus));
+    }
+
+    /**
+     * Return the stream to write the body of {@code resp} to.
+     * 
+     * The stream compresses the body if {@code request} accepts gzip, and if
+     * the body is compressible (given its media type and its status code, and
+     * if it is not encoded already).  A body whose length has been set by the
+     * servlet, in a Content-Length header, is not compressed either, as that
+     * length would not match.  The returned stream must be closed once the
+     * body has been written.
+     */
+    public OutputStream open(HttpServletRequest request, HttpServletResponse resp, String type, int status)
+            throws IOException
+    {
+        OutputStream out = resp.getOutputStream();
+        if ( status == 204 || status == 206 || status == 304 || ! isCompressible(type) ) {
+            return out;
+        }
+        if ( resp.containsHeader("Content-Encoding") || resp.containsHeader("Content-Length") ) {
+            return out;
+        }
+        // the response depends on Accept-Encoding, for any client
+        resp.addHeader("Vary", "Accept-Encoding");
+        if ( request == null || ! RequestConnector.acceptsEncoding(request.getHeader("Accept-Encoding"), "gzip") ) {
+            return out;
+        }
+        return new CompressingStream(resp, out);
+    }
+
+    /**
+     * Abort a body stream returned by {@link #open}, after an error writing it.
+     * 
+     * A compressed body is left unfinished (without the gzip trailer), so the
+     * client cannot take a truncated body for a complete one.  The deflater
+     * is released, and the servlet stream is not closed, so an error can
+     * still be sent if the response is not committed yet.  Any other stream
+     * is left as is.
+     */
+    public static void abort(OutputStream out)
+    {
+        if ( out instanceof CompressingStream ) {
+            ((CompressingStream) out).abort();
+        }
+    }
+
+    private Deflater acquire()
+    {
+        Deflater deflater = myPool.poll();
+        if ( deflater == null ) {
+            deflater = new Deflater(myLevel, true);
+        }
+        return deflater;
+    }
+
+    private void release(Deflater deflater)
+    {
+        deflater.reset();
+        if ( ! myPool.offer(deflater) ) {
+            deflater.end();
+        }
+    }
+
+    /** The max number of idle deflaters kept in the pool. */
+    private static final int POOL_SIZE = 32;
+
+    /** The media types to compress, and the suffixes (like "+xml"). */
+    private final Set<String> myTypes;
+    /** The min size of a response to compress it. */
+    private final int myThreshold;
+    /** The compression level. */
+    private final int myLevel;
+    /** The idle deflaters. */
+    private final BlockingQueue<Deflater> myPool;
+
+    /**
+     * Buffer the content up to the threshold, then compress it if larger.
+     */
+    private class CompressingStream
+            extends OutputStream
+    {
+        public CompressingStream(HttpServletResponse resp, OutputStream out)
+        {
+            myResp = resp;
+            myOut = out;
+            myBuffer = new byte[myThreshold];
+        }
+
+        @Override
+        public void write(int b)
+                throws IOException
+        {
+            // the serializers write byte by byte, avoid allocating an array each time
+            if ( myGzip == null && myCount < myBuffer.length ) {
+                myBuffer[myCount++] = (byte) b;
+                return;
+            }
+            if ( myGzip == null ) {
+                start();
+            }
+            myGzip.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+                throws IOException
+        {
+            if ( myGzip == null && myCount + len <= myBuffer.length ) {
+                System.arraycopy(b, off, myBuffer, myCount, len);
+                myCount += len;
+                return;
+            }
+            if ( myGzip == null ) {
+                start();
+            }
+            myGzip.write(b, off, len);
+        }
+
+        @Override
+        public void flush()
+                throws IOException
+        {
+            // keep buffering until the threshold is reached
+            if ( myGzip != null ) {
+                myGzip.flush();
+            }
+        }
+
+        @Override
+        public void close()
+                throws IOException
+        {
+            if ( myClosed ) {
+                return;
+            }
+            myClosed = true;
+            if ( myGzip == null ) {
+                // too small to be compressed
+                myResp.setContentLength(myCount);
+                myOut.write(myBuffer, 0, myCount);
+                myOut.close();
+                return;
+            }
+            try {
+                myGzip.finish();
+            }
+            finally {
+                release(myGzip.getDeflater());
+                myOut.close();
+            }
+        }
+
+        public void abort()
+        {
+            if ( myClosed ) {
+                return;
+            }
+            myClosed = true;
+            myBuffer = null;
+            if ( myGzip != null ) {
+                // no finish(), the body must not look complete
+                release(myGzip.getDeflater());
+                if ( ! myResp.isCommitted() ) {
+                    // the error page must not be labelled gzip
+                    myResp.reset();
+                }
+            }
+        }
+
+        private void start()
+                throws IOException
+        {
+            myResp.setHeader("Content-Encoding", "gzip");
+            // the gzip variant must not share the strong validator of the identity one
+            String etag = myResp.getHeader("ETag");
+            if ( etag != null ) {
+                myResp.setHeader("ETag", Conditional.gzipTag(etag));
+            }
+            myGzip = new GzipStream(myOut, acquire());
+            myGzip.write(myBuffer, 0, myCount);
+            myBuffer = null;
+        }
+
+        private final HttpServletResponse myResp;
+        private final OutputStream myOut;
+        private byte[] myBuffer;
+        private int myCount = 0;
+        private GzipStream myGzip = null;
+        private boolean myClosed = false;
+    }
+
+    /**
+     * The gzip format, with a given deflater (unlike {@link java.util.zip.GZIPOutputStream}).
+     */
+    private static class GzipStream
+            extends DeflaterOutputStream
+    {
+        public GzipStream(OutputStream out, Deflater deflater)
+                throws IOException
+        {
+            super(out, deflater, BUFFER_SIZE, true);
+            out.write(HEADER);
+        }
+
+        @Override
+        public void write(int b)
+                throws IOException
+        {
+            // collect single bytes, rather than deflating them one by one
+            if ( myPendingCount == myPending.length ) {
+                drain();
+            }
+            myPending[myPendingCount++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+                throws IOException
+        {
+            drain();
+            deflate(b, off, len);
+        }
+
+        @Override
+        public void flush()
+                throws IOException
+        {
+            drain();
+            super.flush();
+        }
+
+        @Override
+        public void finish()
+                throws IOException
+        {
+            drain();
+            super.finish();
+            writeInt((int) myCrc.getValue());
+            writeInt((int) myLength);
+        }
+
+        public Deflater getDeflater()
+        {
+            return def;
+        }
+
+        private void drain()
+                throws IOException
+        {
+            if ( myPendingCount > 0 ) {
+                deflate(myPending, 0, myPendingCount);
+                myPendingCount = 0;
+            }
+        }
+
+        private void deflate(byte[] b, int off, int len)
+                throws IOException
+        {
+            super.write(b, off, len);
+            myCrc.update(b, off, len);
+            myLength += len;
+        }
+
+        private void writeInt(int i)
+                throws IOException
+        {
+            // little endian
+            out.write(i & 0xff);
+            out.write((i >> 8) & 0xff);
+            out.write((i >> 16) & 0xff);
+            out.write((i >> 24) & 0xff);
+        }
+
+        /** The gzip header: magic number, deflate, no flag, no time, no extra flag, unknown OS. */
+        private static final byte[] HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+        private static final int BUFFER_SIZE = 8192;
+        private static final int PENDING_SIZE = 512;
+
+        private final CRC32 myCrc = new CRC32();
+        private long myLength = 0;
+        /** The single bytes written, not deflated yet. */
+        private final byte[] myPending = new byte[PENDING_SIZE];
+        private int myPendingCount = 0;
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,181 @@
+/****************************************************************************/
+/*  File:       Conditional.java                                            */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Conditional GET support: entity tags, and the request validators.
+ *
+ * A request is "not modified" if it is a GET or a HEAD, and its header
+ * If-None-Match matches the entity tag of the response.  If it has no such
+ * header, its header If-Modified-Since is compared to the last modification
+ * date of the response instead (as in RFC 7232, If-None-Match wins).
+ *
+ * A strong entity tag must be different for each encoding of a response, so
+ * the gzip-compressed variant of a response has its own tag (see {@link
+ * #gzipTag(String)}).  Either tag validates the response.
+ *
+ * @author Florent Georges
+ */
+public class Conditional
+{
+    /**
+     * Make a strong entity tag for a resource in a package, from the package digest.
+     * 
+     * The digest changes when any file in the package changes, and the path
+     * identifies the resource within the package.
+     */
+    public static String etag(String digest, String path)
+    {
+        String prefix = digest.length() > 16 ? digest.substring(0, 16) : digest;
+        return "\"" + prefix + "-" + Integer.toHexString(path.hashCode()) + "\"";
+    }
+
+    /**
+     * Make a strong entity tag for a file, from its length and last modification date.
+     */
+    public static String etag(long length, long modified)
+    {
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(modified) + "\"";
+    }
+
+    /**
+     * Return the entity tag of the gzip-compressed variant of a response tagged {@code etag}.
+     * 
+     * That is the same tag, with the suffix "-gz" within the quotes (e.g.
+     * {@code "abc"} gives {@code "abc-gz"}).
+     */
+    public static String gzipTag(String etag)
+    {
+        String tag = etag.trim();
+        if ( tag.length() < 2 || ! tag.endsWith("\"") ) {
+            // not a proper quoted tag, suffix it anyway
+            return tag + GZIP_SUFFIX;
+        }
+        return tag.substring(0, tag.length() - 1) + GZIP_SUFFIX + "\"";
+    }
+
+    /**
+     * Return the entity tag to send with a 304 for a response tagged {@code etag}.
+     * 
+     * That is the tag of the gzip variant if that is the one listed in the
+     * header If-None-Match of {@code request}, {@code etag} itself otherwise.
+     */
+    public static String notModifiedTag(HttpServletRequest request, String etag)
+    {
+        String tags = request == null ? null : request.getHeader("If-None-Match");
+        if ( tags == null || etag == null ) {
+            return etag;
+        }
+        String gzip = gzipTag(etag);
+        String opaque = opaque(gzip);
+        for ( String tag : tags.split(",") ) {
+            if ( opaque(tag.trim()).equals(opaque) ) {
+                return gzip;
+            }
+        }
+        return etag;
+    }
+
+    /**
+     * Return true if the response to {@code request} can be a 304.
+     * 
+     * @param etag The entity tag of the response, null if none.
+     * 
+     * @param modified The last modification date of the response, negative if none.
+     */
+    public static boolean isNotModified(HttpServletRequest request, String etag, long modified)
+    {
+        String method = request.getMethod();
+        if ( ! "GET".equalsIgnoreCase(method) && ! "HEAD".equalsIgnoreCase(method) ) {
+            return false;
+        }
+        String tags = request.getHeader("If-None-Match");
+        if ( tags != null ) {
+            return etag != null && matches(tags, etag);
+        }
+        if ( modified < 0 ) {
+            return false;
+        }
+        long since;
+        try {
+            since = request.getDateHeader("If-Modified-Since");
+        }
+        catch ( IllegalArgumentException ex ) {
+            // a malformed date is ignored
+            return false;
+        }
+        // HTTP dates have a 1-second precision
+        return since >= 0 && modified / 1000 <= since / 1000;
+    }
+
+    /**
+     * Return true if a servlet response can be a 304, for {@code request}.
+     * 
+     * Servlets opt in by returning an ETag header in web:response, with the
+     * status 200.  Return false if {@code request} is null.
+     */
+    public static boolean isNotModified(HttpServletRequest request, int status, String etag)
+    {
+        if ( status != 200 || etag == null ) {
+            return false;
+        }
+        return request != null && isNotModified(request, etag, -1);
+    }
+
+    /**
+     * Return true if the header value {@code tags} (from If-None-Match) matches {@code etag}.
+     * 
+     * Use the weak comparison, as required for If-None-Match.  The tag of the
+     * gzip variant of the response matches as well.
+     */
+    public static boolean matches(String tags, String etag)
+    {
+        String opaque = opaque(etag.trim());
+        String gzip = opaque(gzipTag(etag));
+        for ( String tag : tags.split(",") ) {
+            String t = opaque(tag.trim());
+            if ( t.equals("*") || t.equals(opaque) || t.equals(gzip) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaque(String tag)
+    {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    /** The suffix of the entity tags of the gzip variants. */
+    private static final String GZIP_SUFFIX = "-gz";
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -28,6 +28,7 @@ public class ContentType
     {
         BINARY,
         HTML,
+        JSON,
         TEXT,
         XML
     }
@@ -105,7 +106,7 @@ public class ContentType
     }
 
     /**
-     * Return the equivalent media type (either binary, html, text or xml).
+     * Return the equivalent media type (either binary, html, json, text or xml).
      */
     public MediaType getMediaType()
     {
@@ -119,6 +120,11 @@ public class ContentType
                 || mySubType.endsWith("+xml") ) {
             return MediaType.XML;
         }
+        else if ( isType("application", "json")
+                || isType("text", "json")
+                || mySubType.endsWith("+json") ) {
+            return MediaType.JSON;
+        }
         else if ( "text".equals(myMainType)
                 || isType("application", "xml-dtd") ) {
             return MediaType.TEXT;
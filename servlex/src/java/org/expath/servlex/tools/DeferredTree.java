@@ -0,0 +1,1533 @@
+/****************************************************************************/
+/*  File:       DeferredTree.java                                           */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.expath.servlex.ServlexException;
+import org.expath.servlex.TechnicalException;
+import org.expath.servlex.processors.Document;
+import org.expath.servlex.processors.Processors;
+import org.expath.servlex.processors.TreeBuilder;
+import org.w3c.dom.Attr;
+import org.w3c.dom.CDATASection;
+import org.w3c.dom.Comment;
+import org.w3c.dom.DOMConfiguration;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.EntityReference;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ProcessingInstruction;
+import org.w3c.dom.Text;
+import org.w3c.dom.TypeInfo;
+import org.w3c.dom.UserDataHandler;
+
+/**
+ * A tree builder making a read-only DOM tree, parts of which are built on first access.
+ *
+ * A group of sibling nodes can be deferred, see {@link #defer(Content)}.
+ * Its nodes are built only when one of them is accessed through the DOM
+ * for the first time (or when they are needed to compute the position of
+ * a following sibling, if the group does not know its number of nodes
+ * upfront).  The tree is not copied by the processors, they wrap it (see
+ * {@link Processors#wrapDocument(org.w3c.dom.Document)}), so a component
+ * which never looks at a deferred group never pays for building it.
+ *
+ * All the elements are in the same namespace, declared on the root
+ * element, and attributes are in no namespace.  The DOM implements the
+ * navigation and the namespace-aware accessors used by XPath processors,
+ * any attempt to modify it raises a {@code DOMException}.
+ *
+ * @author Florent Georges
+ */
+public class DeferredTree
+        implements TreeBuilder
+{
+    /**
+     * Create a tree builder, for elements in the namespace {@code uri}, bound to {@code prefix}.
+     */
+    public DeferredTree(Processors procs, String uri, String prefix)
+    {
+        myProcs = procs;
+        myDoc = new DocumentNode(uri, prefix);
+        myTop = myDoc;
+        myCurrent = myDoc;
+    }
+
+    /**
+     * Create a tree builder for a deferred group, when it is built.
+     */
+    private DeferredTree(DocumentNode doc, ParentNode parent)
+    {
+        myProcs = null;
+        myDoc = doc;
+        myTop = parent;
+        myCurrent = parent;
+    }
+
+    /**
+     * Add a deferred group of nodes, at the current position in the tree.
+     * 
+     * The number of nodes is asked to {@code content} right away (see
+     * {@link Content#count()}), but they are built only when needed.  The
+     * returned group can be used to force building them.
+     */
+    public Group defer(Content content)
+            throws TechnicalException
+    {
+        if ( myCurrent == myTop && myProcs == null ) {
+            throw new TechnicalException("A deferred group cannot start another one at its own level");
+        }
+        Group group = new Group(myCurrent, content);
+        myCurrent.append(group);
+        return group;
+    }
+
+    /**
+     * Return the DOM document built by this builder.
+     */
+    public org.w3c.dom.Document getDocument()
+    {
+        return myDoc;
+    }
+
+    @Override
+    public void startElem(String local)
+            throws TechnicalException
+    {
+        ElementNode elem = new ElementNode(myDoc, myCurrent, local);
+        if ( myCurrent == myDoc ) {
+            elem.declareNamespace();
+        }
+        myCurrent.append(elem);
+        myCurrent = elem;
+    }
+
+    @Override
+    public void attribute(String local, String value)
+            throws TechnicalException
+    {
+        if ( myCurrent == myTop ) {
+            throw new TechnicalException("Attribute outside of any element: " + local);
+        }
+        ElementNode elem = (ElementNode) myCurrent;
+        elem.addAttribute(new AttrNode(myDoc, elem, null, null, local, value));
+    }
+
+    @Override
+    public void startContent()
+            throws TechnicalException
+    {
+        // nothing, attributes and children are kept apart anyway
+    }
+
+    @Override
+    public void characters(String value)
+            throws TechnicalException
+    {
+        if ( myCurrent == myDoc ) {
+            throw new TechnicalException("Text outside of any element: " + value);
+        }
+        if ( ! value.isEmpty() ) {
+            myCurrent.append(new TextNode(myDoc, myCurrent, value));
+        }
+    }
+
+    @Override
+    public void endElem()
+            throws TechnicalException
+    {
+        if ( myCurrent == myTop ) {
+            throw new TechnicalException("End of element without a start");
+        }
+        myCurrent = myCurrent.myParent;
+    }
+
+    @Override
+    public void textElem(String local, String value)
+            throws TechnicalException
+    {
+        startElem(local);
+        characters(value);
+        endElem();
+    }
+
+    @Override
+    public Document getRoot()
+            throws TechnicalException
+    {
+        return myProcs.wrapDocument(myDoc);
+    }
+
+    /**
+     * The content of a deferred group of sibling nodes.
+     */
+    public interface Content
+    {
+        /**
+         * Return the number of nodes {@link #build(TreeBuilder)} will write, or -1 if unknown.
+         * 
+         * It is called once, when the group is deferred.  If the number is
+         * unknown, the group is built as soon as the number of children of
+         * its parent is needed.
+         */
+        public int count()
+                throws TechnicalException;
+
+        /**
+         * Write the nodes of the group to {@code b}.
+         * 
+         * It is called at most once, when the nodes are accessed for the
+         * first time, or when the group is forced (see {@link Group#build()}).
+         */
+        public void build(TreeBuilder b)
+                throws ServlexException
+                     , TechnicalException;
+    }
+
+    /**
+     * The error thrown by the DOM when a deferred group cannot be built.
+     * 
+     * The original error is available as its cause.
+     */
+    public static class BuildError
+            extends DOMException
+    {
+        private BuildError(Exception cause)
+        {
+            super(INVALID_STATE_ERR, "Error building a deferred group: " + cause.getMessage());
+            initCause(cause);
+        }
+    }
+
+    /**
+     * A group of consecutive children, either built already, or deferred.
+     */
+    public static class Group
+    {
+        /**
+         * A group of nodes built already, appended one by one.
+         */
+        private Group(ParentNode parent)
+        {
+            myParent = parent;
+            myContent = null;
+            myCount = 0;
+            myNodes = new ArrayList<>();
+        }
+
+        /**
+         * A deferred group of nodes, built by {@code content}.
+         */
+        private Group(ParentNode parent, Content content)
+                throws TechnicalException
+        {
+            myParent = parent;
+            myContent = content;
+            myCount = content.count();
+            myNodes = null;
+        }
+
+        /**
+         * Build the nodes of this group, if not done yet.
+         * 
+         * If the group has failed to build before, the same error is thrown
+         * again, without trying to build it again.
+         */
+        public void build()
+                throws ServlexException
+                     , TechnicalException
+        {
+            synchronized ( myParent.myDoc ) {
+                if ( myNodes != null ) {
+                    return;
+                }
+                if ( myServlexError != null ) {
+                    throw myServlexError;
+                }
+                if ( myTechnicalError != null ) {
+                    throw myTechnicalError;
+                }
+                try {
+                    ParentNode holder = new ElementNode(myParent.myDoc, null, "group");
+                    myContent.build(new DeferredTree(myParent.myDoc, holder));
+                    List<NodeImpl> nodes = new ArrayList<>();
+                    for ( Group g : holder.myGroups ) {
+                        for ( NodeImpl n : g.myNodes ) {
+                            n.myParent = myParent;
+                            n.myGroup = this;
+                            n.myPos = nodes.size();
+                            nodes.add(n);
+                        }
+                    }
+                    if ( myCount >= 0 && myCount != nodes.size() ) {
+                        throw new TechnicalException("Deferred group built " + nodes.size()
+                                + " nodes instead of " + myCount);
+                    }
+                    myNodes = nodes;
+                }
+                catch ( ServlexException ex ) {
+                    myServlexError = ex;
+                    throw ex;
+                }
+                catch ( TechnicalException ex ) {
+                    myTechnicalError = ex;
+                    throw ex;
+                }
+            }
+        }
+
+        /**
+         * Return true if the nodes of this group have been built.
+         */
+        public boolean isBuilt()
+        {
+            synchronized ( myParent.myDoc ) {
+                return myNodes != null;
+            }
+        }
+
+        private void add(NodeImpl node)
+        {
+            node.myGroup = this;
+            node.myPos = myNodes.size();
+            myNodes.add(node);
+        }
+
+        /**
+         * Return the number of nodes, building them if it is not known upfront.
+         */
+        private int size()
+        {
+            if ( myNodes != null ) {
+                return myNodes.size();
+            }
+            if ( myCount >= 0 ) {
+                return myCount;
+            }
+            ensureBuilt();
+            return myNodes.size();
+        }
+
+        private NodeImpl get(int i)
+        {
+            ensureBuilt();
+            return myNodes.get(i);
+        }
+
+        private void ensureBuilt()
+        {
+            try {
+                build();
+            }
+            catch ( ServlexException ex ) {
+                throw new BuildError(ex);
+            }
+            catch ( TechnicalException ex ) {
+                throw new BuildError(ex);
+            }
+        }
+
+        private final ParentNode myParent;
+        private final Content myContent;
+        private final int myCount;
+        private List<NodeImpl> myNodes;
+        private ServlexException myServlexError = null;
+        private TechnicalException myTechnicalError = null;
+    }
+
+    /**
+     * The DOM exception for any attempt to modify the tree.
+     */
+    private static DOMException readOnly()
+    {
+        return new DOMException(DOMException.NO_MODIFICATION_ALLOWED_ERR, "The tree is read-only");
+    }
+
+    /**
+     * The DOM exception for the features not supported.
+     */
+    private static DOMException notSupported()
+    {
+        return new DOMException(DOMException.NOT_SUPPORTED_ERR, "Not supported by this DOM");
+    }
+
+    /**
+     * The base class of all nodes.
+     */
+    private static abstract class NodeImpl
+            implements Node
+    {
+        public NodeImpl(DocumentNode doc, ParentNode parent)
+        {
+            // the document node is its own owner here (not through the DOM)
+            myDoc = doc == null ? (DocumentNode) this : doc;
+            myParent = parent;
+        }
+
+        @Override
+        public String getNodeValue()
+        {
+            return null;
+        }
+
+        @Override
+        public void setNodeValue(String value)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Node getParentNode()
+        {
+            return myParent;
+        }
+
+        @Override
+        public NodeList getChildNodes()
+        {
+            return NO_NODES;
+        }
+
+        @Override
+        public Node getFirstChild()
+        {
+            return null;
+        }
+
+        @Override
+        public Node getLastChild()
+        {
+            return null;
+        }
+
+        @Override
+        public Node getPreviousSibling()
+        {
+            if ( myParent == null || myGroup == null ) {
+                return null;
+            }
+            return myParent.item(myParent.offset(myGroup) + myPos - 1);
+        }
+
+        @Override
+        public Node getNextSibling()
+        {
+            if ( myParent == null || myGroup == null ) {
+                return null;
+            }
+            return myParent.item(myParent.offset(myGroup) + myPos + 1);
+        }
+
+        @Override
+        public NamedNodeMap getAttributes()
+        {
+            return null;
+        }
+
+        @Override
+        public org.w3c.dom.Document getOwnerDocument()
+        {
+            return myDoc;
+        }
+
+        @Override
+        public Node insertBefore(Node child, Node ref)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Node replaceChild(Node child, Node old)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Node removeChild(Node old)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Node appendChild(Node child)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public boolean hasChildNodes()
+        {
+            return false;
+        }
+
+        @Override
+        public Node cloneNode(boolean deep)
+        {
+            throw notSupported();
+        }
+
+        @Override
+        public void normalize()
+        {
+            // nothing, the tree is always normalized
+        }
+
+        @Override
+        public boolean isSupported(String feature, String version)
+        {
+            return false;
+        }
+
+        @Override
+        public String getNamespaceURI()
+        {
+            return null;
+        }
+
+        @Override
+        public String getPrefix()
+        {
+            return null;
+        }
+
+        @Override
+        public void setPrefix(String prefix)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public String getLocalName()
+        {
+            return null;
+        }
+
+        @Override
+        public boolean hasAttributes()
+        {
+            return false;
+        }
+
+        @Override
+        public String getBaseURI()
+        {
+            return null;
+        }
+
+        @Override
+        public short compareDocumentPosition(Node other)
+        {
+            throw notSupported();
+        }
+
+        @Override
+        public String getTextContent()
+        {
+            return null;
+        }
+
+        @Override
+        public void setTextContent(String content)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public boolean isSameNode(Node other)
+        {
+            return this == other;
+        }
+
+        @Override
+        public String lookupPrefix(String uri)
+        {
+            return myDoc.myUri.equals(uri) ? myDoc.myPrefix : null;
+        }
+
+        @Override
+        public boolean isDefaultNamespace(String uri)
+        {
+            return myDoc.myPrefix.isEmpty() && myDoc.myUri.equals(uri);
+        }
+
+        @Override
+        public String lookupNamespaceURI(String prefix)
+        {
+            String p = prefix == null ? "" : prefix;
+            return myDoc.myPrefix.equals(p) ? myDoc.myUri : null;
+        }
+
+        @Override
+        public boolean isEqualNode(Node other)
+        {
+            throw notSupported();
+        }
+
+        @Override
+        public Object getFeature(String feature, String version)
+        {
+            return null;
+        }
+
+        @Override
+        public Object setUserData(String key, Object data, UserDataHandler handler)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Object getUserData(String key)
+        {
+            return null;
+        }
+
+        /** The owner document. */
+        protected final DocumentNode myDoc;
+        /** The parent node, if any. */
+        protected ParentNode myParent;
+        /** The group of children of the parent, this node belongs to. */
+        protected Group myGroup = null;
+        /** The position of this node within its group. */
+        protected int myPos = 0;
+    }
+
+    /**
+     * The base class of nodes with children, that is, documents and elements.
+     */
+    private static abstract class ParentNode
+            extends NodeImpl
+            implements NodeList
+    {
+        public ParentNode(DocumentNode doc, ParentNode parent)
+        {
+            super(doc, parent);
+        }
+
+        public void append(NodeImpl node)
+        {
+            Group last = myGroups.isEmpty() ? null : myGroups.get(myGroups.size() - 1);
+            if ( last == null || last.myContent != null ) {
+                last = new Group(this);
+                myGroups.add(last);
+            }
+            last.add(node);
+        }
+
+        public void append(Group group)
+        {
+            myGroups.add(group);
+        }
+
+        /**
+         * Return the position of the first node of {@code group} among the children.
+         */
+        public int offset(Group group)
+        {
+            synchronized ( myDoc ) {
+                int offset = 0;
+                for ( Group g : myGroups ) {
+                    if ( g == group ) {
+                        return offset;
+                    }
+                    offset += g.size();
+                }
+                throw new IllegalStateException("Group not in its parent");
+            }
+        }
+
+        @Override
+        public Node item(int index)
+        {
+            synchronized ( myDoc ) {
+                if ( index < 0 ) {
+                    return null;
+                }
+                int i = index;
+                for ( Group g : myGroups ) {
+                    int size = g.size();
+                    if ( i < size ) {
+                        return g.get(i);
+                    }
+                    i -= size;
+                }
+                return null;
+            }
+        }
+
+        @Override
+        public int getLength()
+        {
+            synchronized ( myDoc ) {
+                int length = 0;
+                for ( Group g : myGroups ) {
+                    length += g.size();
+                }
+                return length;
+            }
+        }
+
+        @Override
+        public NodeList getChildNodes()
+        {
+            return this;
+        }
+
+        @Override
+        public Node getFirstChild()
+        {
+            return item(0);
+        }
+
+        @Override
+        public Node getLastChild()
+        {
+            return item(getLength() - 1);
+        }
+
+        @Override
+        public boolean hasChildNodes()
+        {
+            return getLength() > 0;
+        }
+
+        /** The children, by groups. */
+        protected final List<Group> myGroups = new ArrayList<>();
+    }
+
+    /**
+     * The document node.
+     */
+    private static class DocumentNode
+            extends ParentNode
+            implements org.w3c.dom.Document
+    {
+        public DocumentNode(String uri, String prefix)
+        {
+            super(null, null);
+            myUri = uri;
+            myPrefix = prefix == null ? "" : prefix;
+        }
+
+        @Override
+        public String getNodeName()
+        {
+            return "#document";
+        }
+
+        @Override
+        public short getNodeType()
+        {
+            return DOCUMENT_NODE;
+        }
+
+        @Override
+        public org.w3c.dom.Document getOwnerDocument()
+        {
+            return null;
+        }
+
+        @Override
+        public String lookupPrefix(String uri)
+        {
+            return myUri.equals(uri) ? myPrefix : null;
+        }
+
+        @Override
+        public boolean isDefaultNamespace(String uri)
+        {
+            return myPrefix.isEmpty() && myUri.equals(uri);
+        }
+
+        @Override
+        public String lookupNamespaceURI(String prefix)
+        {
+            String p = prefix == null ? "" : prefix;
+            return myPrefix.equals(p) ? myUri : null;
+        }
+
+        @Override
+        public DocumentType getDoctype()
+        {
+            return null;
+        }
+
+        @Override
+        public DOMImplementation getImplementation()
+        {
+            throw notSupported();
+        }
+
+        @Override
+        public Element getDocumentElement()
+        {
+            for ( int i = 0; i < getLength(); ++i ) {
+                Node n = item(i);
+                if ( n.getNodeType() == ELEMENT_NODE ) {
+                    return (Element) n;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Element createElement(String name)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public DocumentFragment createDocumentFragment()
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Text createTextNode(String data)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Comment createComment(String data)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public CDATASection createCDATASection(String data)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public ProcessingInstruction createProcessingInstruction(String target, String data)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr createAttribute(String name)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public EntityReference createEntityReference(String name)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public NodeList getElementsByTagName(String name)
+        {
+            throw notSupported();
+        }
+
+        @Override
+        public Node importNode(Node node, boolean deep)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Element createElementNS(String uri, String name)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr createAttributeNS(String uri, String name)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public NodeList getElementsByTagNameNS(String uri, String local)
+        {
+            throw notSupported();
+        }
+
+        @Override
+        public Element getElementById(String id)
+        {
+            return null;
+        }
+
+        @Override
+        public String getInputEncoding()
+        {
+            return null;
+        }
+
+        @Override
+        public String getXmlEncoding()
+        {
+            return null;
+        }
+
+        @Override
+        public boolean getXmlStandalone()
+        {
+            return false;
+        }
+
+        @Override
+        public void setXmlStandalone(boolean standalone)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public String getXmlVersion()
+        {
+            return "1.0";
+        }
+
+        @Override
+        public void setXmlVersion(String version)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public boolean getStrictErrorChecking()
+        {
+            return true;
+        }
+
+        @Override
+        public void setStrictErrorChecking(boolean strict)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public String getDocumentURI()
+        {
+            return null;
+        }
+
+        @Override
+        public void setDocumentURI(String uri)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Node adoptNode(Node source)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public DOMConfiguration getDomConfig()
+        {
+            throw notSupported();
+        }
+
+        @Override
+        public void normalizeDocument()
+        {
+            // nothing, the tree is always normalized
+        }
+
+        @Override
+        public Node renameNode(Node node, String uri, String name)
+        {
+            throw readOnly();
+        }
+
+        /** The namespace URI of all elements. */
+        private final String myUri;
+        /** The prefix bound to the namespace URI, empty for the default namespace. */
+        private final String myPrefix;
+    }
+
+    /**
+     * An element node, in the namespace of the document.
+     */
+    private static class ElementNode
+            extends ParentNode
+            implements Element
+    {
+        public ElementNode(DocumentNode doc, ParentNode parent, String local)
+        {
+            super(doc, parent);
+            myLocal = local;
+            myName = doc.myPrefix.isEmpty() ? local : doc.myPrefix + ":" + local;
+        }
+
+        /**
+         * Add the namespace declaration, as an attribute, as a namespace-aware DOM does.
+         */
+        public void declareNamespace()
+        {
+            String prefix = myDoc.myPrefix.isEmpty() ? null : "xmlns";
+            String local  = myDoc.myPrefix.isEmpty() ? "xmlns" : myDoc.myPrefix;
+            addAttribute(new AttrNode(myDoc, this, XMLNS_URI, prefix, local, myDoc.myUri));
+        }
+
+        public void addAttribute(AttrNode attr)
+        {
+            myAttributes.add(attr);
+        }
+
+        @Override
+        public String getNodeName()
+        {
+            return myName;
+        }
+
+        @Override
+        public short getNodeType()
+        {
+            return ELEMENT_NODE;
+        }
+
+        @Override
+        public NamedNodeMap getAttributes()
+        {
+            return myAttributes;
+        }
+
+        @Override
+        public boolean hasAttributes()
+        {
+            return myAttributes.getLength() > 0;
+        }
+
+        @Override
+        public String getNamespaceURI()
+        {
+            return myDoc.myUri;
+        }
+
+        @Override
+        public String getPrefix()
+        {
+            return myDoc.myPrefix.isEmpty() ? null : myDoc.myPrefix;
+        }
+
+        @Override
+        public String getLocalName()
+        {
+            return myLocal;
+        }
+
+        @Override
+        public String getTextContent()
+        {
+            StringBuilder buf = new StringBuilder();
+            appendText(this, buf);
+            return buf.toString();
+        }
+
+        private static void appendText(ParentNode parent, StringBuilder buf)
+        {
+            for ( int i = 0; i < parent.getLength(); ++i ) {
+                Node n = parent.item(i);
+                if ( n instanceof ParentNode ) {
+                    appendText((ParentNode) n, buf);
+                }
+                else {
+                    buf.append(n.getNodeValue());
+                }
+            }
+        }
+
+        @Override
+        public String getTagName()
+        {
+            return myName;
+        }
+
+        @Override
+        public String getAttribute(String name)
+        {
+            Attr a = getAttributeNode(name);
+            return a == null ? "" : a.getValue();
+        }
+
+        @Override
+        public void setAttribute(String name, String value)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public void removeAttribute(String name)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr getAttributeNode(String name)
+        {
+            return (Attr) myAttributes.getNamedItem(name);
+        }
+
+        @Override
+        public Attr setAttributeNode(Attr attr)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr removeAttributeNode(Attr attr)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public NodeList getElementsByTagName(String name)
+        {
+            throw notSupported();
+        }
+
+        @Override
+        public String getAttributeNS(String uri, String local)
+        {
+            Attr a = getAttributeNodeNS(uri, local);
+            return a == null ? "" : a.getValue();
+        }
+
+        @Override
+        public void setAttributeNS(String uri, String name, String value)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public void removeAttributeNS(String uri, String local)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr getAttributeNodeNS(String uri, String local)
+        {
+            return (Attr) myAttributes.getNamedItemNS(uri, local);
+        }
+
+        @Override
+        public Attr setAttributeNodeNS(Attr attr)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public NodeList getElementsByTagNameNS(String uri, String local)
+        {
+            throw notSupported();
+        }
+
+        @Override
+        public boolean hasAttribute(String name)
+        {
+            return getAttributeNode(name) != null;
+        }
+
+        @Override
+        public boolean hasAttributeNS(String uri, String local)
+        {
+            return getAttributeNodeNS(uri, local) != null;
+        }
+
+        @Override
+        public TypeInfo getSchemaTypeInfo()
+        {
+            return null;
+        }
+
+        @Override
+        public void setIdAttribute(String name, boolean id)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public void setIdAttributeNS(String uri, String local, boolean id)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public void setIdAttributeNode(Attr attr, boolean id)
+        {
+            throw readOnly();
+        }
+
+        /** The local name. */
+        private final String myLocal;
+        /** The qualified name. */
+        private final String myName;
+        /** The attributes, including the namespace declaration on the root element. */
+        private final Attributes myAttributes = new Attributes();
+    }
+
+    /**
+     * The attributes of an element.
+     */
+    private static class Attributes
+            implements NamedNodeMap
+    {
+        public void add(AttrNode attr)
+        {
+            myList.add(attr);
+        }
+
+        @Override
+        public Node getNamedItem(String name)
+        {
+            for ( AttrNode a : myList ) {
+                if ( a.myName.equals(name) ) {
+                    return a;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Node setNamedItem(Node node)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Node removeNamedItem(String name)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Node item(int index)
+        {
+            return index >= 0 && index < myList.size() ? myList.get(index) : null;
+        }
+
+        @Override
+        public int getLength()
+        {
+            return myList.size();
+        }
+
+        @Override
+        public Node getNamedItemNS(String uri, String local)
+        {
+            String u = uri == null ? "" : uri;
+            for ( AttrNode a : myList ) {
+                String au = a.myUri == null ? "" : a.myUri;
+                if ( au.equals(u) && a.myLocal.equals(local) ) {
+                    return a;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Node setNamedItemNS(Node node)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Node removeNamedItemNS(String uri, String local)
+        {
+            throw readOnly();
+        }
+
+        private final List<AttrNode> myList = new ArrayList<>();
+    }
+
+    /**
+     * An attribute node.
+     */
+    private static class AttrNode
+            extends NodeImpl
+            implements Attr
+    {
+        public AttrNode(DocumentNode doc, ElementNode owner, String uri, String prefix, String local, String value)
+        {
+            super(doc, null);
+            myOwner = owner;
+            myUri = uri;
+            myPrefix = prefix;
+            myLocal = local;
+            myName = prefix == null ? local : prefix + ":" + local;
+            myValue = value;
+        }
+
+        @Override
+        public String getNodeName()
+        {
+            return myName;
+        }
+
+        @Override
+        public String getNodeValue()
+        {
+            return myValue;
+        }
+
+        @Override
+        public short getNodeType()
+        {
+            return ATTRIBUTE_NODE;
+        }
+
+        @Override
+        public String getNamespaceURI()
+        {
+            return myUri;
+        }
+
+        @Override
+        public String getPrefix()
+        {
+            return myPrefix;
+        }
+
+        @Override
+        public String getLocalName()
+        {
+            return myLocal;
+        }
+
+        @Override
+        public String getTextContent()
+        {
+            return myValue;
+        }
+
+        @Override
+        public String getName()
+        {
+            return myName;
+        }
+
+        @Override
+        public boolean getSpecified()
+        {
+            return true;
+        }
+
+        @Override
+        public String getValue()
+        {
+            return myValue;
+        }
+
+        @Override
+        public void setValue(String value)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Element getOwnerElement()
+        {
+            return myOwner;
+        }
+
+        @Override
+        public TypeInfo getSchemaTypeInfo()
+        {
+            return null;
+        }
+
+        @Override
+        public boolean isId()
+        {
+            return false;
+        }
+
+        private final ElementNode myOwner;
+        private final String myUri;
+        private final String myPrefix;
+        private final String myLocal;
+        private final String myName;
+        private final String myValue;
+    }
+
+    /**
+     * A text node.
+     */
+    private static class TextNode
+            extends NodeImpl
+            implements Text
+    {
+        public TextNode(DocumentNode doc, ParentNode parent, String data)
+        {
+            super(doc, parent);
+            myData = data;
+        }
+
+        @Override
+        public String getNodeName()
+        {
+            return "#text";
+        }
+
+        @Override
+        public String getNodeValue()
+        {
+            return myData;
+        }
+
+        @Override
+        public short getNodeType()
+        {
+            return TEXT_NODE;
+        }
+
+        @Override
+        public String getTextContent()
+        {
+            return myData;
+        }
+
+        @Override
+        public String getData()
+        {
+            return myData;
+        }
+
+        @Override
+        public void setData(String data)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public int getLength()
+        {
+            return myData.length();
+        }
+
+        @Override
+        public String substringData(int offset, int count)
+        {
+            if ( offset < 0 || offset > myData.length() || count < 0 ) {
+                throw new DOMException(DOMException.INDEX_SIZE_ERR, "Invalid offset or count");
+            }
+            return myData.substring(offset, Math.min(myData.length(), offset + count));
+        }
+
+        @Override
+        public void appendData(String arg)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public void insertData(int offset, String arg)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public void deleteData(int offset, int count)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public void replaceData(int offset, int count, String arg)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public Text splitText(int offset)
+        {
+            throw readOnly();
+        }
+
+        @Override
+        public boolean isElementContentWhitespace()
+        {
+            return false;
+        }
+
+        @Override
+        public String getWholeText()
+        {
+            return myData;
+        }
+
+        @Override
+        public Text replaceWholeText(String content)
+        {
+            throw readOnly();
+        }
+
+        private final String myData;
+    }
+
+    /**
+     * The children of leaf nodes.
+     */
+    private static class NoNodes
+            implements NodeList
+    {
+        @Override
+        public Node item(int index)
+        {
+            return null;
+        }
+
+        @Override
+        public int getLength()
+        {
+            return 0;
+        }
+    }
+
+    /** The namespace URI of namespace declarations. */
+    private static final String XMLNS_URI = "http://www.w3.org/2000/xmlns/";
+    /** The children of leaf nodes. */
+    private static final NodeList NO_NODES = new NoNodes();
+
+    /** The processors to wrap the document, null for a deferred group builder. */
+    private final Processors myProcs;
+    /** The document node. */
+    private final DocumentNode myDoc;
+    /** The node this builder starts from, the document, or the holder of a deferred group. */
+    private final ParentNode myTop;
+    /** The current node, to which the nodes are appended. */
+    private ParentNode myCurrent;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
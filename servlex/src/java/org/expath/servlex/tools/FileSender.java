@@ -0,0 +1,301 @@
+/****************************************************************************/
+/*  File:       FileSender.java                                             */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Send a file as the body of a response, with support for HTTP ranges.
+ *
+ * The content is transferred from the file channel straight to the response
+ * ({@link FileChannel#transferTo(long, long, WritableByteChannel)}), or left
+ * to the container if it supports sendfile (as Tomcat does, through request
+ * attributes).  The Range header of the request being served, if any, is
+ * honoured: one range is sent with the status 206, several ranges as a
+ * multipart/byteranges body, and unsatisfiable ranges give a 416.
+ *
+ * The status, the content type and the other headers must have been set on
+ * the response already, the status and the content type are only changed
+ * for partial content (ranges are only served for a response with the
+ * status 200).
+ *
+ * @author Florent Georges
+ */
+public class FileSender
+{
+    /**
+     * Constructor.
+     * 
+     * @param file The file to send.
+     * @param type The content type of the file, for the parts of multipart/byteranges.
+     * @param etag The entity tag of the response, null if none (to check If-Range).
+     * @param modified The last modification date of the response, negative if none (to check If-Range).
+     */
+    public FileSender(File file, String type, String etag, long modified)
+    {
+        myFile = file;
+        myType = type;
+        myETag = etag;
+        myModified = modified;
+    }
+
+    /**
+     * Send the file, or the ranges requested by {@code request}, if any.
+     * 
+     * @param request The request being served, null if none (then no range is served).
+     * @param partial Whether ranges can be served (only for a response with the status 200).
+     */
+    public void send(HttpServletRequest request, HttpServletResponse resp, boolean partial)
+            throws IOException
+    {
+        long length = myFile.length();
+        List<long[]> ranges = null;
+        if ( partial ) {
+            resp.setHeader("Accept-Ranges", "bytes");
+            if ( request != null ) {
+                ranges = parseRanges(request, length);
+            }
+        }
+        if ( ranges == null ) {
+            resp.setContentLengthLong(length);
+            sendRange(request, resp, 0, length);
+        }
+        else if ( ranges.isEmpty() ) {
+            LOG.debug("Unsatisfiable range: " + request.getHeader("Range"));
+            resp.setStatus(416);
+            resp.setHeader("Content-Range", "bytes */" + length);
+            resp.setContentLength(0);
+        }
+        else if ( ranges.size() == 1 ) {
+            long[] r = ranges.get(0);
+            resp.setStatus(206);
+            resp.setHeader("Content-Range", "bytes " + r[0] + "-" + r[1] + "/" + length);
+            resp.setContentLengthLong(r[1] - r[0] + 1);
+            sendRange(request, resp, r[0], r[1] - r[0] + 1);
+        }
+        else {
+            sendRanges(resp, ranges, length);
+        }
+    }
+
+    /**
+     * Send one range of the file, through the container's sendfile if supported.
+     */
+    private void sendRange(HttpServletRequest request, HttpServletResponse resp, long start, long count)
+            throws IOException
+    {
+        if ( request != null
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))
+                && ! request.isAsyncStarted() ) {
+            // the container sends the file itself, once the servlet returns
+            request.setAttribute(SENDFILE_FILENAME, myFile.getAbsolutePath());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + count);
+            return;
+        }
+        FileInputStream in = new FileInputStream(myFile);
+        try {
+            WritableByteChannel out = Channels.newChannel(resp.getOutputStream());
+            transfer(in.getChannel(), out, start, count);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Send several ranges of the file, as a multipart/byteranges body.
+     */
+    private void sendRanges(HttpServletResponse resp, List<long[]> ranges, long length)
+            throws IOException
+    {
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<byte[]> heads = new ArrayList<>(ranges.size());
+        long total = 0;
+        for ( long[] r : ranges ) {
+            String head = "\r\n--" + boundary + "\r\n"
+                    + (myType == null ? "" : "Content-Type: " + myType + "\r\n")
+                    + "Content-Range: bytes " + r[0] + "-" + r[1] + "/" + length + "\r\n"
+                    + "\r\n";
+            byte[] bytes = head.getBytes(StandardCharsets.US_ASCII);
+            heads.add(bytes);
+            total += bytes.length + r[1] - r[0] + 1;
+        }
+        byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        total += tail.length;
+        resp.setStatus(206);
+        resp.setContentType("multipart/byteranges; boundary=" + boundary);
+        resp.setContentLengthLong(total);
+        FileInputStream in = new FileInputStream(myFile);
+        try {
+            OutputStream out = resp.getOutputStream();
+            WritableByteChannel channel = Channels.newChannel(out);
+            for ( int i = 0; i < ranges.size(); ++i ) {
+                long[] r = ranges.get(i);
+                out.write(heads.get(i));
+                transfer(in.getChannel(), channel, r[0], r[1] - r[0] + 1);
+            }
+            out.write(tail);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private void transfer(FileChannel in, WritableByteChannel out, long start, long count)
+            throws IOException
+    {
+        long pos = start;
+        long end = start + count;
+        while ( pos < end ) {
+            long n = in.transferTo(pos, end - pos, out);
+            if ( n <= 0 ) {
+                throw new IOException("File truncated while sending it: " + myFile);
+            }
+            pos += n;
+        }
+    }
+
+    /**
+     * Parse the header Range of the request.
+     * 
+     * Return null if the whole file must be sent (no range, an invalid or
+     * unsupported range, a precondition If-Range which does not hold, or too
+     * many ranges).  Return an empty list if none of the ranges can be
+     * satisfied.  Each range is an array of the first and last byte positions.
+     */
+    private List<long[]> parseRanges(HttpServletRequest request, long length)
+    {
+        String header = request.getHeader("Range");
+        if ( header == null || ! "GET".equalsIgnoreCase(request.getMethod()) ) {
+            return null;
+        }
+        if ( ! checkIfRange(request) ) {
+            return null;
+        }
+        header = header.trim();
+        if ( ! header.startsWith("bytes=") ) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<>();
+        for ( String spec : header.substring("bytes=".length()).split(",") ) {
+            int dash = spec.indexOf('-');
+            if ( dash < 0 ) {
+                return null;
+            }
+            String first = spec.substring(0, dash).trim();
+            String last  = spec.substring(dash + 1).trim();
+            try {
+                if ( first.isEmpty() ) {
+                    // the suffix range "-n", the last n bytes
+                    long suffix = Long.parseLong(last);
+                    if ( suffix > 0 && length > 0 ) {
+                        ranges.add(new long[] { Math.max(0, length - suffix), length - 1 });
+                    }
+                }
+                else {
+                    long start = Long.parseLong(first);
+                    long end   = last.isEmpty() ? length - 1 : Long.parseLong(last);
+                    if ( start < 0 || end < start ) {
+                        return null;
+                    }
+                    if ( start < length ) {
+                        ranges.add(new long[] { start, Math.min(end, length - 1) });
+                    }
+                }
+            }
+            catch ( NumberFormatException ex ) {
+                return null;
+            }
+        }
+        if ( ranges.size() > MAX_RANGES ) {
+            LOG.debug("Too many ranges, send the whole file: " + ranges.size());
+            return null;
+        }
+        return ranges;
+    }
+
+    /**
+     * Return true if there is no header If-Range, or if it matches the validators.
+     * 
+     * The entity tag is compared using the strong comparison, and the date
+     * must be the exact last modification date.
+     */
+    private boolean checkIfRange(HttpServletRequest request)
+    {
+        String value = request.getHeader("If-Range");
+        if ( value == null ) {
+            return true;
+        }
+        value = value.trim();
+        if ( value.startsWith("\"") ) {
+            return value.equals(myETag);
+        }
+        if ( value.startsWith("W/") ) {
+            return false;
+        }
+        long date;
+        try {
+            date = request.getDateHeader("If-Range");
+        }
+        catch ( IllegalArgumentException ex ) {
+            return false;
+        }
+        return myModified >= 0 && date >= 0 && myModified / 1000 == date / 1000;
+    }
+
+    /** The max number of ranges served, above which the whole file is sent. */
+    private static final int MAX_RANGES = 16;
+    /** The request attributes to use sendfile, in Tomcat. */
+    private static final String SENDFILE_SUPPORT  = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START    = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END      = "org.apache.tomcat.sendfile.end";
+    /** The logger. */
+    private static final Log LOG = new Log(FileSender.class);
+
+    private final File   myFile;
+    private final String myType;
+    private final String myETag;
+    private final long   myModified;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
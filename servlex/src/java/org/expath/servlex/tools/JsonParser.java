@@ -0,0 +1,414 @@
+/****************************************************************************/
+/*  File:       JsonParser.java                                             */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.regex.Pattern;
+import org.expath.servlex.ServlexException;
+import org.expath.servlex.TechnicalException;
+import org.expath.servlex.processors.Document;
+import org.expath.servlex.processors.TreeBuilder;
+
+/**
+ * Parse JSON to its XML representation, as defined for {@code fn:json-to-xml()}.
+ *
+ * Objects are represented as {@code fn:map} elements, arrays as {@code fn:array},
+ * and the values as {@code fn:string}, {@code fn:number}, {@code fn:boolean}
+ * and {@code fn:null} elements.  The members of an object carry their key in
+ * the attribute {@code key}.  This representation does not require XPath 3.1
+ * maps and arrays, so it is available with any processor.
+ *
+ * The JSON text is read from the reader as it is parsed, and the tree is
+ * built on the fly.  Nested objects and arrays are tracked on an explicit
+ * stack, so a deeply nested input cannot overflow the Java stack.  The depth
+ * and the nodes built are checked against the limits of the servlet, if any
+ * (see {@link LimitChecker}).
+ *
+ * @author Florent Georges
+ */
+public class JsonParser
+{
+    /**
+     * Create a parser for {@code input}, building the tree with {@code builder}.
+     *
+     * The builder must build elements in {@link #NS}, see
+     * {@link org.expath.servlex.processors.Processors#makeTreeBuilder(String, String)}.
+     */
+    public JsonParser(Reader input, TreeBuilder builder)
+    {
+        this(input, builder, null);
+    }
+
+    /**
+     * Create a parser for {@code input}, checking the tree against {@code limits} (if not null).
+     */
+    public JsonParser(Reader input, TreeBuilder builder, LimitChecker limits)
+    {
+        myInput = input;
+        myBuilder = builder;
+        myLimits = limits != null && limits.hasTreeLimits() ? limits : null;
+    }
+
+    /**
+     * Parse the whole JSON text, and return the document containing its representation.
+     * 
+     * @throws InvalidJson If the input is not valid JSON.
+     * @throws ServlexException If a limit is crossed (400 or 413, see {@link LimitChecker}).
+     */
+    public Document parse()
+            throws TechnicalException
+                 , ServlexException
+    {
+        try {
+            value(space(), null);
+            while ( ! myOpen.isEmpty() ) {
+                boolean map = myOpen.peek();
+                char close = map ? '}' : ']';
+                int c = space();
+                if ( c == close ) {
+                    myBuilder.endElem();
+                    myOpen.pop();
+                    myFirst = false;
+                    continue;
+                }
+                if ( ! myFirst ) {
+                    if ( c != ',' ) {
+                        throw error("expected ',' or '" + close + "'", c);
+                    }
+                    c = space();
+                }
+                myFirst = false;
+                String key = null;
+                if ( map ) {
+                    if ( c != '"' ) {
+                        throw error("expected a key", c);
+                    }
+                    key = string();
+                    c = space();
+                    if ( c != ':' ) {
+                        throw error("expected ':'", c);
+                    }
+                    c = space();
+                }
+                value(c, key);
+            }
+            int c = space();
+            if ( c != -1 ) {
+                throw error("unexpected content after the JSON text", c);
+            }
+        }
+        catch ( IOException ex ) {
+            throw new TechnicalException("Error reading the JSON input", ex);
+        }
+        return myBuilder.getRoot();
+    }
+
+    /**
+     * Parse a value starting with {@code c}, a member of a map if {@code key} is not null.
+     *
+     * Objects and arrays are only started here, their content is parsed by
+     * the main loop in {@link #parse()}.
+     */
+    private void value(int c, String key)
+            throws IOException
+                 , TechnicalException
+                 , ServlexException
+    {
+        switch ( c ) {
+            case '{': {
+                start("map", key);
+                myOpen.push(true);
+                myFirst = true;
+                break;
+            }
+            case '[': {
+                start("array", key);
+                myOpen.push(false);
+                myFirst = true;
+                break;
+            }
+            case '"': {
+                leaf("string", key, string());
+                break;
+            }
+            case 't': {
+                literal("true");
+                leaf("boolean", key, "true");
+                break;
+            }
+            case 'f': {
+                literal("false");
+                leaf("boolean", key, "false");
+                break;
+            }
+            case 'n': {
+                literal("null");
+                start("null", key);
+                myBuilder.endElem();
+                break;
+            }
+            default: {
+                if ( c == '-' || (c >= '0' && c <= '9') ) {
+                    leaf("number", key, number(c));
+                }
+                else {
+                    throw error("expected a value", c);
+                }
+            }
+        }
+    }
+
+    private void start(String local, String key)
+            throws TechnicalException
+                 , ServlexException
+    {
+        if ( myLimits != null ) {
+            myLimits.checkJsonDepth(myOpen.size() + 1);
+            myLimits.countJsonNodes(key == null ? 1 : 2);
+        }
+        myBuilder.startElem(local);
+        myBuilder.attribute("key", key);
+        myBuilder.startContent();
+    }
+
+    private void leaf(String local, String key, String value)
+            throws TechnicalException
+                 , ServlexException
+    {
+        start(local, key);
+        if ( ! value.isEmpty() ) {
+            if ( myLimits != null ) {
+                myLimits.countJsonNodes(1);
+            }
+            myBuilder.characters(value);
+        }
+        myBuilder.endElem();
+    }
+
+    /**
+     * Check the rest of the literal {@code lit}, its first character has already been read.
+     */
+    private void literal(String lit)
+            throws IOException
+                 , TechnicalException
+    {
+        for ( int i = 1; i < lit.length(); ++i ) {
+            int c = read();
+            if ( c != lit.charAt(i) ) {
+                throw error("expected '" + lit + "'", c);
+            }
+        }
+    }
+
+    /**
+     * Read a number, starting with {@code first}, and return its lexical form.
+     */
+    private String number(int first)
+            throws IOException
+                 , TechnicalException
+    {
+        StringBuilder buf = new StringBuilder();
+        buf.append((char) first);
+        int c = read();
+        while ( (c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-' ) {
+            buf.append((char) c);
+            c = read();
+        }
+        unread(c);
+        String num = buf.toString();
+        if ( ! NUMBER_RE.matcher(num).matches() ) {
+            throw new InvalidJson("Invalid JSON, at offset " + myOffset + ": invalid number '" + num + "'");
+        }
+        return num;
+    }
+
+    /**
+     * Read a string, the opening quote has already been read.
+     *
+     * Characters not allowed in XML are replaced by U+FFFD, as
+     * {@code fn:json-to-xml()} does by default.
+     */
+    private String string()
+            throws IOException
+                 , TechnicalException
+    {
+        StringBuilder buf = new StringBuilder();
+        for ( ; ; ) {
+            int c = read();
+            if ( c == '"' ) {
+                break;
+            }
+            else if ( c == '\\' ) {
+                c = read();
+                switch ( c ) {
+                    case '"':  buf.append('"');  break;
+                    case '\\': buf.append('\\'); break;
+                    case '/':  buf.append('/');  break;
+                    case 'b':  buf.append('\b'); break;
+                    case 'f':  buf.append('\f'); break;
+                    case 'n':  buf.append('\n'); break;
+                    case 'r':  buf.append('\r'); break;
+                    case 't':  buf.append('\t'); break;
+                    case 'u':  buf.append(hex()); break;
+                    default:
+                        throw error("invalid escape", c);
+                }
+            }
+            else if ( c < 0x20 ) {
+                // includes the end of input (-1)
+                throw error("unterminated string", c);
+            }
+            else {
+                buf.append((char) c);
+            }
+        }
+        return toXmlChars(buf);
+    }
+
+    private char hex()
+            throws IOException
+                 , TechnicalException
+    {
+        int value = 0;
+        for ( int i = 0; i < 4; ++i ) {
+            int c = read();
+            int digit = Character.digit(c, 16);
+            if ( c == -1 || digit < 0 ) {
+                throw error("invalid \\u escape", c);
+            }
+            value = value * 16 + digit;
+        }
+        return (char) value;
+    }
+
+    /**
+     * Replace the characters not allowed in XML (including lone surrogates) by U+FFFD.
+     */
+    private static String toXmlChars(StringBuilder buf)
+    {
+        int len = buf.length();
+        for ( int i = 0; i < len; ++i ) {
+            char c = buf.charAt(i);
+            if ( Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(buf.charAt(i + 1)) ) {
+                ++i;
+            }
+            else if ( Character.isSurrogate(c) || c == 0xFFFE || c == 0xFFFF
+                    || (c < 0x20 && c != '\t' && c != '\n' && c != '\r') ) {
+                buf.setCharAt(i, '\uFFFD');
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Skip the whitespaces, and return the next character (-1 at the end of input).
+     */
+    private int space()
+            throws IOException
+    {
+        int c = read();
+        while ( c == ' ' || c == '\t' || c == '\n' || c == '\r' ) {
+            c = read();
+        }
+        return c;
+    }
+
+    private int read()
+            throws IOException
+    {
+        if ( myLength == -1 ) {
+            return -1;
+        }
+        if ( myPos == myLength ) {
+            myLength = myInput.read(myBuffer);
+            myPos = 0;
+            if ( myLength <= 0 ) {
+                myLength = -1;
+                return -1;
+            }
+        }
+        ++myOffset;
+        return myBuffer[myPos++];
+    }
+
+    /**
+     * Push back the last character read (only one, and not at the end of input).
+     */
+    private void unread(int c)
+    {
+        if ( c != -1 ) {
+            --myPos;
+            --myOffset;
+        }
+    }
+
+    private InvalidJson error(String msg, int c)
+    {
+        String found = c == -1 ? "end of input" : "'" + (char) c + "'";
+        return new InvalidJson("Invalid JSON, at offset " + myOffset + ": " + msg + ", found " + found);
+    }
+
+    /**
+     * Specific exception when the input is not valid JSON.
+     */
+    public static class InvalidJson
+            extends TechnicalException
+    {
+        InvalidJson(String msg)
+        {
+            super(msg);
+        }
+    }
+
+    /** The namespace of the XML representation of JSON. */
+    public static final String NS = "http://www.w3.org/2005/xpath-functions";
+    /** The prefix used for {@link #NS}. */
+    public static final String PREFIX = "fn";
+
+    /** The lexical form of a JSON number (RFC 8259, section 6). */
+    private static final Pattern NUMBER_RE = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+
+    private final Reader myInput;
+    private final TreeBuilder myBuilder;
+    /** The limits to check, null if the depth and the nodes are not limited. */
+    private final LimitChecker myLimits;
+    private final char[] myBuffer = new char[4096];
+    private int myPos = 0;
+    private int myLength = 0;
+    private long myOffset = 0;
+    /** The objects and arrays open, true for an object. */
+    private final Deque<Boolean> myOpen = new ArrayDeque<>();
+    /** Whether the innermost object or array has no member yet. */
+    private boolean myFirst;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,332 @@
+/****************************************************************************/
+/*  File:       LimitChecker.java                                           */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.servlet.http.HttpServletRequest;
+import org.expath.servlex.ServlexException;
+import org.expath.servlex.model.Limits;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * Enforce the {@link Limits} of a servlet on one request, while it is parsed.
+ *
+ * The bytes are counted on the input stream returned by {@link #wrap(InputStream)},
+ * the elements and nodes by the XML reader returned by {@link #wrap(XMLReader)},
+ * and by {@link #checkJsonDepth(int)} and {@link #countJsonNodes(int)} for JSON.
+ * When a limit is crossed, the reading or parsing stops right away, with an
+ * exception.  The exception itself is likely to be wrapped by the parser or
+ * the processor, so the violation is recorded, to be retrieved and thrown
+ * by {@link #check()}.
+ *
+ * @author Florent Georges
+ */
+public class LimitChecker
+{
+    public LimitChecker(Limits limits)
+    {
+        myLimits = limits;
+    }
+
+    /**
+     * Check the content length announced by the client, before reading anything.
+     * 
+     * An unknown length (not set, or negative) is not checked.
+     */
+    public void checkLength(HttpServletRequest request)
+            throws ServlexException
+    {
+        long max = myLimits.getMaxBytes();
+        if ( max < 0 ) {
+            return;
+        }
+        long length = request.getContentLengthLong();
+        if ( length > max ) {
+            violation(413, "Request body too large: " + length + " bytes, the limit is " + max);
+            check();
+        }
+    }
+
+    /**
+     * Check the number of parts, to be called each time a new part is parsed.
+     * 
+     * @param position The position of the new part (1-based).
+     */
+    public void checkPart(int position)
+            throws ServlexException
+    {
+        long max = myLimits.getMaxParts();
+        if ( max >= 0 && position > max ) {
+            violation(413, "Too many parts in request body, the limit is " + max);
+            check();
+        }
+    }
+
+    /**
+     * Check the depth of a JSON body, to be called each time a value is started.
+     * 
+     * @param depth The depth of the new value (1 for the top-level value).
+     */
+    public void checkJsonDepth(int depth)
+            throws ServlexException
+    {
+        long max = myLimits.getMaxDepth();
+        if ( max >= 0 && depth > max ) {
+            violation(400, "JSON request body too deep, the limit is " + max);
+            check();
+        }
+    }
+
+    /**
+     * Add {@code n} nodes of a JSON body to the count, shared with the XML bodies.
+     */
+    public void countJsonNodes(int n)
+            throws ServlexException
+    {
+        long nodes = addNodes(n);
+        long max = myLimits.getMaxNodes();
+        if ( max >= 0 && nodes > max ) {
+            violation(413, "JSON request body too large, the limit is " + max + " nodes");
+            check();
+        }
+    }
+
+    /**
+     * Return an input stream counting the bytes read from {@code in}.
+     */
+    public InputStream wrap(InputStream in)
+    {
+        if ( myLimits.getMaxBytes() < 0 ) {
+            return in;
+        }
+        return new CountingInputStream(in);
+    }
+
+    /**
+     * Return true if the depth or the nodes of XML, HTML and JSON bodies are limited.
+     */
+    public boolean hasTreeLimits()
+    {
+        return myLimits.hasTreeLimits();
+    }
+
+    /**
+     * Return an XML reader counting the depth and the nodes parsed by {@code reader}.
+     */
+    public XMLReader wrap(XMLReader reader)
+    {
+        if ( ! hasTreeLimits() ) {
+            return reader;
+        }
+        return new CountingFilter(reader);
+    }
+
+    /**
+     * Throw the violation recorded, if any.
+     */
+    public void check()
+            throws ServlexException
+    {
+        if ( myViolation != null ) {
+            throw myViolation;
+        }
+    }
+
+    /**
+     * Return the violation recorded, if any.
+     */
+    public ServlexException getViolation()
+    {
+        return myViolation;
+    }
+
+    private synchronized void violation(int code, String msg)
+    {
+        LOG.error(code + ": " + msg);
+        if ( myViolation == null ) {
+            myViolation = new ServlexException(code, msg);
+        }
+    }
+
+    /**
+     * Add {@code n} nodes to the count, and return the new count.
+     * 
+     * The count is shared by all the XML and JSON bodies of the request, possibly
+     * parsed in parallel (see {@link RequestParser#setExecutor}).
+     */
+    private synchronized long addNodes(int n)
+    {
+        myNodes += n;
+        return myNodes;
+    }
+
+    /** The logger. */
+    private static final Log LOG = new Log(LimitChecker.class);
+
+    /** The limits to enforce. */
+    private final Limits myLimits;
+    /** The bytes read so far. */
+    private long myBytes = 0;
+    /** The nodes parsed so far (in all XML and JSON bodies). */
+    private long myNodes = 0;
+    /** The first violation of a limit, if any. */
+    private volatile ServlexException myViolation = null;
+
+    /**
+     * Count the bytes read, and stop reading when the limit is crossed.
+     */
+    private class CountingInputStream
+            extends FilterInputStream
+    {
+        public CountingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int read()
+                throws IOException
+        {
+            int b = super.read();
+            if ( b >= 0 ) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+                throws IOException
+        {
+            int read = super.read(b, off, len);
+            if ( read > 0 ) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n)
+                throws IOException
+        {
+            long skipped = super.skip(n);
+            if ( skipped > 0 ) {
+                count(skipped);
+            }
+            return skipped;
+        }
+
+        private void count(long n)
+                throws IOException
+        {
+            myBytes += n;
+            long max = myLimits.getMaxBytes();
+            if ( myBytes > max ) {
+                String msg = "Request body too large, the limit is " + max + " bytes";
+                violation(413, msg);
+                throw new IOException(msg);
+            }
+        }
+    }
+
+    /**
+     * Count the depth and the nodes parsed, and stop parsing when a limit is crossed.
+     * 
+     * The nodes counted are the elements, the attributes, and the text nodes
+     * (that is, any sequence of character events between two tags).
+     */
+    private class CountingFilter
+            extends XMLFilterImpl
+    {
+        public CountingFilter(XMLReader parent)
+        {
+            super(parent);
+        }
+
+        @Override
+        public void startElement(String uri, String local, String qname, Attributes atts)
+                throws SAXException
+        {
+            ++myDepth;
+            long max = myLimits.getMaxDepth();
+            if ( max >= 0 && myDepth > max ) {
+                String msg = "XML request body too deep, the limit is " + max;
+                violation(400, msg);
+                throw new SAXException(msg);
+            }
+            myInText = false;
+            count(1 + atts.getLength());
+            super.startElement(uri, local, qname, atts);
+        }
+
+        @Override
+        public void endElement(String uri, String local, String qname)
+                throws SAXException
+        {
+            --myDepth;
+            myInText = false;
+            super.endElement(uri, local, qname);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length)
+                throws SAXException
+        {
+            if ( ! myInText ) {
+                myInText = true;
+                count(1);
+            }
+            super.characters(ch, start, length);
+        }
+
+        private void count(int n)
+                throws SAXException
+        {
+            long nodes = addNodes(n);
+            long max = myLimits.getMaxNodes();
+            if ( max >= 0 && nodes > max ) {
+                String msg = "XML request body too large, the limit is " + max + " nodes";
+                violation(413, msg);
+                throw new SAXException(msg);
+            }
+        }
+
+        /** The current element depth. */
+        private int myDepth = 0;
+        /** Are we in a text node already? */
+        private boolean myInText = false;
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,190 @@
+/****************************************************************************/
+/*  File:       LruCache.java                                               */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe cache, evicting the least recently used entries.
+ *
+ * The entries are spread over several segments, based on the key hash codes,
+ * each with its own lock, so concurrent threads accessing different keys
+ * rarely contend.  Each segment is an access-ordered {@link LinkedHashMap},
+ * and evicts its own eldest entry when it is full.  The LRU order is thus
+ * approximated per segment, which is enough for a cache.
+ *
+ * The number of hits and misses is counted, to help sizing the cache.
+ *
+ * @author Florent Georges
+ */
+public class LruCache<K, V>
+{
+    /**
+     * Create a new cache, holding at most (about) {@code capacity} entries.
+     * 
+     * If {@code capacity} is 0 or less, the cache is disabled: nothing is
+     * ever put in it, and every lookup is a miss.
+     */
+    public LruCache(int capacity)
+    {
+        myCapacity = Math.max(capacity, 0);
+        int count = myCapacity == 0 ? 1 : Math.min(SEGMENTS, myCapacity);
+        int per_segment = myCapacity == 0 ? 0 : (myCapacity + count - 1) / count;
+        @SuppressWarnings("unchecked")
+        Segment<K, V>[] segments = new Segment[count];
+        for ( int i = 0; i < count; ++i ) {
+            segments[i] = new Segment<>(per_segment);
+        }
+        mySegments = segments;
+    }
+
+    /**
+     * Return the value for {@code key}, or null if it is not in the cache.
+     */
+    public V get(K key)
+    {
+        V value = null;
+        if ( myCapacity > 0 ) {
+            Segment<K, V> s = segment(key);
+            synchronized ( s ) {
+                value = s.get(key);
+            }
+        }
+        if ( value == null ) {
+            myMisses.increment();
+        }
+        else {
+            myHits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Put a value in the cache, possibly evicting the least recently used entry.
+     */
+    public void put(K key, V value)
+    {
+        if ( myCapacity > 0 ) {
+            Segment<K, V> s = segment(key);
+            synchronized ( s ) {
+                s.put(key, value);
+            }
+        }
+    }
+
+    /**
+     * Remove all entries (the counters are left untouched).
+     */
+    public void clear()
+    {
+        for ( Segment<K, V> s : mySegments ) {
+            synchronized ( s ) {
+                s.clear();
+            }
+        }
+    }
+
+    /**
+     * Return the maximum number of entries, as given at construction.
+     */
+    public int getCapacity()
+    {
+        return myCapacity;
+    }
+
+    /**
+     * Return the current number of entries.
+     */
+    public int size()
+    {
+        int size = 0;
+        for ( Segment<K, V> s : mySegments ) {
+            synchronized ( s ) {
+                size += s.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Return the number of lookups which found a value.
+     */
+    public long getHits()
+    {
+        return myHits.sum();
+    }
+
+    /**
+     * Return the number of lookups which did not find any value.
+     */
+    public long getMisses()
+    {
+        return myMisses.sum();
+    }
+
+    private Segment<K, V> segment(K key)
+    {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return mySegments[(h & 0x7fffffff) % mySegments.length];
+    }
+
+    /** The max number of segments. */
+    private static final int SEGMENTS = 16;
+
+    private final int myCapacity;
+    private final Segment<K, V>[] mySegments;
+    private final LongAdder myHits   = new LongAdder();
+    private final LongAdder myMisses = new LongAdder();
+
+    /**
+     * One segment, access-ordered, with its own max size.
+     */
+    private static class Segment<K, V>
+            extends LinkedHashMap<K, V>
+    {
+        public Segment(int max)
+        {
+            super(16, 0.75f, true);
+            myMax = max;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+        {
+            return size() > myMax;
+        }
+
+        private final int myMax;
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,140 @@
+/****************************************************************************/
+/*  File:       PackageDigest.java                                          */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import org.expath.pkg.repo.FileSystemStorage;
+import org.expath.pkg.repo.Package;
+import org.expath.pkg.repo.Storage;
+import org.expath.servlex.TechnicalException;
+
+/**
+ * Compute a digest identifying the installed state of a webapp.
+ *
+ * The digest covers the package name, version and directory, the context root,
+ * and the config parameters.  For packages on a file system storage, it also
+ * covers the path, size and modification time of every file in the package
+ * directory, so a package changed in place is detected too (without having to
+ * read the content of every file).  If two digests are equal, the application
+ * loaded the first time can be kept as is.
+ *
+ * Changes in the library packages the webapp depends on are not detected.
+ *
+ * @author Florent Georges
+ */
+public class PackageDigest
+{
+    /**
+     * Compute the digest of a webapp.
+     *
+     * @param storage The storage of the repository the package is installed in.
+     * @param pkg The package of the webapp.
+     * @param root The context root of the webapp (can be null).
+     * @param config The config parameters overriding those from the package.
+     */
+    public static String digest(Storage storage, Package pkg, String root, Map<String, String> config)
+            throws TechnicalException
+    {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(ALGORITHM);
+        }
+        catch ( NoSuchAlgorithmException ex ) {
+            throw new TechnicalException("Digest algorithm not supported: " + ALGORITHM, ex);
+        }
+        Storage.PackageResolver resolver = pkg.getResolver();
+        update(md, pkg.getName());
+        update(md, pkg.getVersion());
+        update(md, resolver.getResourceName());
+        update(md, root);
+        for ( Map.Entry<String, String> entry : new TreeMap<>(config).entrySet() ) {
+            update(md, entry.getKey());
+            update(md, entry.getValue());
+        }
+        if ( storage instanceof FileSystemStorage && resolver.getResourceName() != null ) {
+            File base = ((FileSystemStorage) storage).getRootDirectory();
+            File dir  = new File(base, resolver.getResourceName());
+            updateDir(md, dir, "");
+        }
+        return toHex(md.digest());
+    }
+
+    private static void updateDir(MessageDigest md, File dir, String path)
+    {
+        File[] children = dir.listFiles();
+        if ( children == null ) {
+            return;
+        }
+        // sort them, as listFiles() does not guarantee any order
+        Arrays.sort(children);
+        for ( File f : children ) {
+            String p = path + "/" + f.getName();
+            if ( f.isDirectory() ) {
+                updateDir(md, f, p);
+            }
+            else {
+                update(md, p);
+                update(md, Long.toString(f.length()));
+                update(md, Long.toString(f.lastModified()));
+            }
+        }
+    }
+
+    private static void update(MessageDigest md, String value)
+    {
+        if ( value != null ) {
+            md.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        // a separator, so ("ab", "c") and ("a", "bc") do not give the same digest
+        md.update((byte) 0);
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        StringBuilder buf = new StringBuilder(bytes.length * 2);
+        for ( byte b : bytes ) {
+            buf.append(HEX[(b >> 4) & 0xf]);
+            buf.append(HEX[b & 0xf]);
+        }
+        return buf.toString();
+    }
+
+    /** The digest algorithm. */
+    private static final String ALGORITHM = "SHA-1";
+    /** The hexadecimal digits. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -14,6 +14,11 @@ import java.util.regex.Matcher;
 /**
  * Encapsulate matching of XPath regex subparts.
  *
+ * Once the value matched, the boundaries of the groups are kept in an array,
+ * independently of the Java {@link Matcher}.  They can be retrieved with
+ * {@link #getBounds()}, and used later to recreate an equivalent matcher for
+ * the same value, without evaluating the regex again.
+ *
  * @author Florent Georges
  */
 public class RegexMatcher
@@ -26,9 +31,51 @@ public class RegexMatcher
         myCount = matcher.groupCount();
     }
 
+    /**
+     * Recreate a matcher which already matched {@code value}.
+     *
+     * @param bounds The group boundaries, as returned by {@link #getBounds()}
+     * on a matcher which matched the same value.
+     */
+    public RegexMatcher(String value, int[] bounds)
+    {
+        myValue = value;
+        myLen = value.length();
+        myMatcher = null;
+        myCount = bounds.length / 2 - 1;
+        myBounds = bounds;
+    }
+
     public boolean matches()
     {
-        return myMatcher.matches();
+        if ( myBounds != null ) {
+            return true;
+        }
+        if ( ! myMatcher.matches() ) {
+            return false;
+        }
+        int[] bounds = new int[(myCount + 1) * 2];
+        for ( int g = 0; g <= myCount; ++g ) {
+            bounds[2 * g]     = myMatcher.start(g);
+            bounds[2 * g + 1] = myMatcher.end(g);
+        }
+        myBounds = bounds;
+        return true;
+    }
+
+    /**
+     * Return the boundaries of the groups, once the value matched.
+     *
+     * The start and end of group N are at indexes 2N and 2N+1 (group 0 being
+     * the entire match).  Both are -1 if the group did not participate in the
+     * match.  The array must not be modified.
+     */
+    public int[] getBounds()
+    {
+        if ( myBounds == null ) {
+            throw new IllegalStateException("Cannot get the group boundaries before matching");
+        }
+        return myBounds;
     }
 
     public String next()
@@ -48,9 +95,9 @@ public class RegexMatcher
             }
         }
         // if there are still groups, get the start position
-        int s = myMatcher.start(myGroup);
+        int s = start(myGroup);
         // if we have not consumed before the group, and there is something...
-        if ( myPreGroup && myLastIndex < myMatcher.start(myGroup) ) {
+        if ( myPreGroup && myLastIndex < s ) {
             myIsGroup = false;
             // then return that string before the group
             myPreGroup = false;
@@ -60,7 +107,7 @@ public class RegexMatcher
         }
         // if there is nothing before the group, or already consumed, and the
         // group is empty...
-        if ( myMatcher.group(myGroup) == null ) {
+        if ( s < 0 ) {
             // then recurse on the next pre-group
             myPreGroup = true;
             ++myGroup;
@@ -71,8 +118,9 @@ public class RegexMatcher
             myIsGroup = true;
             // then return the group
             myPreGroup = true;
-            myLastIndex = myMatcher.end(myGroup);
-            return myMatcher.group(myGroup++);
+            myLastIndex = end(myGroup);
+            ++myGroup;
+            return myValue.substring(s, myLastIndex);
         }
     }
 
@@ -89,10 +137,22 @@ public class RegexMatcher
         return myGroup - 1;
     }
 
+    private int start(int group)
+    {
+        return getBounds()[2 * group];
+    }
+
+    private int end(int group)
+    {
+        return getBounds()[2 * group + 1];
+    }
+
     private final String myValue;
     private final Matcher myMatcher;
     private final int myCount;
     private final int myLen;
+    /** The group boundaries, null until the value matched. */
+    private int[] myBounds = null;
     private int myLastIndex = 0;
     private int myGroup = 1;
     private boolean myPreGroup = true;
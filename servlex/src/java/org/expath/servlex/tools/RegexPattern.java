@@ -11,6 +11,7 @@ package org.expath.servlex.tools;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import org.expath.servlex.TechnicalException;
 
 /**
@@ -20,9 +21,37 @@ import org.expath.servlex.TechnicalException;
  */
 public class RegexPattern
 {
+    /**
+     * Compile the regex once and for all.
+     *
+     * @throws PatternSyntaxException If the regex is not syntactically valid.
+     */
     public RegexPattern(String regex)
     {
-        myRegex = regex;
+        myRegex   = regex;
+        myPattern = Pattern.compile(regex);
+        myPrefix  = literalPrefix(regex);
+    }
+
+    /**
+     * Return the original regex string.
+     */
+    public String getRegex()
+    {
+        return myRegex;
+    }
+
+    /**
+     * Return the literal prefix of the regex.
+     *
+     * That is, the longest string every value matching the regex must start
+     * with.  It is computed conservatively (e.g. it is empty as soon as the
+     * regex contains an alternation), so it is always safe to use it to
+     * discard values which cannot match.
+     */
+    public String getLiteralPrefix()
+    {
+        return myPrefix;
     }
 
     public RegexMatcher matcher(String value)
@@ -57,11 +86,48 @@ public class RegexPattern
     private Matcher toJavaMatcher(String value)
             throws TechnicalException
     {
-        Pattern p = Pattern.compile(myRegex);
-        return p.matcher(value);
+        return myPattern.matcher(value);
     }
 
-    private final String myRegex;
+    /**
+     * Compute the literal prefix of a regex (see {@link #getLiteralPrefix()}).
+     */
+    private static String literalPrefix(String regex)
+    {
+        if ( regex.indexOf('|') >= 0 ) {
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        int len = regex.length();
+        int i = regex.startsWith("^") ? 1 : 0;
+        while ( i < len ) {
+            char c = regex.charAt(i);
+            if ( c == '?' || c == '*' || c == '{' ) {
+                // the last char is optional, or can be repeated zero times
+                if ( prefix.length() > 0 ) {
+                    prefix.setLength(prefix.length() - 1);
+                }
+                break;
+            }
+            else if ( c == '\\' && i + 1 < len && ! Character.isLetterOrDigit(regex.charAt(i + 1)) ) {
+                // an escaped punctuation char is a literal char
+                c = regex.charAt(++i);
+            }
+            else if ( META_CHARS.indexOf(c) >= 0 ) {
+                break;
+            }
+            prefix.append(c);
+            ++i;
+        }
+        return prefix.toString();
+    }
+
+    /** The chars having a special meaning in a regex (quantifiers apart). */
+    private static final String META_CHARS = "\\.[]()+^$";
+
+    private final String  myRegex;
+    private final Pattern myPattern;
+    private final String  myPrefix;
 }
 
 
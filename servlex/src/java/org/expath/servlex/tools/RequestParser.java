@@ -9,10 +9,24 @@
 
 package org.expath.servlex.tools;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.james.mime4j.MimeException;
@@ -21,11 +35,15 @@ import org.apache.james.mime4j.stream.Field;
 import org.apache.james.mime4j.stream.MimeTokenStream;
 import org.expath.servlex.ServlexException;
 import org.expath.servlex.TechnicalException;
+import org.expath.servlex.model.Limits;
 import org.expath.servlex.model.Servlet;
 import org.expath.servlex.processors.Document;
 import org.expath.servlex.processors.Item;
 import org.expath.servlex.processors.Processors;
 import org.expath.servlex.processors.TreeBuilder;
+import static org.expath.servlex.tools.ContentType.MediaType.BINARY;
+import static org.expath.servlex.tools.ContentType.MediaType.HTML;
+import static org.expath.servlex.tools.ContentType.MediaType.XML;
 
 /**
  * Parse the request, to produce the web:request element, and the bodies.
@@ -47,9 +65,62 @@ public class RequestParser
         myMatcher = matcher;
     }
 
+    /**
+     * Set the servlet, and enforce its limits while parsing (see {@link Servlet#getLimits()}).
+     */
     public void setServlet(Servlet servlet)
     {
         myServlet = servlet;
+        myLimits = new LimitChecker(servlet.getLimits());
+    }
+
+    /**
+     * Return the violation of the servlet limits, if any, while parsing the request.
+     * 
+     * That includes a streamed body parsed later by a component.
+     */
+    public ServlexException getLimitViolation()
+    {
+        return myLimits.getViolation();
+    }
+
+    /**
+     * Set the size above which binary bodies are spilled to disk (never if negative, the default).
+     * 
+     * A spilled body is represented in the input sequence by the path of the
+     * temporary file, as a string, and its web:body element has the extra
+     * attributes {@code file} and {@code size} (in bytes).  The temporary
+     * files are deleted by {@link #cleanup()}.
+     */
+    public void setSpillThreshold(long threshold)
+    {
+        mySpillThreshold = threshold;
+    }
+
+    /**
+     * Set the worker pool to parse the parts of multipart bodies in parallel (none if null, the default).
+     * 
+     * The binary parts are still read on the request thread, as they are
+     * not parsed.  The other parts are buffered, then parsed on the pool
+     * while the next parts are read.  Their order in web:multipart and in
+     * the input sequence is preserved.
+     */
+    public void setExecutor(ExecutorService executor)
+    {
+        myExecutor = executor;
+    }
+
+    /**
+     * Delete the temporary files the bodies have been spilled to, if any.
+     */
+    public void cleanup()
+    {
+        for ( File f : myTempFiles ) {
+            if ( f.exists() && ! f.delete() ) {
+                LOG.error("Cannot delete the temporary file: " + f);
+            }
+        }
+        myTempFiles.clear();
     }
 
     /**
@@ -91,6 +162,28 @@ public class RequestParser
     public Document parse(TreeBuilder b, List<Item> input, boolean trace_content)
             throws ServlexException
                  , TechnicalException
+    {
+        return parse(b, input, trace_content, true);
+    }
+
+    /**
+     * Parse the request, possibly without parsing the body.
+     *
+     * If {@code bodies} is false and the request is not multipart, the body
+     * is not read: its web:body element is written as usual (it depends only
+     * on the content type), but the body itself is not added to {@code input}.
+     * It can then be parsed later by {@link #parsePendingBodies(List, boolean)}.
+     * 
+     * If {@code b} is a {@link DeferredTree}, the web:param and web:header
+     * elements are built only when first accessed.  The same way, if
+     * {@code bodies} is false, a multipart body is parsed only when the
+     * content of web:multipart is first accessed (its web:body elements
+     * depend on the part headers), or when the bodies are asked for.  With
+     * any other builder, they are all built right away.
+     */
+    public Document parse(TreeBuilder b, List<Item> input, boolean trace_content, boolean bodies)
+            throws ServlexException
+                 , TechnicalException
     {
         // some values
         String servlet   = myServlet == null ? null : myServlet.getName();
@@ -125,14 +218,14 @@ public class RequestParser
         // the path
         makeElementPath(b);
         // the parameters
-        makeElementsParam(b);
+        defer(b, new ParamContent());
         // the headers
-        makeElementsHeader(b);
+        defer(b, new HeaderContent());
         // add null as the first item, as a placeholder for the request element
         // once it has been built
         input.add(null);
         // parse the bodies
-        makeBodies(b, input, trace_content);
+        makeBodies(b, input, trace_content, bodies);
         // end the request element
         b.endElem();
         // return the request document node
@@ -142,6 +235,84 @@ public class RequestParser
         return doc;
     }
 
+    /**
+     * Return true if the bodies have not been parsed yet by {@link #parse(TreeBuilder, List, boolean, boolean)}.
+     */
+    public boolean hasPendingBody()
+    {
+        return myPendingBody != null || myPendingParts != null;
+    }
+
+    /**
+     * Return the error raised while parsing a multipart body on first access, if any.
+     * 
+     * Such an error is raised while a component navigates web:request (see
+     * {@link DeferredTree.BuildError}), it is recorded here to be reported.
+     */
+    public ServlexException getDeferredError()
+    {
+        return myDeferredError;
+    }
+
+    /**
+     * Return the body to be parsed by the component itself, if any.
+     * 
+     * That is the case for a single-part XML or HTML body when the servlet
+     * asks for it (see {@link Servlet#isStreamingBody()}).  Such a body is
+     * not in the input sequence, its web:body element has the attribute
+     * {@code href}, set to {@link StreamedBody#URI}.
+     */
+    public StreamedBody getStreamedBody()
+    {
+        return myStreamedBody;
+    }
+
+    /**
+     * Parse the bodies left pending by {@link #parse(TreeBuilder, List, boolean, boolean)}, and add them to {@code input}.
+     * 
+     * Do nothing if there is no pending body.  The parts of a multipart
+     * body already parsed, because web:multipart has been accessed, are not
+     * parsed again.
+     */
+    public void parsePendingBodies(List<Item> input, boolean trace_content)
+            throws ServlexException
+                 , TechnicalException
+    {
+        if ( myPendingParts != null ) {
+            DeferredTree.Group parts = myPendingParts;
+            myPendingParts = null;
+            parts.build();
+            input.addAll(myDeferredParts);
+        }
+        else if ( myPendingBody != null ) {
+            input.add(parsePendingBody(trace_content));
+        }
+    }
+
+    /**
+     * Parse the single body left pending.
+     */
+    private Item parsePendingBody(boolean trace_content)
+            throws ServlexException
+                 , TechnicalException
+    {
+        ContentType ctype = myPendingBody;
+        myPendingBody = null;
+        try {
+            InputStream in = openInputStream(trace_content);
+            return newBodyParser(trace_content).parse(in, ctype);
+        }
+        catch ( TechnicalException ex ) {
+            myLimits.check();
+            throw ex;
+        }
+        catch ( IOException ex ) {
+            myLimits.check();
+            error(500, "Internal error", ex);
+            return null; // error() always throws an exception
+        }
+    }
+
     /**
      * Return the request URI as a string.
      */
@@ -208,6 +379,21 @@ public class RequestParser
         b.endElem();
     }
 
+    /**
+     * Add {@code content} to {@code b}, deferred if it supports it, or right away.
+     */
+    private void defer(TreeBuilder b, DeferredTree.Content content)
+            throws ServlexException
+                 , TechnicalException
+    {
+        if ( b instanceof DeferredTree ) {
+            ((DeferredTree) b).defer(content);
+        }
+        else {
+            content.build(b);
+        }
+    }
+
     /**
      * Make the elements web:param within the web:request, and put them in {@code b}.
      */
@@ -257,7 +443,7 @@ public class RequestParser
      *
      * TODO: Must add more info on web:multipart and web:body elements.
      */
-    private void makeBodies(TreeBuilder builder, List<Item> input, boolean trace_content)
+    private void makeBodies(TreeBuilder builder, List<Item> input, boolean trace_content, boolean bodies)
             throws ServlexException
                  , TechnicalException
     {
@@ -268,19 +454,76 @@ public class RequestParser
             return;
         }
         ContentType ctype = new ContentType(ctype_raw);
+        // reject a too large body right away, if the client says so (the
+        // limit is on the decoded body, the length of an encoded one tells
+        // nothing about it)
+        if ( myRequest.getHeader("Content-Encoding") == null ) {
+            myLimits.checkLength(myRequest);
+        }
+        // a spilled body changes its web:body element, so it cannot be pending
+        boolean spill = mySpillThreshold >= 0 && ctype.getMediaType() == BINARY;
+        if ( isStreamable(ctype) ) {
+            // the body is parsed by the component, on first access, if ever
+            try {
+                boolean html = ctype.getMediaType() == HTML;
+                myStreamedBody = new StreamedBody(openInputStream(trace_content), html, myLimits);
+            }
+            catch ( IOException ex ) {
+                error(500, "Internal error", ex);
+            }
+            makeElementBody(builder, ctype, 1, null, StreamedBody.URI);
+            return;
+        }
+        if ( ! bodies && ! ctype.isMultipart() && ! spill ) {
+            // the body is not needed (yet), do not even read it
+            makeElementBody(builder, ctype, 1, null, null);
+            myPendingBody = ctype;
+            return;
+        }
+        if ( ctype.isMultipart() ) {
+            builder.startElem("multipart");
+            builder.startContent();
+            if ( ! bodies && builder instanceof DeferredTree ) {
+                // the parts are not needed (yet), parse them on first access
+                PartContent content = new PartContent(ctype_raw, trace_content);
+                myPendingParts = ((DeferredTree) builder).defer(content);
+            }
+            else {
+                parseMultipart(builder, input, ctype_raw, trace_content);
+            }
+            builder.endElem();
+            return;
+        }
         try {
             // the input stream
-            ServletInputStream in = myRequest.getInputStream();
-            if ( LOG.debug() && trace_content ) {
-                in = new TraceInputStream(in);
-            }
-            // either multipart or single part
-            if ( ctype.isMultipart() ) {
-                builder.startElem("multipart");
-                builder.startContent();
-                MimeTokenStream parser = new MimeTokenStream();
-                parser.parseHeadless(in, ctype_raw);
-                int position = 1;
+            InputStream in = openInputStream(trace_content);
+            Item parsed = parseBody(in, ctype, 1, builder, trace_content);
+            input.add(parsed);
+        }
+        catch ( TechnicalException ex ) {
+            // a limit crossed is reported as such, whatever the parser made of it
+            myLimits.check();
+            throw ex;
+        }
+        catch ( IOException ex ) {
+            myLimits.check();
+            error(500, "Internal error", ex);
+        }
+    }
+
+    /**
+     * Parse a multipart body, writing its content within web:multipart to {@code builder}.
+     */
+    private void parseMultipart(TreeBuilder builder, List<Item> input, String ctype_raw, boolean trace_content)
+            throws ServlexException
+                 , TechnicalException
+    {
+        try {
+            InputStream in = openInputStream(trace_content);
+            MimeTokenStream parser = new MimeTokenStream();
+            parser.parseHeadless(in, ctype_raw);
+            int position = 1;
+            try {
                 for ( EntityState state = parser.getState();
                       state != EntityState.T_END_OF_STREAM;
                       state = parser.next() )
@@ -290,21 +533,99 @@ public class RequestParser
                         ++position;
                     }
                 }
-                builder.endElem();
+                // the parts parsed on the worker pool, if any, in order
+                collectParts(input);
             }
-            else {
-                Item parsed = parseBody(in, ctype, 1, builder, trace_content);
-                input.add(parsed);
+            finally {
+                cancelParts();
             }
         }
+        catch ( TechnicalException ex ) {
+            // a limit crossed is reported as such, whatever the parser made of it
+            myLimits.check();
+            throw ex;
+        }
         catch ( MimeException ex ) {
+            myLimits.check();
             error(400, "Bad request", ex);
         }
         catch ( IOException ex ) {
+            myLimits.check();
             error(500, "Internal error", ex);
         }
     }
 
+    /**
+     * Return true if the body is to be parsed by the component itself.
+     */
+    private boolean isStreamable(ContentType ctype)
+    {
+        if ( myServlet == null || ! myServlet.isStreamingBody() || ctype.isMultipart() ) {
+            return false;
+        }
+        ContentType.MediaType type = ctype.getMediaType();
+        return type == XML || type == HTML;
+    }
+
+    /**
+     * Return the input stream of the request, tracing it if asked for, decoding it, and counting its bytes.
+     * 
+     * The bytes are counted once decoded, so the limits apply to the
+     * decompressed size of the body (see {@link #decode(InputStream, String)}).
+     */
+    private InputStream openInputStream(boolean trace_content)
+            throws ServlexException
+                 , IOException
+    {
+        ServletInputStream in = myRequest.getInputStream();
+        if ( LOG.debug() && trace_content ) {
+            in = new TraceInputStream(in);
+        }
+        String coding = myRequest.getHeader("Content-Encoding");
+        return myLimits.wrap(decode(in, coding));
+    }
+
+    /**
+     * Decode {@code in} as per the content encoding {@code codings}, if any.
+     * 
+     * The content is inflated on the fly, while it is read, it is never
+     * decompressed entirely in memory.  The supported codings are gzip (or
+     * x-gzip), deflate and identity.  If several codings are listed, they
+     * are decoded in reverse order, as they have been applied in order.
+     * Any other coding is rejected with a 415.
+     */
+    private InputStream decode(InputStream in, String codings)
+            throws ServlexException
+                 , IOException
+    {
+        if ( codings == null ) {
+            return in;
+        }
+        String[] list = codings.split(",");
+        for ( int i = list.length - 1; i >= 0; --i ) {
+            String coding = list[i].trim().toLowerCase();
+            if ( LOG.debug() ) {
+                LOG.debug("Request - decoding : " + coding);
+            }
+            if ( "gzip".equals(coding) || "x-gzip".equals(coding) ) {
+                try {
+                    // reads the gzip header right away
+                    in = new GZIPInputStream(in);
+                }
+                catch ( ZipException ex ) {
+                    error(400, "Bad request, body is not gzip-encoded", ex);
+                }
+            }
+            else if ( "deflate".equals(coding) ) {
+                in = new InflaterInputStream(in);
+            }
+            else if ( ! "identity".equals(coding) && ! coding.isEmpty() ) {
+                error(415, "Unsupported content encoding: " + coding);
+            }
+        }
+        return in;
+    }
+
     /**
      * Do the job for one parser event, in case of a multipart.
      */
@@ -312,6 +633,7 @@ public class RequestParser
             throws ServlexException
                  , MimeException
                  , TechnicalException
+                 , IOException
     {
         EntityState state = parser.getState();
         if ( LOG.debug() ) {
@@ -334,6 +656,9 @@ public class RequestParser
                 String body  = Integer.toString(position);
                 String name  = f.getName().toLowerCase();
                 String value = f.getBody();
+                if ( "content-encoding".equals(name) ) {
+                    myPartEncoding = value;
+                }
                 builder.startElem("header");
                 builder.attribute("body", body);
                 builder.attribute("name", name);
@@ -355,12 +680,29 @@ public class RequestParser
                     error(400, "Bad request");
                 }
                 ContentType ctype = new ContentType(ctype_raw);
+                myLimits.checkPart(position);
                 // TODO: Use getReader() instead of getInputStream() when possible
                 // (that is, always except for binary content).  That needs some
                 // refactoring wrt how input are passed to parseBody().
                 InputStream in = parser.getInputStream();
-                Item part = parseBody(in, ctype, position, builder, trace_content);
-                items.add(part);
+                if ( myPartEncoding != null ) {
+                    // the raw part is counted as well, as part of the
+                    // request, so the limit is slightly conservative here
+                    in = myLimits.wrap(decode(in, myPartEncoding));
+                    myPartEncoding = null;
+                }
+                if ( myExecutor != null && ctype.getMediaType() != BINARY ) {
+                    // buffer the part, parse it on the worker pool, and
+                    // keep its place in the input sequence
+                    PartTask task = bufferPart(in, ctype, trace_content);
+                    myParts.add(new PendingPart(items.size(), myExecutor.submit(task)));
+                    items.add(null);
+                    makeElementBody(builder, ctype, position, null, null);
+                }
+                else {
+                    Item part = parseBody(in, ctype, position, builder, trace_content);
+                    items.add(part);
+                }
                 break;
             }
             // START_HEADER is handled in the calling analyzeParts()
@@ -404,16 +746,130 @@ public class RequestParser
     private Item parseBody(InputStream input, ContentType ctype, int position, TreeBuilder builder, boolean trace_content)
             throws ServlexException
                  , TechnicalException
+    {
+        BodyParser parser = newBodyParser(trace_content);
+        Item body;
+        try {
+            body = parser.parse(input, ctype);
+        }
+        finally {
+            if ( parser.getSpilledFile() != null ) {
+                myTempFiles.add(parser.getSpilledFile());
+            }
+        }
+        makeElementBody(builder, ctype, position, parser.getSpilledFile(), null);
+        return body;
+    }
+
+    /**
+     * Read a part in memory, or in a temporary file if larger than the spill threshold.
+     * 
+     * The part is then read from the buffer, to be parsed on the worker pool,
+     * while the request thread goes on reading the next parts.
+     */
+    private PartTask bufferPart(InputStream input, ContentType ctype, boolean trace_content)
+            throws ServlexException
+                 , TechnicalException
+    {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int read;
+            while ( (read = input.read(buf)) > 0 ) {
+                if ( mySpillThreshold >= 0 && buffer.size() + read > mySpillThreshold ) {
+                    File file = File.createTempFile("servlex-part-", ".tmp");
+                    myTempFiles.add(file);
+                    OutputStream out = new FileOutputStream(file);
+                    try {
+                        buffer.writeTo(out);
+                        out.write(buf, 0, read);
+                        while ( (read = input.read(buf)) > 0 ) {
+                            out.write(buf, 0, read);
+                        }
+                    }
+                    finally {
+                        out.close();
+                    }
+                    return new PartTask(null, file, ctype, trace_content);
+                }
+                buffer.write(buf, 0, read);
+            }
+            return new PartTask(buffer.toByteArray(), null, ctype, trace_content);
+        }
+        catch ( IOException ex ) {
+            myLimits.check();
+            throw new TechnicalException("Error reading a part of the request", ex);
+        }
+    }
+
+    /**
+     * Wait for the parts parsed on the worker pool, and put them at their place in {@code items}.
+     */
+    private void collectParts(List<Item> items)
+            throws ServlexException
+                 , TechnicalException
+    {
+        try {
+            for ( PendingPart part : myParts ) {
+                items.set(part.myIndex, part.myFuture.get());
+            }
+        }
+        catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            error(500, "Interrupted while parsing the request", ex);
+        }
+        catch ( ExecutionException ex ) {
+            myLimits.check();
+            Throwable cause = ex.getCause();
+            if ( cause instanceof ServlexException ) {
+                throw (ServlexException) cause;
+            }
+            if ( cause instanceof TechnicalException ) {
+                throw (TechnicalException) cause;
+            }
+            error(500, "Internal error", cause);
+        }
+    }
+
+    /**
+     * Cancel the parts still pending on the worker pool, if any (e.g. in case of error).
+     */
+    private void cancelParts()
+    {
+        for ( PendingPart part : myParts ) {
+            part.myFuture.cancel(true);
+        }
+        myParts.clear();
+    }
+
+    private BodyParser newBodyParser(boolean trace_content)
+    {
+        BodyParser parser = new BodyParser(trace_content, myProcs);
+        parser.setSpillThreshold(mySpillThreshold);
+        parser.setLimits(myLimits);
+        return parser;
+    }
+
+    /**
+     * Make the element web:body within the web:request, and put it in {@code b}.
+     */
+    private void makeElementBody(TreeBuilder builder, ContentType ctype, int position, File spilled, String href)
+            throws TechnicalException
     {
         // TODO: Add more information on the web:body element (@content-type,
         // etc., see the HTTP Client module and the XProc p:http-request).
         builder.startElem("body");
         builder.attribute("content-type", ctype.getMainType() + "/" + ctype.getSubType());
         builder.attribute("position", Integer.toString(position));
+        if ( spilled != null ) {
+            builder.attribute("file", spilled.getPath());
+            builder.attribute("size", Long.toString(spilled.length()));
+        }
+        if ( href != null ) {
+            builder.attribute("href", href);
+        }
         builder.startContent();
         builder.endElem();
-        BodyParser parser = new BodyParser(trace_content, myProcs);
-        return parser.parse(input, ctype);
     }
 
     private void error(int code, String msg)
@@ -445,6 +901,181 @@ public class RequestParser
     private Servlet myServlet = null;
     /** The regex matcher to get the groups out of the URI. */
     private RegexMatcher myMatcher = null;
+    /** The content type of the body not parsed yet, if any. */
+    private ContentType myPendingBody = null;
+    /** The multipart body not parsed yet, or not added to the input yet, if any. */
+    private DeferredTree.Group myPendingParts = null;
+    /** The parts of the multipart body parsed on first access. */
+    private final List<Item> myDeferredParts = new ArrayList<>();
+    /** The error raised while parsing the multipart body on first access, if any. */
+    private ServlexException myDeferredError = null;
+    /** The size above which binary bodies are spilled to disk, unless negative. */
+    private long mySpillThreshold = -1;
+    /** The temporary files the bodies have been spilled to. */
+    private final List<File> myTempFiles = new ArrayList<>();
+    /** The limits to enforce while parsing the request. */
+    private LimitChecker myLimits = new LimitChecker(Limits.NONE);
+    /** The body to be parsed by the component itself, if any. */
+    private StreamedBody myStreamedBody = null;
+    /** The worker pool to parse multipart parts in parallel, if any. */
+    private ExecutorService myExecutor = null;
+    /** The parts being parsed on the worker pool, in order. */
+    private final List<PendingPart> myParts = new ArrayList<>();
+    /** The content encoding of the current part, if any. */
+    private String myPartEncoding = null;
+
+    /**
+     * The web:param elements, built on first access.
+     * 
+     * They are counted upfront, so the parameters are read from the request
+     * before its body (a form body, posted, is then parsed as parameters
+     * by the container, as when they are built right away).
+     */
+    private class ParamContent
+            implements DeferredTree.Content
+    {
+        @Override
+        public int count()
+        {
+            int count = 0;
+            for ( Enumeration<String> e = myRequest.getParameterNames(); e.hasMoreElements(); /* */ ) {
+                count += myRequest.getParameterValues(e.nextElement()).length;
+            }
+            return count;
+        }
+
+        @Override
+        public void build(TreeBuilder b)
+                throws TechnicalException
+        {
+            makeElementsParam(b);
+        }
+    }
+
+    /**
+     * The web:header elements, built on first access.
+     */
+    private class HeaderContent
+            implements DeferredTree.Content
+    {
+        @Override
+        public int count()
+        {
+            int count = 0;
+            for ( Enumeration<String> e = myRequest.getHeaderNames(); e.hasMoreElements(); /* */ ) {
+                for ( Enumeration<String> e2 = myRequest.getHeaders(e.nextElement()); e2.hasMoreElements(); /* */ ) {
+                    e2.nextElement();
+                    ++count;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public void build(TreeBuilder b)
+                throws TechnicalException
+        {
+            makeElementsHeader(b);
+        }
+    }
+
+    /**
+     * The content of web:multipart, parsed on first access.
+     * 
+     * The parts are kept apart, to be added to the input sequence if asked
+     * for (see {@link #parsePendingBodies(List, boolean)}).  An error is
+     * recorded, to be reported even if it is raised through the DOM.
+     */
+    private class PartContent
+            implements DeferredTree.Content
+    {
+        public PartContent(String ctype_raw, boolean trace_content)
+        {
+            myCtypeRaw = ctype_raw;
+            myTrace = trace_content;
+        }
+
+        @Override
+        public int count()
+        {
+            return -1;
+        }
+
+        @Override
+        public void build(TreeBuilder b)
+                throws ServlexException
+                     , TechnicalException
+        {
+            try {
+                parseMultipart(b, myDeferredParts, myCtypeRaw, myTrace);
+            }
+            catch ( ServlexException ex ) {
+                myDeferredError = ex;
+                throw ex;
+            }
+        }
+
+        private final String myCtypeRaw;
+        private final boolean myTrace;
+    }
+
+    /**
+     * A part being parsed on the worker pool, and its index in the input sequence.
+     */
+    private static class PendingPart
+    {
+        public PendingPart(int index, Future<Item> future)
+        {
+            myIndex = index;
+            myFuture = future;
+        }
+
+        private final int myIndex;
+        private final Future<Item> myFuture;
+    }
+
+    /**
+     * Parse a buffered part, on the worker pool.
+     * 
+     * The part is either in memory, or in a temporary file, which is then
+     * deleted once parsed.
+     */
+    private class PartTask
+            implements Callable<Item>
+    {
+        public PartTask(byte[] bytes, File file, ContentType ctype, boolean trace_content)
+        {
+            myBytes = bytes;
+            myFile = file;
+            myCtype = ctype;
+            myTrace = trace_content;
+        }
+
+        @Override
+        public Item call()
+                throws ServlexException
+                     , TechnicalException
+                     , IOException
+        {
+            InputStream in = myFile == null
+                    ? new ByteArrayInputStream(myBytes)
+                    : new FileInputStream(myFile);
+            try {
+                return newBodyParser(myTrace).parse(in, myCtype);
+            }
+            finally {
+                in.close();
+                if ( myFile != null && ! myFile.delete() ) {
+                    LOG.error("Cannot delete the temporary file: " + myFile);
+                }
+            }
+        }
+
+        private final byte[] myBytes;
+        private final File myFile;
+        private final ContentType myCtype;
+        private final boolean myTrace;
+    }
 }
 
 
@@ -0,0 +1,511 @@
+/****************************************************************************/
+/*  File:       ResourceCache.java                                          */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.expath.servlex.ServlexException;
+
+/**
+ * A cache of the static resources of a webapp, bounded by a number of bytes.
+ *
+ * The content of each resource is kept off-heap, in a direct byte buffer,
+ * with its exact length.  The content of a compressible resource (text,
+ * XML, JSON, JavaScript...) is also kept gzip-compressed, if that is smaller,
+ * so it can be sent as is to the clients accepting it.
+ *
+ * The least recently used resources are evicted when the budget is
+ * exceeded.  A resource larger than an eighth of the budget is not cached
+ * at all, and its path is remembered, so it is streamed directly the next
+ * times, without trying to read it again.  The cache belongs to one
+ * application, so it is dropped when the package is reinstalled, as it is
+ * loaded in a new application.
+ *
+ * The native memory of the evicted entries is freed right away, without
+ * waiting for the GC, once the requests still using them release them (see
+ * {@link #get(String)}).
+ *
+ * @author Florent Georges
+ */
+public class ResourceCache
+{
+    /**
+     * Create a new cache, holding at most {@code budget} bytes (disabled if 0 or less).
+     */
+    public ResourceCache(long budget)
+    {
+        myBudget = Math.max(budget, 0);
+        myMaxEntry = myBudget / 8;
+    }
+
+    /**
+     * Return true if the cache is enabled.
+     */
+    public boolean isEnabled()
+    {
+        return myBudget > 0;
+    }
+
+    /**
+     * Return the cached resource at {@code path}, or null if it is not in the cache.
+     * 
+     * The returned entry must be released once it is not used anymore (see
+     * {@link Entry#release()}), for its memory to be freed if it is evicted
+     * meanwhile.
+     */
+    public synchronized Entry get(String path)
+    {
+        Entry entry = myEntries.get(path);
+        if ( entry != null ) {
+            entry.retain();
+        }
+        return entry;
+    }
+
+    /**
+     * Read the resource at {@code path} from {@code in}, and cache it if not too large.
+     * 
+     * If the resource has been cached, {@code in} is closed and the returned
+     * loader gives the new entry (to be released as for {@link #get(String)}).
+     * If not, the returned loader gives a stream to read the whole content
+     * from, instead of {@code in}.  If {@code path} is already known to be too
+     * large, that stream is {@code in} itself, nothing is read upfront.
+     */
+    public Loader load(String path, InputStream in, ContentType type)
+            throws IOException
+    {
+        return new Loader(path, in, type);
+    }
+
+    /**
+     * Remove all the entries, and forget the paths too large to be cached.
+     */
+    public synchronized void clear()
+    {
+        for ( Entry entry : myEntries.values() ) {
+            entry.evict();
+        }
+        myEntries.clear();
+        myBytes = 0;
+        myOversized.clear();
+    }
+
+    /**
+     * Return the number of bytes currently cached (including the gzip variants).
+     */
+    public synchronized long getBytes()
+    {
+        return myBytes;
+    }
+
+    private synchronized void put(String path, Entry entry)
+    {
+        Entry prev = myEntries.put(path, entry);
+        if ( prev != null ) {
+            myBytes -= prev.size();
+            prev.evict();
+        }
+        myBytes += entry.size();
+        // evict the least recently used ones, until it fits in the budget
+        Iterator<Entry> it = myEntries.values().iterator();
+        while ( myBytes > myBudget && it.hasNext() ) {
+            Entry eldest = it.next();
+            if ( eldest != entry ) {
+                myBytes -= eldest.size();
+                it.remove();
+                eldest.evict();
+            }
+        }
+    }
+
+    /**
+     * Return true if it is worth compressing content of type {@code type}.
+     * 
+     * Only the resources of such a type can have a gzip variant in the cache.
+     */
+    public static boolean isCompressible(ContentType type)
+    {
+        if ( type == null ) {
+            return false;
+        }
+        switch ( type.getMediaType() ) {
+            case HTML:
+            case JSON:
+            case TEXT:
+            case XML:
+                return true;
+            default:
+                String sub = type.getSubType();
+                return "javascript".equals(sub) || "x-javascript".equals(sub);
+        }
+    }
+
+    private static ByteBuffer offHeap(byte[] bytes)
+    {
+        ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+        buf.put(bytes);
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Free the native memory of a direct buffer right away, instead of when it is collected.
+     * 
+     * Use {@code Unsafe.invokeCleaner()} on Java 9 and later, or the cleaner
+     * of the buffer itself on Java 8.  If neither is accessible, the memory
+     * is only freed when the buffer is garbage collected.  The buffer must
+     * not be used anymore afterwards.
+     */
+    private static void free(ByteBuffer buffer)
+    {
+        if ( buffer == null || ! buffer.isDirect() ) {
+            return;
+        }
+        try {
+            if ( INVOKE_CLEANER != null ) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            }
+            else {
+                Method getter = buffer.getClass().getMethod("cleaner");
+                getter.setAccessible(true);
+                Object cleaner = getter.invoke(buffer);
+                if ( cleaner != null ) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        }
+        catch ( ReflectiveOperationException | RuntimeException ex ) {
+            LOG.debug("Cannot free the direct buffer, left to the GC", ex);
+        }
+    }
+
+    /**
+     * Return the instance of {@code sun.misc.Unsafe}, or null if not accessible.
+     */
+    private static Object findUnsafe()
+    {
+        try {
+            Class<?> clazz = Class.forName("sun.misc.Unsafe");
+            Field field = clazz.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return field.get(null);
+        }
+        catch ( ReflectiveOperationException | RuntimeException ex ) {
+            return null;
+        }
+    }
+
+    /**
+     * Return {@code Unsafe.invokeCleaner(ByteBuffer)}, or null if it does not exist (before Java 9).
+     */
+    private static Method findInvokeCleaner()
+    {
+        if ( UNSAFE == null ) {
+            return null;
+        }
+        try {
+            return UNSAFE.getClass().getMethod("invokeCleaner", ByteBuffer.class);
+        }
+        catch ( ReflectiveOperationException | RuntimeException ex ) {
+            return null;
+        }
+    }
+
+    /** The logger. */
+    private static final Log LOG = new Log(ResourceCache.class);
+    /** The instance of {@code sun.misc.Unsafe}, if accessible. */
+    private static final Object UNSAFE = findUnsafe();
+    /** The method {@code Unsafe.invokeCleaner()}, if any (Java 9 and later). */
+    private static final Method INVOKE_CLEANER = findInvokeCleaner();
+    /** The max number of paths remembered as too large to be cached. */
+    private static final int MAX_OVERSIZED = 1024;
+
+    /** The max number of bytes cached. */
+    private final long myBudget;
+    /** The max size of one resource to be cached. */
+    private final long myMaxEntry;
+    /** The number of bytes cached. */
+    private long myBytes = 0;
+    /** The entries, by path, in access order. */
+    private final Map<String, Entry> myEntries = new LinkedHashMap<>(16, 0.75f, true);
+    /** The paths of the resources too large to be cached. */
+    private final LruCache<String, Boolean> myOversized = new LruCache<>(MAX_OVERSIZED);
+
+    /**
+     * Read a resource and cache it, if not too large.
+     */
+    public class Loader
+    {
+        private Loader(String path, InputStream in, ContentType type)
+                throws IOException
+        {
+            if ( myOversized.get(path) != null ) {
+                // known to be too large, stream it directly
+                myRemainder = in;
+                myEntry = null;
+                return;
+            }
+            // read at most max entry + 1 bytes, to know if it is too large
+            BufferedInputStream buffered = new BufferedInputStream(in);
+            buffered.mark((int) Math.min(myMaxEntry + 1, Integer.MAX_VALUE));
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int read;
+            while ( content.size() <= myMaxEntry
+                    && (read = buffered.read(buf, 0, (int) Math.min(buf.length, myMaxEntry + 1 - content.size()))) > 0 ) {
+                content.write(buf, 0, read);
+            }
+            if ( content.size() > myMaxEntry ) {
+                // too large, give the stream back, from the start
+                buffered.reset();
+                myOversized.put(path, Boolean.TRUE);
+                myRemainder = buffered;
+                myEntry = null;
+                return;
+            }
+            buffered.close();
+            byte[] bytes = content.toByteArray();
+            ByteBuffer gzip = null;
+            if ( isCompressible(type) ) {
+                byte[] compressed = gzip(bytes);
+                if ( compressed.length < bytes.length ) {
+                    gzip = offHeap(compressed);
+                }
+            }
+            myEntry = new Entry(offHeap(bytes), gzip);
+            myEntry.retain();
+            myRemainder = null;
+            put(path, myEntry);
+        }
+
+        /**
+         * Return the cached entry, or null if the resource is too large.
+         */
+        public Entry getEntry()
+        {
+            return myEntry;
+        }
+
+        /**
+         * Return the whole content, if not cached (that is, if {@link #getEntry()} returns null).
+         */
+        public InputStream getRemainder()
+        {
+            return myRemainder;
+        }
+
+        private byte[] gzip(byte[] bytes)
+                throws IOException
+        {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            OutputStream out = new GZIPOutputStream(buffer);
+            try {
+                out.write(bytes);
+            }
+            finally {
+                out.close();
+            }
+            return buffer.toByteArray();
+        }
+
+        private final Entry myEntry;
+        private final InputStream myRemainder;
+    }
+
+    /**
+     * A cached resource, with its gzip variant if any.
+     * 
+     * The entry counts the requests using it, acquired by {@link
+     * ResourceCache#get(String)} or by a {@link Loader}, and released by
+     * {@link #release()}.  An evicted entry frees its buffers once it is not
+     * used anymore.  It is a resource to register on the execution context of
+     * the request, for it to be released when the response has been sent.
+     */
+    public static class Entry
+            implements Cleanable
+    {
+        private Entry(ByteBuffer content, ByteBuffer gzip)
+        {
+            myContent = content;
+            myGzip = gzip;
+        }
+
+        /**
+         * Return the content, as a new read-only buffer (to be consumed by one reader only).
+         */
+        public synchronized ByteBuffer getContent()
+        {
+            checkNotFreed();
+            return myContent.asReadOnlyBuffer();
+        }
+
+        /**
+         * Return the gzip-compressed content, or null if there is no such variant.
+         */
+        public synchronized ByteBuffer getGzip()
+        {
+            checkNotFreed();
+            return myGzip == null ? null : myGzip.asReadOnlyBuffer();
+        }
+
+        /**
+         * Release the entry, acquired for one request.
+         */
+        public synchronized void release()
+        {
+            if ( myUsers > 0 ) {
+                --myUsers;
+            }
+            if ( myEvicted && myUsers == 0 ) {
+                free();
+            }
+        }
+
+        @Override
+        public void cleanup(Auditor auditor)
+                throws ServlexException
+        {
+            auditor.cleanup("cached resource");
+            release();
+        }
+
+        /**
+         * Return the content, as an input stream.
+         */
+        public InputStream openStream()
+        {
+            return new BufferInputStream(getContent());
+        }
+
+        private long size()
+        {
+            return myContent.capacity() + (myGzip == null ? 0 : myGzip.capacity());
+        }
+
+        /**
+         * Return true if the buffers have been freed.
+         */
+        synchronized boolean isFreed()
+        {
+            return myFreed;
+        }
+
+        private synchronized void retain()
+        {
+            ++myUsers;
+        }
+
+        /**
+         * The entry has been removed from the cache, free it as soon as it is not used anymore.
+         */
+        private synchronized void evict()
+        {
+            myEvicted = true;
+            if ( myUsers == 0 ) {
+                free();
+            }
+        }
+
+        private void free()
+        {
+            if ( ! myFreed ) {
+                myFreed = true;
+                ResourceCache.free(myContent);
+                ResourceCache.free(myGzip);
+            }
+        }
+
+        private void checkNotFreed()
+        {
+            if ( myFreed ) {
+                throw new IllegalStateException("The cached resource has been evicted and freed");
+            }
+        }
+
+        /** The content, in a direct buffer, never read directly (only through views). */
+        private final ByteBuffer myContent;
+        /** The gzip variant, same as {@code myContent}, null if none. */
+        private final ByteBuffer myGzip;
+        /** The number of requests using the entry. */
+        private int myUsers = 0;
+        /** Whether the entry has been removed from the cache. */
+        private boolean myEvicted = false;
+        /** Whether the buffers have been freed. */
+        private boolean myFreed = false;
+    }
+
+    /**
+     * An input stream reading a byte buffer.
+     */
+    private static class BufferInputStream
+            extends InputStream
+    {
+        public BufferInputStream(ByteBuffer buffer)
+        {
+            myBuffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return myBuffer.hasRemaining() ? myBuffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            if ( ! myBuffer.hasRemaining() ) {
+                return -1;
+            }
+            int n = Math.min(len, myBuffer.remaining());
+            myBuffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available()
+        {
+            return myBuffer.remaining();
+        }
+
+        private final ByteBuffer myBuffer;
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
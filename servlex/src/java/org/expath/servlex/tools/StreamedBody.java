@@ -0,0 +1,197 @@
+/****************************************************************************/
+/*  File:       StreamedBody.java                                           */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.sax.SAXSource;
+import org.expath.servlex.TechnicalException;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * An XML request body, parsed only when a component accesses it.
+ *
+ * Instead of being parsed upfront and put in the input sequence, the body
+ * is given the URI {@link #URI} (on its web:body/@href), which components
+ * resolve using the resolver returned by {@link #makeResolver(URIResolver)},
+ * typically by calling {@code doc()}.  The body is then parsed straight from
+ * the request input stream, by the processor itself, the first time it is
+ * accessed.  It can be parsed only once.
+ *
+ * If the body is not well-formed, the error is recorded and available with
+ * {@link #getError()}, so it can be reported as a bad request, whatever the
+ * component made of it.
+ *
+ * @author Florent Georges
+ */
+public class StreamedBody
+{
+    /**
+     * @param input The request input stream, not read yet.
+     * 
+     * @param html True if the content is HTML (then tidied up to XML).
+     */
+    public StreamedBody(InputStream input, boolean html)
+    {
+        this(input, html, null);
+    }
+
+    /**
+     * @param limits The limits to enforce while parsing (none if null).
+     */
+    public StreamedBody(InputStream input, boolean html, LimitChecker limits)
+    {
+        myInput = input;
+        myHtml = html;
+        myLimits = limits;
+    }
+
+    /**
+     * Return a resolver for the body URI, delegating any other URI to {@code fallback}.
+     * 
+     * If {@code fallback} is null, the resolver returns null for any other
+     * URI, which means "use the default resolution".
+     */
+    public URIResolver makeResolver(URIResolver fallback)
+    {
+        return new Resolver(fallback);
+    }
+
+    /**
+     * Return the source to parse the body.
+     * 
+     * Can be called only once, as the body is read from the request input
+     * stream.
+     */
+    public synchronized Source getSource()
+            throws TechnicalException
+    {
+        if ( myConsumed ) {
+            throw new TechnicalException("The request body has already been parsed: " + URI);
+        }
+        myConsumed = true;
+        XMLReader reader = BodyParser.makeXmlReader(myHtml);
+        if ( myLimits != null ) {
+            reader = myLimits.wrap(reader);
+        }
+        InputSource source = new InputSource(myInput);
+        source.setSystemId(URI);
+        return new SAXSource(new Recorder(reader), source);
+    }
+
+    /**
+     * Return the error raised while parsing the body, if any.
+     */
+    public SAXException getError()
+    {
+        return myError;
+    }
+
+    /** The URI of the streamed body, to be used with {@code doc()}. */
+    public static final String URI = "urn:x-servlex:request:body";
+
+    /** The request input stream. */
+    private final InputStream myInput;
+    /** Is the content HTML? */
+    private final boolean myHtml;
+    /** The limits to enforce while parsing, if any. */
+    private final LimitChecker myLimits;
+    /** Has the body been handed over to a parser already? */
+    private boolean myConsumed = false;
+    /** The error raised while parsing the body, if any. */
+    private volatile SAXException myError = null;
+
+    /**
+     * Resolve the body URI to the body source.
+     */
+    private class Resolver
+            implements URIResolver
+    {
+        public Resolver(URIResolver fallback)
+        {
+            myFallback = fallback;
+        }
+
+        @Override
+        public Source resolve(String href, String base)
+                throws TransformerException
+        {
+            if ( URI.equals(href) ) {
+                try {
+                    return getSource();
+                }
+                catch ( TechnicalException ex ) {
+                    throw new TransformerException(ex);
+                }
+            }
+            else if ( myFallback == null ) {
+                return null;
+            }
+            else {
+                return myFallback.resolve(href, base);
+            }
+        }
+
+        private final URIResolver myFallback;
+    }
+
+    /**
+     * Record the parsing error, if any, on its way to the processor.
+     */
+    private class Recorder
+            extends XMLFilterImpl
+    {
+        public Recorder(XMLReader parent)
+        {
+            super(parent);
+        }
+
+        @Override
+        public void parse(InputSource input)
+                throws SAXException
+                     , IOException
+        {
+            try {
+                super.parse(input);
+            }
+            catch ( SAXException ex ) {
+                myError = ex;
+                throw ex;
+            }
+        }
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
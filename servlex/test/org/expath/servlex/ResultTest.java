@@ -0,0 +1,255 @@
+/****************************************************************************/
+/*  File:       ResultTest.java                                             */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import javax.xml.namespace.QName;
+import org.expath.servlex.processors.Attribute;
+import org.expath.servlex.processors.Element;
+import org.expath.servlex.processors.Item;
+import org.expath.servlex.processors.Sequence;
+import org.expath.servlex.test.HttpServletResponseMock;
+import org.expath.servlex.test.ProcessorsStub;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test sending a result to the response, with the class {@link Result}.
+ *
+ * @author Florent Georges
+ */
+public class ResultTest
+{
+    @Test
+    public void multipart()
+            throws Exception
+    {
+        Elem resp = elem("response", "status", "200", "message", "OK").add(
+                elem("multipart", "content-type", "multipart/mixed", "boundary", "XYZ").add(
+                        elem("body", "content-type", "application/xml", "id", "doc").text("<doc/>"),
+                        elem("header", "name", "Content-Location", "value", "/att/1"),
+                        elem("body", "content-type", "text/plain").text("attachment")));
+        HttpServletResponseMock sut = respond(resp);
+        Assert.assertEquals("[status 200 OK, type multipart/mixed; boundary=XYZ, flush, flush, close]",
+                sut.getTrail().toString());
+        Assert.assertEquals("--XYZ\r\n"
+                + "Content-Type: application/xml\r\n"
+                + "Content-ID: doc\r\n"
+                + "\r\n"
+                + "<doc/>\r\n"
+                + "--XYZ\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "Content-Location: /att/1\r\n"
+                + "\r\n"
+                + "attachment\r\n"
+                + "--XYZ--\r\n", sut.getBody());
+    }
+
+    @Test
+    public void multipartHeaderOverrides()
+            throws Exception
+    {
+        Elem resp = elem("response", "status", "200").add(
+                elem("multipart", "content-type", "multipart/related").add(
+                        elem("header", "name", "content-type", "value", "text/x-special"),
+                        elem("body", "content-type", "text/plain").text("one")));
+        HttpServletResponseMock sut = respond(resp);
+        String body = sut.getBody();
+        Assert.assertTrue(body, body.contains("\r\ncontent-type: text/x-special\r\n\r\none\r\n"));
+        Assert.assertFalse(body, body.contains("text/plain"));
+        // a boundary is generated
+        String type = sut.getTrail().get(1);
+        Assert.assertTrue(type, type.startsWith("type multipart/related; boundary=servlex-"));
+        String boundary = type.substring(type.indexOf('=') + 1);
+        Assert.assertTrue(body, body.startsWith("--" + boundary + "\r\n"));
+        Assert.assertTrue(body, body.endsWith("--" + boundary + "--\r\n"));
+    }
+
+    @Test(expected = ServlexException.class)
+    public void multipartTrailingHeader()
+            throws Exception
+    {
+        Elem resp = elem("response", "status", "200").add(
+                elem("multipart", "content-type", "multipart/mixed").add(
+                        elem("body", "content-type", "text/plain").text("one"),
+                        elem("header", "name", "X-Dangling", "value", "no body")));
+        respond(resp);
+    }
+
+    private static HttpServletResponseMock respond(Elem resp)
+            throws Exception
+    {
+        HttpServletResponseMock response = new HttpServletResponseMock();
+        Result result = new Result(new ProcessorsStub.Seq(Collections.<Item>singletonList(resp)), new ProcessorsStub().proxy());
+        result.respond(null, response);
+        return response;
+    }
+
+    private static Elem elem(String local, String... atts)
+    {
+        Elem e = new Elem(new QName(WEB_NS, local));
+        for ( int i = 0; i < atts.length; i += 2 ) {
+            e.attributes.add(new Attr(new QName(atts[i]), atts[i + 1]));
+        }
+        return e;
+    }
+
+    private static final String WEB_NS = "http://expath.org/ns/webapp";
+
+    /**
+     * A simple text item.
+     */
+    private static class Text
+            implements Item
+    {
+        public Text(String value)
+        {
+            myValue = value;
+        }
+
+        @Override
+        public Sequence asSequence()
+        {
+            return new ProcessorsStub.Seq(Collections.<Item>singletonList(this));
+        }
+
+        @Override
+        public String stringValue()
+        {
+            return myValue;
+        }
+
+        private final String myValue;
+    }
+
+    /**
+     * A simple attribute.
+     */
+    private static class Attr
+            extends Text
+            implements Attribute
+    {
+        public Attr(QName name, String value)
+        {
+            super(value);
+            myName = name;
+        }
+
+        @Override
+        public QName name()
+        {
+            return myName;
+        }
+
+        private final QName myName;
+    }
+
+    /**
+     * A simple element, with attributes, and either child elements or text.
+     */
+    private static class Elem
+            implements Element
+    {
+        public Elem(QName name)
+        {
+            myName = name;
+        }
+
+        public Elem add(Elem... children)
+        {
+            elements.addAll(Arrays.asList(children));
+            return this;
+        }
+
+        public Elem text(String text)
+        {
+            myText = new Text(text);
+            return this;
+        }
+
+        @Override
+        public QName name()
+        {
+            return myName;
+        }
+
+        @Override
+        public URI baseUri()
+        {
+            return URI.create("file:/tmp/");
+        }
+
+        @Override
+        public Iterator<Attribute> attributes()
+        {
+            return attributes.iterator();
+        }
+
+        @Override
+        public Iterator<Element> elements()
+        {
+            return elements.iterator();
+        }
+
+        @Override
+        public Iterator<Item> children()
+        {
+            List<Item> children = new ArrayList<>();
+            if ( myText != null ) {
+                children.add(myText);
+            }
+            children.addAll(elements);
+            return children.iterator();
+        }
+
+        @Override
+        public Sequence asSequence()
+        {
+            return new ProcessorsStub.Seq(Collections.<Item>singletonList(this));
+        }
+
+        @Override
+        public String stringValue()
+        {
+            return myText == null ? "" : myText.stringValue();
+        }
+
+        public final List<Attribute> attributes = new ArrayList<>();
+        public final List<Element> elements = new ArrayList<>();
+        private final QName myName;
+        private Text myText = null;
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,226 @@
+/****************************************************************************/
+/*  File:       StreamingResultTest.java                                    */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex;
+
+import java.io.StringReader;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import org.expath.servlex.test.HttpServletRequestMock;
+import org.expath.servlex.test.HttpServletResponseMock;
+import org.expath.servlex.test.ProcessorsStub;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * Test streaming a result to the response, and falling back to buffering.
+ *
+ * @author Florent Georges
+ */
+public class StreamingResultTest
+{
+    @Test
+    public void streamBody()
+            throws Exception
+    {
+        HttpServletResponseMock resp = new HttpServletResponseMock();
+        StreamingResult result = stream(resp, new DOMResult(),
+                "<web:response xmlns:web='" + WEB_NS + "' xmlns='urn:x' status='201' message='Created'>"
+                + "<web:header name='X-Test' value='yes'/>"
+                + "<web:body content-type='application/xml' id='main'><doc><p>hello</p></doc></web:body>"
+                + "</web:response>");
+        Assert.assertFalse("the result must be streamed", result.isBuffered());
+        Assert.assertEquals("[status 201 Created, X-Test: yes, type application/xml, Content-ID: main, flush, flush, close]", resp.getTrail().toString());
+        String body = resp.getBody();
+        Assert.assertTrue(body, body.startsWith("<doc"));
+        // the default namespace declared on web:response is kept
+        Assert.assertTrue(body, body.contains("xmlns=\"urn:x\""));
+        Assert.assertTrue(body, body.contains("<p>hello</p>"));
+    }
+
+    @Test
+    public void streamNextItem()
+            throws Exception
+    {
+        HttpServletResponseMock resp = new HttpServletResponseMock();
+        StreamingResult result = stream(resp, new DOMResult(),
+                "<web:response xmlns:web='" + WEB_NS + "' status='200' message='OK'>"
+                + "<web:body content-type='text/html'/>"
+                + "</web:response>"
+                + "<html><body>item</body></html>"
+                + "<ignored/>");
+        Assert.assertFalse("the result must be streamed", result.isBuffered());
+        Assert.assertEquals("[status 200 OK, type text/html, flush, flush, close]", resp.getTrail().toString());
+        Assert.assertEquals("<html><body>item</body></html>", resp.getBody());
+    }
+
+    @Test
+    public void noBody()
+            throws Exception
+    {
+        HttpServletResponseMock resp = new HttpServletResponseMock();
+        StreamingResult result = stream(resp, new DOMResult(),
+                "<web:response xmlns:web='" + WEB_NS + "' status='204' message='No Content'/>");
+        Assert.assertFalse("the result must be streamed", result.isBuffered());
+        Assert.assertEquals("[status 204 No Content]", resp.getTrail().toString());
+        Assert.assertEquals("", resp.getBody());
+    }
+
+    @Test
+    public void fallBackOnMultipart()
+            throws Exception
+    {
+        HttpServletResponseMock resp = new HttpServletResponseMock();
+        DOMResult buffer = new DOMResult();
+        StreamingResult result = stream(resp, buffer,
+                "<web:response xmlns:web='" + WEB_NS + "' status='200' message='OK'>"
+                + "<web:multipart content-type='multipart/mixed'>"
+                + "<web:body content-type='text/plain'>one</web:body>"
+                + "</web:multipart>"
+                + "</web:response>");
+        Assert.assertTrue("the result must be buffered", result.isBuffered());
+        Assert.assertEquals("[]", resp.getTrail().toString());
+        Node response = buffer.getNode().getFirstChild();
+        Assert.assertEquals("response", response.getLocalName());
+        Assert.assertEquals("one", response.getTextContent());
+    }
+
+    @Test
+    public void fallBackOnOtherRoot()
+            throws Exception
+    {
+        HttpServletResponseMock resp = new HttpServletResponseMock();
+        DOMResult buffer = new DOMResult();
+        StreamingResult result = stream(resp, buffer, "<html>not a response</html>");
+        Assert.assertTrue("the result must be buffered", result.isBuffered());
+        Assert.assertEquals("[]", resp.getTrail().toString());
+        Assert.assertEquals("html", buffer.getNode().getFirstChild().getLocalName());
+    }
+
+    @Test
+    public void notModified()
+            throws Exception
+    {
+        HttpServletRequestMock req = new HttpServletRequestMock();
+        req.setMethod("GET");
+        req.setHeader("If-None-Match", "\"v1\"");
+        HttpServletResponseMock resp = new HttpServletResponseMock();
+        StreamingResult result = stream(req, resp, new DOMResult(),
+                "<web:response xmlns:web='" + WEB_NS + "' status='200' message='OK'>"
+                + "<web:header name='ETag' value='\"v1\"'/>"
+                + "<web:body content-type='text/html'/>"
+                + "</web:response>"
+                + "<html><body>item</body></html>");
+        Assert.assertFalse("the result must be streamed", result.isBuffered());
+        Assert.assertEquals("[status 304, ETag: \"v1\"]", resp.getTrail().toString());
+        Assert.assertEquals("", resp.getBody());
+    }
+
+    @Test(expected = SAXException.class)
+    public void headerAfterBody()
+            throws Exception
+    {
+        stream(new HttpServletResponseMock(), new DOMResult(),
+                "<web:response xmlns:web='" + WEB_NS + "' status='200' message='OK'>"
+                + "<web:body content-type='text/plain'>text</web:body>"
+                + "<web:header name='X-Late' value='too late'/>"
+                + "</web:response>");
+    }
+
+    /**
+     * Parse {@code items} (wrapped in a root element, which is not reported) to a streaming result.
+     */
+    private static StreamingResult stream(HttpServletResponseMock resp, DOMResult buffer, String items)
+            throws Exception
+    {
+        return stream(null, resp, buffer, items);
+    }
+
+    /**
+     * Same as {@link #stream(HttpServletResponseMock, DOMResult, String)}, responding to {@code req}.
+     */
+    private static StreamingResult stream(HttpServletRequestMock req, HttpServletResponseMock resp, DOMResult buffer, String items)
+            throws Exception
+    {
+        TransformerHandler handler = FACTORY.newTransformerHandler();
+        handler.setResult(buffer);
+        StreamingResult result = new StreamingResult(req, resp, new ProcessorsStub().proxy(), handler);
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        XMLReader parser = factory.newSAXParser().getXMLReader();
+        Unwrap filter = new Unwrap(parser);
+        filter.setContentHandler(result);
+        filter.parse(new InputSource(new StringReader("<root>" + items + "</root>")));
+        return result;
+    }
+
+    private static final String WEB_NS = "http://expath.org/ns/webapp";
+    private static final SAXTransformerFactory FACTORY = (SAXTransformerFactory) SAXTransformerFactory.newInstance();
+
+    /**
+     * Do not report the root element, to simulate a sequence of several items.
+     */
+    private static class Unwrap
+            extends XMLFilterImpl
+    {
+        public Unwrap(XMLReader parent)
+        {
+            super(parent);
+        }
+
+        @Override
+        public void startElement(String uri, String local, String qname, Attributes atts)
+                throws SAXException
+        {
+            if ( myDepth++ > 0 ) {
+                super.startElement(uri, local, qname, atts);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String local, String qname)
+                throws SAXException
+        {
+            if ( --myDepth > 0 ) {
+                super.endElement(uri, local, qname);
+            }
+        }
+
+        private int myDepth = 0;
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
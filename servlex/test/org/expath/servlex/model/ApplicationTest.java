@@ -0,0 +1,111 @@
+/****************************************************************************/
+/*  File:       ApplicationTest.java                                        */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.model;
+
+import org.expath.servlex.ServlexException;
+import org.expath.servlex.connectors.RequestConnector;
+import org.expath.servlex.runtime.Invocation;
+import org.expath.servlex.test.HttpServletRequestMock;
+import org.expath.servlex.tools.LruCache;
+import org.expath.servlex.tools.RegexPattern;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the resolution of paths by an application, and its resolution cache.
+ *
+ * @author Florent Georges
+ */
+public class ApplicationTest
+{
+    @Test
+    public void resolutionCached()
+            throws Exception
+    {
+        Application sut = makeApp();
+        LruCache<String, Application.Resolution> cache = sut.getResolutions();
+        Assert.assertNotNull(sut.resolve("/style/a.css", "GET", connector("/style/a.css")));
+        Assert.assertEquals("Misses", 1, cache.getMisses());
+        Assert.assertEquals("Hits", 0, cache.getHits());
+        Assert.assertNotNull(sut.resolve("/style/a.css", "GET", connector("/style/a.css")));
+        Assert.assertEquals("Misses", 1, cache.getMisses());
+        Assert.assertEquals("Hits", 1, cache.getHits());
+        Assert.assertEquals("Size", 1, cache.size());
+    }
+
+    @Test
+    public void notFoundNotCached()
+            throws Exception
+    {
+        Application sut = makeApp();
+        for ( int i = 0; i < 2; ++i ) {
+            try {
+                sut.resolve("/nothing", "GET", connector("/nothing"));
+                Assert.fail("The path must not be found");
+            }
+            catch ( ServlexException ex ) {
+                Assert.assertEquals("Not found", 404, ex.getCode());
+            }
+        }
+        Assert.assertEquals("Misses", 2, sut.getResolutions().getMisses());
+        Assert.assertEquals("Size", 0, sut.getResolutions().size());
+    }
+
+    @Test
+    public void clearedWithHandlers()
+            throws Exception
+    {
+        Application sut = makeApp();
+        Invocation invoc = sut.resolve("/images/b.png", "GET", connector("/images/b.png"));
+        Assert.assertNotNull(invoc);
+        Assert.assertEquals("Size", 1, sut.getResolutions().size());
+        sut.addHandler(new Resource(new RegexPattern("^/other/.+$"), null, null));
+        Assert.assertEquals("Size after adding a handler", 0, sut.getResolutions().size());
+        sut.resolve("/images/b.png", "GET", connector("/images/b.png"));
+        sut.clearCaches();
+        Assert.assertEquals("Size after clearing", 0, sut.getResolutions().size());
+    }
+
+    private static Application makeApp()
+            throws Exception
+    {
+        Application app = new Application("app", "Test app", null, null);
+        app.addHandler(new Resource(new RegexPattern("^/style/(.+)\\.css$"), "/css/$1.css", "text/css"));
+        app.addHandler(new Resource(new RegexPattern("^/images/.+$"), null, null));
+        app.indexHandlers();
+        return app;
+    }
+
+    private static RequestConnector connector(String path)
+    {
+        return new RequestConnector(new HttpServletRequestMock(), path, "app", null, null);
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
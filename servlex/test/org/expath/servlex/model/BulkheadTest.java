@@ -0,0 +1,137 @@
+/****************************************************************************/
+/*  File:       BulkheadTest.java                                           */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.model;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.expath.servlex.ServlexException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the admission control of webapps.
+ *
+ * @author Florent Georges
+ */
+public class BulkheadTest
+{
+    @Test
+    public void rejectedWhenFull()
+            throws Exception
+    {
+        Bulkhead sut = new Bulkhead(1, 0, 0, 5);
+        sut.acquire();
+        try {
+            sut.acquire();
+            Assert.fail("The second request must be rejected");
+        }
+        catch ( ServlexException ex ) {
+            Assert.assertEquals("Service unavailable", 503, ex.getCode());
+        }
+        Assert.assertEquals("Rejected requests", 1, sut.getRejected());
+        // once released, the slot is available again
+        sut.release();
+        sut.acquire();
+        sut.release();
+    }
+
+    @Test
+    public void queuedThenServed()
+            throws Exception
+    {
+        Bulkhead sut = new Bulkhead(1, 1, 10000, 1);
+        sut.acquire();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> queued = executor.submit(new Acquire(sut));
+            // wait for the request to be queued
+            while ( sut.getQueued() == 0 ) {
+                Thread.sleep(10);
+            }
+            sut.release();
+            Assert.assertTrue("The queued request is served", queued.get());
+        }
+        finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals("Nothing rejected", 0, sut.getRejected());
+    }
+
+    @Test
+    public void queueTimeout()
+            throws Exception
+    {
+        Bulkhead sut = new Bulkhead(1, 1, 50, 1);
+        sut.acquire();
+        Assert.assertFalse("The queued request times out", new Acquire(sut).call());
+        Assert.assertEquals("Rejected requests", 1, sut.getRejected());
+        Assert.assertEquals("Nothing queued anymore", 0, sut.getQueued());
+    }
+
+    @Test
+    public void unbounded()
+            throws Exception
+    {
+        for ( int i = 0; i < 100; ++i ) {
+            Bulkhead.NONE.acquire();
+        }
+        Assert.assertEquals("Nothing rejected", 0, Bulkhead.NONE.getRejected());
+    }
+
+    /**
+     * Acquire a slot, return whether it has been admitted (and release it).
+     */
+    private static class Acquire
+            implements Callable<Boolean>
+    {
+        public Acquire(Bulkhead bulkhead)
+        {
+            myBulkhead = bulkhead;
+        }
+
+        @Override
+        public Boolean call()
+        {
+            try {
+                myBulkhead.acquire();
+            }
+            catch ( ServlexException ex ) {
+                return false;
+            }
+            myBulkhead.release();
+            return true;
+        }
+
+        private final Bulkhead myBulkhead;
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
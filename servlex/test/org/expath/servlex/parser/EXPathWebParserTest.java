@@ -145,6 +145,13 @@ public class EXPathWebParserTest
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public Document wrapDocument(org.w3c.dom.Document dom)
+                throws TechnicalException
+        {
+            throw new UnsupportedOperationException();
+        }
+
         @Override
         public Item buildString(String value)
                 throws TechnicalException
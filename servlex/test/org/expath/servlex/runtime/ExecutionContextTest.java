@@ -0,0 +1,368 @@
+/****************************************************************************/
+/*  File:       ExecutionContextTest.java                                   */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.runtime;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.expath.pkg.repo.Repository;
+import org.expath.servlex.ServerConfig;
+import org.expath.servlex.ServlexException;
+import org.expath.servlex.TechnicalException;
+import org.expath.servlex.components.Component;
+import org.expath.servlex.connectors.Connector;
+import org.expath.servlex.tools.Auditor;
+import org.expath.servlex.tools.Cleanable;
+import org.expath.servlex.tools.Log;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the execution context, and running shared components concurrently.
+ *
+ * @author Florent Georges
+ */
+public class ExecutionContextTest
+{
+    @Test
+    public void cleanupInReverseOrderOnce()
+            throws Exception
+    {
+        Auditor auditor = makeAuditor();
+        List<String> trail = new ArrayList<>();
+        ExecutionContext ctxt = new ExecutionContext();
+        ctxt.register(new Named("a", trail));
+        ctxt.register(new Named("b", trail));
+        ctxt.register(new Named("c", trail));
+        ctxt.cleanup(auditor);
+        Assert.assertEquals("[c, b, a]", trail.toString());
+        // cleaning up again does nothing
+        ctxt.cleanup(auditor);
+        Assert.assertEquals("[c, b, a]", trail.toString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void registerAfterCleanup()
+            throws Exception
+    {
+        ExecutionContext ctxt = new ExecutionContext();
+        ctxt.cleanup(makeAuditor());
+        ctxt.register(new Named("late", new ArrayList<String>()));
+    }
+
+    @Test
+    public void cleanupDespiteErrors()
+            throws Exception
+    {
+        List<String> trail = new ArrayList<>();
+        ExecutionContext ctxt = new ExecutionContext();
+        ctxt.register(new Named("a", trail));
+        ctxt.register(new Named(null, trail));
+        ctxt.register(new Named("c", trail));
+        try {
+            ctxt.cleanup(makeAuditor());
+            Assert.fail("The failing resource must make the cleanup fail");
+        }
+        catch ( ServlexException ex ) {
+            Assert.assertEquals("Failing on purpose", ex.getMessage());
+        }
+        Assert.assertEquals("[c, a]", trail.toString());
+    }
+
+    /**
+     * Run the same components concurrently, in many requests at once.
+     *
+     * The same component is used 3 times in each request (as both sides of a
+     * filter, and as the filtered servlet).  Each run acquires its own
+     * resource.  No resource must be cleaned up before the end of its own
+     * request, and each of them must be cleaned up exactly once.
+     */
+    @Test
+    public void concurrentRequests()
+            throws Exception
+    {
+        final int threads  = 16;
+        final int requests = 200;
+        ServerConfig config = makeConfig();
+        Stats stats = new Stats();
+        Component comp = new Acquiring(stats);
+        Invocation servlet = new ServletInvocation("servlet", comp, "/path", null);
+        Invocation invoc = new FilterInvocation("filter", comp, comp, servlet, "/path", null);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for ( int i = 0; i < threads; ++i ) {
+                results.add(pool.submit(new Client(invoc, config, stats, start, requests)));
+            }
+            start.countDown();
+            for ( Future<Integer> r : results ) {
+                Assert.assertEquals(requests, r.get().intValue());
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+        int total = threads * requests * 3;
+        Assert.assertEquals("premature cleanups", 0, stats.premature.get());
+        Assert.assertEquals("double cleanups",    0, stats.twice.get());
+        Assert.assertEquals("acquired",       total, stats.acquired.get());
+        Assert.assertEquals("released",       total, stats.released.get());
+    }
+
+    private static Auditor makeAuditor()
+            throws Exception
+    {
+        return new Auditor(makeConfig(), null, null);
+    }
+
+    /**
+     * A server config on an empty repository, in a temporary directory.
+     */
+    private static synchronized ServerConfig makeConfig()
+            throws Exception
+    {
+        if ( CONFIG == null ) {
+            File dir = Files.createTempDirectory("servlex-test-repo").toFile();
+            File web = new File(dir, ".expath-web");
+            Assert.assertTrue(web.mkdir());
+            String webapps = "<webapps xmlns='http://expath.org/ns/webapp'/>";
+            Files.write(new File(web, "webapps.xml").toPath(), webapps.getBytes(StandardCharsets.UTF_8));
+            CONFIG = new TestConfig(Repository.makeDefaultRepo(dir.getPath()));
+        }
+        return CONFIG;
+    }
+
+    private static ServerConfig CONFIG = null;
+
+    private static class TestConfig
+            extends ServerConfig
+    {
+        public TestConfig(Repository repo)
+                throws TechnicalException
+        {
+            super(repo, null);
+        }
+    }
+
+    /**
+     * A resource recording its name on cleanup, or failing if it has none.
+     */
+    private static class Named
+            implements Cleanable
+    {
+        public Named(String name, List<String> trail)
+        {
+            myName = name;
+            myTrail = trail;
+        }
+
+        @Override
+        public void cleanup(Auditor auditor)
+                throws ServlexException
+        {
+            if ( myName == null ) {
+                throw new ServlexException(500, "Failing on purpose");
+            }
+            myTrail.add(myName);
+        }
+
+        private final String myName;
+        private final List<String> myTrail;
+    }
+
+    /**
+     * The counters shared by all requests.
+     */
+    private static class Stats
+    {
+        public final AtomicInteger acquired  = new AtomicInteger();
+        public final AtomicInteger released  = new AtomicInteger();
+        public final AtomicInteger twice     = new AtomicInteger();
+        public final AtomicInteger premature = new AtomicInteger();
+    }
+
+    /**
+     * A resource acquired by a component, for one request.
+     */
+    private static class Resource
+            implements Cleanable
+    {
+        public Resource(Stats stats)
+        {
+            myStats = stats;
+            stats.acquired.incrementAndGet();
+        }
+
+        @Override
+        public synchronized void cleanup(Auditor auditor)
+        {
+            if ( myClosed ) {
+                myStats.twice.incrementAndGet();
+            }
+            else {
+                myClosed = true;
+                myStats.released.incrementAndGet();
+            }
+        }
+
+        public synchronized boolean isClosed()
+        {
+            return myClosed;
+        }
+
+        private final Stats myStats;
+        private boolean myClosed = false;
+    }
+
+    /**
+     * A stateless component, acquiring a new resource for each run.
+     *
+     * The resources of the current thread are kept in a thread local, only to
+     * check they are still open at the end of the request.
+     */
+    private static class Acquiring
+            implements Component
+    {
+        public Acquiring(Stats stats)
+        {
+            myStats = stats;
+        }
+
+        @Override
+        public void logApplication(Log log)
+        {
+        }
+
+        @Override
+        public void compile()
+        {
+        }
+
+        @Override
+        public Connector run(Connector connector, ServerConfig config, Auditor auditor, ExecutionContext ctxt)
+        {
+            Resource rsrc = new Resource(myStats);
+            ctxt.register(rsrc);
+            OPEN.get().add(rsrc);
+            // give other requests a chance to interleave
+            Thread.yield();
+            if ( rsrc.isClosed() ) {
+                myStats.premature.incrementAndGet();
+            }
+            return connector;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "acquiring component";
+        }
+
+        private final Stats myStats;
+    }
+
+    /** The resources acquired by the request currently running on each thread. */
+    private static final ThreadLocal<List<Resource>> OPEN = new OpenResources();
+
+    private static class OpenResources
+            extends ThreadLocal<List<Resource>>
+    {
+        @Override
+        protected List<Resource> initialValue()
+        {
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * One client thread, sending requests one after the other.
+     */
+    private static class Client
+            implements Callable<Integer>
+    {
+        public Client(Invocation invoc, ServerConfig config, Stats stats, CountDownLatch start, int requests)
+        {
+            myInvoc = invoc;
+            myConfig = config;
+            myStats = stats;
+            myStart = start;
+            myRequests = requests;
+        }
+
+        @Override
+        public Integer call()
+                throws Exception
+        {
+            myStart.await();
+            int done = 0;
+            for ( int i = 0; i < myRequests; ++i ) {
+                Auditor auditor = new Auditor(myConfig, null, null);
+                ExecutionContext ctxt = new ExecutionContext();
+                List<Resource> open = OPEN.get();
+                open.clear();
+                try {
+                    myInvoc.invoke(null, null, myConfig, auditor, ctxt);
+                    myInvoc.cleanup(auditor);
+                    // the request is not over yet, its resources must be open
+                    for ( Resource r : open ) {
+                        if ( r.isClosed() ) {
+                            myStats.premature.incrementAndGet();
+                        }
+                    }
+                    Assert.assertEquals(3, open.size());
+                }
+                finally {
+                    ctxt.cleanup(auditor);
+                }
+                for ( Resource r : open ) {
+                    Assert.assertTrue(r.isClosed());
+                }
+                ++done;
+            }
+            return done;
+        }
+
+        private final Invocation myInvoc;
+        private final ServerConfig myConfig;
+        private final Stats myStats;
+        private final CountDownLatch myStart;
+        private final int myRequests;
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,91 @@
+/****************************************************************************/
+/*  File:       RequestContextTest.java                                     */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.runtime;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.stream.StreamSource;
+import org.expath.servlex.test.HttpServletRequestMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the request context, carried by a resolver through the processors.
+ *
+ * @author Florent Georges
+ */
+public class RequestContextTest
+{
+    @Test
+    public void carriedByResolver()
+            throws Exception
+    {
+        RequestContext ctxt = new RequestContext(new HttpServletRequestMock());
+        URIResolver resolver = ctxt.makeResolver(null);
+        Assert.assertSame("The context carried", ctxt, RequestContext.fromResolver(resolver));
+        Assert.assertNull("Default resolution", resolver.resolve("doc.xml", "http://example.org/"));
+        Assert.assertNull("Not a context resolver", RequestContext.fromResolver(new Fixed()));
+        Assert.assertNull("No resolver", RequestContext.fromResolver(null));
+    }
+
+    @Test
+    public void delegateToFallback()
+            throws Exception
+    {
+        RequestContext ctxt = new RequestContext(new HttpServletRequestMock());
+        URIResolver resolver = ctxt.makeResolver(new Fixed());
+        Source src = resolver.resolve("doc.xml", "http://example.org/");
+        Assert.assertEquals("Resolved by the fallback", "fixed:doc.xml", src.getSystemId());
+    }
+
+    @Test
+    public void requestIds()
+    {
+        RequestContext one = new RequestContext(new HttpServletRequestMock());
+        RequestContext two = new RequestContext(new HttpServletRequestMock());
+        Assert.assertNotNull("The request id", one.getRequestId());
+        Assert.assertFalse("Unique request ids", one.getRequestId().equals(two.getRequestId()));
+        Assert.assertTrue("Time of arrival", one.getRequestId().matches("\\d{8}-\\d{6}-\\d{3}-.+"));
+    }
+
+    /**
+     * Resolve any URI to a source with the system ID "fixed:" + href.
+     */
+    private static class Fixed
+            implements URIResolver
+    {
+        @Override
+        public Source resolve(String href, String base)
+        {
+            return new StreamSource("fixed:" + href);
+        }
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -10,17 +10,22 @@
 package org.expath.servlex.test;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.security.Principal;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
 import javax.servlet.AsyncContext;
 import javax.servlet.DispatcherType;
+import javax.servlet.ReadListener;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -117,13 +122,26 @@ public class HttpServletRequestMock
         myParams.put(name, values);
     }
 
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        if ( myContent == null ) {
+            throw new UnsupportedOperationException();
+        }
+        return new BytesInputStream(myContent);
+    }
+    public void setContent(byte[] content) {
+        myContent = content;
+    }
+
     private String myContentType;
     private String myContextPath;
     private String myMethod;
     private String myQueryString;
     private String myRequestURL;
     private String myServletPath;
+    private byte[] myContent;
     private final Map<String, String[]> myHeaders = new HashMap<>();
+    private final Map<String, Object> myAttributes = new HashMap<>();
     private final Map<String, String[]> myParams  = new HashMap<>();
 
     private static class IteratorEnumeration
@@ -174,6 +192,41 @@ public class HttpServletRequestMock
         private int myIdx;
     }
 
+    private static class BytesInputStream
+            extends ServletInputStream
+    {
+        public BytesInputStream(byte[] content)
+        {
+            myIn = new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public int read()
+        {
+            return myIn.read();
+        }
+
+        @Override
+        public boolean isFinished()
+        {
+            return myIn.available() == 0;
+        }
+
+        @Override
+        public boolean isReady()
+        {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener listener)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        private final ByteArrayInputStream myIn;
+    }
+
     @Override
     public String getAuthType() {
         throw new UnsupportedOperationException();
@@ -186,12 +239,24 @@ public class HttpServletRequestMock
 
     @Override
     public long getDateHeader(String string) {
-        throw new UnsupportedOperationException();
+        String value = getHeader(string);
+        if ( value == null ) {
+            return -1;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(value).getTime();
+        }
+        catch ( ParseException ex ) {
+            throw new IllegalArgumentException("Not a date: " + value, ex);
+        }
     }
 
     @Override
     public String getHeader(String string) {
-        throw new UnsupportedOperationException();
+        String[] values = myHeaders.get(string);
+        return values == null || values.length == 0 ? null : values[0];
     }
 
     @Override
@@ -291,7 +356,7 @@ public class HttpServletRequestMock
 
     @Override
     public Object getAttribute(String string) {
-        throw new UnsupportedOperationException();
+        return myAttributes.get(string);
     }
 
     @Override
@@ -319,11 +384,6 @@ public class HttpServletRequestMock
         return getContentLength();
     }
 
-    @Override
-    public ServletInputStream getInputStream() throws IOException {
-        throw new UnsupportedOperationException();
-    }
-
     @Override
     public String getParameter(String string) {
         throw new UnsupportedOperationException();
@@ -371,7 +431,7 @@ public class HttpServletRequestMock
 
     @Override
     public void setAttribute(String string, Object o) {
-        throw new UnsupportedOperationException();
+        myAttributes.put(string, o);
     }
 
     @Override
@@ -441,7 +501,7 @@ public class HttpServletRequestMock
 
     @Override
     public boolean isAsyncStarted() {
-        throw new UnsupportedOperationException();
+        return false;
     }
 
     @Override
@@ -0,0 +1,344 @@
+/****************************************************************************/
+/*  File:       HttpServletResponseMock.java                                */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A way to create a mock response, for test purposes.
+ *
+ * Records the status, the headers, the content type and length, and the
+ * flushes and closes of the output stream, as strings in a trail, in the
+ * order they happen.  The body written is kept in memory.
+ *
+ * @author Florent Georges
+ */
+public class HttpServletResponseMock
+        implements HttpServletResponse
+{
+    /**
+     * The trail of what has been set on the response, in order.
+     */
+    public List<String> getTrail() {
+        return myTrail;
+    }
+
+    /**
+     * The bytes of the body written so far.
+     */
+    public byte[] getBytes() {
+        return myOut.myBytes.toByteArray();
+    }
+
+    /**
+     * The body written so far, decoded as UTF-8.
+     */
+    public String getBody() {
+        return getBody(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The body written so far, decoded with {@code charset}.
+     */
+    public String getBody(Charset charset) {
+        return new String(getBytes(), charset);
+    }
+
+    /**
+     * Whether the output stream has been closed.
+     */
+    public boolean isClosed() {
+        return myOut.myClosed;
+    }
+
+    public void setCommitted(boolean committed) {
+        myCommitted = committed;
+    }
+
+    @Override
+    public void setStatus(int status) {
+        myStatus = status;
+        myTrail.add("status " + status);
+    }
+
+    @Override
+    public void setStatus(int status, String message) {
+        myStatus = status;
+        myTrail.add("status " + status + " " + message);
+    }
+
+    @Override
+    public int getStatus() {
+        return myStatus;
+    }
+
+    @Override
+    public void sendError(int status, String message) {
+        myStatus = status;
+        myTrail.add("error " + status + " " + message);
+    }
+
+    @Override
+    public void sendError(int status) {
+        myStatus = status;
+        myTrail.add("error " + status);
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        myTrail.add(name + ": " + value);
+        myHeaders.put(name, value);
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        myTrail.add(name + ": " + value);
+        if ( ! myHeaders.containsKey(name) ) {
+            myHeaders.put(name, value);
+        }
+    }
+
+    @Override
+    public boolean containsHeader(String name) {
+        return myHeaders.containsKey(name);
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return myHeaders.get(name);
+    }
+
+    @Override
+    public Collection<String> getHeaderNames() {
+        return myHeaders.keySet();
+    }
+
+    @Override
+    public Collection<String> getHeaders(String name) {
+        String value = myHeaders.get(name);
+        return value == null
+                ? Collections.<String>emptyList()
+                : Collections.singletonList(value);
+    }
+
+    @Override
+    public void setContentType(String type) {
+        myContentType = type;
+        myTrail.add("type " + type);
+    }
+
+    @Override
+    public String getContentType() {
+        return myContentType;
+    }
+
+    @Override
+    public void setContentLength(int length) {
+        myTrail.add("length " + length);
+    }
+
+    @Override
+    public void setContentLengthLong(long length) {
+        myTrail.add("length " + length);
+    }
+
+    @Override
+    public void setCharacterEncoding(String charset) {
+        myCharset = charset;
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return myCharset;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        return myOut;
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+        Charset charset = myCharset == null ? StandardCharsets.UTF_8 : Charset.forName(myCharset);
+        return new PrintWriter(new OutputStreamWriter(myOut, charset));
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return myCommitted;
+    }
+
+    @Override
+    public void reset() {
+        myTrail.add("reset");
+    }
+
+    private final List<String> myTrail = new ArrayList<>();
+    private final Map<String, String> myHeaders = new HashMap<>();
+    private final Output myOut = new Output();
+    private int myStatus = 200;
+    private String myContentType;
+    private String myCharset;
+    private boolean myCommitted = false;
+
+    private class Output
+            extends ServletOutputStream
+    {
+        @Override
+        public void write(int b)
+        {
+            myBytes.write(b);
+        }
+
+        @Override
+        public void flush()
+        {
+            myTrail.add("flush");
+        }
+
+        @Override
+        public void close()
+        {
+            myClosed = true;
+            myTrail.add("close");
+        }
+
+        @Override
+        public boolean isReady()
+        {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        private final ByteArrayOutputStream myBytes = new ByteArrayOutputStream();
+        private boolean myClosed = false;
+    }
+
+    @Override
+    public void addCookie(Cookie cookie) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String encodeURL(String url) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String encodeRedirectURL(String url) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String encodeUrl(String url) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String encodeRedirectUrl(String url) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendRedirect(String location) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+        setHeader(name, Long.toString(date));
+    }
+
+    @Override
+    public void addDateHeader(String name, long date) {
+        addHeader(name, Long.toString(date));
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        setHeader(name, Integer.toString(value));
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        addHeader(name, Integer.toString(value));
+    }
+
+    @Override
+    public void setBufferSize(int size) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getBufferSize() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void flushBuffer() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void resetBuffer() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setLocale(Locale locale) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Locale getLocale() {
+        throw new UnsupportedOperationException();
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
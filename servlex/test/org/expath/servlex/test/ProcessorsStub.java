@@ -0,0 +1,173 @@
+/****************************************************************************/
+/*  File:       ProcessorsStub.java                                         */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+import org.expath.servlex.processors.Element;
+import org.expath.servlex.processors.Item;
+import org.expath.servlex.processors.Processors;
+import org.expath.servlex.processors.Sequence;
+import org.expath.servlex.processors.Serializer;
+
+/**
+ * Fake processors, providing fake serializers and sequences, for test purposes.
+ *
+ * The serializers support the media type, serialize a sequence as the
+ * string values of its items (closing the stream), and serialize SAX events
+ * as XML, based on JAXP.  Any other method of the processors is unsupported.
+ *
+ * @author Florent Georges
+ */
+public class ProcessorsStub
+        implements InvocationHandler
+{
+    public Processors proxy()
+    {
+        ClassLoader loader = Processors.class.getClassLoader();
+        Class<?>[] types = { Processors.class };
+        return (Processors) Proxy.newProxyInstance(loader, types, this);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object invoke(Object proxy, Method method, Object[] args)
+    {
+        switch ( method.getName() ) {
+            case "makeSerializer":
+                ClassLoader loader = Serializer.class.getClassLoader();
+                Class<?>[] types = { Serializer.class };
+                return Proxy.newProxyInstance(loader, types, new Serial());
+            case "buildSequence":
+                return new Seq((List<Item>) args[0]);
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    /**
+     * A simple sequence.
+     */
+    public static class Seq
+            implements Sequence
+    {
+        public Seq(List<Item> items)
+        {
+            myItems = items;
+        }
+
+        @Override
+        public Iterator<Item> iterator()
+        {
+            return myItems.iterator();
+        }
+
+        @Override
+        public Item itemAt(int position)
+        {
+            return position < myItems.size() ? myItems.get(position) : null;
+        }
+
+        @Override
+        public Element elementAt(int position)
+        {
+            return (Element) myItems.get(position);
+        }
+
+        @Override
+        public Sequence subSequence(int start)
+        {
+            return new Seq(myItems.subList(Math.min(start, myItems.size()), myItems.size()));
+        }
+
+        @Override
+        public String describe()
+        {
+            return myItems.toString();
+        }
+
+        private final List<Item> myItems;
+    }
+
+    /**
+     * A fake serializer.
+     */
+    private static class Serial
+            implements InvocationHandler
+    {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Exception
+        {
+            switch ( method.getName() ) {
+                case "setMediaType":
+                    myType = (String) args[0];
+                    return null;
+                case "getMediaType":
+                    return myType;
+                case "serialize":
+                    serialize((Sequence) args[0], (OutputStream) args[1]);
+                    return null;
+                case "makeContentHandler":
+                    TransformerHandler handler = FACTORY.newTransformerHandler();
+                    handler.getTransformer().setOutputProperty(OutputKeys.METHOD, "xml");
+                    handler.getTransformer().setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+                    handler.setResult(new StreamResult((OutputStream) args[0]));
+                    return handler;
+                default:
+                    return null;
+            }
+        }
+
+        private void serialize(Sequence seq, OutputStream out)
+                throws IOException
+        {
+            for ( Item item : seq ) {
+                out.write(item.stringValue().getBytes(StandardCharsets.UTF_8));
+            }
+            out.close();
+        }
+
+        private String myType;
+    }
+
+    private static final SAXTransformerFactory FACTORY = (SAXTransformerFactory) SAXTransformerFactory.newInstance();
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
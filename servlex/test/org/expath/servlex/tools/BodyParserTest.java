@@ -0,0 +1,302 @@
+/****************************************************************************/
+/*  File:       BodyParserTest.java                                         */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import javax.xml.namespace.QName;
+import org.expath.servlex.ServlexException;
+import org.expath.servlex.model.Limits;
+import org.expath.servlex.processors.Attribute;
+import org.expath.servlex.processors.Document;
+import org.expath.servlex.processors.Element;
+import org.expath.servlex.processors.Item;
+import org.expath.servlex.processors.Processors;
+import org.expath.servlex.processors.Sequence;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the body parser, spilling binary content to disk.
+ *
+ * @author Florent Georges
+ */
+public class BodyParserTest
+{
+    @Test
+    public void binaryInMemory()
+            throws Exception
+    {
+        BodyParser sut = new BodyParser(false, makeProcs());
+        sut.setSpillThreshold(1024);
+        Item item = sut.parse(new ByteArrayInputStream(content(1024)), new ContentType("application/octet-stream"));
+        Assert.assertEquals("binary: 1024", item.stringValue());
+        Assert.assertNull("Nothing must be spilled", sut.getSpilledFile());
+    }
+
+    @Test
+    public void binarySpilled()
+            throws Exception
+    {
+        byte[] content = content(10000);
+        BodyParser sut = new BodyParser(false, makeProcs());
+        sut.setSpillThreshold(1024);
+        Item item = sut.parse(new ByteArrayInputStream(content), new ContentType("application/octet-stream"));
+        File spilled = sut.getSpilledFile();
+        try {
+            Assert.assertNotNull("The content must be spilled", spilled);
+            Assert.assertEquals("string: " + spilled.getPath(), item.stringValue());
+            Assert.assertTrue("Spilled content", Arrays.equals(content, Files.readAllBytes(spilled.toPath())));
+        }
+        finally {
+            if ( spilled != null ) {
+                spilled.delete();
+            }
+        }
+    }
+
+    @Test
+    public void neverSpilledByDefault()
+            throws Exception
+    {
+        BodyParser sut = new BodyParser(false, makeProcs());
+        Item item = sut.parse(new ByteArrayInputStream(content(10000)), new ContentType("application/octet-stream"));
+        Assert.assertEquals("binary: 10000", item.stringValue());
+        Assert.assertNull("Nothing must be spilled", sut.getSpilledFile());
+    }
+
+    @Test
+    public void jsonNotBase64()
+            throws Exception
+    {
+        byte[] content = "{ \"a\": [ 1, 2 ] }".getBytes("utf-8");
+        BodyParser sut = new BodyParser(false, makeProcs());
+        Item item = sut.parse(new ByteArrayInputStream(content), new ContentType("application/ld+json"));
+        Assert.assertEquals("<map><array key=\"a\"><number>1</number><number>2</number></array></map>", item.stringValue());
+    }
+
+    @Test
+    public void jsonMalformed()
+            throws Exception
+    {
+        byte[] content = "{ \"a\": [ 1, 2 }".getBytes("utf-8");
+        BodyParser sut = new BodyParser(false, makeProcs());
+        try {
+            sut.parse(new ByteArrayInputStream(content), new ContentType("application/json"));
+            Assert.fail("Must be rejected");
+        }
+        catch ( ServlexException ex ) {
+            Assert.assertEquals("The error code", 400, ex.getCode());
+        }
+    }
+
+    @Test
+    public void jsonCheckedWithTreeLimits()
+            throws Exception
+    {
+        byte[] content = "[ [ [ 1 ] ] ]".getBytes("utf-8");
+        LimitChecker limits = new LimitChecker(new Limits(-1, -1, 2, -1));
+        BodyParser sut = new BodyParser(false, makeProcs());
+        sut.setLimits(limits);
+        try {
+            sut.parse(new ByteArrayInputStream(content), new ContentType("application/json"));
+            Assert.fail("The limit is crossed");
+        }
+        catch ( ServlexException ex ) {
+            Assert.assertEquals("The error code", 400, ex.getCode());
+            Assert.assertSame("The violation", limits.getViolation(), ex);
+        }
+    }
+
+    @Test
+    public void xmlStreamedWithoutTreeLimits()
+            throws Exception
+    {
+        byte[] content = "<a/>".getBytes("utf-8");
+        BodyParser sut = new BodyParser(false, makeProcs());
+        sut.setLimits(new LimitChecker(new Limits(100, 10, -1, -1)));
+        Item item = sut.parse(new ByteArrayInputStream(content), new ContentType("application/xml"));
+        Assert.assertEquals("document: StreamSource", item.stringValue());
+    }
+
+    @Test
+    public void xmlCheckedWithTreeLimits()
+            throws Exception
+    {
+        byte[] content = "<a/>".getBytes("utf-8");
+        BodyParser sut = new BodyParser(false, makeProcs());
+        sut.setLimits(new LimitChecker(new Limits(-1, -1, 10, -1)));
+        Item item = sut.parse(new ByteArrayInputStream(content), new ContentType("application/xml"));
+        Assert.assertEquals("document: SAXSource", item.stringValue());
+    }
+
+    private static byte[] content(int size)
+    {
+        byte[] bytes = new byte[size];
+        for ( int i = 0; i < size; ++i ) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    /**
+     * Fake processors, also used by {@link RequestParserTest}.
+     */
+    static Processors makeProcs()
+    {
+        ClassLoader loader = Processors.class.getClassLoader();
+        Class<?>[] types = { Processors.class };
+        return (Processors) Proxy.newProxyInstance(loader, types, new Procs());
+    }
+
+    /**
+     * Fake processors, building items describing what they have been built from.
+     */
+    private static class Procs
+            implements InvocationHandler
+    {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            switch ( method.getName() ) {
+                case "buildBinary":
+                    return new Described("binary: " + ((byte[]) args[0]).length);
+                case "buildString":
+                    return new Described("string: " + args[0]);
+                case "buildDocument":
+                    return new JsonParserTest.Doc("document: " + args[0].getClass().getSimpleName());
+                case "makeTreeBuilder":
+                    return new JsonParserTest.Recorder();
+                case "wrapDocument":
+                    return new Wrapped((org.w3c.dom.Document) args[0]);
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+
+    private static class Described
+            implements Item
+    {
+        public Described(String desc)
+        {
+            myDesc = desc;
+        }
+
+        @Override
+        public Sequence asSequence()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String stringValue()
+        {
+            return myDesc;
+        }
+
+        private final String myDesc;
+    }
+
+    /**
+     * A DOM document, wrapped as is, also used by {@link RequestParserTest}.
+     */
+    static class Wrapped
+            implements Document, Element
+    {
+        public Wrapped(org.w3c.dom.Document dom)
+        {
+            myDom = dom;
+        }
+
+        public org.w3c.dom.Document getDom()
+        {
+            return myDom;
+        }
+
+        @Override
+        public Element getRootElement()
+        {
+            return this;
+        }
+
+        @Override
+        public QName name()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public URI baseUri()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterator<Attribute> attributes()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterator<Element> elements()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterator<Item> children()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Sequence asSequence()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String stringValue()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        private final org.w3c.dom.Document myDom;
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
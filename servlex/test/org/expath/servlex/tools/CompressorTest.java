@@ -0,0 +1,265 @@
+/****************************************************************************/
+/*  File:       CompressorTest.java                                         */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.zip.GZIPInputStream;
+import org.expath.servlex.test.HttpServletRequestMock;
+import org.expath.servlex.test.HttpServletResponseMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the class {@link Compressor}.
+ *
+ * @author Florent Georges
+ */
+public class CompressorTest
+{
+    @Test
+    public void compressed()
+            throws Exception
+    {
+        String content = repeat("<p>hello world</p>", 100);
+        HttpServletResponseMock resp = write("gzip, deflate", "application/xhtml+xml; charset=UTF-8", 200, content);
+        Assert.assertEquals("[Vary: Accept-Encoding, Content-Encoding: gzip, close]", resp.getTrail().toString());
+        byte[] body = resp.getBytes();
+        Assert.assertTrue("compressed", body.length < content.length());
+        Assert.assertEquals(content, gunzip(body));
+    }
+
+    @Test
+    public void compressedTwice()
+            throws Exception
+    {
+        // the second response reuses the pooled deflater, which must have been reset
+        Compressor sut = compressor();
+        String content = repeat("<p>hello world</p>", 100);
+        Assert.assertEquals(content, gunzip(write(sut, "gzip", "text/html", 200, content).getBytes()));
+        Assert.assertEquals(content, gunzip(write(sut, "gzip", "text/html", 200, content).getBytes()));
+    }
+
+    @Test
+    public void belowThreshold()
+            throws Exception
+    {
+        HttpServletResponseMock resp = write("gzip", "text/html", 200, "<p>small</p>");
+        Assert.assertEquals("[Vary: Accept-Encoding, length 12, close]", resp.getTrail().toString());
+        Assert.assertEquals("<p>small</p>", resp.getBody());
+    }
+
+    @Test
+    public void lengthSet()
+            throws Exception
+    {
+        // the length set by the servlet would not match the compressed body
+        String content = repeat("<p>hello world</p>", 100);
+        HttpServletResponseMock resp = new HttpServletResponseMock();
+        resp.setHeader("Content-Length", Integer.toString(content.length()));
+        OutputStream out = compressor().open(request("gzip"), resp, "text/html", 200);
+        try {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        finally {
+            out.close();
+        }
+        Assert.assertEquals("[Content-Length: " + content.length() + ", close]", resp.getTrail().toString());
+        Assert.assertEquals(content, resp.getBody());
+    }
+
+    @Test
+    public void notAccepted()
+            throws Exception
+    {
+        String content = repeat("<p>hello world</p>", 100);
+        HttpServletResponseMock resp = write("identity, gzip;q=0", "text/html", 200, content);
+        Assert.assertEquals("[Vary: Accept-Encoding, close]", resp.getTrail().toString());
+        Assert.assertEquals(content, resp.getBody());
+    }
+
+    @Test
+    public void notCompressible()
+            throws Exception
+    {
+        String content = repeat("binary", 100);
+        HttpServletResponseMock resp = write("gzip", "image/png", 200, content);
+        Assert.assertEquals("[close]", resp.getTrail().toString());
+        Assert.assertEquals(content, resp.getBody());
+    }
+
+    @Test
+    public void notModified()
+            throws Exception
+    {
+        HttpServletResponseMock resp = write("gzip", "text/html", 304, "");
+        Assert.assertEquals("[close]", resp.getTrail().toString());
+    }
+
+    @Test
+    public void gzipTag()
+            throws Exception
+    {
+        // the gzip variant gets its own strong validator
+        HttpServletRequestMock req = new HttpServletRequestMock();
+        req.setMethod("GET");
+        req.setHeader("Accept-Encoding", "gzip");
+        HttpServletResponseMock resp = new HttpServletResponseMock();
+        resp.setHeader("ETag", "\"abc\"");
+        OutputStream out = compressor().open(req, resp, "text/html", 200);
+        try {
+            out.write(repeat("<p>hello world</p>", 100).getBytes(StandardCharsets.UTF_8));
+        }
+        finally {
+            out.close();
+        }
+        Assert.assertEquals("\"abc-gz\"", resp.getHeader("ETag"));
+    }
+
+    @Test
+    public void singleBytes()
+            throws Exception
+    {
+        // as the serializers do, byte by byte
+        Compressor sut = compressor();
+        String content = repeat("<p>hello world</p>", 100);
+        HttpServletResponseMock resp = new HttpServletResponseMock();
+        OutputStream out = sut.open(request("gzip"), resp, "text/html", 200);
+        for ( byte b : content.getBytes(StandardCharsets.UTF_8) ) {
+            out.write(b);
+        }
+        out.close();
+        Assert.assertEquals(content, gunzip(resp.getBytes()));
+    }
+
+    @Test
+    public void aborted()
+            throws Exception
+    {
+        Compressor sut = compressor();
+        HttpServletResponseMock resp = new HttpServletResponseMock();
+        resp.setCommitted(true);
+        OutputStream out = sut.open(request("gzip"), resp, "text/html", 200);
+        out.write(repeat("<p>hello world</p>", 100).getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        Compressor.abort(out);
+        // the body has no gzip trailer, so cannot be read as a complete one
+        try {
+            gunzip(resp.getBytes());
+            Assert.fail("The aborted body must not be a complete gzip body");
+        }
+        catch ( IOException ex ) {
+            // expected
+        }
+        Assert.assertFalse("Servlet stream not closed", resp.isClosed());
+        // the deflater is back in the pool, and usable
+        String content = repeat("<p>hello world</p>", 100);
+        Assert.assertEquals(content, gunzip(write(sut, "gzip", "text/html", 200, content).getBytes()));
+    }
+
+    @Test
+    public void abortedNotCommitted()
+            throws Exception
+    {
+        Compressor sut = compressor();
+        HttpServletResponseMock resp = new HttpServletResponseMock();
+        OutputStream out = sut.open(request("gzip"), resp, "text/html", 200);
+        out.write(repeat("<p>hello world</p>", 100).getBytes(StandardCharsets.UTF_8));
+        Compressor.abort(out);
+        // the response is reset, for the error page not to be labelled gzip
+        Assert.assertTrue("Reset", resp.getTrail().contains("reset"));
+    }
+
+    private static Compressor compressor()
+    {
+        return new Compressor(new HashSet<>(Arrays.asList("text/html", "+xml")), 100, 6);
+    }
+
+    private static HttpServletResponseMock write(String accept, String type, int status, String content)
+            throws Exception
+    {
+        return write(compressor(), accept, type, status, content);
+    }
+
+    private static HttpServletResponseMock write(Compressor sut, String accept, String type, int status, String content)
+            throws Exception
+    {
+        HttpServletResponseMock resp = new HttpServletResponseMock();
+        OutputStream out = sut.open(request(accept), resp, type, status);
+        try {
+            // write it in several chunks, crossing the threshold
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            for ( int i = 0; i < bytes.length; i += 30 ) {
+                out.write(bytes, i, Math.min(30, bytes.length - i));
+            }
+        }
+        finally {
+            out.close();
+        }
+        return resp;
+    }
+
+    private static HttpServletRequestMock request(String accept)
+    {
+        HttpServletRequestMock req = new HttpServletRequestMock();
+        req.setMethod("GET");
+        req.setHeader("Accept-Encoding", accept);
+        return req;
+    }
+
+    private static String gunzip(byte[] bytes)
+            throws Exception
+    {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int len;
+        while ( (len = in.read(buf)) > 0 ) {
+            out.write(buf, 0, len);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String repeat(String s, int count)
+    {
+        StringBuilder buf = new StringBuilder();
+        for ( int i = 0; i < count; ++i ) {
+            buf.append(s);
+        }
+        return buf.toString();
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
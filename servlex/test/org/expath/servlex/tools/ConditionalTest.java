@@ -0,0 +1,131 @@
+/****************************************************************************/
+/*  File:       ConditionalTest.java                                        */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import org.expath.servlex.test.HttpServletRequestMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the class {@link Conditional}.
+ *
+ * @author Florent Georges
+ */
+public class ConditionalTest
+{
+    @Test
+    public void etagMatches()
+            throws Exception
+    {
+        HttpServletRequestMock req = get();
+        req.setHeader("If-None-Match", "\"abc\", W/\"def\"");
+        // check
+        Assert.assertTrue("Listed", Conditional.isNotModified(req, "\"abc\"", -1));
+        Assert.assertTrue("Weak comparison", Conditional.isNotModified(req, "\"def\"", -1));
+        Assert.assertFalse("Not listed", Conditional.isNotModified(req, "\"xyz\"", -1));
+        Assert.assertFalse("No etag", Conditional.isNotModified(req, null, 0));
+    }
+
+    @Test
+    public void etagWinsOverDate()
+            throws Exception
+    {
+        HttpServletRequestMock req = get();
+        req.setHeader("If-None-Match", "\"abc\"");
+        req.setHeader("If-Modified-Since", "Sun, 18 Oct 2026 10:00:00 GMT");
+        // check
+        Assert.assertFalse("Ignore the date if any etag", Conditional.isNotModified(req, "\"xyz\"", 0));
+    }
+
+    @Test
+    public void modifiedSince()
+            throws Exception
+    {
+        HttpServletRequestMock req = get();
+        req.setHeader("If-Modified-Since", "Sun, 18 Oct 2026 10:00:00 GMT");
+        long date = 1792317600000L; // the same date
+        // check
+        Assert.assertTrue("Same date", Conditional.isNotModified(req, "\"abc\"", date));
+        Assert.assertTrue("Same second", Conditional.isNotModified(req, "\"abc\"", date + 999));
+        Assert.assertFalse("Modified after", Conditional.isNotModified(req, "\"abc\"", date + 1000));
+        Assert.assertFalse("No date", Conditional.isNotModified(req, "\"abc\"", -1));
+        req.setHeader("If-Modified-Since", "yesterday");
+        Assert.assertFalse("Malformed date", Conditional.isNotModified(req, "\"abc\"", date));
+    }
+
+    @Test
+    public void onlyGetAndHead()
+            throws Exception
+    {
+        HttpServletRequestMock req = get();
+        req.setHeader("If-None-Match", "*");
+        Assert.assertTrue("GET", Conditional.isNotModified(req, "\"abc\"", -1));
+        req.setMethod("HEAD");
+        Assert.assertTrue("HEAD", Conditional.isNotModified(req, "\"abc\"", -1));
+        req.setMethod("POST");
+        Assert.assertFalse("POST", Conditional.isNotModified(req, "\"abc\"", -1));
+    }
+
+    @Test
+    public void servletResult()
+            throws Exception
+    {
+        HttpServletRequestMock req = get();
+        req.setHeader("If-None-Match", "\"abc\"");
+        Assert.assertFalse("No request", Conditional.isNotModified(null, 200, "\"abc\""));
+        Assert.assertTrue("Matching ETag", Conditional.isNotModified(req, 200, "\"abc\""));
+        Assert.assertFalse("Not a 200", Conditional.isNotModified(req, 201, "\"abc\""));
+        Assert.assertFalse("No ETag", Conditional.isNotModified(req, 200, null));
+    }
+
+    @Test
+    public void gzipVariant()
+            throws Exception
+    {
+        Assert.assertEquals("\"abc-gz\"", Conditional.gzipTag("\"abc\""));
+        Assert.assertEquals("W/\"abc-gz\"", Conditional.gzipTag("W/\"abc\""));
+        HttpServletRequestMock req = get();
+        req.setHeader("If-None-Match", "\"abc-gz\"");
+        // either variant validates
+        Assert.assertTrue("Gzip tag", Conditional.isNotModified(req, 200, "\"abc\""));
+        Assert.assertEquals("\"abc-gz\"", Conditional.notModifiedTag(req, "\"abc\""));
+        req.setHeader("If-None-Match", "\"abc\"");
+        Assert.assertTrue("Identity tag", Conditional.isNotModified(req, 200, "\"abc\""));
+        Assert.assertEquals("\"abc\"", Conditional.notModifiedTag(req, "\"abc\""));
+    }
+
+    private static HttpServletRequestMock get()
+    {
+        HttpServletRequestMock req = new HttpServletRequestMock();
+        req.setMethod("GET");
+        return req;
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,232 @@
+/****************************************************************************/
+/*  File:       DeferredTreeTest.java                                       */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.util.Collections;
+import java.util.Iterator;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathFactory;
+import org.expath.servlex.ServlexException;
+import org.expath.servlex.TechnicalException;
+import org.expath.servlex.processors.TreeBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Test the deferred tree, built on first access.
+ *
+ * @author Florent Georges
+ */
+public class DeferredTreeTest
+{
+    @Test
+    public void builtOnAccess()
+            throws Exception
+    {
+        DeferredTree sut = new DeferredTree(BodyParserTest.makeProcs(), NS, "web");
+        Items items = new Items("item", 3);
+        sut.startElem("request");
+        sut.attribute("method", "get");
+        sut.startContent();
+        sut.textElem("uri", "http://example.org/");
+        DeferredTree.Group group = sut.defer(items);
+        sut.textElem("path", "/");
+        sut.endElem();
+        // the positions of the following siblings do not need the group
+        Element root = sut.getDocument().getDocumentElement();
+        Assert.assertEquals("The children", 5, root.getChildNodes().getLength());
+        Node path = root.getLastChild();
+        Assert.assertEquals("The last child", "web:path", path.getNodeName());
+        Assert.assertEquals("The path", "/", path.getTextContent());
+        Assert.assertEquals("The first child", "uri", root.getFirstChild().getLocalName());
+        Assert.assertEquals("The namespace", NS, root.getFirstChild().getNamespaceURI());
+        Assert.assertEquals("The attribute", "get", root.getAttribute("method"));
+        Assert.assertFalse("Not built yet", group.isBuilt());
+        Assert.assertEquals("Not built yet", 0, items.myBuilt);
+        // accessing one node builds the group
+        Node second = path.getPreviousSibling().getPreviousSibling();
+        Assert.assertTrue("Built now", group.isBuilt());
+        Assert.assertEquals("Built once", 1, items.myBuilt);
+        Assert.assertEquals("The second item", "item-2", second.getTextContent());
+        Assert.assertEquals("Its next sibling", "item-3", second.getNextSibling().getTextContent());
+        Assert.assertSame("Its parent", root, second.getParentNode());
+        group.build();
+        Assert.assertEquals("Still built once", 1, items.myBuilt);
+    }
+
+    @Test
+    public void unknownCount()
+            throws Exception
+    {
+        DeferredTree sut = new DeferredTree(BodyParserTest.makeProcs(), NS, "web");
+        Items items = new Items("part", -1);
+        sut.startElem("multipart");
+        sut.startContent();
+        sut.defer(items);
+        sut.endElem();
+        Element root = sut.getDocument().getDocumentElement();
+        Assert.assertEquals("Not built yet", 0, items.myBuilt);
+        Assert.assertEquals("The children", 2, root.getChildNodes().getLength());
+        Assert.assertEquals("Built now", 1, items.myBuilt);
+    }
+
+    @Test
+    public void xpath()
+            throws Exception
+    {
+        DeferredTree sut = new DeferredTree(BodyParserTest.makeProcs(), NS, "web");
+        sut.startElem("request");
+        sut.attribute("method", "get");
+        sut.startContent();
+        sut.textElem("uri", "http://example.org/");
+        sut.defer(new Items("header", 2));
+        sut.endElem();
+        Node doc = sut.getDocument();
+        Assert.assertEquals("The method", "get", xpath(doc, "/web:request/@method"));
+        Assert.assertEquals("The uri", "http://example.org/", xpath(doc, "/web:request/web:uri"));
+        Assert.assertEquals("The headers", "2", xpath(doc, "count(/web:request/web:header)"));
+        Assert.assertEquals("The name", "header-2", xpath(doc, "/web:request/web:header[2]/@name"));
+        Assert.assertEquals("The attributes", "1", xpath(doc, "count(/web:request/@*)"));
+    }
+
+    @Test
+    public void buildError()
+            throws Exception
+    {
+        DeferredTree sut = new DeferredTree(BodyParserTest.makeProcs(), NS, "web");
+        Items items = new Items("part", -1);
+        items.myError = new ServlexException(400, "Bad request");
+        sut.startElem("multipart");
+        sut.startContent();
+        DeferredTree.Group group = sut.defer(items);
+        sut.endElem();
+        Element root = sut.getDocument().getDocumentElement();
+        try {
+            root.getFirstChild();
+            Assert.fail("The group must fail to build");
+        }
+        catch ( DeferredTree.BuildError ex ) {
+            Assert.assertSame("The original error", items.myError, ex.getCause());
+        }
+        try {
+            group.build();
+            Assert.fail("The group must fail to build, again");
+        }
+        catch ( ServlexException ex ) {
+            Assert.assertSame("The same error", items.myError, ex);
+        }
+        Assert.assertEquals("Not built again", 1, items.myBuilt);
+    }
+
+    /**
+     * Evaluate {@code expr} on {@code node}, with the prefix "web" bound, also used by {@link RequestParserTest}.
+     */
+    static String xpath(Node node, String expr)
+            throws Exception
+    {
+        XPath xpath = XPathFactory.newInstance().newXPath();
+        xpath.setNamespaceContext(new WebNamespace());
+        return xpath.evaluate(expr, node);
+    }
+
+    private static final String NS = "http://expath.org/ns/webapp";
+
+    /**
+     * A deferred group of elements, with their position as attribute and text.
+     */
+    private static class Items
+            implements DeferredTree.Content
+    {
+        public Items(String name, int count)
+        {
+            myName = name;
+            myCount = count;
+        }
+
+        @Override
+        public int count()
+        {
+            return myCount;
+        }
+
+        @Override
+        public void build(TreeBuilder b)
+                throws ServlexException
+                     , TechnicalException
+        {
+            ++myBuilt;
+            if ( myError != null ) {
+                throw myError;
+            }
+            int count = myCount < 0 ? 2 : myCount;
+            for ( int i = 1; i <= count; ++i ) {
+                b.startElem(myName);
+                b.attribute("name", myName + "-" + i);
+                b.startContent();
+                b.characters(myName + "-" + i);
+                b.endElem();
+            }
+        }
+
+        private final String myName;
+        private final int myCount;
+        private int myBuilt = 0;
+        private ServlexException myError = null;
+    }
+
+    /**
+     * Bind the prefix "web" to the webapp namespace.
+     */
+    private static class WebNamespace
+            implements NamespaceContext
+    {
+        @Override
+        public String getNamespaceURI(String prefix)
+        {
+            return "web".equals(prefix) ? NS : null;
+        }
+
+        @Override
+        public String getPrefix(String uri)
+        {
+            return NS.equals(uri) ? "web" : null;
+        }
+
+        @Override
+        public Iterator<String> getPrefixes(String uri)
+        {
+            return Collections.singletonList(getPrefix(uri)).iterator();
+        }
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
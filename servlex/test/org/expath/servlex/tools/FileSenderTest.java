@@ -0,0 +1,177 @@
+/****************************************************************************/
+/*  File:       FileSenderTest.java                                         */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import org.expath.servlex.test.HttpServletRequestMock;
+import org.expath.servlex.test.HttpServletResponseMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the class {@link FileSender}.
+ *
+ * @author Florent Georges
+ */
+public class FileSenderTest
+{
+    @Test
+    public void wholeFile()
+            throws Exception
+    {
+        HttpServletResponseMock resp = send(request(null), true);
+        Assert.assertEquals("[Accept-Ranges: bytes, length 26]", resp.getTrail().toString());
+        Assert.assertEquals(CONTENT, resp.getBody(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void singleRange()
+            throws Exception
+    {
+        HttpServletResponseMock resp = send(request("bytes=2-5"), true);
+        Assert.assertEquals("[Accept-Ranges: bytes, status 206, Content-Range: bytes 2-5/26, length 4]",
+                resp.getTrail().toString());
+        Assert.assertEquals("cdef", resp.getBody(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void suffixRange()
+            throws Exception
+    {
+        HttpServletResponseMock resp = send(request("bytes=-3"), true);
+        Assert.assertEquals("[Accept-Ranges: bytes, status 206, Content-Range: bytes 23-25/26, length 3]",
+                resp.getTrail().toString());
+        Assert.assertEquals("xyz", resp.getBody(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void multipleRanges()
+            throws Exception
+    {
+        HttpServletResponseMock resp = send(request("bytes=0-1, 24-"), true);
+        String body = resp.getBody(StandardCharsets.US_ASCII);
+        Assert.assertTrue(body, body.contains("Content-Range: bytes 0-1/26\r\n\r\nab\r\n"));
+        Assert.assertTrue(body, body.contains("Content-Range: bytes 24-25/26\r\n\r\nyz\r\n"));
+        Assert.assertTrue(body, body.contains("Content-Type: text/plain\r\n"));
+        Assert.assertEquals("status 206", resp.getTrail().get(1));
+        Assert.assertTrue(resp.getTrail().get(2), resp.getTrail().get(2).startsWith("type multipart/byteranges; boundary="));
+        Assert.assertEquals("length " + body.length(), resp.getTrail().get(3));
+    }
+
+    @Test
+    public void unsatisfiable()
+            throws Exception
+    {
+        HttpServletResponseMock resp = send(request("bytes=100-200"), true);
+        Assert.assertEquals("[Accept-Ranges: bytes, status 416, Content-Range: bytes */26, length 0]",
+                resp.getTrail().toString());
+        Assert.assertEquals("", resp.getBody(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void invalidRangeIgnored()
+            throws Exception
+    {
+        HttpServletResponseMock resp = send(request("bytes=5-2"), true);
+        Assert.assertEquals("[Accept-Ranges: bytes, length 26]", resp.getTrail().toString());
+        Assert.assertEquals(CONTENT, resp.getBody(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void ifRangeMismatch()
+            throws Exception
+    {
+        HttpServletRequestMock req = request("bytes=2-5");
+        req.setHeader("If-Range", "\"old\"");
+        HttpServletResponseMock resp = send(req, true);
+        Assert.assertEquals(CONTENT, resp.getBody(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void notPartial()
+            throws Exception
+    {
+        HttpServletResponseMock resp = send(request("bytes=2-5"), false);
+        Assert.assertEquals("[length 26]", resp.getTrail().toString());
+        Assert.assertEquals(CONTENT, resp.getBody(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void sendfile()
+            throws Exception
+    {
+        HttpServletRequestMock req = request("bytes=2-5");
+        req.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        HttpServletResponseMock resp = send(req, true);
+        Assert.assertEquals("", resp.getBody(StandardCharsets.US_ASCII));
+        Assert.assertEquals(2L, req.getAttribute("org.apache.tomcat.sendfile.start"));
+        Assert.assertEquals(6L, req.getAttribute("org.apache.tomcat.sendfile.end"));
+        Assert.assertNotNull(req.getAttribute("org.apache.tomcat.sendfile.filename"));
+    }
+
+    private static HttpServletRequestMock request(String range)
+    {
+        HttpServletRequestMock req = new HttpServletRequestMock();
+        req.setMethod("GET");
+        if ( range != null ) {
+            req.setHeader("Range", range);
+        }
+        return req;
+    }
+
+    private static HttpServletResponseMock send(HttpServletRequestMock req, boolean partial)
+            throws Exception
+    {
+        File file = File.createTempFile("servlex-", ".txt");
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(CONTENT.getBytes(StandardCharsets.US_ASCII));
+        }
+        finally {
+            out.close();
+        }
+        HttpServletResponseMock resp = new HttpServletResponseMock();
+        try {
+            FileSender sut = new FileSender(file, "text/plain", "\"v1\"", -1);
+            sut.send(req, resp, partial);
+        }
+        finally {
+            file.delete();
+        }
+        return resp;
+    }
+
+    private static final String CONTENT = "abcdefghijklmnopqrstuvwxyz";
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
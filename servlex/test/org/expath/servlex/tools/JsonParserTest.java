@@ -0,0 +1,277 @@
+/****************************************************************************/
+/*  File:       JsonParserTest.java                                         */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import org.expath.servlex.ServlexException;
+import org.expath.servlex.TechnicalException;
+import org.expath.servlex.model.Limits;
+import org.expath.servlex.processors.Document;
+import org.expath.servlex.processors.Element;
+import org.expath.servlex.processors.Sequence;
+import org.expath.servlex.processors.TreeBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the JSON parser, building the XML representation of JSON.
+ *
+ * @author Florent Georges
+ */
+public class JsonParserTest
+{
+    @Test
+    public void values()
+            throws Exception
+    {
+        String json = "{ \"s\": \"a\\tb\\u00e9\", \"n\": -1.5e3, \"t\": true, \"f\": false, \"z\": null }";
+        Assert.assertEquals(
+                "<map><string key=\"s\">a\tb\u00e9</string><number key=\"n\">-1.5e3</number>"
+                + "<boolean key=\"t\">true</boolean><boolean key=\"f\">false</boolean><null key=\"z\"/></map>",
+                parse(json));
+    }
+
+    @Test
+    public void nested()
+            throws Exception
+    {
+        String json = " [ {}, [], [ 1, [ \"\" ] ], { \"a\": { \"b\": [] } } ] ";
+        Assert.assertEquals(
+                "<array><map/><array/><array><number>1</number><array><string/></array></array>"
+                + "<map><map key=\"a\"><array key=\"b\"/></map></map></array>",
+                parse(json));
+    }
+
+    @Test
+    public void deeplyNested()
+            throws Exception
+    {
+        // would overflow the Java stack with a recursive parser
+        int depth = 100000;
+        StringBuilder json = new StringBuilder();
+        for ( int i = 0; i < depth; ++i ) {
+            json.append('[');
+        }
+        for ( int i = 0; i < depth; ++i ) {
+            json.append(']');
+        }
+        Recorder builder = new Recorder();
+        new JsonParser(new StringReader(json.toString()), builder).parse();
+        Assert.assertEquals("All arrays closed", 0, builder.myOpen.size());
+    }
+
+    @Test
+    public void invalidXmlChars()
+            throws Exception
+    {
+        Assert.assertEquals("<string>a\uFFFDb\uFFFD</string>", parse("\"a\\u0000b\\ud800\""));
+        Assert.assertEquals("<string>\ud83d\ude00</string>", parse("\"\\ud83d\\ude00\""));
+    }
+
+    @Test
+    public void errors()
+            throws Exception
+    {
+        String[] invalid = { "", "{", "[1,]", "{\"a\" 1}", "{a: 1}", "01", "1.", "tru", "\"abc", "[1] 2", "\"\\x\"" };
+        for ( String json : invalid ) {
+            try {
+                parse(json);
+                Assert.fail("Must be rejected: " + json);
+            }
+            catch ( TechnicalException ex ) {
+                Assert.assertTrue(ex.getMessage(), ex.getMessage().startsWith("Invalid JSON"));
+            }
+        }
+    }
+
+    @Test
+    public void depthOverLimit()
+            throws Exception
+    {
+        LimitChecker limits = new LimitChecker(new Limits(-1, -1, 2, -1));
+        Assert.assertEquals("<array><map/><number>1</number></array>", parse("[ {}, 1 ]", limits));
+        Assert.assertNull("No violation", limits.getViolation());
+        try {
+            // would be an unbounded tree without the limit
+            parse("[[[[[[[[[[", limits);
+            Assert.fail("The limit is crossed");
+        }
+        catch ( ServlexException ex ) {
+            Assert.assertEquals("The error code", 400, ex.getCode());
+        }
+    }
+
+    @Test
+    public void nodesOverLimit()
+            throws Exception
+    {
+        // 6 nodes: elements, key attributes and text nodes
+        LimitChecker limits = new LimitChecker(new Limits(-1, -1, -1, 5));
+        try {
+            parse("{ \"a\": 1, \"b\": [] }", limits);
+            Assert.fail("The limit is crossed");
+        }
+        catch ( ServlexException ex ) {
+            Assert.assertEquals("The error code", 413, ex.getCode());
+            Assert.assertSame("The violation", limits.getViolation(), ex);
+        }
+    }
+
+    private static String parse(String json)
+            throws ServlexException
+                 , TechnicalException
+    {
+        return parse(json, null);
+    }
+
+    private static String parse(String json, LimitChecker limits)
+            throws ServlexException
+                 , TechnicalException
+    {
+        Recorder builder = new Recorder();
+        return new JsonParser(new StringReader(json), builder, limits).parse().toString();
+    }
+
+    /**
+     * Fake tree builder, serializing the tree to a string (no escaping, no namespace).
+     */
+    static class Recorder
+            implements TreeBuilder
+    {
+        @Override
+        public void startElem(String local)
+        {
+            closeStart();
+            myOut.append('<').append(local);
+            myOpen.push(local);
+            myEmpty = true;
+        }
+
+        @Override
+        public void attribute(String local, String value)
+        {
+            if ( value != null ) {
+                myOut.append(' ').append(local).append("=\"").append(value).append('"');
+            }
+        }
+
+        @Override
+        public void startContent()
+        {
+        }
+
+        @Override
+        public void characters(String value)
+        {
+            closeStart();
+            myOut.append(value);
+        }
+
+        @Override
+        public void endElem()
+        {
+            String local = myOpen.pop();
+            if ( myEmpty ) {
+                myOut.append("/>");
+                myEmpty = false;
+            }
+            else {
+                myOut.append("</").append(local).append('>');
+            }
+        }
+
+        @Override
+        public void textElem(String local, String value)
+        {
+            startElem(local);
+            characters(value);
+            endElem();
+        }
+
+        @Override
+        public Document getRoot()
+        {
+            return new Doc(myOut.toString());
+        }
+
+        private void closeStart()
+        {
+            if ( myEmpty ) {
+                myOut.append('>');
+                myEmpty = false;
+            }
+        }
+
+        private final StringBuilder myOut = new StringBuilder();
+        private final Deque<String> myOpen = new ArrayDeque<>();
+        private boolean myEmpty = false;
+    }
+
+    /**
+     * A fake document, its string value being the recorded tree.
+     */
+    static class Doc
+            implements Document
+    {
+        public Doc(String value)
+        {
+            myValue = value;
+        }
+
+        @Override
+        public Element getRootElement()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Sequence asSequence()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String stringValue()
+        {
+            return myValue;
+        }
+
+        @Override
+        public String toString()
+        {
+            return myValue;
+        }
+
+        private final String myValue;
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,161 @@
+/****************************************************************************/
+/*  File:       LimitCheckerTest.java                                       */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import org.expath.servlex.ServlexException;
+import org.expath.servlex.model.Limits;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Test the class {@link LimitChecker}.
+ *
+ * @author Florent Georges
+ */
+public class LimitCheckerTest
+{
+    @Test
+    public void bytesWithinLimit()
+            throws Exception
+    {
+        // the System Under Test
+        LimitChecker sut = new LimitChecker(new Limits(10, -1, -1, -1));
+        // test it
+        InputStream in = sut.wrap(new ByteArrayInputStream(new byte[10]));
+        int read = in.read(new byte[100]);
+        // check
+        Assert.assertEquals("The bytes read", 10, read);
+        Assert.assertNull("No violation", sut.getViolation());
+    }
+
+    @Test
+    public void bytesOverLimit()
+            throws Exception
+    {
+        // the System Under Test
+        LimitChecker sut = new LimitChecker(new Limits(10, -1, -1, -1));
+        // test it
+        InputStream in = sut.wrap(new ByteArrayInputStream(new byte[11]));
+        try {
+            in.read(new byte[100]);
+            Assert.fail("The limit is crossed");
+        }
+        catch ( IOException ex ) {
+            // expected
+        }
+        // check
+        assertViolation(sut, 413);
+    }
+
+    @Test
+    public void parts()
+            throws Exception
+    {
+        // the System Under Test
+        LimitChecker sut = new LimitChecker(new Limits(-1, 2, -1, -1));
+        // test it
+        sut.checkPart(2);
+        try {
+            sut.checkPart(3);
+            Assert.fail("The limit is crossed");
+        }
+        catch ( ServlexException ex ) {
+            // check
+            Assert.assertEquals("The error code", 413, ex.getCode());
+        }
+    }
+
+    @Test
+    public void depthOverLimit()
+            throws Exception
+    {
+        // the System Under Test
+        LimitChecker sut = new LimitChecker(new Limits(-1, -1, 2, -1));
+        // test it
+        parse(sut, "<a><b>ok</b><b/></a>");
+        Assert.assertNull("No violation", sut.getViolation());
+        try {
+            parse(sut, "<a><b><c/></b></a>");
+            Assert.fail("The limit is crossed");
+        }
+        catch ( SAXException ex ) {
+            // expected
+        }
+        // check
+        assertViolation(sut, 400);
+    }
+
+    @Test
+    public void nodesOverLimit()
+            throws Exception
+    {
+        // the System Under Test (elements, attributes and text nodes)
+        LimitChecker sut = new LimitChecker(new Limits(-1, -1, -1, 4));
+        // test it
+        try {
+            parse(sut, "<a x='1'><b>text</b><c/></a>");
+            Assert.fail("The limit is crossed");
+        }
+        catch ( SAXException ex ) {
+            // expected
+        }
+        // check
+        assertViolation(sut, 413);
+    }
+
+    private static void parse(LimitChecker sut, String xml)
+            throws Exception
+    {
+        XMLReader reader = sut.wrap(BodyParser.makeXmlReader(false));
+        reader.parse(new InputSource(new StringReader(xml)));
+    }
+
+    private static void assertViolation(LimitChecker sut, int code)
+    {
+        ServlexException violation = sut.getViolation();
+        Assert.assertNotNull("The violation", violation);
+        Assert.assertEquals("The error code", code, violation.getCode());
+        try {
+            sut.check();
+            Assert.fail("The violation must be thrown");
+        }
+        catch ( ServlexException ex ) {
+            Assert.assertSame("The violation thrown", violation, ex);
+        }
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
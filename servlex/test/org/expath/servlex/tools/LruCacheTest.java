@@ -0,0 +1,165 @@
+/****************************************************************************/
+/*  File:       LruCacheTest.java                                           */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the LRU cache, its bound, its eviction order and its counters.
+ *
+ * @author Florent Georges
+ */
+public class LruCacheTest
+{
+    @Test
+    public void hitsAndMisses()
+            throws Exception
+    {
+        LruCache<String, String> sut = new LruCache<>(10);
+        Assert.assertNull(sut.get("a"));
+        sut.put("a", "A");
+        Assert.assertEquals("A", sut.get("a"));
+        Assert.assertEquals("A", sut.get("a"));
+        Assert.assertEquals("Hits", 2, sut.getHits());
+        Assert.assertEquals("Misses", 1, sut.getMisses());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed()
+            throws Exception
+    {
+        // 16 segments of 2 entries, small integers 0, 16 and 32 share the first one
+        LruCache<Integer, String> sut = new LruCache<>(32);
+        sut.put(0, "zero");
+        sut.put(16, "sixteen");
+        // 0 is now more recently used than 16
+        Assert.assertEquals("zero", sut.get(0));
+        sut.put(32, "thirty-two");
+        Assert.assertEquals("zero", sut.get(0));
+        Assert.assertNull("Least recently used must be evicted", sut.get(16));
+        Assert.assertEquals("thirty-two", sut.get(32));
+    }
+
+    @Test
+    public void bounded()
+            throws Exception
+    {
+        LruCache<Integer, Integer> sut = new LruCache<>(64);
+        for ( int i = 0; i < 1000; ++i ) {
+            sut.put(i, i);
+        }
+        Assert.assertEquals("Size", 64, sut.size());
+        // the last ones are all still there
+        for ( int i = 1000 - 64; i < 1000; ++i ) {
+            Assert.assertEquals(Integer.valueOf(i), sut.get(i));
+        }
+        sut.clear();
+        Assert.assertEquals("Size after clear", 0, sut.size());
+    }
+
+    @Test
+    public void disabled()
+            throws Exception
+    {
+        LruCache<String, String> sut = new LruCache<>(0);
+        sut.put("a", "A");
+        Assert.assertNull(sut.get("a"));
+        Assert.assertEquals("Size", 0, sut.size());
+        Assert.assertEquals("Misses", 1, sut.getMisses());
+    }
+
+    @Test
+    public void concurrentGetPut()
+            throws Exception
+    {
+        LruCache<Integer, String> sut = new LruCache<>(64);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for ( int i = 0; i < THREADS; ++i ) {
+                futures.add(pool.submit(new Worker(sut, i)));
+            }
+            for ( Future<Void> f : futures ) {
+                // rethrow any assertion error from the workers
+                f.get();
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+        Assert.assertEquals("Lookups", THREADS * LOOKUPS, sut.getHits() + sut.getMisses());
+        Assert.assertTrue("Hits", sut.getHits() > 0);
+        Assert.assertTrue("Bound", sut.size() <= 64);
+    }
+
+    private static final int THREADS = 8;
+    private static final int LOOKUPS = 20000;
+
+    /**
+     * Look random keys up, putting them when missing, and check the values found.
+     */
+    private static class Worker
+            implements Callable<Void>
+    {
+        public Worker(LruCache<Integer, String> cache, int seed)
+        {
+            myCache = cache;
+            myRandom = new Random(seed);
+        }
+
+        @Override
+        public Void call()
+        {
+            for ( int i = 0; i < LOOKUPS; ++i ) {
+                Integer key = myRandom.nextInt(200);
+                String value = myCache.get(key);
+                if ( value == null ) {
+                    myCache.put(key, "value-" + key);
+                }
+                else {
+                    Assert.assertEquals("value-" + key, value);
+                }
+            }
+            return null;
+        }
+
+        private final LruCache<Integer, String> myCache;
+        private final Random myRandom;
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,85 @@
+/****************************************************************************/
+/*  File:       RegexPatternTest.java                                       */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the regex pattern, and especially its literal prefix.
+ *
+ * @author Florent Georges
+ */
+public class RegexPatternTest
+{
+    @Test
+    public void literalPrefix()
+    {
+        assertPrefix("/",             "/");
+        assertPrefix("/search",       "/search");
+        assertPrefix("/api/items/",   "/api/items/(.*)");
+        assertPrefix("/img/",         "/img/.+\\.png");
+        assertPrefix("/x.css",        "^/x\\.css");
+        assertPrefix("/foo",          "/foo+");
+    }
+
+    @Test
+    public void literalPrefixOptionalChar()
+    {
+        // the last char before a quantifier allowing zero occurrences is dropped
+        assertPrefix("/a", "/ab?c");
+        assertPrefix("/a", "/ab*");
+        assertPrefix("/",  "/x{0,2}");
+    }
+
+    @Test
+    public void literalPrefixAlternation()
+    {
+        assertPrefix("", "/a|/b");
+        assertPrefix("", "/(a|b)");
+    }
+
+    @Test
+    public void matcherReusesPattern()
+            throws Exception
+    {
+        RegexPattern pattern = new RegexPattern("/remove/([a-z]+)");
+        Assert.assertTrue("First match", pattern.matcher("/remove/abc").matches());
+        Assert.assertFalse("Second match", pattern.matcher("/remove/123").matches());
+        Assert.assertEquals("Replace", "abc.xml", pattern.replace("/remove/abc", "$1.xml"));
+    }
+
+    private void assertPrefix(String expected, String regex)
+    {
+        RegexPattern pattern = new RegexPattern(regex);
+        Assert.assertEquals("Literal prefix of " + regex, expected, pattern.getLiteralPrefix());
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
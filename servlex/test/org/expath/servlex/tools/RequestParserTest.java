@@ -9,8 +9,16 @@
 
 package org.expath.servlex.tools;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+import org.expath.servlex.ServlexException;
+import org.expath.servlex.model.Limits;
 import org.expath.servlex.model.Servlet;
 import org.expath.servlex.processors.Item;
 import org.expath.servlex.processors.TreeBuilder;
@@ -107,6 +115,282 @@ public class RequestParserTest
         System.err.println("ACTUAL:\n" + builder);
         Assert.assertEquals("Tree builder events", expected, builder.toString());
     }
+
+    @Test
+    public void pendingBody()
+            throws Exception
+    {
+        // the HTTP request mock (its input stream cannot be read)
+        HttpServletRequestMock req = new HttpServletRequestMock();
+        req.setContentType("application/xml; charset=utf-8");
+        req.setContextPath("/servlex");
+        req.setMethod("POST");
+        req.setRequestURL("http://example.org/servlex/app/post");
+        req.setServletPath("");
+        // the System Under Test
+        RequestParser sut = new RequestParser(req, "/post", "app", null);
+        TreeBuilder builder = new StringTreeBuilder();
+        List<Item> items = new ArrayList<>();
+        // test it, without the bodies
+        sut.parse(builder, items, false, false);
+        // check
+        Assert.assertEquals("Only the request element", 1, items.size());
+        Assert.assertTrue("The body must be pending", sut.hasPendingBody());
+        String expected = "start elem: body\n" +
+                "attribute: content-type: application/xml\n" +
+                "attribute: position: 1\n" +
+                "start content\n" +
+                "end elem\n" +
+                "end elem\n";
+        Assert.assertTrue("The web:body element", builder.toString().endsWith(expected));
+    }
+
+    @Test
+    public void parallelParts()
+            throws Exception
+    {
+        // the multipart content, the binary part is not parsed in parallel
+        String content = "--SEP\r\n"
+                + "Content-Type: text/plain\r\n\r\n"
+                + "one\r\n"
+                + "--SEP\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n"
+                + "two\r\n"
+                + "--SEP\r\n"
+                + "Content-Type: text/plain\r\n\r\n"
+                + "three\r\n"
+                + "--SEP--\r\n";
+        // the HTTP request mock
+        HttpServletRequestMock req = new HttpServletRequestMock();
+        req.setContentType("multipart/mixed; boundary=SEP");
+        req.setContent(content.getBytes("UTF-8"));
+        req.setContextPath("/servlex");
+        req.setMethod("POST");
+        req.setRequestURL("http://example.org/servlex/app/post");
+        req.setServletPath("");
+        // the System Under Test
+        RequestParser sut = new RequestParser(req, "/post", "app", BodyParserTest.makeProcs());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        sut.setExecutor(executor);
+        TreeBuilder builder = new StringTreeBuilder();
+        List<Item> items = new ArrayList<>();
+        // test it
+        try {
+            sut.parse(builder, items, false);
+        }
+        finally {
+            executor.shutdown();
+        }
+        // check, the order must be preserved
+        Assert.assertEquals("The request element and the parts", 4, items.size());
+        Assert.assertEquals("The first part", "string: one\n", items.get(1).stringValue());
+        Assert.assertEquals("The second part", "binary: 3", items.get(2).stringValue());
+        Assert.assertEquals("The third part", "string: three\n", items.get(3).stringValue());
+    }
+
+    @Test
+    public void gzipBody()
+            throws Exception
+    {
+        // the HTTP request mock
+        HttpServletRequestMock req = makePost("text/plain", gzip("hello"));
+        req.setHeader("Content-Encoding", "gzip");
+        // the System Under Test
+        RequestParser sut = new RequestParser(req, "/post", "app", BodyParserTest.makeProcs());
+        List<Item> items = new ArrayList<>();
+        sut.parse(new StringTreeBuilder(), items, false);
+        // check
+        Assert.assertEquals("The request element and the body", 2, items.size());
+        Assert.assertEquals("The decoded body", "string: hello\n", items.get(1).stringValue());
+    }
+
+    @Test
+    public void gzipPart()
+            throws Exception
+    {
+        // the multipart content, with a gzip-encoded part
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        content.write(("--SEP\r\n"
+                + "Content-Type: text/plain\r\n\r\n"
+                + "one\r\n"
+                + "--SEP\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "Content-Encoding: gzip\r\n\r\n").getBytes("UTF-8"));
+        content.write(gzip("two"));
+        content.write("\r\n--SEP--\r\n".getBytes("UTF-8"));
+        // the HTTP request mock
+        HttpServletRequestMock req = makePost("multipart/mixed; boundary=SEP", content.toByteArray());
+        // the System Under Test
+        RequestParser sut = new RequestParser(req, "/post", "app", BodyParserTest.makeProcs());
+        List<Item> items = new ArrayList<>();
+        sut.parse(new StringTreeBuilder(), items, false);
+        // check
+        Assert.assertEquals("The request element and the parts", 3, items.size());
+        Assert.assertEquals("The first part", "string: one\n", items.get(1).stringValue());
+        Assert.assertEquals("The decoded part", "string: two\n", items.get(2).stringValue());
+    }
+
+    @Test
+    public void gzipOverLimit()
+            throws Exception
+    {
+        // a small compressed body, inflating beyond the limit
+        StringBuilder text = new StringBuilder();
+        for ( int i = 0; i < 10000; ++i ) {
+            text.append('a');
+        }
+        byte[] content = gzip(text.toString());
+        Assert.assertTrue("The compressed body is below the limit", content.length < 1000);
+        // the HTTP request mock
+        HttpServletRequestMock req = makePost("text/plain", content);
+        req.setHeader("Content-Encoding", "gzip");
+        // the System Under Test
+        RequestParser sut = new RequestParser(req, "/post", "app", BodyParserTest.makeProcs());
+        sut.setServlet(new Servlet("post", null, null, new String[0], false, new Limits(1000, -1, -1, -1)));
+        // test it
+        try {
+            sut.parse(new StringTreeBuilder(), new ArrayList<Item>(), false);
+            Assert.fail("The decompressed body must be over the limit");
+        }
+        catch ( ServlexException ex ) {
+            Assert.assertEquals("Request entity too large", 413, ex.getCode());
+        }
+    }
+
+    @Test
+    public void unsupportedEncoding()
+            throws Exception
+    {
+        // the HTTP request mock
+        HttpServletRequestMock req = makePost("text/plain", "hello".getBytes("UTF-8"));
+        req.setHeader("Content-Encoding", "br");
+        // the System Under Test
+        RequestParser sut = new RequestParser(req, "/post", "app", BodyParserTest.makeProcs());
+        // test it
+        try {
+            sut.parse(new StringTreeBuilder(), new ArrayList<Item>(), false);
+            Assert.fail("The content encoding must be rejected");
+        }
+        catch ( ServlexException ex ) {
+            Assert.assertEquals("Unsupported media type", 415, ex.getCode());
+        }
+    }
+
+    @Test
+    public void deferredTree()
+            throws Exception
+    {
+        // the HTTP request mock
+        HttpServletRequestMock req = new HttpServletRequestMock();
+        req.setContentType(null);
+        req.setContextPath("/servlex");
+        req.setMethod("GET");
+        req.setRequestURL("http://example.org/servlex/app/page");
+        req.setServletPath("");
+        req.setHeader("x-double", "value-1", "value-2");
+        req.setParameter("simple", "value");
+        // the System Under Test
+        RequestParser sut = new RequestParser(req, "/page", "app", BodyParserTest.makeProcs());
+        DeferredTree builder = new DeferredTree(BodyParserTest.makeProcs(), NS, "web");
+        List<Item> items = new ArrayList<>();
+        sut.parse(builder, items, false);
+        // check, the same tree as when built right away
+        org.w3c.dom.Document dom = builder.getDocument();
+        Assert.assertEquals("The path", "/page", DeferredTreeTest.xpath(dom, "/web:request/web:path/web:part"));
+        Assert.assertEquals("The params", "1", DeferredTreeTest.xpath(dom, "count(/web:request/web:param)"));
+        Assert.assertEquals("The param", "value", DeferredTreeTest.xpath(dom, "/web:request/web:param[@name = 'simple']/@value"));
+        Assert.assertEquals("The headers", "2", DeferredTreeTest.xpath(dom, "count(/web:request/web:header)"));
+        Assert.assertEquals("The header", "value-2", DeferredTreeTest.xpath(dom, "/web:request/web:header[2]/@value"));
+    }
+
+    @Test
+    public void multipartDeferred()
+            throws Exception
+    {
+        // the multipart content
+        String content = "--SEP\r\n"
+                + "Content-Type: text/plain\r\n\r\n"
+                + "one\r\n"
+                + "--SEP\r\n"
+                + "Content-Type: text/plain\r\n\r\n"
+                + "two\r\n"
+                + "--SEP--\r\n";
+        HttpServletRequestMock req = makePost("multipart/mixed; boundary=SEP", content.getBytes("UTF-8"));
+        // the System Under Test
+        RequestParser sut = new RequestParser(req, "/post", "app", BodyParserTest.makeProcs());
+        DeferredTree builder = new DeferredTree(BodyParserTest.makeProcs(), NS, "web");
+        List<Item> items = new ArrayList<>();
+        // test it, without the bodies
+        sut.parse(builder, items, false, false);
+        Assert.assertEquals("Only the request element", 1, items.size());
+        Assert.assertTrue("The parts must be pending", sut.hasPendingBody());
+        // the parts are parsed when web:multipart is accessed
+        org.w3c.dom.Document dom = builder.getDocument();
+        Assert.assertEquals("The bodies", "2", DeferredTreeTest.xpath(dom, "count(/web:request/web:multipart/web:body)"));
+        Assert.assertEquals("Still only the request element", 1, items.size());
+        // then added to the input, when asked for, without parsing them again
+        sut.parsePendingBodies(items, false);
+        Assert.assertFalse("Nothing pending anymore", sut.hasPendingBody());
+        Assert.assertEquals("The request element and the parts", 3, items.size());
+        Assert.assertEquals("The first part", "string: one\n", items.get(1).stringValue());
+        Assert.assertEquals("The second part", "string: two\n", items.get(2).stringValue());
+    }
+
+    @Test
+    public void multipartDeferredOverLimit()
+            throws Exception
+    {
+        // a small compressed multipart body, inflating beyond the limit
+        StringBuilder content = new StringBuilder("--SEP\r\nContent-Type: text/plain\r\n\r\n");
+        for ( int i = 0; i < 10000; ++i ) {
+            content.append('a');
+        }
+        content.append("\r\n--SEP--\r\n");
+        HttpServletRequestMock req = makePost("multipart/mixed; boundary=SEP", gzip(content.toString()));
+        req.setHeader("Content-Encoding", "gzip");
+        // the System Under Test
+        RequestParser sut = new RequestParser(req, "/post", "app", BodyParserTest.makeProcs());
+        sut.setServlet(new Servlet("post", null, null, new String[0], false, new Limits(1000, -1, -1, -1)));
+        DeferredTree builder = new DeferredTree(BodyParserTest.makeProcs(), NS, "web");
+        sut.parse(builder, new ArrayList<Item>(), false, false);
+        // the error is raised through the DOM, and recorded
+        org.w3c.dom.Node multipart = builder.getDocument().getDocumentElement().getLastChild();
+        try {
+            multipart.getFirstChild();
+            Assert.fail("The decompressed body must be over the limit");
+        }
+        catch ( DeferredTree.BuildError ex ) {
+            Assert.assertEquals("Request entity too large", 413, sut.getDeferredError().getCode());
+        }
+    }
+
+    private static HttpServletRequestMock makePost(String ctype, byte[] content)
+    {
+        HttpServletRequestMock req = new HttpServletRequestMock();
+        req.setContentType(ctype);
+        req.setContent(content);
+        req.setContextPath("/servlex");
+        req.setMethod("POST");
+        req.setRequestURL("http://example.org/servlex/app/post");
+        req.setServletPath("");
+        return req;
+    }
+
+    private static byte[] gzip(String text)
+            throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        OutputStream out = new GZIPOutputStream(buffer);
+        try {
+            out.write(text.getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+        return buffer.toByteArray();
+    }
+
+    private static final String NS = "http://expath.org/ns/webapp";
 }
 
 
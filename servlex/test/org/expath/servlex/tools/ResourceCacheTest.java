@@ -0,0 +1,203 @@
+/****************************************************************************/
+/*  File:       ResourceCacheTest.java                                      */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the class {@link ResourceCache}.
+ *
+ * @author Florent Georges
+ */
+public class ResourceCacheTest
+{
+    @Test
+    public void cached()
+            throws Exception
+    {
+        // the System Under Test
+        ResourceCache sut = new ResourceCache(8000);
+        byte[] content = bytes(100, 'a');
+        // test it
+        ResourceCache.Loader loader = sut.load("/a", new ByteArrayInputStream(content), new ContentType("image/png"));
+        // check
+        Assert.assertNotNull("The resource is cached", loader.getEntry());
+        Assert.assertSame("The cached entry", loader.getEntry(), sut.get("/a"));
+        Assert.assertArrayEquals("The content", content, bytes(sut.get("/a").getContent()));
+        Assert.assertArrayEquals("The content stream", content, read(sut.get("/a").openStream()));
+        Assert.assertNull("No gzip variant for binary", sut.get("/a").getGzip());
+        Assert.assertEquals("The bytes cached", 100, sut.getBytes());
+    }
+
+    @Test
+    public void gzipVariant()
+            throws Exception
+    {
+        // the System Under Test
+        ResourceCache sut = new ResourceCache(8000);
+        byte[] content = bytes(900, 'x');
+        // test it
+        sut.load("/a.css", new ByteArrayInputStream(content), new ContentType("text/css"));
+        // check
+        ByteBuffer gzip = sut.get("/a.css").getGzip();
+        Assert.assertNotNull("The gzip variant", gzip);
+        Assert.assertTrue("The gzip variant is smaller", gzip.remaining() < content.length);
+        byte[] inflated = read(new GZIPInputStream(new ByteArrayInputStream(bytes(gzip))));
+        Assert.assertArrayEquals("The gzip content", content, inflated);
+    }
+
+    @Test
+    public void tooLarge()
+            throws Exception
+    {
+        // the System Under Test
+        ResourceCache sut = new ResourceCache(8000);
+        byte[] content = bytes(5000, 'a');
+        // test it
+        ResourceCache.Loader loader = sut.load("/big", new ByteArrayInputStream(content), new ContentType("image/png"));
+        // check
+        Assert.assertNull("The resource is not cached", loader.getEntry());
+        Assert.assertNull("Not in the cache", sut.get("/big"));
+        Assert.assertArrayEquals("The whole content", content, read(loader.getRemainder()));
+    }
+
+    @Test
+    public void tooLargeRemembered()
+            throws Exception
+    {
+        // the System Under Test
+        ResourceCache sut = new ResourceCache(8000);
+        ContentType png = new ContentType("image/png");
+        sut.load("/big", new ByteArrayInputStream(bytes(5000, 'a')), png);
+        // test it
+        InputStream in = new ByteArrayInputStream(bytes(5000, 'a'));
+        ResourceCache.Loader loader = sut.load("/big", in, png);
+        // check
+        Assert.assertNull("The resource is not cached", loader.getEntry());
+        Assert.assertSame("The stream is given back as is", in, loader.getRemainder());
+        Assert.assertEquals("Nothing read upfront", 5000, in.available());
+        // forgotten when cleared
+        sut.clear();
+        in = new ByteArrayInputStream(bytes(5000, 'a'));
+        Assert.assertFalse("Tried again after clear", in == sut.load("/big", in, png).getRemainder());
+    }
+
+    @Test
+    public void freedWhenEvicted()
+            throws Exception
+    {
+        // the System Under Test
+        ResourceCache sut = new ResourceCache(8000);
+        ContentType png = new ContentType("image/png");
+        ResourceCache.Entry a = sut.load("/a", new ByteArrayInputStream(bytes(1000, 'a')), png).getEntry();
+        ResourceCache.Entry b = sut.load("/b", new ByteArrayInputStream(bytes(1000, 'b')), png).getEntry();
+        // /a is released, /b is still in use
+        a.release();
+        // test it
+        sut.clear();
+        // check
+        Assert.assertTrue("The released entry is freed", a.isFreed());
+        Assert.assertFalse("The entry in use is not freed", b.isFreed());
+        Assert.assertArrayEquals("The entry in use is readable", bytes(1000, 'b'), bytes(b.getContent()));
+        b.release();
+        Assert.assertTrue("The entry is freed once released", b.isFreed());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed()
+            throws Exception
+    {
+        // the System Under Test
+        ResourceCache sut = new ResourceCache(8000);
+        ContentType png = new ContentType("image/png");
+        // test it
+        sut.load("/a", new ByteArrayInputStream(bytes(1000, 'a')), png);
+        sut.load("/b", new ByteArrayInputStream(bytes(1000, 'b')), png);
+        for ( int i = 0; i < 7; ++i ) {
+            sut.load("/" + i, new ByteArrayInputStream(bytes(1000, 'c')), png);
+            // keep /a in use
+            sut.get("/a");
+        }
+        // check
+        Assert.assertNotNull("The recently used one is kept", sut.get("/a"));
+        Assert.assertNull("The least recently used one is evicted", sut.get("/b"));
+        Assert.assertEquals("The bytes cached", 8000, sut.getBytes());
+    }
+
+    @Test
+    public void disabled()
+            throws Exception
+    {
+        // the System Under Test
+        ResourceCache sut = new ResourceCache(0);
+        byte[] content = bytes(10, 'a');
+        // test it
+        ResourceCache.Loader loader = sut.load("/a", new ByteArrayInputStream(content), new ContentType("text/plain"));
+        // check
+        Assert.assertFalse("The cache is disabled", sut.isEnabled());
+        Assert.assertNull("The resource is not cached", loader.getEntry());
+        Assert.assertArrayEquals("The whole content", content, read(loader.getRemainder()));
+    }
+
+    private static byte[] bytes(int length, char c)
+    {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) c);
+        return bytes;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] read(InputStream in)
+            throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int len;
+        while ( (len = in.read(buf)) > 0 ) {
+            out.write(buf, 0, len);
+        }
+        return out.toByteArray();
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,112 @@
+/****************************************************************************/
+/*  File:       StreamedBodyTest.java                                       */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.servlex.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import javax.xml.transform.Source;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.dom.DOMResult;
+import org.expath.servlex.TechnicalException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Test the class {@link StreamedBody}.
+ *
+ * @author Florent Georges
+ */
+public class StreamedBodyTest
+{
+    @Test
+    public void parsedOnAccess()
+            throws Exception
+    {
+        // the System Under Test
+        StreamedBody sut = new StreamedBody(input("<hello>world</hello>"), false);
+        URIResolver resolver = sut.makeResolver(null);
+        // test it
+        Source src = resolver.resolve(StreamedBody.URI, null);
+        Document doc = parse(src);
+        // check
+        Assert.assertEquals("The root element", "hello", doc.getDocumentElement().getLocalName());
+        Assert.assertNull("No parsing error", sut.getError());
+        Assert.assertNull("Other URIs use the default resolution", resolver.resolve("other.xml", null));
+    }
+
+    @Test
+    public void malformedRecorded()
+            throws Exception
+    {
+        // the System Under Test
+        StreamedBody sut = new StreamedBody(input("<hello>world</bye>"), false);
+        // test it
+        try {
+            parse(sut.getSource());
+            Assert.fail("The body is not well-formed");
+        }
+        catch ( TransformerException ex ) {
+            // expected
+        }
+        // check
+        Assert.assertNotNull("The parsing error", sut.getError());
+    }
+
+    @Test(expected = TechnicalException.class)
+    public void parsedOnlyOnce()
+            throws Exception
+    {
+        // the System Under Test
+        StreamedBody sut = new StreamedBody(input("<hello/>"), false);
+        // test it
+        parse(sut.getSource());
+        sut.getSource();
+    }
+
+    private static InputStream input(String xml)
+            throws Exception
+    {
+        return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+    }
+
+    private static Document parse(Source src)
+            throws TransformerException
+    {
+        Transformer identity = TransformerFactory.newInstance().newTransformer();
+        DOMResult result = new DOMResult();
+        identity.transform(src, result);
+        return (Document) result.getNode();
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */